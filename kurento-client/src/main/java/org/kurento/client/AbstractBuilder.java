@@ -20,7 +20,7 @@ package org.kurento.client;
 
 import org.kurento.client.internal.client.DefaultContinuation;
 import org.kurento.client.internal.client.RemoteObject;
-import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RemoteObjectProxies;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.jsonrpc.Props;
 
@@ -43,7 +43,7 @@ public class AbstractBuilder<T> {
 
     this.props = new Props();
     this.clazz = clazz;
-    this.manager = RemoteObjectInvocationHandler.getFor(kurentoObject).getRomManager();
+    this.manager = RemoteObjectProxies.getFacade(kurentoObject).getRomManager();
   }
 
   public AbstractBuilder(Class<?> clazz, RomManager manager) {
@@ -97,7 +97,7 @@ public class AbstractBuilder<T> {
           public void onSuccess(RemoteObject remoteObject) {
             try {
               continuation.onSuccess(
-                  (T) RemoteObjectInvocationHandler.newProxy(remoteObject, manager, clazz));
+                  (T) RemoteObjectProxies.newProxy(remoteObject, manager, clazz));
             } catch (Exception e) {
               log.warn("[Continuation] error invoking onSuccess implemented by client", e);
             }
@@ -53,11 +53,11 @@ public class KurentoClient {
 
   protected RomManager manager;
 
-  private long requesTimeout = PropertiesManager.getProperty("kurento.client.requestTimeout",
-      10000);
+  private long requesTimeout = PropertiesManager.getConfig()
+      .getDurationMillis("kurento.client.requestTimeout", 10000);
 
-  private long connectionTimeout = PropertiesManager.getProperty("kurento.client.connectionTimeout",
-      5000);
+  private long connectionTimeout = PropertiesManager.getConfig()
+      .getDurationMillis("kurento.client.connectionTimeout", 5000);
 
   private String id;
 
@@ -233,6 +233,7 @@ public class KurentoClient {
   protected KurentoClient(JsonRpcClient client) {
     this.client = client;
     this.manager = new RomManager(new RomClientJsonRpcClient(client));
+    this.manager.setSubscriptionTimeout(requesTimeout);
     client.setRequestTimeout(requesTimeout);
     client.setConnectionTimeout(connectionTimeout);
     if (client instanceof JsonRpcClientWebSocket) {
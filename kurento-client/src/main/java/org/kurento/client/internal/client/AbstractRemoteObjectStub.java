@@ -0,0 +1,158 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.Executor;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.Event;
+import org.kurento.client.EventListener;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.ListenerSubscription;
+import org.kurento.client.TFuture;
+import org.kurento.client.Transaction;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Base class of the stubs generated for remote classes. Generated stubs call the
+ * {@link RemoteObject} directly with precomputed param names and types, so no reflection nor
+ * argument arrays are involved in the invocation. It behaves the same as the dynamic proxies
+ * created with {@link RemoteObjectInvocationHandler}.
+ */
+public abstract class AbstractRemoteObjectStub implements KurentoObject, RemoteObjectFacade {
+
+  private final RemoteObject remoteObject;
+  private final RomManager manager;
+
+  protected AbstractRemoteObjectStub(RemoteObject remoteObject, RomManager manager) {
+    this.remoteObject = remoteObject;
+    this.manager = manager;
+    remoteObject.setKurentoObject(this);
+  }
+
+  @Override
+  public RemoteObject getRemoteObject() {
+    return remoteObject;
+  }
+
+  @Override
+  public RomManager getRomManager() {
+    return manager;
+  }
+
+  @Override
+  public boolean isCommited() {
+    return remoteObject.isCommited();
+  }
+
+  @Override
+  public void waitCommited() throws InterruptedException {
+    remoteObject.waitCommited();
+  }
+
+  @Override
+  public void whenCommited(Continuation<?> continuation) {
+    remoteObject.whenCommited(continuation);
+  }
+
+  @Override
+  public void whenCommited(Continuation<?> continuation, Executor executor) {
+    remoteObject.whenCommited(continuation, executor);
+  }
+
+  @Override
+  public void release() {
+    remoteObject.release();
+  }
+
+  @Override
+  public void release(Continuation<Void> continuation) {
+    remoteObject.release(continuation);
+  }
+
+  @Override
+  public void release(Transaction tx) {
+    remoteObject.release(tx);
+  }
+
+  @Override
+  public String getId() {
+    return remoteObject.invoke("getId", null, String.class);
+  }
+
+  protected Object invoke(String method, Props params, Type type) {
+    return remoteObject.invoke(method, params, type);
+  }
+
+  protected void invoke(String method, Props params, Type type, Continuation<?> cont) {
+    remoteObject.invoke(method, params, type, cont);
+  }
+
+  @SuppressWarnings("unchecked")
+  protected <E> TFuture<E> invoke(String method, Props params, Type type, Transaction tx) {
+    return (TFuture<E>) (TFuture<?>) remoteObject.invoke(method, params, type, tx);
+  }
+
+  protected ListenerSubscription addEventListener(Class<? extends Event> eventClass,
+      EventListener<?> listener) {
+    return remoteObject.addEventListener(RemoteObjectEvents.getEventName(eventClass),
+        RemoteObjectEvents.newListener(this, eventClass, listener, manager));
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  protected void addEventListener(Class<? extends Event> eventClass, EventListener<?> listener,
+      Continuation<ListenerSubscription> cont) {
+    remoteObject.addEventListener(RemoteObjectEvents.getEventName(eventClass),
+        RemoteObjectEvents.newListener(this, eventClass, listener, manager), (Continuation) cont);
+  }
+
+  protected void removeEventListener(ListenerSubscription listenerSubscription) {
+    remoteObject.removeEventListener((ListenerSubscriptionImpl) listenerSubscription);
+  }
+
+  protected void removeEventListener(ListenerSubscription listenerSubscription,
+      Continuation<Void> cont) {
+    remoteObject.removeEventListener((ListenerSubscriptionImpl) listenerSubscription, cont);
+  }
+
+  @Override
+  public String toString() {
+    return "[RemoteObject: type=" + remoteObject.getType() + " remoteRef="
+        + remoteObject.getObjectRef() + "";
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + (remoteObject == null ? 0 : remoteObject.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof AbstractRemoteObjectStub)) {
+      return false;
+    }
+    return remoteObject.equals(((AbstractRemoteObjectStub) obj).remoteObject);
+  }
+}
@@ -0,0 +1,346 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.kurento.client.Continuation;
+import org.kurento.commons.ConfigSnapshot;
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Groups the asynchronous releases requested in a short period of time and sends them to the
+ * server in a single transaction. Pending releases are sent when the flush interval since the
+ * first one expires or when the maximum batch size is reached, whatever happens first. The
+ * continuation of each release is notified with the result of its own object.
+ *
+ * <p>
+ * With cascade enabled, releases of objects nested in another object released in the same batch
+ * (e.g. the elements of a {@code MediaPipeline}, whose references are prefixed with the reference
+ * of the pipeline) are not sent, as the server releases them with their parent. They complete
+ * with the result of the parent release.
+ * </p>
+ */
+public class ReleaseCoalescer {
+
+  private static final Logger log = LoggerFactory.getLogger(ReleaseCoalescer.class);
+
+  public static final String FLUSH_INTERVAL_PROPERTY = "kurento.client.release.flushInterval";
+  public static final String MAX_BATCH_SIZE_PROPERTY = "kurento.client.release.maxBatchSize";
+  public static final String CASCADE_PROPERTY = "kurento.client.release.cascade";
+
+  private static final int MAX_BATCH_SIZE_DEFAULT = 100;
+
+  /**
+   * Separator between the reference of a parent object and the references of its children.
+   */
+  static final String CHILD_SEPARATOR = "/";
+
+  private static class PendingRelease {
+
+    private final String objectRef;
+    private final Continuation<Void> cont;
+
+    private PendingRelease(String objectRef, Continuation<Void> cont) {
+      this.objectRef = objectRef;
+      this.cont = cont;
+    }
+  }
+
+  private final RomManager manager;
+  private final int maxBatchSize;
+  private final long flushIntervalMillis;
+  private final boolean cascade;
+
+  private final Object lock = new Object();
+  private List<PendingRelease> pending = new ArrayList<>();
+  private ScheduledFuture<?> flushTask;
+  // Batches sent and not answered yet
+  private int inFlight;
+
+  private final Runnable flushRunnable = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  /**
+   * Creates a coalescer configured with the properties of {@link PropertiesManager}, or returns
+   * null if releases are not deferred (the flush interval is not configured).
+   */
+  static ReleaseCoalescer fromConfig(RomManager manager) {
+
+    ConfigSnapshot config = PropertiesManager.getConfig();
+
+    long flushInterval = config.getDurationMillis(FLUSH_INTERVAL_PROPERTY, 0);
+    if (flushInterval <= 0) {
+      return null;
+    }
+
+    return new ReleaseCoalescer(manager,
+        config.getInt(MAX_BATCH_SIZE_PROPERTY, MAX_BATCH_SIZE_DEFAULT), flushInterval,
+        config.getBoolean(CASCADE_PROPERTY, true));
+  }
+
+  public ReleaseCoalescer(RomManager manager, int maxBatchSize, long flushIntervalMillis,
+      boolean cascade) {
+
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be at least 1: " + maxBatchSize);
+    }
+
+    this.manager = manager;
+    this.maxBatchSize = maxBatchSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.cascade = cascade;
+  }
+
+  public void release(String objectRef, Continuation<Void> cont) {
+
+    List<PendingRelease> batch = null;
+
+    synchronized (lock) {
+      pending.add(new PendingRelease(objectRef, cont));
+      if (pending.size() >= maxBatchSize) {
+        batch = takePending();
+      } else if (flushTask == null) {
+        flushTask = manager.getScheduler().schedule(flushRunnable, flushIntervalMillis,
+            TimeUnit.MILLISECONDS);
+      }
+    }
+
+    if (batch != null) {
+      send(batch);
+    }
+  }
+
+  /**
+   * Sends the pending releases without waiting for the flush interval.
+   */
+  public void flush() {
+
+    List<PendingRelease> batch;
+    synchronized (lock) {
+      batch = takePending();
+    }
+
+    if (!batch.isEmpty()) {
+      send(batch);
+    }
+  }
+
+  /**
+   * Sends the pending releases and waits until the batches sent are answered, or the timeout
+   * expires.
+   *
+   * @return false if the timeout expired before all the batches were answered
+   */
+  public boolean flushAndWait(long timeoutMillis) throws InterruptedException {
+
+    flush();
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    synchronized (lock) {
+      while (inFlight > 0) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+      }
+    }
+    return true;
+  }
+
+  private void batchAnswered(AtomicBoolean answered) {
+    if (answered.compareAndSet(false, true)) {
+      synchronized (lock) {
+        inFlight--;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private List<PendingRelease> takePending() {
+
+    List<PendingRelease> batch = pending;
+    pending = new ArrayList<>();
+
+    if (flushTask != null) {
+      flushTask.cancel(false);
+      flushTask = null;
+    }
+
+    return batch;
+  }
+
+  private void send(List<PendingRelease> batch) {
+
+    // Releases of the same object are sent once
+    Map<String, List<PendingRelease>> releases = new LinkedHashMap<>();
+    for (PendingRelease release : batch) {
+      List<PendingRelease> sameObject = releases.get(release.objectRef);
+      if (sameObject == null) {
+        sameObject = new ArrayList<>();
+        releases.put(release.objectRef, sameObject);
+      }
+      sameObject.add(release);
+    }
+
+    final Map<String, List<PendingRelease>> roots = new LinkedHashMap<>();
+    for (Entry<String, List<PendingRelease>> entry : releases.entrySet()) {
+      String parentRef = cascade ? findParent(entry.getKey(), releases) : null;
+      if (parentRef == null) {
+        List<PendingRelease> rootReleases = roots.get(entry.getKey());
+        if (rootReleases == null) {
+          roots.put(entry.getKey(), entry.getValue());
+        } else {
+          rootReleases.addAll(entry.getValue());
+        }
+      } else {
+        List<PendingRelease> parentReleases = roots.get(parentRef);
+        if (parentReleases == null) {
+          parentReleases = new ArrayList<>();
+          roots.put(parentRef, parentReleases);
+        }
+        parentReleases.addAll(entry.getValue());
+      }
+    }
+
+    final List<String> objectRefs = new ArrayList<>(roots.keySet());
+
+    log.debug("Releasing {} objects with {} requests", batch.size(), objectRefs.size());
+
+    final AtomicBoolean answered = new AtomicBoolean();
+    synchronized (lock) {
+      inFlight++;
+    }
+
+    try {
+
+      if (objectRefs.size() == 1) {
+
+        final String objectRef = objectRefs.get(0);
+        manager.getRomClient().release(objectRef, new Continuation<Void>() {
+          @Override
+          public void onSuccess(Void result) {
+            complete(objectRef, roots.get(objectRef), null);
+            batchAnswered(answered);
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            complete(objectRef, roots.get(objectRef), cause);
+            batchAnswered(answered);
+          }
+        });
+
+      } else {
+
+        manager.getRomClient().release(objectRefs, new Continuation<List<Throwable>>() {
+          @Override
+          public void onSuccess(List<Throwable> errors) {
+            for (int i = 0; i < objectRefs.size(); i++) {
+              complete(objectRefs.get(i), roots.get(objectRefs.get(i)), errors.get(i));
+            }
+            batchAnswered(answered);
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            for (String objectRef : objectRefs) {
+              complete(objectRef, roots.get(objectRef), cause);
+            }
+            batchAnswered(answered);
+          }
+        });
+      }
+
+    } catch (RuntimeException e) {
+      for (String objectRef : objectRefs) {
+        complete(objectRef, roots.get(objectRef), e);
+      }
+      batchAnswered(answered);
+    }
+  }
+
+  /**
+   * Returns the outermost object of the batch that contains the given one, or null if there is
+   * none.
+   */
+  private String findParent(String objectRef, Map<String, ?> releases) {
+
+    int index = objectRef.indexOf(CHILD_SEPARATOR);
+    while (index != -1) {
+      String candidate = objectRef.substring(0, index);
+      if (releases.containsKey(candidate)) {
+        return candidate;
+      }
+      index = objectRef.indexOf(CHILD_SEPARATOR, index + 1);
+    }
+
+    return null;
+  }
+
+  private void complete(String objectRef, List<PendingRelease> releases, Throwable error) {
+
+    if (error == null) {
+      RomClientObjectManager objectManager = manager.getObjectManager();
+      objectManager.releaseObject(objectRef);
+      if (cascade) {
+        objectManager.releaseChildren(objectRef);
+      }
+    }
+
+    for (PendingRelease release : releases) {
+
+      if (release.cont == null) {
+        if (error != null) {
+          log.warn("Exception releasing object {}", release.objectRef, error);
+        }
+        continue;
+      }
+
+      try {
+        if (error == null) {
+          release.cont.onSuccess(null);
+        } else {
+          release.cont.onError(error);
+        }
+      } catch (Exception e) {
+        log.warn("[Continuation] error invoking continuation implemented by client", e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ReleaseCoalescer [maxBatchSize=" + maxBatchSize + ", flushIntervalMillis="
+        + flushIntervalMillis + ", cascade=" + cascade + "]";
+  }
+}
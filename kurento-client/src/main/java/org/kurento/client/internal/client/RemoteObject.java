@@ -20,6 +20,8 @@ package org.kurento.client.internal.client;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 
@@ -43,6 +45,8 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 
 public class RemoteObject {
 
@@ -70,6 +74,8 @@ public class RemoteObject {
   private final Multimap<String, RemoteObjectEventListener> listeners = Multimaps
       .synchronizedMultimap(multi);
 
+  private final Map<String, SharedEventSubscription> subscriptions = new HashMap<>();
+
   private TransactionExecutionException transactionException;
 
   public RemoteObject(String objectRef, String type, RomManager manager) {
@@ -249,11 +255,28 @@ public class RemoteObject {
 
     checkCreated();
 
-    String subscription = manager.subscribe(objectRef, eventType);
+    SharedEventSubscription subscription = retainSubscription(eventType);
+
+    if (subscription.claimRequest()) {
+      try {
+        subscription.setSubscriptionId(manager.subscribe(objectRef, eventType));
+      } catch (RuntimeException e) {
+        abortSubscription(subscription, e);
+        throw e;
+      }
+    }
+
+    String subscriptionId;
+    try {
+      subscriptionId = subscription.getSubscriptionId();
+    } catch (RuntimeException e) {
+      giveBackSubscription(subscription);
+      throw e;
+    }
 
     listeners.put(eventType, listener);
 
-    return new ListenerSubscriptionImpl(subscription, eventType, listener);
+    return new ListenerSubscriptionImpl(subscriptionId, eventType, listener);
   }
 
   public ListenerSubscriptionImpl addEventListener(String eventType,
@@ -269,18 +292,47 @@ public class RemoteObject {
 
     checkCreated();
 
-    listeners.put(eventType, listener);
+    final SharedEventSubscription subscription = retainSubscription(eventType);
+
+    if (subscription.claimRequest()) {
+      try {
+        manager.subscribe(objectRef, eventType, new Continuation<String>() {
+          @Override
+          public void onSuccess(String subscriptionId) {
+            subscription.setSubscriptionId(subscriptionId);
+          }
 
-    manager.subscribe(objectRef, eventType, new DefaultContinuation<String>(cont) {
+          @Override
+          public void onError(Throwable cause) {
+            abortSubscription(subscription, cause);
+          }
+        });
+      } catch (RuntimeException e) {
+        abortSubscription(subscription, e);
+      }
+    }
+
+    Futures.addCallback(subscription.getSubscriptionIdFuture(), new FutureCallback<String>() {
       @Override
-      public void onSuccess(String subscription) {
+      public void onSuccess(String subscriptionId) {
+
+        listeners.put(eventType, listener);
 
         try {
-          cont.onSuccess(new ListenerSubscriptionImpl(subscription, eventType, listener));
+          cont.onSuccess(new ListenerSubscriptionImpl(subscriptionId, eventType, listener));
         } catch (Exception e) {
           log.warn("[Continuation] error invoking onSuccess implemented by client", e);
         }
       }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        try {
+          cont.onError(cause);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onError implemented by client", e);
+        }
+      }
     });
   }
 
@@ -288,10 +340,20 @@ public class RemoteObject {
 
     checkCreated();
 
-    listeners.remove(listenerSubscription.getType(), listenerSubscription.getListener());
-
-    manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId());
+    SharedEventSubscription subscription = detachListener(listenerSubscription.getType(),
+        listenerSubscription.getListener());
 
+    if (subscription != null) {
+      String subscriptionId;
+      try {
+        subscriptionId = subscription.getSubscriptionId();
+      } catch (RuntimeException e) {
+        // The unsubscribe request is sent if the pending subscribe request succeeds later
+        unsubscribe(subscription);
+        throw e;
+      }
+      manager.unsubscribe(objectRef, subscriptionId);
+    }
   }
 
   public void removeEventListener(ListenerSubscriptionImpl listenerSubscription, Transaction tx) {
@@ -306,10 +368,22 @@ public class RemoteObject {
 
     checkCreated();
 
-    listeners.remove(listenerSubscription.getType(), listenerSubscription);
+    SharedEventSubscription subscription = detachListener(listenerSubscription.getType(),
+        listenerSubscription.getListener());
+
+    if (subscription == null) {
+      try {
+        cont.onSuccess(null);
+      } catch (Exception e) {
+        log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+      }
+      return;
+    }
 
-    manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId(),
-        new DefaultContinuation<Void>(cont) {
+    Futures.addCallback(subscription.getSubscriptionIdFuture(), new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String subscriptionId) {
+        manager.unsubscribe(objectRef, subscriptionId, new DefaultContinuation<Void>(cont) {
           @Override
           public void onSuccess(Void result) {
 
@@ -321,6 +395,148 @@ public class RemoteObject {
           }
 
         });
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        try {
+          cont.onError(cause);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onError implemented by client", e);
+        }
+      }
+    });
+  }
+
+  // Shared event subscriptions
+
+  /**
+   * Adds a reference to the remote subscription of the given event type, creating it if this
+   * object is not subscribed yet. The caller that wins
+   * {@link SharedEventSubscription#claimRequest()} has to send the subscribe request.
+   */
+  public SharedEventSubscription retainSubscription(String eventType) {
+    synchronized (subscriptions) {
+      SharedEventSubscription subscription = subscriptions.get(eventType);
+      if (subscription == null) {
+        subscription = new SharedEventSubscription(eventType, manager.getSubscriptionTimeout());
+        subscriptions.put(eventType, subscription);
+      }
+      subscription.retain();
+      return subscription;
+    }
+  }
+
+  /**
+   * Removes a reference to the remote subscription of the given event type. Returns the
+   * subscription if it was the last reference, so the caller has to send the unsubscribe request,
+   * or null otherwise.
+   */
+  public SharedEventSubscription releaseSubscription(String eventType) {
+    synchronized (subscriptions) {
+      SharedEventSubscription subscription = subscriptions.get(eventType);
+      if (subscription == null) {
+        log.warn("Releasing subscription to event {} in object {} that doesn't exist", eventType,
+            objectRef);
+        return null;
+      }
+      if (subscription.release() > 0) {
+        return null;
+      }
+      subscriptions.remove(eventType);
+      return subscription;
+    }
+  }
+
+  /**
+   * Adds back a reference released with {@link #releaseSubscription(String)} whose unsubscribe
+   * request has not been executed.
+   */
+  public void restoreSubscription(String eventType, SharedEventSubscription released) {
+    synchronized (subscriptions) {
+      if (released != null && !subscriptions.containsKey(eventType)) {
+        subscriptions.put(eventType, released);
+      }
+      retainSubscription(eventType);
+    }
+  }
+
+  /**
+   * Discards a subscription whose subscribe request has failed. Listeners waiting for it are
+   * notified with the cause.
+   */
+  public void abortSubscription(SharedEventSubscription subscription, Throwable cause) {
+    synchronized (subscriptions) {
+      if (subscriptions.get(subscription.getEventType()) == subscription) {
+        subscriptions.remove(subscription.getEventType());
+      }
+    }
+    subscription.setException(cause);
+  }
+
+  /**
+   * Removes a reference retained with {@link #retainSubscription(String)} whose listener could not
+   * be attached. The subscription is unsubscribed if it was the last reference.
+   */
+  private void giveBackSubscription(SharedEventSubscription subscription) {
+    synchronized (subscriptions) {
+      if (subscriptions.get(subscription.getEventType()) != subscription
+          || subscription.release() > 0) {
+        return;
+      }
+      subscriptions.remove(subscription.getEventType());
+    }
+    unsubscribe(subscription);
+  }
+
+  public void attachListener(String eventType, RemoteObjectEventListener listener) {
+    listeners.put(eventType, listener);
+  }
+
+  public boolean removeListener(String eventType, RemoteObjectEventListener listener) {
+    return listeners.remove(eventType, listener);
+  }
+
+  /**
+   * Removes the listener and its reference to the shared subscription. Returns the subscription if
+   * it has to be unsubscribed, or null if it is still used by other listeners or the listener was
+   * not registered.
+   */
+  public SharedEventSubscription detachListener(String eventType,
+      RemoteObjectEventListener listener) {
+    if (!removeListener(eventType, listener)) {
+      return null;
+    }
+    return releaseSubscription(eventType);
+  }
+
+  /**
+   * Sends the unsubscribe request of a released subscription without waiting for the response.
+   * Used when the last reference is released while rolling back a transaction. If the subscribe
+   * request has not been answered yet, the unsubscribe request is sent once it succeeds.
+   */
+  public void unsubscribe(final SharedEventSubscription subscription) {
+    Futures.addCallback(subscription.getSubscriptionIdFuture(), new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String subscriptionId) {
+        manager.unsubscribe(objectRef, subscriptionId, new Continuation<Void>() {
+          @Override
+          public void onSuccess(Void result) {
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            log.warn("Exception unsubscribing from event {} in object {}",
+                subscription.getEventType(), objectRef, cause);
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        // Not subscribed
+      }
+    });
   }
 
   public void fireEvent(String type, Props data) {
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.lang.reflect.Constructor;
+
+import org.kurento.client.Event;
+import org.kurento.client.EventListener;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the listeners that translate events received by a {@link RemoteObject} into
+ * {@link Event} instances delivered to user listeners.
+ */
+public class RemoteObjectEvents {
+
+  private static final Logger log = LoggerFactory.getLogger(RemoteObjectEvents.class);
+
+  private RemoteObjectEvents() {
+  }
+
+  public static String getEventName(Class<? extends Event> eventClass) {
+    return eventClass.getSimpleName().substring(0,
+        eventClass.getSimpleName().length() - "Event".length());
+  }
+
+  public static RemoteObjectEventListener newListener(final KurentoObject source,
+      final Class<? extends Event> eventClass, final EventListener<?> listener,
+      final RomManager manager) {
+
+    return new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, Props data) {
+        propagateEventTo(source, eventClass, data, listener, manager);
+      }
+    };
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static void propagateEventTo(KurentoObject source, Class<? extends Event> eventClass,
+      Props data, EventListener<?> listener, RomManager manager) {
+
+    // TODO Optimize this to create only one event for all listeners
+
+    try {
+
+      log.info("Event class '" + eventClass.getSimpleName() + " Data: " + data);
+
+      Constructor<?> constructor = eventClass.getConstructors()[0];
+
+      data.add("source", source.getId());
+
+      Object[] params = ParamsFlattener.getInstance().unflattenParams(
+          constructor.getParameterAnnotations(), constructor.getGenericParameterTypes(), data,
+          manager);
+
+      Event event = (Event) constructor.newInstance(params);
+
+      ((EventListener) listener).onEvent(event);
+
+    } catch (Exception e) {
+      log.error("Exception while processing event '" + eventClass.getSimpleName()
+          + "' with params '" + data + "'", e);
+    }
+  }
+}
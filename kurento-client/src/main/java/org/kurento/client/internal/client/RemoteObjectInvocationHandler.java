@@ -17,7 +17,6 @@
 
 package org.kurento.client.internal.client;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
@@ -34,14 +33,14 @@ import org.kurento.client.KurentoObject;
 import org.kurento.client.Transaction;
 import org.kurento.client.internal.ParamAnnotationUtils;
 import org.kurento.client.internal.server.EventSubscription;
-import org.kurento.client.internal.transport.serialization.ParamsFlattener;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableSet;
 
-public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
+public class RemoteObjectInvocationHandler extends DefaultInvocationHandler
+    implements RemoteObjectFacade {
 
   private static final Logger log = LoggerFactory.getLogger(RemoteObjectInvocationHandler.class);
 
@@ -177,15 +176,10 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
   private Object subscribeEventListener(final Object proxy, final Object[] args, String methodName,
       final Class<? extends Event> eventClass, Continuation<?> cont, Transaction tx) {
 
-    String eventName = eventClass.getSimpleName().substring(0,
-        eventClass.getSimpleName().length() - "Event".length());
+    String eventName = RemoteObjectEvents.getEventName(eventClass);
 
-    RemoteObjectEventListener listener = new RemoteObjectEventListener() {
-      @Override
-      public void onEvent(String eventType, Props data) {
-        propagateEventTo(proxy, eventClass, data, (EventListener<?>) args[0]);
-      }
-    };
+    RemoteObjectEventListener listener = RemoteObjectEvents.newListener((KurentoObject) proxy,
+        eventClass, (EventListener<?>) args[0], manager);
 
     if (cont != null) {
       remoteObject.addEventListener(eventName, listener,
@@ -215,34 +209,7 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
     return null;
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes" })
-  protected void propagateEventTo(Object object, Class<? extends Event> eventClass, Props data,
-      EventListener<?> listener) {
-
-    // TODO Optimize this to create only one event for all listeners
-
-    try {
-
-      log.info("Event class '" + eventClass.getSimpleName() + " Data: " + data);
-
-      Constructor<?> constructor = eventClass.getConstructors()[0];
-
-      data.add("source", ((KurentoObject) object).getId());
-
-      Object[] params = ParamsFlattener.getInstance().unflattenParams(
-          constructor.getParameterAnnotations(), constructor.getGenericParameterTypes(), data,
-          manager);
-
-      Event event = (Event) constructor.newInstance(params);
-
-      ((EventListener) listener).onEvent(event);
-
-    } catch (Exception e) {
-      log.error("Exception while processing event '" + eventClass.getSimpleName()
-          + "' with params '" + data + "'", e);
-    }
-  }
-
+  @Override
   public RemoteObject getRemoteObject() {
     return remoteObject;
   }
@@ -251,6 +218,7 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
     this.remoteObject = remoteObject;
   }
 
+  @Override
   public RomManager getRomManager() {
     return manager;
   }
@@ -277,15 +245,15 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
     if (obj == null) {
       return false;
     }
-    RemoteObjectInvocationHandler other = getFor(obj);
+    RemoteObjectFacade other = RemoteObjectProxies.getFacade(obj);
     if (other == null) {
       return false;
     }
     if (remoteObject == null) {
-      if (other.remoteObject != null) {
+      if (other.getRemoteObject() != null) {
         return false;
       }
-    } else if (!remoteObject.equals(other.remoteObject)) {
+    } else if (!remoteObject.equals(other.getRemoteObject())) {
       return false;
     }
     return true;
@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.exception.KurentoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+/**
+ * Creates the client side objects of remote objects. Stubs generated by kurento-maven-plugin are
+ * used when available (class {@code <package>.internal.stub.<RemoteClass>Stub}). Classes without
+ * stub, like the ones of modules generated with older versions, use a dynamic proxy with a
+ * {@link RemoteObjectInvocationHandler}. Property {@value #GENERATED_STUBS_PROPERTY} can be set to
+ * false to always use dynamic proxies.
+ */
+public class RemoteObjectProxies {
+
+  public static final String GENERATED_STUBS_PROPERTY = "kurento.client.generatedStubs";
+
+  private static final Logger log = LoggerFactory.getLogger(RemoteObjectProxies.class);
+
+  private static volatile boolean generatedStubs =
+      PropertiesManager.getProperty(GENERATED_STUBS_PROPERTY, true);
+
+  private static final ConcurrentMap<Class<?>, Optional<Constructor<?>>> stubConstructors =
+      new ConcurrentHashMap<>();
+
+  private RemoteObjectProxies() {
+  }
+
+  /**
+   * Method intended to be used for testing purposes
+   *
+   * @param generatedStubs
+   *          false to always create dynamic proxies
+   */
+  public static void setGeneratedStubs(boolean generatedStubs) {
+    RemoteObjectProxies.generatedStubs = generatedStubs;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <E> E newProxy(RemoteObject remoteObject, RomManager manager, Class<E> clazz) {
+
+    if (generatedStubs) {
+      Optional<Constructor<?>> stubConstructor = getStubConstructor(clazz);
+      if (stubConstructor.isPresent()) {
+        try {
+          return (E) stubConstructor.get().newInstance(remoteObject, manager);
+        } catch (Exception e) {
+          throw new KurentoException("Exception creating stub for remote class " + clazz, e);
+        }
+      }
+    }
+
+    return RemoteObjectInvocationHandler.newProxy(remoteObject, manager, clazz);
+  }
+
+  /**
+   * Returns the facade of a client side object of a remote object, or null if the object is not
+   * a stub nor a dynamic proxy of a remote object.
+   */
+  public static RemoteObjectFacade getFacade(Object object) {
+
+    if (object instanceof RemoteObjectFacade) {
+      return (RemoteObjectFacade) object;
+    }
+
+    if (object != null && Proxy.isProxyClass(object.getClass())) {
+      InvocationHandler handler = Proxy.getInvocationHandler(object);
+      if (handler instanceof RemoteObjectFacade) {
+        return (RemoteObjectFacade) handler;
+      }
+    }
+
+    return null;
+  }
+
+  public static boolean isRemoteObject(Object object) {
+    return getFacade(object) != null;
+  }
+
+  private static Optional<Constructor<?>> getStubConstructor(Class<?> clazz) {
+
+    Optional<Constructor<?>> stubConstructor = stubConstructors.get(clazz);
+
+    if (stubConstructor == null) {
+      stubConstructor = findStubConstructor(clazz);
+      stubConstructors.putIfAbsent(clazz, stubConstructor);
+    }
+
+    return stubConstructor;
+  }
+
+  private static Optional<Constructor<?>> findStubConstructor(Class<?> clazz) {
+
+    String stubClassName = clazz.getPackage().getName() + ".internal.stub."
+        + clazz.getSimpleName() + "Stub";
+
+    try {
+
+      Class<?> stubClass = Class.forName(stubClassName, true, clazz.getClassLoader());
+
+      if (!clazz.isAssignableFrom(stubClass)
+          || !AbstractRemoteObjectStub.class.isAssignableFrom(stubClass)) {
+        log.warn("Class {} is not a stub for {}. Using dynamic proxies", stubClassName, clazz);
+        return Optional.absent();
+      }
+
+      Constructor<?> constructor =
+          stubClass.getConstructor(RemoteObject.class, RomManager.class);
+
+      return Optional.<Constructor<?>> of(constructor);
+
+    } catch (ClassNotFoundException | NoSuchMethodException e) {
+      log.debug("No generated stub found for {}. Using dynamic proxies", clazz);
+      return Optional.absent();
+    }
+  }
+}
@@ -44,6 +44,12 @@ public interface RomClient {
 
   public abstract void release(String objectRef, Continuation<Void> cont);
 
+  /**
+   * Releases several objects with a single request. The continuation receives, for each object
+   * and in the same order, null if it was released or the cause of the failure.
+   */
+  public abstract void release(List<String> objectRefs, Continuation<List<Throwable>> cont);
+
   public abstract String subscribe(String objectRef, String eventType);
 
   public abstract String subscribe(String objectRef, String type, Continuation<String> cont);
@@ -66,6 +66,19 @@ public class RomClientObjectManager implements RomEventHandler, ObjectRefsManage
     this.objects.remove(objectRef);
   }
 
+  /**
+   * Removes the objects whose reference is nested in the given one (e.g. the elements of a
+   * pipeline), as the server releases them with their parent.
+   */
+  public void releaseChildren(String parentRef) {
+    String prefix = parentRef + ReleaseCoalescer.CHILD_SEPARATOR;
+    for (String objectRef : objects.keySet()) {
+      if (objectRef.startsWith(prefix)) {
+        this.objects.remove(objectRef);
+      }
+    }
+  }
+
   public RemoteObject getRemoteObject(String objectRef) {
     return this.objects.get(objectRef);
   }
@@ -19,14 +19,20 @@ package org.kurento.client.internal.client;
 
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.Transaction;
+import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.TransactionImpl;
 import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
 import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.server.KurentoServerTransportException;
 import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,15 +43,26 @@ public class RomManager implements ObjectRefsManager {
 
   private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
 
+  // Maximum time to wait for the deferred releases when the manager is destroyed
+  private static final long RELEASE_FLUSH_TIMEOUT_MILLIS = 5000;
+
+  private static final long DEFAULT_SUBSCRIPTION_TIMEOUT_MILLIS = 10000;
+
   private final RomClientObjectManager manager;
   private final RomClient client;
 
+  private volatile TransactionRetryPolicy transactionRetryPolicy = new TransactionRetryPolicy();
+  private volatile ReleaseCoalescer releaseCoalescer;
+  private volatile long subscriptionTimeout = DEFAULT_SUBSCRIPTION_TIMEOUT_MILLIS;
+  private ScheduledExecutorService scheduler;
+
   public RomManager(RomClient client) {
     this.client = client;
     this.manager = new RomClientObjectManager(client);
     if (client != null) {
       this.client.addRomEventHandler(manager);
     }
+    this.releaseCoalescer = ReleaseCoalescer.fromConfig(this);
   }
 
   // FIXME: Improve concurrency
@@ -121,7 +138,7 @@ public class RomManager implements ObjectRefsManager {
 
       remoteObject = new RemoteObject(objectRef, clazz.getSimpleName(), this);
 
-      RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
+      RemoteObjectProxies.newProxy(remoteObject, this, clazz);
     }
 
     return (T) remoteObject.getKurentoObject();
@@ -146,6 +163,22 @@ public class RomManager implements ObjectRefsManager {
 
   public void destroy() {
     log.info("Closing RomManager");
+    ReleaseCoalescer coalescer = releaseCoalescer;
+    if (coalescer != null) {
+      try {
+        if (!coalescer.flushAndWait(RELEASE_FLUSH_TIMEOUT_MILLIS)) {
+          log.warn("Deferred releases not answered in {} ms, closing anyway",
+              RELEASE_FLUSH_TIMEOUT_MILLIS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+      }
+    }
     this.client.destroy();
   }
 
@@ -168,6 +201,13 @@ public class RomManager implements ObjectRefsManager {
   }
 
   public void release(final String objectRef, final Continuation<Void> cont) {
+
+    ReleaseCoalescer coalescer = releaseCoalescer;
+    if (coalescer != null) {
+      coalescer.release(objectRef, cont);
+      return;
+    }
+
     client.release(objectRef, new DefaultContinuation<Void>(cont) {
       @Override
       public void onSuccess(Void result) {
@@ -218,7 +258,13 @@ public class RomManager implements ObjectRefsManager {
       op.setManager(this);
     }
 
-    client.transaction(operations, new Continuation<Void>() {
+    transaction(operations, continuation, transactionRetryPolicy, 1);
+  }
+
+  private void transaction(final List<Operation> operations, final Continuation<Void> continuation,
+      final TransactionRetryPolicy retryPolicy, final int attempt) {
+
+    Continuation<Void> retryContinuation = new Continuation<Void>() {
       @Override
       public void onSuccess(Void result) throws Exception {
         continuation.onSuccess(null);
@@ -226,9 +272,93 @@ public class RomManager implements ObjectRefsManager {
 
       @Override
       public void onError(Throwable cause) throws Exception {
-        transaction(operations, continuation);
+
+        if (retryPolicy.shouldRetry(cause, attempt)) {
+
+          long backoff = retryPolicy.getBackoffMillis(attempt);
+          log.warn("Transaction failed in attempt {}/{}. Retrying in {} ms", attempt,
+              retryPolicy.getMaxAttempts(), backoff, cause);
+
+          try {
+            getScheduler().schedule(new Runnable() {
+              @Override
+              public void run() {
+                transaction(operations, continuation, retryPolicy, attempt + 1);
+              }
+            }, backoff, TimeUnit.MILLISECONDS);
+            return;
+          } catch (RuntimeException e) {
+            log.warn("Transaction retry could not be scheduled", e);
+          }
+        }
+
+        // Operations have been already rolled back if the server rejected one of them
+        if (!(cause instanceof TransactionExecutionException)) {
+          for (Operation op : operations) {
+            op.rollback(null);
+          }
+        }
+
+        continuation.onError(cause);
       }
-    });
+    };
+
+    try {
+      client.transaction(operations, retryContinuation);
+    } catch (KurentoServerTransportException e) {
+      // Connection errors are thrown before the request is sent
+      try {
+        retryContinuation.onError(e);
+      } catch (Exception ex) {
+        log.warn("[Continuation] error invoking onError implemented by client", ex);
+      }
+    }
+  }
+
+  /**
+   * Returns the scheduler used to delay transaction retries and deferred releases.
+   */
+  synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(
+          ThreadFactoryCreator.create("RomManager-scheduler"));
+    }
+    return scheduler;
+  }
+
+  public TransactionRetryPolicy getTransactionRetryPolicy() {
+    return transactionRetryPolicy;
+  }
+
+  /**
+   * Sets the policy applied when an asynchronous transaction fails.
+   */
+  public void setTransactionRetryPolicy(TransactionRetryPolicy transactionRetryPolicy) {
+    this.transactionRetryPolicy = transactionRetryPolicy;
+  }
+
+  public long getSubscriptionTimeout() {
+    return subscriptionTimeout;
+  }
+
+  /**
+   * Sets the maximum time that synchronous listener operations wait for a shared subscribe request
+   * sent by other caller, e.g. in a transaction that has not been committed yet.
+   */
+  public void setSubscriptionTimeout(long subscriptionTimeout) {
+    this.subscriptionTimeout = subscriptionTimeout;
+  }
+
+  public ReleaseCoalescer getReleaseCoalescer() {
+    return releaseCoalescer;
+  }
+
+  /**
+   * Sets the coalescer used to group asynchronous releases, or null to send each release as soon
+   * as it is requested.
+   */
+  public void setReleaseCoalescer(ReleaseCoalescer releaseCoalescer) {
+    this.releaseCoalescer = releaseCoalescer;
   }
 
   public RomClient getRomClient() {
@@ -241,7 +371,7 @@ public class RomManager implements ObjectRefsManager {
     RemoteObject remoteObject = this.create(clazz.getSimpleName(), props, genericProps,
         transaction);
 
-    RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
+    RemoteObjectProxies.newProxy(remoteObject, this, clazz);
 
     return remoteObject;
   }
@@ -251,7 +381,7 @@ public class RomManager implements ObjectRefsManager {
 
     RemoteObject remoteObject = this.create(clazz.getSimpleName(), props, genericProps);
 
-    RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
+    RemoteObjectProxies.newProxy(remoteObject, this, clazz);
 
     return remoteObject;
 
@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.kurento.client.internal.server.ProtocolException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Remote subscription to an event type of a {@link RemoteObject}, shared by all the listeners of
+ * that type registered in the object. Only the first reference sends the subscribe request and
+ * the unsubscribe request is sent when the last reference is released. References are managed by
+ * the owner {@link RemoteObject}.
+ */
+public class SharedEventSubscription {
+
+  private final String eventType;
+  private final long timeoutMillis;
+  private final SettableFuture<String> subscriptionId = SettableFuture.create();
+
+  private int references;
+  private boolean requestClaimed;
+
+  SharedEventSubscription(String eventType, long timeoutMillis) {
+    this.eventType = eventType;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  public String getEventType() {
+    return eventType;
+  }
+
+  int retain() {
+    return ++references;
+  }
+
+  int release() {
+    return --references;
+  }
+
+  /**
+   * Returns true only to the first caller, that is in charge of sending the subscribe request and
+   * completing this subscription with {@link #setSubscriptionId(String)} or
+   * {@link #setException(Throwable)}.
+   */
+  public synchronized boolean claimRequest() {
+    if (requestClaimed) {
+      return false;
+    }
+    requestClaimed = true;
+    return true;
+  }
+
+  public void setSubscriptionId(String subscriptionId) {
+    this.subscriptionId.set(subscriptionId);
+  }
+
+  void setException(Throwable cause) {
+    this.subscriptionId.setException(cause);
+  }
+
+  public ListenableFuture<String> getSubscriptionIdFuture() {
+    return subscriptionId;
+  }
+
+  /**
+   * Returns the id of the remote subscription, or null if the subscribe request has not been
+   * answered yet.
+   */
+  public String getSubscriptionIdIfDone() {
+    if (!subscriptionId.isDone()) {
+      return null;
+    }
+    try {
+      return subscriptionId.get();
+    } catch (InterruptedException | ExecutionException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Waits for the subscribe request sent by the first reference and returns the id of the remote
+   * subscription. The wait is bounded, as the request may belong to a transaction that is never
+   * committed.
+   */
+  public String getSubscriptionId() {
+    try {
+      return subscriptionId.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new ProtocolException("Timeout of " + timeoutMillis + " ms waiting for the subscription"
+          + " to " + eventType + ". Its subscribe request may belong to a transaction that has not"
+          + " been committed", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProtocolException("Interrupted while waiting for subscription to " + eventType,
+          e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new ProtocolException("Exception subscribing to " + eventType, e.getCause());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SharedEventSubscription [eventType=" + eventType + ", references=" + references
+        + ", subscriptionId=" + getSubscriptionIdIfDone() + "]";
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.client.internal.server.KurentoServerTransportException;
+import org.kurento.commons.ConfigSnapshot;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.TimeoutRuntimeException;
+import org.kurento.jsonrpc.JsonRpcClientClosedException;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.TransportException;
+
+/**
+ * Decides whether a failed asynchronous transaction is sent again, and when. Only transport
+ * errors are retried; errors returned by the media server (the transaction or one of its
+ * operations was rejected) are reported at once, as sending the same operations again would fail
+ * in the same way. Retries are delayed with an exponential backoff and limited to a maximum
+ * number of attempts.
+ */
+public class TransactionRetryPolicy {
+
+  public static final String MAX_ATTEMPTS_PROPERTY = "kurento.client.transaction.maxAttempts";
+  public static final String INITIAL_BACKOFF_PROPERTY =
+      "kurento.client.transaction.initialBackoff";
+  public static final String MAX_BACKOFF_PROPERTY = "kurento.client.transaction.maxBackoff";
+
+  private static final int MAX_ATTEMPTS_DEFAULT = 3;
+  private static final long INITIAL_BACKOFF_DEFAULT = 100;
+  private static final long MAX_BACKOFF_DEFAULT = 5000;
+
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  /**
+   * Creates a policy with the values configured in {@link PropertiesManager}.
+   */
+  public TransactionRetryPolicy() {
+    this(PropertiesManager.getConfig());
+  }
+
+  private TransactionRetryPolicy(ConfigSnapshot config) {
+    this(config.getInt(MAX_ATTEMPTS_PROPERTY, MAX_ATTEMPTS_DEFAULT),
+        config.getDurationMillis(INITIAL_BACKOFF_PROPERTY, INITIAL_BACKOFF_DEFAULT),
+        config.getDurationMillis(MAX_BACKOFF_PROPERTY, MAX_BACKOFF_DEFAULT));
+  }
+
+  /**
+   * @param maxAttempts
+   *          total number of times a transaction is sent, including the first one
+   * @param initialBackoffMillis
+   *          delay before the first retry. It is doubled in each following retry
+   * @param maxBackoffMillis
+   *          maximum delay between retries
+   */
+  public TransactionRetryPolicy(int maxAttempts, long initialBackoffMillis,
+      long maxBackoffMillis) {
+
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+    }
+    if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis) {
+      throw new IllegalArgumentException("Invalid backoff: initial " + initialBackoffMillis
+          + "ms, max " + maxBackoffMillis + "ms");
+    }
+
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Returns true if a transaction that has failed with the given cause in its attempt number
+   * <code>attempt</code> (starting in 1) has to be sent again.
+   */
+  public boolean shouldRetry(Throwable cause, int attempt) {
+    return attempt < maxAttempts && isRetryable(cause);
+  }
+
+  /**
+   * Returns true if the error is produced by the transport, so the transaction could succeed if it
+   * is sent again. Errors returned by the server and errors due to the client being closed are not
+   * retryable.
+   */
+  public boolean isRetryable(Throwable cause) {
+
+    for (Throwable t = cause; t != null; t = t.getCause()) {
+
+      if (t instanceof JsonRpcErrorException || t instanceof KurentoServerException
+          || t instanceof JsonRpcClientClosedException) {
+        return false;
+      }
+
+      if (t instanceof TransportException || t instanceof KurentoServerTransportException
+          || t instanceof IOException || t instanceof TimeoutException
+          || t instanceof TimeoutRuntimeException) {
+        return true;
+      }
+
+      if (t.getCause() == t) {
+        break;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns the delay before sending again a transaction that has failed in its attempt number
+   * <code>attempt</code> (starting in 1).
+   */
+  public long getBackoffMillis(int attempt) {
+
+    long backoff = initialBackoffMillis;
+    for (int i = 1; i < attempt && backoff < maxBackoffMillis; i++) {
+      backoff *= 2;
+    }
+
+    return Math.min(backoff, maxBackoffMillis);
+  }
+
+  @Override
+  public String toString() {
+    return "TransactionRetryPolicy [maxAttempts=" + maxAttempts + ", initialBackoffMillis="
+        + initialBackoffMillis + ", maxBackoffMillis=" + maxBackoffMillis + "]";
+  }
+}
@@ -20,7 +20,7 @@ package org.kurento.client.internal.client.operation;
 import java.lang.reflect.Type;
 
 import org.kurento.client.KurentoObject;
-import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RemoteObjectProxies;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
@@ -49,7 +49,7 @@ public class InvokeOperation extends Operation {
     Type flattenType = FLATTENER.calculateFlattenType(returnType);
 
     return romClientJsonRpcClient.createInvokeRequest(
-        RemoteObjectInvocationHandler.getFor(kurentoObject).getRemoteObject().getObjectRef(),
+        RemoteObjectProxies.getFacade(kurentoObject).getRemoteObject().getObjectRef(),
         method, params, flattenType, true);
   }
 
@@ -20,7 +20,7 @@ package org.kurento.client.internal.client.operation;
 import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.TFutureImpl;
 import org.kurento.client.internal.client.RemoteObject;
-import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RemoteObjectProxies;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
@@ -30,6 +30,10 @@ public abstract class Operation {
   protected RomManager manager;
   protected TFutureImpl<Object> future;
 
+  /**
+   * Creates the request sent inside the transaction, or returns null when the operation is solved
+   * locally and has nothing to send.
+   */
   public abstract RequestAndResponseType createRequest(
       RomClientJsonRpcClient romClientJsonRpcClient);
 
@@ -49,7 +53,7 @@ public abstract class Operation {
   }
 
   protected RemoteObject getRemoteObject(Object object) {
-    return RemoteObjectInvocationHandler.getFor(object).getRemoteObject();
+    return RemoteObjectProxies.getFacade(object).getRemoteObject();
   }
 
   public void rollback(TransactionExecutionException ex) {
@@ -37,7 +37,8 @@ public class ReleaseOperation extends Operation {
 
   @Override
   public void processResponse(Object response) {
-    manager.release(getObjectRef(kurentoObject));
+    // The object has been released in the transaction, only local state is removed
+    manager.getObjectManager().releaseObject(getObjectRef(kurentoObject));
   }
 
   @Override
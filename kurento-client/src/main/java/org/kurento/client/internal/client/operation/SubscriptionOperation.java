@@ -18,17 +18,26 @@
 package org.kurento.client.internal.client.operation;
 
 import org.kurento.client.KurentoObject;
+import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.client.ListenerSubscriptionImpl;
+import org.kurento.client.internal.client.RemoteObject;
 import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.SharedEventSubscription;
+import org.kurento.client.internal.server.ProtocolException;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
 public class SubscriptionOperation extends Operation {
 
   private KurentoObject kurentoObject;
   private String eventType;
   private RemoteObjectEventListener listener;
   private ListenerSubscriptionImpl listenerSubscription;
+  private SharedEventSubscription subscription;
+  private boolean subscribeRequest;
 
   public SubscriptionOperation(KurentoObject object, String eventType,
       RemoteObjectEventListener listener) {
@@ -45,14 +54,61 @@ public class SubscriptionOperation extends Operation {
   @Override
   public RequestAndResponseType createRequest(RomClientJsonRpcClient romClientJsonRpcClient) {
 
+    if (subscription == null) {
+      subscription = getRemoteObject(kurentoObject).retainSubscription(eventType);
+      subscribeRequest = subscription.claimRequest();
+    }
+
+    if (!subscribeRequest) {
+      // The object is already subscribed to this event type. Listener is attached locally.
+      return null;
+    }
+
     return romClientJsonRpcClient.createSubscribeRequest(getObjectRef(kurentoObject), eventType);
   }
 
   @Override
   public void processResponse(Object response) {
 
-    listenerSubscription.setSubscription((String) response);
-    getRemoteObject(kurentoObject).addEventListener(eventType, listener);
+    if (subscribeRequest) {
+      subscription.setSubscriptionId((String) response);
+    }
+
+    Futures.addCallback(subscription.getSubscriptionIdFuture(), new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String subscriptionId) {
+        listenerSubscription.setSubscription(subscriptionId);
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+      }
+    });
+
+    getRemoteObject(kurentoObject).attachListener(eventType, listener);
+  }
+
+  @Override
+  public void rollback(TransactionExecutionException ex) {
+    super.rollback(ex);
+
+    if (subscription == null) {
+      return;
+    }
+
+    RemoteObject remoteObject = getRemoteObject(kurentoObject);
+
+    if (subscribeRequest) {
+      remoteObject.abortSubscription(subscription, ex != null ? ex
+          : new ProtocolException("Subscription to " + eventType + " rolled back"));
+    } else {
+      SharedEventSubscription released = remoteObject.releaseSubscription(eventType);
+      if (released != null) {
+        remoteObject.unsubscribe(released);
+      }
+    }
+
+    subscription = null;
   }
 
   @Override
@@ -18,7 +18,10 @@
 package org.kurento.client.internal.client.operation;
 
 import org.kurento.client.KurentoObject;
+import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.client.ListenerSubscriptionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.SharedEventSubscription;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
 
@@ -26,6 +29,9 @@ public class UnsubscriptionOperation extends Operation {
 
   private KurentoObject kurentoObject;
   private ListenerSubscriptionImpl listenerSubscription;
+  private boolean detached;
+  private boolean listenerRemoved;
+  private SharedEventSubscription releasedSubscription;
 
   public UnsubscriptionOperation(KurentoObject kurentoObject,
       ListenerSubscriptionImpl listenerSubscription) {
@@ -44,8 +50,23 @@ public class UnsubscriptionOperation extends Operation {
   @Override
   public RequestAndResponseType createRequest(RomClientJsonRpcClient romClientJsonRpcClient) {
 
+    if (!detached) {
+      RemoteObject remoteObject = getRemoteObject(kurentoObject);
+      listenerRemoved = remoteObject.removeListener(listenerSubscription.getType(),
+          listenerSubscription.getListener());
+      if (listenerRemoved) {
+        releasedSubscription = remoteObject.releaseSubscription(listenerSubscription.getType());
+      }
+      detached = true;
+    }
+
+    if (releasedSubscription == null) {
+      // Listener was not registered or other listeners still use the remote subscription
+      return null;
+    }
+
     return romClientJsonRpcClient.createUnsubscribeRequest(getObjectRef(kurentoObject),
-        listenerSubscription.getSubscriptionId());
+        releasedSubscription.getSubscriptionId());
   }
 
   @Override
@@ -53,6 +74,24 @@ public class UnsubscriptionOperation extends Operation {
     // There is nothing to do here.
   }
 
+  @Override
+  public void rollback(TransactionExecutionException ex) {
+    super.rollback(ex);
+
+    if (!listenerRemoved) {
+      detached = false;
+      return;
+    }
+
+    RemoteObject remoteObject = getRemoteObject(kurentoObject);
+    remoteObject.restoreSubscription(listenerSubscription.getType(), releasedSubscription);
+    remoteObject.attachListener(listenerSubscription.getType(), listenerSubscription.getListener());
+
+    detached = false;
+    listenerRemoved = false;
+    releasedSubscription = null;
+  }
+
   @Override
   public String getDescription() {
     return "Event " + listenerSubscription.getType() + " unsubscription";
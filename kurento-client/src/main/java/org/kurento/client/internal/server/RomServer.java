@@ -17,9 +17,15 @@
 
 package org.kurento.client.internal.server;
 
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.kurento.client.internal.RemoteClass;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
@@ -28,6 +34,67 @@ import org.kurento.jsonrpc.Props;
 
 public class RomServer {
 
+  /**
+   * Resolved constructor or method of a remote class. Parameter annotations and types are cached
+   * because reflection clones them on every call, and the target is invoked through a
+   * {@link MethodHandle} adapted to receive all the arguments in an array.
+   */
+  private static class RemoteInvoker {
+
+    private final MethodHandle handle;
+    private final Annotation[][] paramAnnotations;
+    private final Type[] paramTypes;
+
+    RemoteInvoker(MethodHandle handle, Annotation[][] paramAnnotations, Type[] paramTypes) {
+      this.handle = handle;
+      this.paramAnnotations = paramAnnotations;
+      this.paramTypes = paramTypes;
+    }
+
+    static RemoteInvoker of(Constructor<?> constructor) throws IllegalAccessException {
+
+      int numParams = constructor.getParameterTypes().length;
+
+      MethodHandle handle = LOOKUP.unreflectConstructor(constructor)
+          .asType(MethodType.genericMethodType(numParams))
+          .asSpreader(Object[].class, numParams);
+
+      return new RemoteInvoker(handle, constructor.getParameterAnnotations(),
+          constructor.getGenericParameterTypes());
+    }
+
+    static RemoteInvoker of(Method method) throws IllegalAccessException {
+
+      int numParams = method.getParameterTypes().length;
+
+      // Receiver is the first param of the handle
+      MethodHandle handle = LOOKUP.unreflect(method)
+          .asType(MethodType.genericMethodType(numParams + 1))
+          .asSpreader(Object[].class, numParams);
+
+      return new RemoteInvoker(handle, method.getParameterAnnotations(),
+          method.getGenericParameterTypes());
+    }
+
+    Object[] unflattenParams(Props params, RemoteObjectManager manager) {
+      Object[] unflattenParams =
+          FLATTENER.unflattenParams(paramAnnotations, paramTypes, params, manager);
+      return unflattenParams != null ? unflattenParams : NO_PARAMS;
+    }
+
+    Object newInstance(Object[] params) throws Throwable {
+      return (Object) handle.invokeExact(params);
+    }
+
+    Object invoke(Object target, Object[] params) throws Throwable {
+      return (Object) handle.invokeExact(target, params);
+    }
+  }
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private static final Object[] NO_PARAMS = new Object[0];
+
   private final RemoteObjectManager manager = new RemoteObjectManager();
 
   private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
@@ -35,6 +102,11 @@ public class RomServer {
   private final String packageName;
   private final String classSuffix;
 
+  private final ConcurrentMap<String, RemoteInvoker> constructors = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<Class<?>, ConcurrentMap<String, RemoteInvoker>> methodTables =
+      new ConcurrentHashMap<>();
+
   public RomServer(String packageName, String classSuffix) {
     this.packageName = packageName;
     this.classSuffix = classSuffix;
@@ -44,29 +116,46 @@ public class RomServer {
 
     try {
 
-      Class<?> clazz = Class.forName(packageName + "." + remoteClassType + classSuffix);
-
-      if (clazz.getAnnotation(RemoteClass.class) == null) {
-        throw new ProtocolException("Remote classes must be annotated with @RemoteClass");
-      }
-
-      Constructor<?> constructor = clazz.getConstructors()[0];
-
-      Object[] unflattenedConstParams = FLATTENER.unflattenParams(
-          constructor.getParameterAnnotations(), constructor.getGenericParameterTypes(),
-          constructorParams, manager);
+      RemoteInvoker constructor = getConstructor(remoteClassType);
 
-      Object object = constructor.newInstance(unflattenedConstParams);
+      Object object = constructor
+          .newInstance(constructor.unflattenParams(constructorParams, manager));
 
       return manager.putObject(object);
 
-    } catch (Exception e) {
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
       // TODO Improve exception reporting
       throw new ProtocolException("Exception while creating an object with remoteClass='"
           + remoteClassType + "' and params=" + constructorParams, e);
     }
   }
 
+  private RemoteInvoker getConstructor(String remoteClassType) throws Exception {
+
+    RemoteInvoker constructor = constructors.get(remoteClassType);
+
+    if (constructor == null) {
+
+      Class<?> clazz = Class.forName(packageName + "." + remoteClassType + classSuffix);
+
+      if (clazz.getAnnotation(RemoteClass.class) == null) {
+        throw new ProtocolException("Remote classes must be annotated with @RemoteClass");
+      }
+
+      constructor = RemoteInvoker.of(clazz.getConstructors()[0]);
+
+      // If other thread resolved the same class meanwhile, both invokers are equivalent
+      RemoteInvoker oldConstructor = constructors.putIfAbsent(remoteClassType, constructor);
+      if (oldConstructor != null) {
+        constructor = oldConstructor;
+      }
+    }
+
+    return constructor;
+  }
+
   @SuppressWarnings("unchecked")
   public <E> E invoke(String objectRef, String methodName, Props params, Class<E> clazz) {
     return (E) invoke(objectRef, methodName, params, (Type) clazz);
@@ -84,16 +173,15 @@ public class RomServer {
 
     try {
 
-      Method method = getMethod(remoteObjClass, methodName);
-
-      Object[] unflattenParams = FLATTENER.unflattenParams(method.getParameterAnnotations(),
-          method.getGenericParameterTypes(), params, manager);
+      RemoteInvoker method = getMethod(remoteObjClass, methodName);
 
-      Object result = method.invoke(remoteObject, unflattenParams);
+      Object result = method.invoke(remoteObject, method.unflattenParams(params, manager));
 
       return FLATTENER.flattenResult(result, manager);
 
-    } catch (Exception e) {
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
       // TODO Improve exception reporting
       throw new ProtocolException("Invocation exception of object with remoteClass='"
           + remoteObjClass.getSimpleName() + "', method=" + methodName + " and params=" + params,
@@ -101,14 +189,39 @@ public class RomServer {
     }
   }
 
-  private Method getMethod(Class<?> remoteObjClass, String methodName) {
-    for (Method method : remoteObjClass.getMethods()) {
-      if (method.getName().equals(methodName)) {
-        return method;
+  private RemoteInvoker getMethod(Class<?> remoteObjClass, String methodName)
+      throws IllegalAccessException {
+
+    ConcurrentMap<String, RemoteInvoker> methodTable = methodTables.get(remoteObjClass);
+    if (methodTable == null) {
+      methodTable = new ConcurrentHashMap<>();
+      ConcurrentMap<String, RemoteInvoker> oldMethodTable =
+          methodTables.putIfAbsent(remoteObjClass, methodTable);
+      if (oldMethodTable != null) {
+        methodTable = oldMethodTable;
+      }
+    }
+
+    RemoteInvoker invoker = methodTable.get(methodName);
+
+    if (invoker == null) {
+
+      for (Method method : remoteObjClass.getMethods()) {
+        if (method.getName().equals(methodName)) {
+          invoker = RemoteInvoker.of(method);
+          break;
+        }
       }
+
+      if (invoker == null) {
+        throw new ProtocolException("Method '" + methodName + "' not found in class '"
+            + remoteObjClass.getSimpleName() + "'");
+      }
+
+      methodTable.putIfAbsent(methodName, invoker);
     }
-    throw new ProtocolException("Method '" + methodName + "' not found in class '"
-        + remoteObjClass.getClass().getSimpleName() + "'");
+
+    return invoker;
   }
 
   public void release(String objectRef) {
@@ -43,10 +43,12 @@ import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.TransactionExecutionException;
+import org.kurento.client.TransactionNotExecutedException;
 import org.kurento.client.internal.client.DefaultContinuation;
 import org.kurento.client.internal.client.RomClient;
 import org.kurento.client.internal.client.RomEventHandler;
@@ -169,6 +171,50 @@ public class RomClientJsonRpcClient implements RomClient {
     sendRequest(reqres.request, reqres.responseType, null, cont);
   }
 
+  @Override
+  @SuppressWarnings("serial")
+  public void release(final List<String> objectRefs, final Continuation<List<Throwable>> cont) {
+
+    JsonArray opJsons = new JsonArray();
+    for (int i = 0; i < objectRefs.size(); i++) {
+      Request<JsonObject> request = createReleaseRequest(objectRefs.get(i)).request;
+      request.setId(i);
+      opJsons.add(JsonUtils.toJsonElement(request));
+    }
+
+    JsonObject params = new JsonObject();
+    params.add(TRANSACTION_OPERATIONS, opJsons);
+
+    this.sendRequest(new Request<>(TRANSACTION_METHOD, params),
+        new TypeToken<List<Response<JsonElement>>>() {
+        }.getType(), null, new DefaultContinuation<List<Response<JsonElement>>>(cont) {
+          @Override
+          public void onSuccess(List<Response<JsonElement>> responses) throws Exception {
+            cont.onSuccess(processReleaseResponses(objectRefs, responses));
+          }
+        });
+  }
+
+  private List<Throwable> processReleaseResponses(List<String> objectRefs,
+      List<Response<JsonElement>> responses) {
+
+    List<Throwable> errors = new ArrayList<>(objectRefs.size());
+    for (int i = 0; i < objectRefs.size(); i++) {
+      errors.add(new TransactionNotExecutedException(
+          "Release of object '" + objectRefs.get(i) + "' not executed by the server"));
+    }
+
+    for (Response<JsonElement> response : responses) {
+      Integer id = response.getId();
+      if (id != null && id >= 0 && id < errors.size()) {
+        errors.set(id, response.isError() ? new KurentoServerException(response.getError())
+            : null);
+      }
+    }
+
+    return errors;
+  }
+
   // Other methods
 
   @Override
@@ -359,9 +405,25 @@ public class RomClientJsonRpcClient implements RomClient {
     for (Operation op : operations) {
       RequestAndResponseType reqres = op.createRequest(this);
       opReqres.add(reqres);
-      reqres.request.setId(numReq);
-      opJsons.add(JsonUtils.toJsonElement(reqres.request));
-      numReq++;
+      // Operations without request are solved locally (e.g. shared event subscriptions)
+      if (reqres != null) {
+        reqres.request.setId(numReq);
+        opJsons.add(JsonUtils.toJsonElement(reqres.request));
+        numReq++;
+      }
+    }
+
+    if (numReq == 0) {
+      List<Response<JsonElement>> noResponses = Collections.emptyList();
+      processTransactionResponse(operations, opReqres, noResponses);
+      if (continuation != null) {
+        try {
+          continuation.onSuccess(null);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+        }
+      }
+      return;
     }
 
     JsonObject params = new JsonObject();
@@ -373,7 +435,13 @@ public class RomClientJsonRpcClient implements RomClient {
       wrappedContinuation = new DefaultContinuation<List<Response<JsonElement>>>(continuation) {
         @Override
         public void onSuccess(List<Response<JsonElement>> responses) throws Exception {
-          processTransactionResponse(operations, opReqres, responses);
+          try {
+            processTransactionResponse(operations, opReqres, responses);
+          } catch (TransactionExecutionException e) {
+            // Operations have been rolled back. Notify the failure instead of losing it
+            continuation.onError(e);
+            return;
+          }
           continuation.onSuccess(null);
         }
       };
@@ -393,9 +461,13 @@ public class RomClientJsonRpcClient implements RomClient {
 
     TransactionExecutionException ex = null;
 
+    int numResponse = 0;
     for (int i = 0; i < operations.size(); i++) {
+      if (opReqres.get(i) == null) {
+        continue;
+      }
       Operation op = operations.get(i);
-      Response<JsonElement> response = responses.get(i);
+      Response<JsonElement> response = responses.get(numResponse++);
       if (response.isError()) {
         ex = new TransactionExecutionException(op, response.getError());
         break;
@@ -413,11 +485,16 @@ public class RomClientJsonRpcClient implements RomClient {
 
     } else {
 
+      numResponse = 0;
       for (int i = 0; i < operations.size(); i++) {
         Operation op = operations.get(i);
-        Response<JsonElement> response = responses.get(i);
         RequestAndResponseType reqres = opReqres.get(i);
-        op.processResponse(processReqResult(reqres.responseType, null, response.getResult()));
+        if (reqres == null) {
+          op.processResponse(null);
+        } else {
+          Response<JsonElement> response = responses.get(numResponse++);
+          op.processResponse(processReqResult(reqres.responseType, null, response.getResult()));
+        }
       }
     }
   }
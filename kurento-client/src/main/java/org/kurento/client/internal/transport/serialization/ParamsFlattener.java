@@ -34,6 +34,7 @@ import org.kurento.client.TransactionNotCommitedException;
 import org.kurento.client.internal.ModuleName;
 import org.kurento.client.internal.ParamAnnotationUtils;
 import org.kurento.client.internal.RemoteClass;
+import org.kurento.client.internal.client.AbstractRemoteObjectStub;
 import org.kurento.client.internal.client.RemoteObject;
 import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.client.RomManager;
@@ -172,6 +173,11 @@ public class ParamsFlattener {
 
       processedParam = flattenRemoteObject((RemoteObject) param, inTx);
 
+    } else if (param instanceof AbstractRemoteObjectStub) {
+
+      processedParam = flattenRemoteObject(((AbstractRemoteObjectStub) param).getRemoteObject(),
+          inTx);
+
     } else if (param instanceof Proxy) {
 
       InvocationHandler handler = Proxy.getInvocationHandler(param);
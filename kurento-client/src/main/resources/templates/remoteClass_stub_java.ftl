@@ -0,0 +1,160 @@
+${packageToFolder(module.code.api.java.packageName + ".internal.stub")}/${remoteClass.name}Stub.java
+<#include "macros.ftm" >
+<#function typeRef constName javaType>
+  <#if javaType?contains("<")>
+    <#return constName>
+  <#else>
+    <#return javaType + ".class">
+  </#if>
+</#function>
+<#function propsFor params>
+  <#if params?size == 0>
+    <#return "null">
+  </#if>
+  <#assign result = "new Props()">
+  <#list params as param>
+    <#assign result = result + ".add(\"" + param.name + "\", " + param.name + ")">
+  </#list>
+  <#return result>
+</#function>
+/**
+ * This file is generated with Kurento-maven-plugin.
+ * Please don't edit.
+ */
+package ${module.code.api.java.packageName}.internal.stub;
+
+import ${module.code.api.java.packageName}.*;
+<#if module.code.api.java.packageName != "org.kurento.client">
+import org.kurento.client.*;
+import org.kurento.client.internal.stub.*;
+</#if>
+import org.kurento.client.internal.client.AbstractRemoteObjectStub;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Stub of remote class {@link ${remoteClass.name}}. Invocations are sent to the remote object
+ * with precomputed param names and return types.
+ */
+@SuppressWarnings("unchecked")
+public class ${remoteClass.name}Stub extends <#if remoteClass.extends??>${remoteClass.extends.name}Stub<#else>AbstractRemoteObjectStub</#if> implements ${remoteClass.name} {
+
+  <#list remoteClass.properties as property>
+  <#assign type = getJavaObjectType(property.type,true)>
+  <#if type?contains("<")>
+  private static final java.lang.reflect.Type ${property.name?upper_case}_TYPE =
+      new com.google.gson.reflect.TypeToken<${type}>() {}.getType();
+
+  </#if>
+  </#list>
+  <#-- Methods with optional params are expanded in overloads, that share the return type -->
+  <#assign returnTypeNames = []>
+  <#list remoteClass.methods as method>
+  <#assign type = getJavaObjectType(method.return,true)>
+  <#if type?contains("<") && !returnTypeNames?seq_contains(method.name)>
+  <#assign returnTypeNames = returnTypeNames + [method.name]>
+  private static final java.lang.reflect.Type ${method.name?upper_case}_RETURN_TYPE =
+      new com.google.gson.reflect.TypeToken<${type}>() {}.getType();
+
+  </#if>
+  </#list>
+  public ${remoteClass.name}Stub(RemoteObject remoteObject, RomManager manager) {
+    super(remoteObject, manager);
+  }
+
+  <#list remoteClass.properties as property>
+  <#assign constName = property.name?upper_case + "_TYPE">
+  <#assign type = getJavaObjectType(property.type,false)>
+  <#assign boxedType = getJavaObjectType(property.type,true)>
+  @Override
+  public ${type} get${property.name?cap_first}() {
+    return (${boxedType}) invoke("get${property.name?cap_first}", null, ${typeRef(constName, type)});
+  }
+
+  @Override
+  public void get${property.name?cap_first}(Continuation<${boxedType}> cont) {
+    invoke("get${property.name?cap_first}", null, ${typeRef(constName, boxedType)}, cont);
+  }
+
+  @Override
+  public TFuture<${boxedType}> get${property.name?cap_first}(Transaction tx) {
+    return invoke("get${property.name?cap_first}", null, ${typeRef(constName, boxedType)}, tx);
+  }
+
+  <#if !property.readOnly && !property.final>
+  @Override
+  public void set${property.name?cap_first}(${type} ${property.name}) {
+    invoke("set${property.name?cap_first}", new Props("${property.name}", ${property.name}), void.class);
+  }
+
+  @Override
+  public void set${property.name?cap_first}(${type} ${property.name}, Continuation<Void> cont) {
+    invoke("set${property.name?cap_first}", new Props("${property.name}", ${property.name}), Void.class, cont);
+  }
+
+  @Override
+  public void set${property.name?cap_first}(${type} ${property.name}, Transaction tx) {
+    invoke("set${property.name?cap_first}", new Props("${property.name}", ${property.name}), Void.class, tx);
+  }
+
+  </#if>
+  </#list>
+  <#list remoteClass.methods as method>
+  <#assign constName = method.name?upper_case + "_RETURN_TYPE">
+  <#assign type = getJavaObjectType(method.return,false)>
+  <#assign boxedType = getJavaObjectType(method.return,true)>
+  @Override
+  public ${type} ${method.name}(<#list method.params as param>${getJavaObjectType(param.type,false)} ${param.name}<#if param_has_next>, </#if></#list>) {
+    <#if type == "void">
+    invoke("${method.name}", ${propsFor(method.params)}, void.class);
+    <#else>
+    return (${boxedType}) invoke("${method.name}", ${propsFor(method.params)}, ${typeRef(constName, type)});
+    </#if>
+  }
+
+  @Override
+  public void ${method.name}(<#list method.params as param>${getJavaObjectType(param.type,false)} ${param.name}, </#list>Continuation<${getJavaObjectType(method.return)}> cont) {
+    invoke("${method.name}", ${propsFor(method.params)}, ${typeRef(constName, boxedType)}, cont);
+  }
+
+  @Override
+  public <#if boxedType == "Void">void<#else>TFuture<${boxedType}></#if> ${method.name}(Transaction tx<#list method.params as param>, ${getJavaObjectType(param.type,false)} ${param.name}</#list>) {
+    <#if boxedType == "Void">
+    invoke("${method.name}", ${propsFor(method.params)}, Void.class, tx);
+    <#else>
+    return invoke("${method.name}", ${propsFor(method.params)}, ${typeRef(constName, boxedType)}, tx);
+    </#if>
+  }
+
+  </#list>
+  <#list remoteClass.events as event>
+  @Override
+  public ListenerSubscription add${event.name}Listener(EventListener<${event.name}Event> listener) {
+    return addEventListener(${event.name}Event.class, listener);
+  }
+
+  @Override
+  public void add${event.name}Listener(EventListener<${event.name}Event> listener, Continuation<ListenerSubscription> cont) {
+    addEventListener(${event.name}Event.class, listener, cont);
+  }
+
+  @Override
+  public void remove${event.name}Listener(ListenerSubscription listenerSubscription) {
+    removeEventListener(listenerSubscription);
+  }
+
+  @Override
+  public void remove${event.name}Listener(ListenerSubscription listenerSubscription, Continuation<Void> cont) {
+    removeEventListener(listenerSubscription, cont);
+  }
+
+  </#list>
+  <#if remoteClass.name == "MediaPipeline">
+  @Override
+  public Transaction beginTransaction() {
+    return getRemoteObject().beginTransaction();
+  }
+
+  </#if>
+}
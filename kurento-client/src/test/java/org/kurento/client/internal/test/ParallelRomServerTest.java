@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.kurento.client.internal.server.RomServer;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.Props;
+
+public class ParallelRomServerTest {
+
+  private static final int NUM_THREADS = 16;
+
+  private static final int NUM_ITERATIONS = 500;
+
+  @Test
+  public void parallelCreateInvokeRelease() throws Exception {
+
+    final RomServer server = new RomServer("org.kurento.client.internal.test.model.server",
+        "Impl");
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+
+    try {
+
+      List<Future<Void>> futures = new ArrayList<>();
+
+      for (int t = 0; t < NUM_THREADS; t++) {
+
+        final String threadName = "thread" + t;
+
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+
+            for (int i = 0; i < NUM_ITERATIONS; i++) {
+
+              String att1 = threadName + "-" + i;
+
+              String objectRef = server.create("SampleClass", new Props("att1", att1)
+                  .add("att2", false).add("att3", 0.5f).add("att4", i));
+
+              String otherRef = server.create("SampleClass", new Props("att1", "other")
+                  .add("att2", true).add("att3", 0.5f).add("att4", i));
+
+              assertEquals(att1, server.invoke(objectRef, "getAtt1", null, String.class));
+              assertEquals(i, (int) server.invoke(objectRef, "getAtt4", null, Integer.class));
+              assertFalse(server.invoke(objectRef, "getAtt2", null, Boolean.class));
+
+              assertEquals(otherRef, server.invoke(objectRef, "echoObjectRef",
+                  new Props("param", otherRef), String.class));
+
+              server.release(otherRef);
+              server.release(objectRef);
+
+              try {
+                server.invoke(objectRef, "getAtt1", null, String.class);
+                fail("Released object " + objectRef + " should not be found");
+              } catch (KurentoException e) {
+                // Expected
+              }
+            }
+
+            return null;
+          }
+        }));
+      }
+
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
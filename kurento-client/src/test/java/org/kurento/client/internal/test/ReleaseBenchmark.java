@@ -0,0 +1,138 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.ReleaseCoalescer;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+/**
+ * Measures the teardown time of a large pipeline (releasing all its elements and the pipeline)
+ * against a stub media server that answers each request after a fixed latency, with and without
+ * {@link ReleaseCoalescer}. Run it as a Java application; it is not executed as part of the test
+ * suite.
+ */
+public class ReleaseBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(ReleaseBenchmark.class);
+
+  private static final int NUM_ELEMENTS = 400;
+
+  private static final long LATENCY_MILLIS = 2;
+
+  private static final String PIPELINE = "p1_kurento.MediaPipeline";
+
+  public static class LatencyHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(org.kurento.jsonrpc.Transaction transaction,
+        Request<JsonObject> request) throws Exception {
+
+      Thread.sleep(LATENCY_MILLIS);
+
+      if ("transaction".equals(request.getMethod())) {
+        JsonArray responses = new JsonArray();
+        for (JsonElement operation : request.getParams().getAsJsonArray("operations")) {
+          JsonObject response = new JsonObject();
+          response.addProperty("jsonrpc", "2.0");
+          response.add("id", operation.getAsJsonObject().get("id"));
+          response.add("result", JsonNull.INSTANCE);
+          responses.add(response);
+        }
+        transaction.sendResponse(responses);
+      } else {
+        transaction.sendResponse(JsonNull.INSTANCE);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+
+    long individual = teardown(0, false);
+    long coalesced = teardown(100, false);
+    long cascade = teardown(NUM_ELEMENTS + 1, true);
+
+    log.info("Teardown of a pipeline with {} elements, {} ms per request", NUM_ELEMENTS,
+        LATENCY_MILLIS);
+    log.info("Individual releases: {} ms", individual);
+    log.info("Coalesced releases: {} ms", coalesced);
+    log.info("Coalesced releases with cascade: {} ms", cascade);
+  }
+
+  /**
+   * @param maxBatchSize
+   *          batch size of the coalescer, or 0 to release each object with its own request
+   */
+  private static long teardown(int maxBatchSize, boolean cascade) throws InterruptedException {
+
+    RomManager manager = new RomManager(
+        new RomClientJsonRpcClient(new JsonRpcClientLocal(new LatencyHandler())));
+
+    if (maxBatchSize > 0) {
+      manager.setReleaseCoalescer(new ReleaseCoalescer(manager, maxBatchSize, 10, cascade));
+    }
+
+    List<RemoteObject> objects = new ArrayList<>();
+    for (int i = 0; i < NUM_ELEMENTS; i++) {
+      objects.add(new RemoteObject(PIPELINE + "/e" + i + "_kurento.WebRtcEndpoint",
+          "WebRtcEndpoint", manager));
+    }
+    objects.add(new RemoteObject(PIPELINE, "MediaPipeline", manager));
+
+    final CountDownLatch latch = new CountDownLatch(objects.size());
+
+    long start = System.nanoTime();
+
+    for (RemoteObject object : objects) {
+      manager.release(object.getObjectRef(), new Continuation<Void>() {
+        @Override
+        public void onSuccess(Void result) {
+          latch.countDown();
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          latch.countDown();
+        }
+      });
+    }
+
+    latch.await(1, TimeUnit.MINUTES);
+    long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    manager.destroy();
+    return time;
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.ReleaseCoalescer;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that asynchronous releases are grouped in transactions, that children of a released
+ * pipeline are not sent and that each release is notified with its own result.
+ */
+public class ReleaseCoalescerTest {
+
+  private static final String PIPELINE = "p1_kurento.MediaPipeline";
+
+  public static class ReleaseHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final AtomicInteger releases = new AtomicInteger();
+    private final AtomicInteger transactions = new AtomicInteger();
+    private final Set<String> released = Collections
+        .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> failing = new HashSet<>();
+
+    @Override
+    public void handleRequest(org.kurento.jsonrpc.Transaction transaction,
+        Request<JsonObject> request) throws Exception {
+
+      if ("transaction".equals(request.getMethod())) {
+
+        transactions.incrementAndGet();
+
+        JsonArray responses = new JsonArray();
+        for (JsonElement operation : request.getParams().getAsJsonArray("operations")) {
+          JsonObject opRequest = operation.getAsJsonObject();
+          JsonObject response = new JsonObject();
+          response.addProperty("jsonrpc", "2.0");
+          response.add("id", opRequest.get("id"));
+          String objectRef = opRequest.getAsJsonObject("params").get("object").getAsString();
+          if (failing.contains(objectRef)) {
+            response.add("error", error(objectRef));
+          } else {
+            released.add(objectRef);
+            response.add("result", JsonNull.INSTANCE);
+          }
+          responses.add(response);
+        }
+        transaction.sendResponse(responses);
+
+      } else {
+
+        releases.incrementAndGet();
+        released.add(request.getParams().get("object").getAsString());
+        transaction.sendResponse(JsonNull.INSTANCE);
+      }
+    }
+
+    private JsonObject error(String objectRef) {
+      JsonObject error = new JsonObject();
+      error.addProperty("code", 40101);
+      error.addProperty("message", "Object '" + objectRef + "' not found");
+      return error;
+    }
+  }
+
+  private static class ReleaseContinuation implements Continuation<Void> {
+
+    private final CountDownLatch latch;
+    private final ConcurrentMap<String, Throwable> errors;
+    private final String objectRef;
+
+    private ReleaseContinuation(String objectRef, CountDownLatch latch,
+        ConcurrentMap<String, Throwable> errors) {
+      this.objectRef = objectRef;
+      this.latch = latch;
+      this.errors = errors;
+    }
+
+    @Override
+    public void onSuccess(Void result) {
+      latch.countDown();
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+      errors.put(objectRef, cause);
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Client that answers the releases of objects after a delay, as a remote server does.
+   */
+  private static class DelayedReleaseClient extends RomClientJsonRpcClient {
+
+    private static final long DELAY_MILLIS = 200;
+
+    private final AtomicInteger releasesAfterDestroy = new AtomicInteger();
+    private volatile boolean destroyed;
+
+    DelayedReleaseClient(ReleaseHandler handler) {
+      super(new JsonRpcClientLocal(handler));
+    }
+
+    @Override
+    public void release(final List<String> objectRefs, final Continuation<List<Throwable>> cont) {
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(DELAY_MILLIS);
+          } catch (InterruptedException e) {
+            return;
+          }
+          if (destroyed) {
+            releasesAfterDestroy.incrementAndGet();
+          }
+          DelayedReleaseClient.super.release(objectRefs, cont);
+        }
+      }.start();
+    }
+
+    @Override
+    public void destroy() {
+      destroyed = true;
+      super.destroy();
+    }
+  }
+
+  private ReleaseHandler handler;
+  private RomManager manager;
+  private List<RemoteObject> objects = new ArrayList<>();
+  private ConcurrentMap<String, Throwable> errors = new ConcurrentHashMap<>();
+
+  @Before
+  public void setupStubServer() {
+    handler = new ReleaseHandler();
+    manager = new RomManager(new RomClientJsonRpcClient(new JsonRpcClientLocal(handler)));
+  }
+
+  @After
+  public void teardown() {
+    manager.destroy();
+  }
+
+  @Test
+  public void releasesAreSentInOneTransactionWhenBatchIsFull() throws InterruptedException {
+
+    manager.setReleaseCoalescer(new ReleaseCoalescer(manager, 5, 10000, false));
+
+    List<String> objectRefs = createObjects("object", 5);
+    release(objectRefs);
+
+    assertEquals(1, handler.transactions.get());
+    assertEquals(0, handler.releases.get());
+    assertEquals(new HashSet<>(objectRefs), handler.released);
+    for (String objectRef : objectRefs) {
+      assertNull(manager.getObjectManager().getRemoteObject(objectRef));
+    }
+  }
+
+  @Test
+  public void pendingReleasesAreSentWhenIntervalExpires() throws InterruptedException {
+
+    manager.setReleaseCoalescer(new ReleaseCoalescer(manager, 100, 20, false));
+
+    List<String> objectRefs = createObjects("object", 3);
+    release(objectRefs);
+
+    assertEquals(1, handler.transactions.get());
+    assertEquals(new HashSet<>(objectRefs), handler.released);
+  }
+
+  @Test
+  public void childrenOfReleasedPipelineAreNotSent() throws InterruptedException {
+
+    manager.setReleaseCoalescer(new ReleaseCoalescer(manager, 100, 20, true));
+
+    List<String> objectRefs = new ArrayList<>(createObjects(PIPELINE + "/element", 10));
+    // Not released by the client, but dropped by the server with the pipeline
+    String notReleased = createObjects(PIPELINE + "/hub", 1).get(0);
+    objectRefs.addAll(createObjects(PIPELINE, 1));
+
+    release(objectRefs);
+
+    assertEquals(0, handler.transactions.get());
+    assertEquals(1, handler.releases.get());
+    assertEquals(Collections.singleton(PIPELINE), handler.released);
+    for (String objectRef : objectRefs) {
+      assertNull(manager.getObjectManager().getRemoteObject(objectRef));
+    }
+    assertNull(manager.getObjectManager().getRemoteObject(notReleased));
+  }
+
+  @Test
+  public void failuresArePropagatedToEachRelease() throws InterruptedException {
+
+    manager.setReleaseCoalescer(new ReleaseCoalescer(manager, 4, 10000, true));
+
+    List<String> objectRefs = createObjects("object", 4);
+    handler.failing.add(objectRefs.get(1));
+
+    release(objectRefs);
+
+    assertEquals(1, handler.transactions.get());
+    assertEquals(Collections.singleton(objectRefs.get(1)), errors.keySet());
+    assertTrue(errors.get(objectRefs.get(1)) instanceof KurentoServerException);
+    assertEquals(objectRefs.get(1),
+        manager.getObjectManager().getRemoteObject(objectRefs.get(1)).getObjectRef());
+    assertNull(manager.getObjectManager().getRemoteObject(objectRefs.get(0)));
+  }
+
+  @Test
+  public void pendingReleasesAreAnsweredBeforeClosing() throws InterruptedException {
+
+    DelayedReleaseClient client = new DelayedReleaseClient(handler);
+    RomManager delayedManager = new RomManager(client);
+    delayedManager.setReleaseCoalescer(new ReleaseCoalescer(delayedManager, 100, 10000, false));
+
+    CountDownLatch latch = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      String objectRef = "object" + i + "_kurento.PassThrough";
+      objects.add(new RemoteObject(objectRef, "MediaObject", delayedManager));
+      delayedManager.release(objectRef, new ReleaseContinuation(objectRef, latch, errors));
+    }
+
+    delayedManager.destroy();
+
+    assertEquals(0, latch.getCount());
+    assertEquals(0, client.releasesAfterDestroy.get());
+    assertEquals(1, handler.transactions.get());
+  }
+
+  private List<String> createObjects(String prefix, int num) {
+
+    List<String> objectRefs = new ArrayList<>();
+    for (int i = 0; i < num; i++) {
+      String objectRef = num == 1 ? prefix : prefix + i + "_kurento.PassThrough";
+      objects.add(new RemoteObject(objectRef, "MediaObject", manager));
+      objectRefs.add(objectRef);
+    }
+    return objectRefs;
+  }
+
+  private void release(List<String> objectRefs) throws InterruptedException {
+
+    CountDownLatch latch = new CountDownLatch(objectRefs.size());
+    for (String objectRef : objectRefs) {
+      manager.release(objectRef, new ReleaseContinuation(objectRef, latch, errors));
+    }
+
+    assertTrue("Releases not finished", latch.await(10, TimeUnit.SECONDS));
+  }
+}
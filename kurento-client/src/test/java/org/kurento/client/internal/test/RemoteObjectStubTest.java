@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.client.internal.client.RemoteObjectProxies;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.internal.stub.SampleClassStub;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.client.internal.transport.jsonrpc.RomServerJsonRpcHandler;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+
+public class RemoteObjectStubTest {
+
+  @After
+  public void restoreGeneratedStubs() {
+    RemoteObjectProxies.setGeneratedStubs(true);
+  }
+
+  @Test
+  public void generatedStubIsUsedWhenAvailable() {
+
+    JsonRpcClient client = createClient();
+
+    SampleClass obj = createSampleObject(client);
+    assertTrue("Expected a stub but found " + obj.getClass(), obj instanceof SampleClassStub);
+
+    new LocalRomTest().useRom(client);
+  }
+
+  @Test
+  public void dynamicProxyIsUsedAsFallback() {
+
+    RemoteObjectProxies.setGeneratedStubs(false);
+
+    JsonRpcClient client = createClient();
+
+    SampleClass obj = createSampleObject(client);
+    assertTrue("Expected a dynamic proxy but found " + obj.getClass(),
+        Proxy.isProxyClass(obj.getClass()));
+
+    new LocalRomTest().useRom(client);
+  }
+
+  private JsonRpcClient createClient() {
+    return new JsonRpcClientLocal(
+        new RomServerJsonRpcHandler("org.kurento.client.internal.test.model.server", "Impl"));
+  }
+
+  private SampleClass createSampleObject(JsonRpcClient client) {
+    RomManager manager = new RomManager(new RomClientJsonRpcClient(client));
+    return new SampleClass.Builder("XXX", false, manager).withAtt3(0.5f).withAtt4(22).build();
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import java.lang.reflect.Method;
+
+import org.kurento.client.internal.server.RemoteObjectManager;
+import org.kurento.client.internal.server.RomServer;
+import org.kurento.client.internal.test.model.server.SampleClassImpl;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares invocations through {@link RomServer}, which caches the resolved constructors and
+ * methods, with the uncached lookup (Class.forName and linear scan of getMethods on each call).
+ * Both paths unflatten the params and flatten the result, so only the dispatch differs. Run it as
+ * a Java application; it is not executed as part of the test suite.
+ */
+public class RomServerBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(RomServerBenchmark.class);
+
+  private static final String PACKAGE_NAME = "org.kurento.client.internal.test.model.server";
+
+  private static final int WARMUP_ITERATIONS = 100000;
+
+  private static final int ITERATIONS = 1000000;
+
+  private static final String METHOD_NAME = "echoEnum";
+
+  private static final Props PARAMS = new Props("param", "CONSTANT_1");
+
+  private static final ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
+
+  public static void main(String[] args) throws Exception {
+
+    RomServer server = new RomServer(PACKAGE_NAME, "Impl");
+
+    String objectRef = server.create("SampleClass",
+        new Props("att1", "XXX").add("att2", false).add("att3", 0.5f).add("att4", 22));
+
+    SampleClassImpl object = new SampleClassImpl("XXX", false, 0.5f, 22);
+
+    runRomServer(server, objectRef, WARMUP_ITERATIONS);
+    runUncached(object, WARMUP_ITERATIONS);
+
+    long romServerNanos = runRomServer(server, objectRef, ITERATIONS);
+    long uncachedNanos = runUncached(object, ITERATIONS);
+
+    log.info("Invocations: {}", ITERATIONS);
+    log.info("RomServer (cached dispatch): {} ns/invocation", romServerNanos / ITERATIONS);
+    log.info("Uncached lookup: {} ns/invocation", uncachedNanos / ITERATIONS);
+  }
+
+  private static long runRomServer(RomServer server, String objectRef, int iterations) {
+
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      server.invoke(objectRef, METHOD_NAME, PARAMS, String.class);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long runUncached(Object object, int iterations) throws Exception {
+
+    RemoteObjectManager manager = new RemoteObjectManager();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      Class<?> clazz = Class.forName(PACKAGE_NAME + ".SampleClassImpl");
+      for (Method method : clazz.getMethods()) {
+        if (method.getName().equals(METHOD_NAME)) {
+          Object[] params = FLATTENER.unflattenParams(method.getParameterAnnotations(),
+              method.getGenericParameterTypes(), PARAMS, manager);
+          FLATTENER.flattenResult(method.invoke(object, params), manager);
+          break;
+        }
+      }
+    }
+    return System.nanoTime() - start;
+  }
+}
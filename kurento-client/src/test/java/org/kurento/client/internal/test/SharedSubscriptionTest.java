@@ -0,0 +1,359 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.Transaction;
+import org.kurento.client.internal.client.ListenerSubscriptionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.RemoteObjectProxies;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.SharedEventSubscription;
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Checks that listeners of the same event type share a single remote subscription, counting the
+ * subscribe and unsubscribe requests received by a stub server.
+ */
+public class SharedSubscriptionTest {
+
+  private static final String EVENT_TYPE = "Sample";
+
+  private static final int NUM_LISTENERS = 10;
+
+  public static class CountingHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final AtomicInteger subscribes = new AtomicInteger();
+    private final AtomicInteger unsubscribes = new AtomicInteger();
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    // Holds the transaction responses until it is opened
+    private final CountDownLatch transactionReceived = new CountDownLatch(1);
+    private volatile CountDownLatch transactionGate = new CountDownLatch(0);
+
+    @Override
+    public void handleRequest(org.kurento.jsonrpc.Transaction transaction,
+        Request<JsonObject> request) throws Exception {
+
+      if ("transaction".equals(request.getMethod())) {
+
+        transactions.incrementAndGet();
+        transactionReceived.countDown();
+        transactionGate.await();
+
+        JsonArray responses = new JsonArray();
+        for (JsonElement operation : request.getParams().getAsJsonArray("operations")) {
+          JsonObject opRequest = operation.getAsJsonObject();
+          JsonObject response = new JsonObject();
+          response.addProperty("jsonrpc", "2.0");
+          response.add("id", opRequest.get("id"));
+          response.add("result", processOperation(opRequest.get("method").getAsString()));
+          responses.add(response);
+        }
+        transaction.sendResponse(responses);
+
+      } else {
+        transaction.sendResponse(processOperation(request.getMethod()));
+      }
+    }
+
+    private JsonElement processOperation(String method) {
+      if ("subscribe".equals(method)) {
+        return new JsonPrimitive("subscription" + subscribes.incrementAndGet());
+      } else if ("unsubscribe".equals(method)) {
+        unsubscribes.incrementAndGet();
+      }
+      return JsonNull.INSTANCE;
+    }
+  }
+
+  private static class CountingListener implements RemoteObjectEventListener {
+
+    private final AtomicInteger events = new AtomicInteger();
+
+    @Override
+    public void onEvent(String eventType, Props data) {
+      events.incrementAndGet();
+    }
+  }
+
+  private CountingHandler handler;
+  private RomManager manager;
+  private RemoteObject remoteObject;
+
+  @Before
+  public void setupStubServer() {
+    handler = new CountingHandler();
+    manager = new RomManager(new RomClientJsonRpcClient(new JsonRpcClientLocal(handler)));
+    remoteObject = new RemoteObject("object1", "SampleClass", manager);
+    RemoteObjectProxies.newProxy(remoteObject, manager, SampleClass.class);
+  }
+
+  @Test
+  public void listenersShareRemoteSubscription() {
+
+    List<CountingListener> listeners = new ArrayList<>();
+    List<ListenerSubscriptionImpl> subscriptions = new ArrayList<>();
+
+    for (int i = 0; i < NUM_LISTENERS; i++) {
+      CountingListener listener = new CountingListener();
+      listeners.add(listener);
+      subscriptions.add(remoteObject.addEventListener(EVENT_TYPE, listener));
+    }
+
+    assertEquals(1, handler.subscribes.get());
+
+    fireEvent();
+
+    for (CountingListener listener : listeners) {
+      assertEquals(1, listener.events.get());
+    }
+
+    for (int i = 0; i < NUM_LISTENERS - 1; i++) {
+      remoteObject.removeEventListener(subscriptions.get(i));
+    }
+
+    assertEquals(0, handler.unsubscribes.get());
+
+    remoteObject.removeEventListener(subscriptions.get(NUM_LISTENERS - 1));
+
+    assertEquals(1, handler.unsubscribes.get());
+
+    // Remote subscription is created again for new listeners
+    remoteObject.addEventListener(EVENT_TYPE, new CountingListener());
+
+    assertEquals(2, handler.subscribes.get());
+  }
+
+  @Test
+  public void asyncListenersShareRemoteSubscription() throws InterruptedException {
+
+    final CountDownLatch subscribedLatch = new CountDownLatch(NUM_LISTENERS);
+    final List<ListenerSubscriptionImpl> subscriptions = new ArrayList<>();
+
+    for (int i = 0; i < NUM_LISTENERS; i++) {
+      remoteObject.addEventListener(EVENT_TYPE, new CountingListener(),
+          new Continuation<ListenerSubscriptionImpl>() {
+            @Override
+            public void onSuccess(ListenerSubscriptionImpl subscription) {
+              synchronized (subscriptions) {
+                subscriptions.add(subscription);
+              }
+              subscribedLatch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+            }
+          });
+    }
+
+    assertEquals(true, subscribedLatch.await(10, TimeUnit.SECONDS));
+    assertEquals(1, handler.subscribes.get());
+
+    final CountDownLatch unsubscribedLatch = new CountDownLatch(NUM_LISTENERS);
+
+    for (ListenerSubscriptionImpl subscription : subscriptions) {
+      remoteObject.removeEventListener(subscription, new Continuation<Void>() {
+        @Override
+        public void onSuccess(Void result) {
+          unsubscribedLatch.countDown();
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+        }
+      });
+    }
+
+    assertEquals(true, unsubscribedLatch.await(10, TimeUnit.SECONDS));
+    assertEquals(1, handler.unsubscribes.get());
+  }
+
+  @Test
+  public void listenersShareRemoteSubscriptionInTransaction() {
+
+    List<CountingListener> listeners = new ArrayList<>();
+    List<ListenerSubscriptionImpl> subscriptions = new ArrayList<>();
+
+    Transaction tx = remoteObject.beginTransaction();
+    for (int i = 0; i < NUM_LISTENERS; i++) {
+      CountingListener listener = new CountingListener();
+      listeners.add(listener);
+      subscriptions.add(remoteObject.addEventListener(EVENT_TYPE, listener, tx));
+    }
+    tx.commit();
+
+    assertEquals(1, handler.transactions.get());
+    assertEquals(1, handler.subscribes.get());
+    for (ListenerSubscriptionImpl subscription : subscriptions) {
+      assertEquals("subscription1", subscription.getSubscriptionId());
+    }
+
+    fireEvent();
+
+    for (CountingListener listener : listeners) {
+      assertEquals(1, listener.events.get());
+    }
+
+    // A transaction only with shared subscriptions is not sent to the server
+    Transaction localTx = remoteObject.beginTransaction();
+    ListenerSubscriptionImpl extraSubscription = remoteObject.addEventListener(EVENT_TYPE,
+        new CountingListener(), localTx);
+    remoteObject.removeEventListener(subscriptions.get(0), localTx);
+    localTx.commit();
+
+    assertEquals(1, handler.transactions.get());
+    assertEquals(1, handler.subscribes.get());
+    assertEquals(0, handler.unsubscribes.get());
+
+    Transaction removeTx = remoteObject.beginTransaction();
+    for (int i = 1; i < NUM_LISTENERS; i++) {
+      remoteObject.removeEventListener(subscriptions.get(i), removeTx);
+    }
+    remoteObject.removeEventListener(extraSubscription, removeTx);
+    removeTx.commit();
+
+    assertEquals(2, handler.transactions.get());
+    assertEquals(1, handler.unsubscribes.get());
+  }
+
+  @Test
+  public void listenerWaitsForSubscriptionOfPendingTransaction() throws Exception {
+
+    handler.transactionGate = new CountDownLatch(1);
+
+    CountingListener txListener = new CountingListener();
+    Thread commitThread = commitInBackground(txListener);
+    assertTrue(handler.transactionReceived.await(10, TimeUnit.SECONDS));
+
+    // The subscribe request claimed by the transaction is in flight
+    final CountingListener listener = new CountingListener();
+    final ListenerSubscriptionImpl[] subscription = new ListenerSubscriptionImpl[1];
+    Thread addThread = new Thread() {
+      @Override
+      public void run() {
+        subscription[0] = remoteObject.addEventListener(EVENT_TYPE, listener);
+      }
+    };
+    addThread.start();
+
+    addThread.join(200);
+    assertTrue(addThread.isAlive());
+
+    handler.transactionGate.countDown();
+    commitThread.join(10000);
+    addThread.join(10000);
+
+    assertEquals("subscription1", subscription[0].getSubscriptionId());
+    assertEquals(1, handler.subscribes.get());
+
+    fireEvent();
+
+    assertEquals(1, txListener.events.get());
+    assertEquals(1, listener.events.get());
+  }
+
+  @Test
+  public void listenerGivesUpWaitingForSubscriptionOfPendingTransaction() throws Exception {
+
+    handler.transactionGate = new CountDownLatch(1);
+    manager.setSubscriptionTimeout(200);
+
+    CountingListener txListener = new CountingListener();
+    Thread commitThread = commitInBackground(txListener);
+    assertTrue(handler.transactionReceived.await(10, TimeUnit.SECONDS));
+
+    try {
+      remoteObject.addEventListener(EVENT_TYPE, new CountingListener());
+      fail("ProtocolException should be thrown");
+    } catch (ProtocolException e) {
+      // Expected while the transaction is not committed
+    }
+
+    handler.transactionGate.countDown();
+    commitThread.join(10000);
+
+    // The reference of the failed listener was given back without unsubscribing
+    assertEquals(1, handler.subscribes.get());
+    assertEquals(0, handler.unsubscribes.get());
+
+    fireEvent();
+
+    assertEquals(1, txListener.events.get());
+  }
+
+  @Test
+  public void subscriptionReleasedBeforeItsResponseIsUnsubscribed() {
+
+    SharedEventSubscription subscription = remoteObject.retainSubscription(EVENT_TYPE);
+    assertTrue(subscription.claimRequest());
+
+    // The last reference is released, as in a rollback, while the subscribe request is pending
+    assertSame(subscription, remoteObject.releaseSubscription(EVENT_TYPE));
+    remoteObject.unsubscribe(subscription);
+    assertEquals(0, handler.unsubscribes.get());
+
+    subscription.setSubscriptionId("subscription1");
+    assertEquals(1, handler.unsubscribes.get());
+  }
+
+  private Thread commitInBackground(final CountingListener listener) {
+    final Transaction tx = remoteObject.beginTransaction();
+    remoteObject.addEventListener(EVENT_TYPE, listener, tx);
+    Thread commitThread = new Thread() {
+      @Override
+      public void run() {
+        tx.commit();
+      }
+    };
+    commitThread.start();
+    return commitThread;
+  }
+
+  private void fireEvent() {
+    manager.getObjectManager().processEvent(remoteObject.getObjectRef(), "", EVENT_TYPE,
+        new Props());
+  }
+}
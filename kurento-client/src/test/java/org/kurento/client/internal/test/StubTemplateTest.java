@@ -0,0 +1,225 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+
+/**
+ * Generates the interface and the stub of a remote class with the templates of kurento-client,
+ * and compiles them. The model is a minimal stand-in of the one of the code generator, with the
+ * methods with optional params already expanded in overloads.
+ */
+public class StubTemplateTest {
+
+  private static final String PACKAGE_NAME = "org.kurento.client.internal.test.generated";
+
+  private static final Map<String, String> BOXED_TYPES = new HashMap<>();
+
+  static {
+    BOXED_TYPES.put("void", "Void");
+    BOXED_TYPES.put("boolean", "Boolean");
+    BOXED_TYPES.put("int", "Integer");
+  }
+
+  /**
+   * Java type of a type of the model, boxed by default.
+   */
+  private static class JavaObjectType implements TemplateMethodModelEx {
+
+    @Override
+    public Object exec(@SuppressWarnings("rawtypes") List arguments)
+        throws TemplateModelException {
+
+      Map<?, ?> type = (Map<?, ?>) DeepUnwrap.unwrap((TemplateModel) arguments.get(0));
+      boolean asObject = arguments.size() < 2
+          || ((TemplateBooleanModel) arguments.get(1)).getAsBoolean();
+
+      String name = (String) type.get("name");
+      String boxedName = BOXED_TYPES.containsKey(name) ? BOXED_TYPES.get(name) : name;
+      if (Boolean.TRUE.equals(type.get("isList"))) {
+        return "java.util.List<" + boxedName + ">";
+      }
+      return asObject ? boxedName : name;
+    }
+  }
+
+  private static class PackageToFolder implements TemplateMethodModelEx {
+
+    @Override
+    public Object exec(@SuppressWarnings("rawtypes") List arguments)
+        throws TemplateModelException {
+      return arguments.get(0).toString().replace('.', '/');
+    }
+  }
+
+  private static class SphinxLinks implements TemplateMethodModelEx {
+
+    @Override
+    public Object exec(@SuppressWarnings("rawtypes") List arguments)
+        throws TemplateModelException {
+      return arguments.get(0).toString();
+    }
+  }
+
+  @Test
+  public void overloadsWithOptionalParamsCompile() throws Exception {
+
+    Map<String, Object> remoteClass = new HashMap<>();
+    remoteClass.put("name", "OverloadedClass");
+    remoteClass.put("doc", "Remote class with optional params");
+    remoteClass.put("abstract", true);
+    remoteClass.put("properties", Collections.emptyList());
+    remoteClass.put("events", Collections.emptyList());
+    // getItems(filter, limit) with both params optional, and a method without generic return
+    remoteClass.put("methods", Arrays.asList(
+        method("getItems", listType("String")),
+        method("getItems", listType("String"), param("filter", type("String"))),
+        method("getItems", listType("String"), param("filter", type("String")),
+            param("limit", type("int"))),
+        method("ping", type("void"))));
+
+    File sourceFolder = Files.createTempDirectory("generated-stubs").toFile();
+    List<File> sources = new ArrayList<>();
+    for (String templateName : Arrays.asList("remoteClass_interface_java.ftl",
+        "remoteClass_stub_java.ftl")) {
+      sources.add(generate(templateName, remoteClass, sourceFolder));
+    }
+
+    assertCompiles(sources, Files.createTempDirectory("generated-classes").toFile());
+  }
+
+  private static Map<String, Object> type(String name) {
+    Map<String, Object> type = new HashMap<>();
+    type.put("name", name);
+    return type;
+  }
+
+  private static Map<String, Object> listType(String name) {
+    Map<String, Object> type = type(name);
+    type.put("isList", true);
+    return type;
+  }
+
+  private static Map<String, Object> param(String name, Map<String, Object> type) {
+    Map<String, Object> param = new HashMap<>();
+    param.put("name", name);
+    param.put("type", type);
+    return param;
+  }
+
+  @SafeVarargs
+  private static Map<String, Object> method(String name, Map<String, Object> returnType,
+      Map<String, Object>... params) {
+    Map<String, Object> method = new HashMap<>();
+    method.put("name", name);
+    method.put("doc", "Method " + name);
+    method.put("return", returnType);
+    method.put("params", Arrays.asList(params));
+    return method;
+  }
+
+  /**
+   * Processes a template, writing the code to the file named in its first line.
+   */
+  private static File generate(String templateName, Map<String, Object> remoteClass,
+      File sourceFolder) throws Exception {
+
+    Configuration config = new Configuration(Configuration.VERSION_2_3_23);
+    config.setClassForTemplateLoading(StubTemplateTest.class, "/templates");
+    config.setDefaultEncoding(StandardCharsets.UTF_8.name());
+    config.setSharedVariable("getJavaObjectType", new JavaObjectType());
+    config.setSharedVariable("packageToFolder", new PackageToFolder());
+    config.setSharedVariable("sphinxLinks", new SphinxLinks());
+
+    Map<String, Object> java = new HashMap<>();
+    java.put("packageName", PACKAGE_NAME);
+    Map<String, Object> api = new HashMap<>();
+    api.put("java", java);
+    Map<String, Object> code = new HashMap<>();
+    code.put("api", api);
+    Map<String, Object> module = new HashMap<>();
+    module.put("code", code);
+
+    Map<String, Object> model = new HashMap<>();
+    model.put("module", module);
+    model.put("remoteClass", remoteClass);
+
+    Template template = config.getTemplate(templateName);
+    StringWriter output = new StringWriter();
+    template.process(model, output);
+
+    String generated = output.toString();
+    int pathEnd = generated.indexOf('\n');
+    File file = new File(sourceFolder, generated.substring(0, pathEnd).trim());
+    assertTrue(file.getParentFile().mkdirs() || file.getParentFile().isDirectory());
+    Files.write(file.toPath(), generated.substring(pathEnd + 1).getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static void assertCompiles(List<File> sources, File classesFolder) throws IOException {
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assertNotNull("A JDK is needed to compile the generated code", compiler);
+
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
+        StandardCharsets.UTF_8)) {
+
+      List<String> options = Arrays.asList("-d", classesFolder.getAbsolutePath(), "-classpath",
+          System.getProperty("java.class.path"));
+      boolean compiled = compiler.getTask(null, fileManager, diagnostics, options, null,
+          fileManager.getJavaFileObjectsFromFiles(sources)).call();
+
+      StringBuilder errors = new StringBuilder();
+      for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+        errors.append('\n').append(diagnostic);
+      }
+      assertTrue("Generated code doesn't compile:" + errors, compiled);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.TransactionExecutionException;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.TransactionRetryPolicy;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.server.KurentoServerTransportException;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks the retry policy of asynchronous transactions injecting transport failures in the client
+ * and errors in a stub server.
+ */
+public class TransactionRetryTest {
+
+  private static final int MAX_ATTEMPTS = 3;
+
+  public static class StubHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final AtomicInteger transactions = new AtomicInteger();
+    private volatile boolean rejectOperations;
+
+    @Override
+    public void handleRequest(org.kurento.jsonrpc.Transaction transaction,
+        Request<JsonObject> request) throws Exception {
+
+      transactions.incrementAndGet();
+
+      JsonArray responses = new JsonArray();
+      for (JsonElement operation : request.getParams().getAsJsonArray("operations")) {
+        JsonObject response = new JsonObject();
+        response.addProperty("jsonrpc", "2.0");
+        response.add("id", operation.getAsJsonObject().get("id"));
+        if (rejectOperations) {
+          JsonObject error = new JsonObject();
+          error.addProperty("code", 40101);
+          error.addProperty("message", "Object not found");
+          response.add("error", error);
+        } else {
+          response.add("result", JsonNull.INSTANCE);
+        }
+        responses.add(response);
+      }
+      transaction.sendResponse(responses);
+    }
+  }
+
+  /**
+   * Client that fails with a transport error the first requests it sends.
+   */
+  public static class FailingClient extends JsonRpcClientLocal {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public FailingClient(StubHandler handler) {
+      super(handler);
+    }
+
+    @Override
+    public void sendRequest(String method, JsonObject params,
+        org.kurento.jsonrpc.client.Continuation<JsonElement> continuation) {
+
+      attempts.incrementAndGet();
+
+      if (failures.getAndDecrement() > 0) {
+        continuation.onError(new TransportException("Injected transport failure"));
+      } else {
+        super.sendRequest(method, params, continuation);
+      }
+    }
+  }
+
+  private static class RecordingOperation extends Operation {
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger rolledBack = new AtomicInteger();
+
+    @Override
+    public RequestAndResponseType createRequest(RomClientJsonRpcClient romClientJsonRpcClient) {
+      return romClientJsonRpcClient.createInvokeRequest("object1", "method", null, Void.class,
+          true);
+    }
+
+    @Override
+    public void processResponse(Object response) {
+      processed.incrementAndGet();
+    }
+
+    @Override
+    public void rollback(TransactionExecutionException ex) {
+      super.rollback(ex);
+      rolledBack.incrementAndGet();
+    }
+
+    @Override
+    public String getDescription() {
+      return "Recording operation";
+    }
+  }
+
+  private static class ResultContinuation implements Continuation<Void> {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    @Override
+    public void onSuccess(Void result) {
+      latch.countDown();
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+      error.set(cause);
+      latch.countDown();
+    }
+
+    private void await() throws InterruptedException {
+      assertTrue("Transaction not finished", latch.await(10, TimeUnit.SECONDS));
+    }
+  }
+
+  private StubHandler handler;
+  private FailingClient client;
+  private RomManager manager;
+
+  @Before
+  public void setupStubServer() {
+    handler = new StubHandler();
+    client = new FailingClient(handler);
+    manager = new RomManager(new RomClientJsonRpcClient(client));
+    manager.setTransactionRetryPolicy(new TransactionRetryPolicy(MAX_ATTEMPTS, 10, 40));
+  }
+
+  @After
+  public void teardown() {
+    manager.destroy();
+  }
+
+  @Test
+  public void transportErrorsAreRetried() throws InterruptedException {
+
+    client.failures.set(MAX_ATTEMPTS - 1);
+
+    RecordingOperation op = new RecordingOperation();
+    ResultContinuation result = commit(op);
+
+    assertEquals(null, result.error.get());
+    assertEquals(MAX_ATTEMPTS, client.attempts.get());
+    assertEquals(1, handler.transactions.get());
+    assertEquals(1, op.processed.get());
+    assertEquals(0, op.rolledBack.get());
+  }
+
+  @Test
+  public void retriesAreBounded() throws InterruptedException {
+
+    client.failures.set(Integer.MAX_VALUE);
+
+    RecordingOperation op = new RecordingOperation();
+    op.getFuture();
+    ResultContinuation result = commit(op);
+
+    assertTrue(result.error.get() instanceof TransportException);
+    assertEquals(MAX_ATTEMPTS, client.attempts.get());
+    assertEquals(0, handler.transactions.get());
+    assertEquals(0, op.processed.get());
+    assertEquals(1, op.rolledBack.get());
+    assertTrue(op.getFuture().getFuture().isCancelled());
+  }
+
+  @Test
+  public void serverErrorsAreNotRetried() throws InterruptedException {
+
+    handler.rejectOperations = true;
+
+    RecordingOperation op = new RecordingOperation();
+    ResultContinuation result = commit(op);
+
+    assertTrue(result.error.get() instanceof TransactionExecutionException);
+    assertEquals(1, client.attempts.get());
+    assertEquals(1, handler.transactions.get());
+    assertEquals(0, op.processed.get());
+    assertEquals(1, op.rolledBack.get());
+  }
+
+  @Test
+  public void retryPolicyClassifiesErrors() {
+
+    TransactionRetryPolicy policy = new TransactionRetryPolicy(MAX_ATTEMPTS, 10, 40);
+
+    assertTrue(policy.isRetryable(new TransportException("Connection lost")));
+    assertTrue(policy.isRetryable(new KurentoServerTransportException("Error connecting",
+        new IOException())));
+    assertTrue(policy.isRetryable(new RuntimeException(new IOException())));
+    assertFalse(policy.isRetryable(new JsonRpcErrorException(40101, "Object not found")));
+    assertFalse(policy.isRetryable(new IllegalStateException()));
+
+    assertTrue(policy.shouldRetry(new TransportException("Connection lost"), MAX_ATTEMPTS - 1));
+    assertFalse(policy.shouldRetry(new TransportException("Connection lost"), MAX_ATTEMPTS));
+
+    assertEquals(10, policy.getBackoffMillis(1));
+    assertEquals(20, policy.getBackoffMillis(2));
+    assertEquals(40, policy.getBackoffMillis(3));
+    assertEquals(40, policy.getBackoffMillis(10));
+  }
+
+  private ResultContinuation commit(Operation op) throws InterruptedException {
+
+    List<Operation> operations = Arrays.asList(op);
+    ResultContinuation result = new ResultContinuation();
+    manager.transaction(operations, result);
+    result.await();
+    return result;
+  }
+}
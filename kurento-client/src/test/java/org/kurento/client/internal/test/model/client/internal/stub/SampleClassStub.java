@@ -0,0 +1,219 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test.model.client.internal.stub;
+
+import java.util.List;
+import java.util.Map;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.EventListener;
+import org.kurento.client.ListenerSubscription;
+import org.kurento.client.internal.client.AbstractRemoteObjectStub;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.client.ComplexParam;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.SampleEnum;
+import org.kurento.client.internal.test.model.client.events.SampleEvent;
+import org.kurento.jsonrpc.Props;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Stub of {@link SampleClass} with the same structure as the ones generated from remoteClass
+ * definitions.
+ */
+@SuppressWarnings("unchecked")
+public class SampleClassStub extends AbstractRemoteObjectStub implements SampleClass {
+
+  private static final java.lang.reflect.Type ECHOLISTENUM_RETURN_TYPE =
+      new TypeToken<List<SampleEnum>>() {
+      }.getType();
+
+  private static final java.lang.reflect.Type ECHOLISTREGISTER_RETURN_TYPE =
+      new TypeToken<List<ComplexParam>>() {
+      }.getType();
+
+  private static final java.lang.reflect.Type ECHOMAPENUM_RETURN_TYPE =
+      new TypeToken<Map<String, SampleEnum>>() {
+      }.getType();
+
+  private static final java.lang.reflect.Type ECHOMAPREGISTER_RETURN_TYPE =
+      new TypeToken<Map<String, ComplexParam>>() {
+      }.getType();
+
+  private static final java.lang.reflect.Type ECHOOBJECTREFLIST_RETURN_TYPE =
+      new TypeToken<List<SampleClass>>() {
+      }.getType();
+
+  public SampleClassStub(RemoteObject remoteObject, RomManager manager) {
+    super(remoteObject, manager);
+  }
+
+  @Override
+  public String getAtt1() {
+    return (String) invoke("getAtt1", null, String.class);
+  }
+
+  @Override
+  public void getAtt1(Continuation<String> cont) {
+    invoke("getAtt1", null, String.class, cont);
+  }
+
+  @Override
+  public boolean getAtt2() {
+    return (Boolean) invoke("getAtt2", null, boolean.class);
+  }
+
+  @Override
+  public void getAtt2(Continuation<Boolean> cont) {
+    invoke("getAtt2", null, Boolean.class, cont);
+  }
+
+  @Override
+  public float getAtt3() {
+    return (Float) invoke("getAtt3", null, float.class);
+  }
+
+  @Override
+  public void getAtt3(Continuation<Float> cont) {
+    invoke("getAtt3", null, Float.class, cont);
+  }
+
+  @Override
+  public int getAtt4() {
+    return (Integer) invoke("getAtt4", null, int.class);
+  }
+
+  @Override
+  public void getAtt4(Continuation<Integer> cont) {
+    invoke("getAtt4", null, Integer.class, cont);
+  }
+
+  @Override
+  public void startTestEvents(int numEvents) {
+    invoke("startTestEvents", new Props().add("numEvents", numEvents), void.class);
+  }
+
+  @Override
+  public void startTestEvents(int numEvents, Continuation<Void> cont) {
+    invoke("startTestEvents", new Props().add("numEvents", numEvents), Void.class, cont);
+  }
+
+  @Override
+  public SampleEnum echoEnum(SampleEnum param) {
+    return (SampleEnum) invoke("echoEnum", new Props().add("param", param), SampleEnum.class);
+  }
+
+  @Override
+  public void echoEnum(SampleEnum param, Continuation<SampleEnum> cont) {
+    invoke("echoEnum", new Props().add("param", param), SampleEnum.class, cont);
+  }
+
+  @Override
+  public ComplexParam echoRegister(ComplexParam param) {
+    return (ComplexParam) invoke("echoRegister", new Props().add("param", param),
+        ComplexParam.class);
+  }
+
+  @Override
+  public void echoRegister(ComplexParam param, Continuation<ComplexParam> cont) {
+    invoke("echoRegister", new Props().add("param", param), ComplexParam.class, cont);
+  }
+
+  @Override
+  public List<SampleEnum> echoListEnum(List<SampleEnum> param) {
+    return (List<SampleEnum>) invoke("echoListEnum", new Props().add("param", param),
+        ECHOLISTENUM_RETURN_TYPE);
+  }
+
+  @Override
+  public void echoListEnum(List<SampleEnum> param, Continuation<List<SampleEnum>> cont) {
+    invoke("echoListEnum", new Props().add("param", param), ECHOLISTENUM_RETURN_TYPE, cont);
+  }
+
+  @Override
+  public List<ComplexParam> echoListRegister(List<ComplexParam> param) {
+    return (List<ComplexParam>) invoke("echoListRegister", new Props().add("param", param),
+        ECHOLISTREGISTER_RETURN_TYPE);
+  }
+
+  @Override
+  public void echoListRegister(List<ComplexParam> param, Continuation<List<ComplexParam>> cont) {
+    invoke("echoListRegister", new Props().add("param", param), ECHOLISTREGISTER_RETURN_TYPE,
+        cont);
+  }
+
+  @Override
+  public Map<String, SampleEnum> echoMapEnum(Map<String, SampleEnum> param) {
+    return (Map<String, SampleEnum>) invoke("echoMapEnum", new Props().add("param", param),
+        ECHOMAPENUM_RETURN_TYPE);
+  }
+
+  @Override
+  public void echoMapEnum(Map<String, SampleEnum> param,
+      Continuation<Map<String, SampleEnum>> cont) {
+    invoke("echoMapEnum", new Props().add("param", param), ECHOMAPENUM_RETURN_TYPE, cont);
+  }
+
+  @Override
+  public Map<String, ComplexParam> echoMapRegister(Map<String, ComplexParam> param) {
+    return (Map<String, ComplexParam>) invoke("echoMapRegister", new Props().add("param", param),
+        ECHOMAPREGISTER_RETURN_TYPE);
+  }
+
+  @Override
+  public void echoMapRegister(Map<String, ComplexParam> param,
+      Continuation<Map<String, ComplexParam>> cont) {
+    invoke("echoMapRegister", new Props().add("param", param), ECHOMAPREGISTER_RETURN_TYPE, cont);
+  }
+
+  @Override
+  public SampleClass echoObjectRef(SampleClass param) {
+    return (SampleClass) invoke("echoObjectRef", new Props().add("param", param),
+        SampleClass.class);
+  }
+
+  @Override
+  public void echoObjectRef(SampleClass param, Continuation<SampleClass> cont) {
+    invoke("echoObjectRef", new Props().add("param", param), SampleClass.class, cont);
+  }
+
+  @Override
+  public List<SampleClass> echoObjectRefList(List<SampleClass> param) {
+    return (List<SampleClass>) invoke("echoObjectRefList", new Props().add("param", param),
+        ECHOOBJECTREFLIST_RETURN_TYPE);
+  }
+
+  @Override
+  public void echoObjectRefList(List<SampleClass> param, Continuation<List<SampleClass>> cont) {
+    invoke("echoObjectRefList", new Props().add("param", param), ECHOOBJECTREFLIST_RETURN_TYPE,
+        cont);
+  }
+
+  @Override
+  public ListenerSubscription addSampleListener(EventListener<SampleEvent> listener) {
+    return addEventListener(SampleEvent.class, listener);
+  }
+
+  @Override
+  public void addSampleListener(EventListener<SampleEvent> listener,
+      Continuation<ListenerSubscription> cont) {
+    addEventListener(SampleEvent.class, listener, cont);
+  }
+}
@@ -0,0 +1,426 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.commons;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.kurento.commons.PropertiesManager.PropertyHolder;
+import org.kurento.commons.exception.KurentoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.StandardSystemProperty;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Immutable view of the configuration at a given moment. Values are resolved, in order of
+ * precedence, from System properties, the configuration files loaded with
+ * {@link ConfigFilePropertyHolder} (or any other {@link PropertyHolder} installed in
+ * {@link PropertiesManager}) and the user configuration file
+ * <code>~/.kurento/config.properties</code>.
+ *
+ * <p>
+ * Typed values are parsed only once and cached in the snapshot, so it can be read in hot paths.
+ * Malformed values are reported with a {@link KurentoException} naming the property. A new
+ * snapshot is obtained with {@link PropertiesManager#reloadConfig()}.
+ * </p>
+ *
+ * <p>
+ * Durations are numbers optionally followed by a unit: <code>ms</code>, <code>s</code>,
+ * <code>m</code>, <code>h</code> or <code>d</code> (e.g. <code>500ms</code>, <code>10s</code>).
+ * Sizes are numbers of bytes optionally followed by <code>k</code>, <code>m</code> or
+ * <code>g</code>, with an optional trailing <code>b</code> (e.g. <code>64k</code>,
+ * <code>10MB</code>). Multiples of sizes are powers of 1024.
+ * </p>
+ */
+public class ConfigSnapshot {
+
+  private static final Logger log = LoggerFactory.getLogger(ConfigSnapshot.class);
+
+  private static final Pattern DURATION_PATTERN =
+      Pattern.compile("(-?\\d+)\\s*(ms|s|m|h|d)?");
+
+  private static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+)\\s*([kmg]?)b?");
+
+  private static final Object MISSING = new Object();
+
+  private final Map<String, String> values;
+  private final PropertyHolder fallbackHolder;
+
+  private final ConcurrentMap<String, Object> fallbackValues = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Object> parsedValues = new ConcurrentHashMap<>();
+
+  private ConfigSnapshot(Map<String, String> values, PropertyHolder fallbackHolder) {
+    this.values = values;
+    this.fallbackHolder = fallbackHolder;
+  }
+
+  /**
+   * Returns the default location of the user configuration file,
+   * <code>~/.kurento/config.properties</code>.
+   */
+  public static Path getUserConfigFile() {
+    return Paths.get(StandardSystemProperty.USER_HOME.value(), ".kurento", "config.properties");
+  }
+
+  /**
+   * Creates a snapshot from the current System properties, the {@link PropertyHolder} installed
+   * in {@link PropertiesManager} and the default user configuration file.
+   */
+  public static ConfigSnapshot load() {
+    return create(System.getProperties(), PropertiesManager.getPropertyHolder(),
+        getUserConfigFile());
+  }
+
+  /**
+   * Creates a snapshot from the given sources, in order of precedence.
+   *
+   * @param systemProperties
+   *          properties with the highest precedence
+   * @param propertyHolder
+   *          holder of configuration files. Values of a {@link ConfigFilePropertyHolder} are
+   *          copied in the snapshot. Other holders are queried the first time each property is
+   *          read, and the value obtained is kept for the life of the snapshot. It can be null.
+   * @param userConfigFile
+   *          properties file with the lowest precedence. It is ignored if it doesn't exist. It
+   *          can be null.
+   */
+  public static ConfigSnapshot create(Properties systemProperties, PropertyHolder propertyHolder,
+      Path userConfigFile) {
+
+    Map<String, String> values = new HashMap<>();
+
+    if (userConfigFile != null) {
+      putProperties(values, loadProperties(userConfigFile));
+    }
+
+    PropertyHolder fallbackHolder = null;
+    if (propertyHolder instanceof ConfigFilePropertyHolder) {
+      Map<String, String> configFileValues = new HashMap<>();
+      // First loaded files take precedence, as in ConfigFilePropertyHolder
+      for (ConfigFileObject configFile : ((ConfigFilePropertyHolder) propertyHolder)
+          .getLoadedConfigFiles()) {
+        flatten("", configFile.getConfigFile(), configFileValues);
+      }
+      values.putAll(configFileValues);
+    } else if (propertyHolder != null && !PropertiesManager.isDefaultPropertyHolder(
+        propertyHolder)) {
+      fallbackHolder = propertyHolder;
+    }
+
+    if (systemProperties != null) {
+      putProperties(values, systemProperties);
+    }
+
+    return new ConfigSnapshot(Collections.unmodifiableMap(values), fallbackHolder);
+  }
+
+  private static Properties loadProperties(Path file) {
+
+    Properties properties = new Properties();
+
+    if (Files.exists(file)) {
+      try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        properties.load(reader);
+      } catch (IOException e) {
+        log.warn("Exception loading configuration file {}", file, e);
+      }
+    }
+
+    return properties;
+  }
+
+  private static void putProperties(Map<String, String> values, Properties properties) {
+    for (String name : properties.stringPropertyNames()) {
+      values.put(name, properties.getProperty(name));
+    }
+  }
+
+  private static void flatten(String prefix, JsonObject object, Map<String, String> values) {
+
+    for (Entry<String, JsonElement> entry : object.entrySet()) {
+
+      String name = prefix + entry.getKey();
+      JsonElement element = entry.getValue();
+
+      if (!values.containsKey(name)) {
+        if (element instanceof JsonPrimitive) {
+          values.put(name, element.getAsString());
+        } else {
+          values.put(name, element.toString());
+        }
+      }
+
+      if (element instanceof JsonObject) {
+        flatten(name + ".", (JsonObject) element, values);
+      }
+    }
+  }
+
+  /**
+   * Returns the names of the properties whose value is different in the given snapshot. Only
+   * properties known by both snapshots are compared; values read lazily from a custom
+   * {@link PropertyHolder} are not considered.
+   */
+  public Set<String> getChangedProperties(ConfigSnapshot other) {
+
+    Set<String> changed = new HashSet<>();
+
+    for (Entry<String, String> entry : values.entrySet()) {
+      if (!entry.getValue().equals(other.values.get(entry.getKey()))) {
+        changed.add(entry.getKey());
+      }
+    }
+
+    for (String name : other.values.keySet()) {
+      if (!values.containsKey(name)) {
+        changed.add(name);
+      }
+    }
+
+    return changed;
+  }
+
+  public String getString(String property) {
+
+    String value = values.get(property);
+
+    if (value != null || fallbackHolder == null) {
+      return value;
+    }
+
+    Object fallbackValue = fallbackValues.get(property);
+    if (fallbackValue == null) {
+      value = fallbackHolder.getProperty(property);
+      fallbackValue = value != null ? value : MISSING;
+      Object previous = fallbackValues.putIfAbsent(property, fallbackValue);
+      if (previous != null) {
+        fallbackValue = previous;
+      }
+    }
+
+    return fallbackValue == MISSING ? null : (String) fallbackValue;
+  }
+
+  public String getString(String property, String defaultValue) {
+    String value = getString(property);
+    return value != null ? value : defaultValue;
+  }
+
+  public int getInt(String property, int defaultValue) {
+    Long value = getParsedLong("int", property, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw invalidValue(property, "it is out of the int range");
+    }
+    return value.intValue();
+  }
+
+  public long getLong(String property, long defaultValue) {
+    Long value = getParsedLong("long", property, null);
+    return value != null ? value : defaultValue;
+  }
+
+  public boolean getBoolean(String property, boolean defaultValue) {
+
+    Object parsed = parsedValues.get("boolean:" + property);
+
+    if (parsed == null) {
+      String value = getString(property);
+      if (value == null) {
+        parsed = MISSING;
+      } else if ("true".equalsIgnoreCase(value.trim())) {
+        parsed = Boolean.TRUE;
+      } else if ("false".equalsIgnoreCase(value.trim())) {
+        parsed = Boolean.FALSE;
+      } else {
+        throw invalidValue(property, "true or false expected");
+      }
+      parsedValues.putIfAbsent("boolean:" + property, parsed);
+    }
+
+    return parsed == MISSING ? defaultValue : (Boolean) parsed;
+  }
+
+  /**
+   * Returns a duration expressed in the given unit. Values without unit are interpreted in that
+   * unit.
+   */
+  public long getDuration(String property, long defaultValue, TimeUnit unit) {
+    Long millis = getParsedLong("duration:" + unit, property, unit);
+    return millis != null ? unit.convert(millis, TimeUnit.MILLISECONDS) : defaultValue;
+  }
+
+  /**
+   * Returns a duration in milliseconds. Values without unit are interpreted as milliseconds.
+   */
+  public long getDurationMillis(String property, long defaultValue) {
+    return getDuration(property, defaultValue, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns a duration in milliseconds. Values without unit are interpreted in the given unit, so
+   * properties historically expressed in seconds still accept sub-second values like 500ms.
+   */
+  public long getDurationMillis(String property, long defaultValue, TimeUnit defaultUnit) {
+    Long millis = getParsedLong("duration:" + defaultUnit, property, defaultUnit);
+    return millis != null ? millis : defaultValue;
+  }
+
+  /**
+   * Returns a size in bytes. Values without unit are interpreted as bytes.
+   */
+  public long getSize(String property, long defaultValue) {
+    Long value = getParsedLong("size", property, null);
+    return value != null ? value : defaultValue;
+  }
+
+  private Long getParsedLong(String type, String property, TimeUnit durationUnit) {
+
+    String key = type + ":" + property;
+    Object parsed = parsedValues.get(key);
+
+    if (parsed == null) {
+      String value = getString(property);
+      if (value == null) {
+        parsed = MISSING;
+      } else if (durationUnit != null) {
+        parsed = parseDuration(property, value, durationUnit);
+      } else if ("size".equals(type)) {
+        parsed = parseSize(property, value);
+      } else {
+        try {
+          parsed = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+          throw invalidValue(property, "a number expected");
+        }
+      }
+      parsedValues.putIfAbsent(key, parsed);
+    }
+
+    return parsed == MISSING ? null : (Long) parsed;
+  }
+
+  private Long parseDuration(String property, String value, TimeUnit defaultUnit) {
+
+    Matcher matcher = DURATION_PATTERN.matcher(value.trim().toLowerCase(Locale.ENGLISH));
+    if (!matcher.matches()) {
+      throw invalidValue(property, "a duration like 500ms, 10s, 5m, 1h or 2d expected");
+    }
+
+    TimeUnit unit;
+    String suffix = matcher.group(2);
+    if (suffix == null) {
+      unit = defaultUnit;
+    } else {
+      switch (suffix) {
+      case "ms":
+        unit = TimeUnit.MILLISECONDS;
+        break;
+      case "s":
+        unit = TimeUnit.SECONDS;
+        break;
+      case "m":
+        unit = TimeUnit.MINUTES;
+        break;
+      case "h":
+        unit = TimeUnit.HOURS;
+        break;
+      default:
+        unit = TimeUnit.DAYS;
+      }
+    }
+
+    long amount = parseNumber(property, matcher.group(1));
+    long millis = unit.toMillis(amount);
+    if (millis == Long.MAX_VALUE || millis == Long.MIN_VALUE) {
+      throw invalidValue(property, "it is too long");
+    }
+    return millis;
+  }
+
+  private Long parseSize(String property, String value) {
+
+    Matcher matcher = SIZE_PATTERN.matcher(value.trim().toLowerCase(Locale.ENGLISH));
+    if (!matcher.matches()) {
+      throw invalidValue(property, "a size like 1024, 64k, 10mb or 1g expected");
+    }
+
+    long amount = parseNumber(property, matcher.group(1));
+
+    int shift;
+    switch (matcher.group(2)) {
+    case "k":
+      shift = 10;
+      break;
+    case "m":
+      shift = 20;
+      break;
+    case "g":
+      shift = 30;
+      break;
+    default:
+      shift = 0;
+    }
+
+    if (amount > Long.MAX_VALUE >> shift) {
+      throw invalidValue(property, "it is too big");
+    }
+    return amount << shift;
+  }
+
+  private long parseNumber(String property, String number) {
+    try {
+      return Long.parseLong(number);
+    } catch (NumberFormatException e) {
+      throw invalidValue(property, "it is out of the long range");
+    }
+  }
+
+  private KurentoException invalidValue(String property, String reason) {
+    return new KurentoException(
+        "Invalid value '" + getString(property) + "' for property " + property + ": " + reason);
+  }
+
+  @Override
+  public String toString() {
+    return "ConfigSnapshot [properties=" + values.size() + "]";
+  }
+}
@@ -19,9 +19,14 @@ package org.kurento.commons;
 
 import java.lang.reflect.Type;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.kurento.commons.exception.KurentoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -34,17 +39,102 @@ public class PropertiesManager {
     public String getProperty(String property);
   }
 
+  /**
+   * Listener notified when the configuration is reloaded with {@link #reloadConfig()}.
+   */
+  public static interface ConfigListener {
+    public void configChanged(ConfigSnapshot oldConfig, ConfigSnapshot newConfig,
+        Set<String> changedProperties);
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(PropertiesManager.class);
+
   private static Gson gson;
 
-  private static PropertyHolder propertyHolder = new PropertyHolder() {
+  private static final PropertyHolder DEFAULT_PROPERTY_HOLDER = new PropertyHolder() {
     @Override
     public String getProperty(String property) {
       return System.getProperty(property);
     }
   };
 
+  private static PropertyHolder propertyHolder = DEFAULT_PROPERTY_HOLDER;
+
+  private static volatile ConfigSnapshot config;
+  private static volatile boolean configOutdated;
+
+  private static final List<ConfigListener> configListeners = new CopyOnWriteArrayList<>();
+
   public static void setPropertyHolder(PropertyHolder propertyHolder) {
     PropertiesManager.propertyHolder = propertyHolder;
+    // Next snapshot will include the new holder
+    configOutdated = true;
+  }
+
+  static boolean isDefaultPropertyHolder(PropertyHolder propertyHolder) {
+    return propertyHolder == DEFAULT_PROPERTY_HOLDER;
+  }
+
+  /**
+   * Returns the current configuration snapshot. It is created the first time it is requested
+   * and kept until {@link #reloadConfig()} is invoked or a new {@link PropertyHolder} is
+   * installed. Unlike the <code>getProperty</code> methods, changes in System properties are not
+   * seen until the configuration is reloaded.
+   */
+  public static ConfigSnapshot getConfig() {
+    ConfigSnapshot current = config;
+    if (current == null || configOutdated) {
+      synchronized (PropertiesManager.class) {
+        current = config;
+        if (current == null || configOutdated) {
+          configOutdated = false;
+          current = ConfigSnapshot.load();
+          config = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Creates a new configuration snapshot and notifies registered {@link ConfigListener}s if any
+   * property has changed.
+   *
+   * @return the new snapshot
+   */
+  public static ConfigSnapshot reloadConfig() {
+
+    ConfigSnapshot oldConfig;
+    ConfigSnapshot newConfig;
+    synchronized (PropertiesManager.class) {
+      oldConfig = config;
+      configOutdated = false;
+      newConfig = ConfigSnapshot.load();
+      config = newConfig;
+    }
+
+    if (oldConfig != null) {
+      Set<String> changedProperties = oldConfig.getChangedProperties(newConfig);
+      if (!changedProperties.isEmpty()) {
+        for (ConfigListener listener : configListeners) {
+          try {
+            listener.configChanged(oldConfig, newConfig, changedProperties);
+          } catch (Exception e) {
+            log.warn("Exception notifying configuration change to {}", listener, e);
+          }
+        }
+      }
+    }
+
+    return newConfig;
+  }
+
+  public static void addConfigListener(ConfigListener listener) {
+    configListeners.add(listener);
+  }
+
+  public static void removeConfigListener(ConfigListener listener) {
+    configListeners.remove(listener);
   }
 
   public static PropertyHolder getPropertyHolder() {
@@ -103,7 +193,7 @@ public class PropertiesManager {
 
   public static long getProperty(String property, long defaultValue) {
     String systemValue = propertyHolder.getProperty(property);
-    return systemValue != null ? Integer.parseInt(systemValue) : defaultValue;
+    return systemValue != null ? Long.parseLong(systemValue) : defaultValue;
   }
 
   public static String getProperty(String property, String defaultValue) {
@@ -0,0 +1,257 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.commons.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kurento.commons.ConfigFileObject;
+import org.kurento.commons.ConfigFilePropertyHolder;
+import org.kurento.commons.ConfigSnapshot;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.PropertiesManager.ConfigListener;
+import org.kurento.commons.PropertiesManager.PropertyHolder;
+import org.kurento.commons.exception.KurentoException;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class ConfigSnapshotTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testPrecedence() throws IOException {
+
+    Path userConfig = writeUserConfig("prop1=user", "prop2=user", "prop3=user");
+
+    ConfigFilePropertyHolder holder = new ConfigFilePropertyHolder();
+    addConfigFile(holder, "{ \"prop1\": \"file\", \"prop2\": \"file\", \"obj\": { \"prop\": 5 } }");
+    addConfigFile(holder, "{ \"prop1\": \"file2\", \"obj\": { \"prop\": 6, \"other\": true } }");
+
+    Properties system = new Properties();
+    system.setProperty("prop1", "system");
+
+    ConfigSnapshot config = ConfigSnapshot.create(system, holder, userConfig);
+
+    assertThat(config.getString("prop1"), is("system"));
+    assertThat(config.getString("prop2"), is("file"));
+    assertThat(config.getString("prop3"), is("user"));
+    assertThat(config.getInt("obj.prop", 0), is(5));
+    assertThat(config.getBoolean("obj.other", false), is(true));
+    assertThat(config.getString("nonExistingProp"), is(nullValue()));
+    assertThat(config.getString("nonExistingProp", "default"), is("default"));
+  }
+
+  @Test
+  public void testCustomPropertyHolderIsReadOnce() {
+
+    final List<String> requested = new ArrayList<>();
+    PropertyHolder holder = new PropertyHolder() {
+      @Override
+      public String getProperty(String property) {
+        requested.add(property);
+        return "custom".equals(property) ? "100" : null;
+      }
+    };
+
+    ConfigSnapshot config = ConfigSnapshot.create(new Properties(), holder, null);
+
+    assertThat(config.getLong("custom", 0), is(100L));
+    assertThat(config.getLong("custom", 0), is(100L));
+    assertThat(config.getString("missing"), is(nullValue()));
+    assertThat(config.getString("missing"), is(nullValue()));
+    assertThat(requested.size(), is(2));
+  }
+
+  @Test
+  public void testTypedValues() {
+
+    Properties system = new Properties();
+    system.setProperty("long", "10000000000");
+    system.setProperty("millis", "500");
+    system.setProperty("seconds", "10s");
+    system.setProperty("minutes", "2m");
+    system.setProperty("hours", "1H");
+    system.setProperty("size", "1024");
+    system.setProperty("kilobytes", "64k");
+    system.setProperty("megabytes", "10MB");
+    system.setProperty("gigabytes", "2g");
+
+    ConfigSnapshot config = ConfigSnapshot.create(system, null, null);
+
+    assertThat(config.getLong("long", 0), is(10000000000L));
+    assertThat(config.getDurationMillis("millis", 0), is(500L));
+    assertThat(config.getDurationMillis("seconds", 0), is(10000L));
+    assertThat(config.getDurationMillis("minutes", 0), is(120000L));
+    assertThat(config.getDuration("hours", 0, TimeUnit.MINUTES), is(60L));
+    assertThat(config.getDuration("millis", 0, TimeUnit.SECONDS), is(500L));
+    assertThat(config.getDurationMillis("millis", 0, TimeUnit.SECONDS), is(500000L));
+    assertThat(config.getDurationMillis("seconds", 0, TimeUnit.SECONDS), is(10000L));
+    assertThat(config.getDurationMillis("nonExistingProp", 42, TimeUnit.SECONDS), is(42L));
+    assertThat(config.getDurationMillis("nonExistingProp", 42), is(42L));
+    assertThat(config.getSize("size", 0), is(1024L));
+    assertThat(config.getSize("kilobytes", 0), is(64L * 1024));
+    assertThat(config.getSize("megabytes", 0), is(10L * 1024 * 1024));
+    assertThat(config.getSize("gigabytes", 0), is(2L * 1024 * 1024 * 1024));
+  }
+
+  @Test
+  public void testParsingErrors() {
+
+    Properties system = new Properties();
+    system.setProperty("notNumber", "abc");
+    system.setProperty("tooLong", "10000000000");
+    system.setProperty("badDuration", "10 seconds");
+    system.setProperty("badSize", "-1k");
+    system.setProperty("hugeSize", "9999999999999g");
+    system.setProperty("badBoolean", "yes");
+
+    final ConfigSnapshot config = ConfigSnapshot.create(system, null, null);
+
+    assertInvalid(new Runnable() {
+      @Override
+      public void run() {
+        config.getLong("notNumber", 0);
+      }
+    }, "notNumber");
+
+    assertInvalid(new Runnable() {
+      @Override
+      public void run() {
+        config.getInt("tooLong", 0);
+      }
+    }, "tooLong");
+
+    assertInvalid(new Runnable() {
+      @Override
+      public void run() {
+        config.getDurationMillis("badDuration", 0);
+      }
+    }, "badDuration");
+
+    assertInvalid(new Runnable() {
+      @Override
+      public void run() {
+        config.getSize("badSize", 0);
+      }
+    }, "badSize");
+
+    assertInvalid(new Runnable() {
+      @Override
+      public void run() {
+        config.getSize("hugeSize", 0);
+      }
+    }, "hugeSize");
+
+    assertInvalid(new Runnable() {
+      @Override
+      public void run() {
+        config.getBoolean("badBoolean", false);
+      }
+    }, "badBoolean");
+  }
+
+  @Test
+  public void testReload() {
+
+    final String property = "configSnapshotTest.reload";
+    final List<Set<String>> notifications = new ArrayList<>();
+
+    ConfigListener listener = new ConfigListener() {
+      @Override
+      public void configChanged(ConfigSnapshot oldConfig, ConfigSnapshot newConfig,
+          Set<String> changedProperties) {
+        notifications.add(changedProperties);
+      }
+    };
+
+    System.setProperty(property, "1s");
+    PropertiesManager.addConfigListener(listener);
+
+    try {
+
+      ConfigSnapshot config = PropertiesManager.reloadConfig();
+      assertThat(PropertiesManager.getConfig(), is(sameInstance(config)));
+      assertThat(config.getDurationMillis(property, 0), is(1000L));
+
+      System.setProperty(property, "2s");
+
+      // Snapshot is not affected by changes until reloaded
+      assertThat(PropertiesManager.getConfig().getDurationMillis(property, 0), is(1000L));
+      assertThat(notifications.isEmpty(), is(true));
+
+      ConfigSnapshot newConfig = PropertiesManager.reloadConfig();
+
+      assertThat(newConfig, is(not(sameInstance(config))));
+      assertThat(newConfig.getDurationMillis(property, 0), is(2000L));
+      assertThat(config.getDurationMillis(property, 0), is(1000L));
+      assertThat(notifications, is(Collections.singletonList(Collections.singleton(property))));
+
+      // Nothing changed, listeners are not notified
+      PropertiesManager.reloadConfig();
+      assertThat(notifications.size(), is(1));
+
+    } finally {
+      PropertiesManager.removeConfigListener(listener);
+      System.clearProperty(property);
+    }
+  }
+
+  private void assertInvalid(Runnable read, String property) {
+    try {
+      read.run();
+      fail("KurentoException expected reading " + property);
+    } catch (KurentoException e) {
+      assertThat(e.getMessage().contains(property), is(true));
+    }
+  }
+
+  private Path writeUserConfig(String... lines) throws IOException {
+    Path file = folder.newFile("config.properties").toPath();
+    List<String> content = new ArrayList<>();
+    Collections.addAll(content, lines);
+    Files.write(file, content, StandardCharsets.UTF_8);
+    return file;
+  }
+
+  private void addConfigFile(ConfigFilePropertyHolder holder, String json) throws IOException {
+    Path file = folder.newFile().toPath();
+    JsonObject content = new JsonParser().parse(json).getAsJsonObject();
+    holder.getLoadedConfigFiles().add(new ConfigFileObject(file, content));
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.kurento.jsonrpc.test.util.ByteCountingProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CompressionTest extends JsonRpcConnectorBaseTest {
+
+  private static final Logger log = LoggerFactory.getLogger(CompressionTest.class);
+
+  private static final int NUM_REQUESTS = 20;
+
+  @Test
+  public void testCompressionReducesBandwidth() throws Exception {
+
+    try (ByteCountingProxy proxy = new ByteCountingProxy("localhost",
+        Integer.parseInt(getPort()))) {
+
+      long uncompressed = measureBytesToClient(proxy, "/largepackage", false, false);
+      long compressed = measureBytesToClient(proxy, "/largepackage", true, true);
+
+      log.info("Bytes received for {} large packages: uncompressed={} compressed={}",
+          NUM_REQUESTS, uncompressed, compressed);
+
+      assertThat(compressed).as("Bytes received with permessage-deflate")
+          .isLessThan(uncompressed / 10);
+    }
+  }
+
+  @Test
+  public void testFallbackWhenServerDoesNotSupportCompression() throws Exception {
+
+    try (ByteCountingProxy proxy = new ByteCountingProxy("localhost",
+        Integer.parseInt(getPort()))) {
+
+      long uncompressed = measureBytesToClient(proxy, "/largepackage", false, false);
+      long fallback = measureBytesToClient(proxy, "/largepackage_nodeflate", true, false);
+
+      log.info("Bytes received for {} large packages: uncompressed={} fallback={}",
+          NUM_REQUESTS, uncompressed, fallback);
+
+      assertThat(fallback).as("Bytes received without negotiated compression")
+          .isGreaterThanOrEqualTo(uncompressed * 9 / 10);
+    }
+  }
+
+  private long measureBytesToClient(ByteCountingProxy proxy, String path, boolean compression,
+      boolean expectedNegotiated) throws Exception {
+
+    proxy.reset();
+
+    JsonRpcClientWebSocket client =
+        new JsonRpcClientWebSocket("ws://localhost:" + proxy.getPort() + path);
+    client.setCompression(compression);
+
+    try {
+      for (int i = 0; i < NUM_REQUESTS; i++) {
+        String largePackage = client.sendRequest("echo", String.class);
+        assertThat(largePackage).hasSize(66000);
+      }
+
+      assertThat(client.isCompressionNegotiated()).as("Compression negotiated")
+          .isEqualTo(expectedNegotiated);
+
+    } finally {
+      client.close();
+    }
+
+    return proxy.getBytesToClient();
+  }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClientHttp;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class HttpClientTest extends JsonRpcConnectorBaseTest {
+
+  private static final Logger log = LoggerFactory.getLogger(HttpClientTest.class);
+
+  private static final int NUM_EVENTS = 20;
+
+  private static final long MAX_EVENT_LATENCY_MILLIS = 500;
+
+  private static final int NUM_CONCURRENT_REQUESTS = 200;
+
+  // Lower than the time the server holds poll requests
+  private static final long MAX_SERVER_REQUEST_MILLIS = 5000;
+
+  public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      if ("events".equals(request.getMethod())) {
+
+        transaction.sendResponse("OK");
+
+        final Session session = transaction.getSession();
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int i = 0; i < NUM_EVENTS; i++) {
+                Thread.sleep(100);
+                JsonObject params = new JsonObject();
+                params.addProperty("sentTime", System.currentTimeMillis());
+                session.sendNotification("event", params);
+              }
+            } catch (Exception e) {
+              log.warn("Exception sending events", e);
+            }
+          }
+        }.start();
+
+      } else if ("serverRequest".equals(request.getMethod())) {
+
+        // Answered with the result of a synchronous request to the client
+        transaction.startAsync();
+
+        final Session session = transaction.getSession();
+        final JsonObject params = request.getParams();
+        final Transaction asyncTransaction = transaction;
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              try {
+                asyncTransaction.sendResponse(session.sendRequest("clientEcho", params));
+              } catch (Exception e) {
+                asyncTransaction.sendError(e);
+              }
+            } catch (IOException e) {
+              log.warn("Exception answering request to server", e);
+            }
+          }
+        }.start();
+
+      } else {
+        transaction.sendResponse(request.getParams());
+      }
+    }
+  }
+
+  @Test
+  public void testEventLatency() throws Exception {
+
+    final CountDownLatch eventsLatch = new CountDownLatch(NUM_EVENTS);
+    final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+    JsonRpcClientHttp client =
+        new JsonRpcClientHttp("http://localhost:" + getPort() + "/http_client");
+
+    client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        long sentTime = request.getParams().get("sentTime").getAsLong();
+        latencies.add(System.currentTimeMillis() - sentTime);
+        eventsLatch.countDown();
+      }
+    });
+
+    try {
+
+      assertThat(client.sendRequest("events", String.class)).isEqualTo("OK");
+
+      assertThat(eventsLatch.await(30, TimeUnit.SECONDS)).as("All events received").isTrue();
+
+      long maxLatency = 0;
+      for (Long latency : latencies) {
+        maxLatency = Math.max(maxLatency, latency);
+      }
+
+      log.info("Received {} events. Max latency {} ms", latencies.size(), maxLatency);
+
+      assertThat(maxLatency).as("Max event latency").isLessThan(MAX_EVENT_LATENCY_MILLIS);
+
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void testSyncRequestFromServer() throws Exception {
+
+    JsonRpcClientHttp client =
+        new JsonRpcClientHttp("http://localhost:" + getPort() + "/http_client");
+
+    client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        transaction.sendResponse(request.getParams());
+      }
+    });
+
+    try {
+
+      JsonObject params = new JsonObject();
+      params.addProperty("value", "fromClient");
+
+      // Establishes the session, so the client is polling before the server request is sent
+      assertThat(client.sendRequest("echo", params)).isEqualTo(params);
+
+      long start = System.currentTimeMillis();
+      JsonElement result = client.sendRequest("serverRequest", params);
+      long elapsed = System.currentTimeMillis() - start;
+
+      log.info("Request from server answered in {} ms", elapsed);
+
+      assertThat(result).isEqualTo(params);
+      assertThat(elapsed).as("Time to answer the request from server")
+          .isLessThan(MAX_SERVER_REQUEST_MILLIS);
+
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentAsyncRequests() throws Exception {
+
+    final CountDownLatch responsesLatch = new CountDownLatch(NUM_CONCURRENT_REQUESTS);
+    final AtomicInteger errors = new AtomicInteger();
+
+    JsonRpcClientHttp client =
+        new JsonRpcClientHttp("http://localhost:" + getPort() + "/http_client");
+
+    try {
+
+      for (int i = 0; i < NUM_CONCURRENT_REQUESTS; i++) {
+
+        final JsonObject params = new JsonObject();
+        params.addProperty("num", i);
+
+        client.sendRequest("echo", params, new Continuation<JsonElement>() {
+          @Override
+          public void onSuccess(JsonElement result) {
+            if (!params.equals(result)) {
+              log.warn("Unexpected response {} to request {}", result, params);
+              errors.incrementAndGet();
+            }
+            responsesLatch.countDown();
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            log.warn("Error in request {}", params, cause);
+            errors.incrementAndGet();
+            responsesLatch.countDown();
+          }
+        });
+      }
+
+      assertThat(responsesLatch.await(30, TimeUnit.SECONDS)).as("All responses received")
+          .isTrue();
+      assertThat(errors.get()).as("Requests with errors").isEqualTo(0);
+
+    } finally {
+      client.close();
+    }
+  }
+
+}
@@ -17,6 +17,7 @@
 
 package org.kurento.jsonrpc.test;
 
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.net.URI;
@@ -32,10 +33,15 @@ import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonObject;
+
 public class MaxWsConnectionsTest extends JsonRpcConnectorBaseTest {
 
   private static final Logger log = LoggerFactory.getLogger(MaxWsConnectionsTest.class);
@@ -57,44 +63,104 @@ public class MaxWsConnectionsTest extends JsonRpcConnectorBaseTest {
     }
   }
 
+  public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+      transaction.sendResponse(request.getParams());
+    }
+  }
+
+  public static final int MAX_WS_CONNECTIONS_PER_ADDRESS = 3;
+
+  public static final int MAX_WS_CONNECTIONS_PER_HANDLER = 5;
+
   @Test
   public void test() throws Exception {
+    assertMaxConnections("/jsonrpc", MAX_WS_CONNECTIONS);
+  }
+
+  @Test
+  public void testMaxConnectionsPerAddress() throws Exception {
+    assertMaxConnections("/max_sessions_per_address", MAX_WS_CONNECTIONS_PER_ADDRESS);
+  }
+
+  @Test
+  public void testMaxConnectionsPerHandler() throws Exception {
+
+    List<Session> clients = connectUntilRejected("/max_sessions_handler",
+        MAX_WS_CONNECTIONS_PER_HANDLER);
+
+    try {
+      // Limit of other handler is not affected by the sessions of this handler
+      Session session = connect("/max_sessions_per_address");
+      Thread.sleep(100);
+      assertTrue("Connection to other handler should be accepted", session.isOpen());
+      session.close();
+    } finally {
+      closeAll(clients);
+    }
+
+    // Closed connections release their slots
+    Thread.sleep(500);
+    closeAll(connectUntilRejected("/max_sessions_handler", MAX_WS_CONNECTIONS_PER_HANDLER));
+  }
+
+  private void assertMaxConnections(String path, int maxConnections) throws Exception {
+    closeAll(connectUntilRejected(path, maxConnections));
+  }
+
+  private List<Session> connectUntilRejected(String path, int maxConnections) throws Exception {
 
     List<Session> clients = new ArrayList<>();
 
     while (true) {
 
-      URI wsUri = new URI("ws", null, "localhost", Integer.parseInt(getPort()), "/jsonrpc", null,
-          null);
-
-      WebSocketClient jettyClient = new WebSocketClient(new SslContextFactory(true));
-      jettyClient.start();
-      Session session = jettyClient
-          .connect(new WebSocketClientSocket(), wsUri, new ClientUpgradeRequest()).get();
+      Session session = connect(path);
 
       clients.add(session);
 
-      log.info("WebSocket client {} connected", clients.size());
+      log.info("WebSocket client {} connected to {}", clients.size(), path);
 
       Thread.sleep(100);
 
       if (!session.isOpen()) {
-        if (clients.size() < MAX_WS_CONNECTIONS) {
-          fail("WebSocket num " + clients.size() + " disconnected. MAX_WS_CONNECTION="
-              + MAX_WS_CONNECTIONS);
+        if (clients.size() <= maxConnections) {
+          fail("WebSocket num " + clients.size() + " disconnected. Max connections="
+              + maxConnections);
         } else {
           log.info("WebSocket client {} disconnected from server", clients.size());
           break;
         }
       } else {
 
-        if (clients.size() > MAX_WS_CONNECTIONS) {
-          fail("Server should close automatically WebSocket connection above " + MAX_WS_CONNECTIONS
+        if (clients.size() > maxConnections) {
+          fail("Server should close automatically WebSocket connection above " + maxConnections
               + " but it has " + clients.size() + " open connections");
         }
       }
     }
 
+    return clients;
+  }
+
+  private Session connect(String path) throws Exception {
+
+    URI wsUri = new URI("ws", null, "localhost", Integer.parseInt(getPort()), path, null, null);
+
+    WebSocketClient jettyClient = new WebSocketClient(new SslContextFactory(true));
+    jettyClient.start();
+    return jettyClient.connect(new WebSocketClientSocket(), wsUri, new ClientUpgradeRequest())
+        .get();
+  }
+
+  private void closeAll(List<Session> clients) {
+    for (Session session : clients) {
+      if (session.isOpen()) {
+        session.close();
+      }
+    }
   }
 
 }
@@ -20,6 +20,11 @@ package org.kurento.jsonrpc.test;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
@@ -29,12 +34,15 @@ import org.kurento.jsonrpc.client.Handler;
 import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
 import org.kurento.jsonrpc.client.JsonRpcWSConnectionAdapter;
 import org.kurento.jsonrpc.client.ReconnectedHandler;
+import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
 import org.kurento.jsonrpc.test.util.EventWaiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonObject;
+
 public class ReconnectionTest extends JsonRpcConnectorBaseTest {
 
   private static final Logger log = LoggerFactory.getLogger(ReconnectionTest.class);
@@ -60,6 +68,139 @@ public class ReconnectionTest extends JsonRpcConnectorBaseTest {
     }
   }
 
+  public static class ReplayServerHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(final Transaction transaction, final Request<JsonObject> request)
+        throws Exception {
+
+      final Session session = transaction.getSession();
+
+      switch (request.getMethod()) {
+      case "events":
+        final int numEvents = request.getParams().get("numEvents").getAsInt();
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int i = 0; i < numEvents; i++) {
+                JsonObject params = new JsonObject();
+                params.addProperty("index", i);
+                session.sendNotification("event", params);
+                if (i % 10 == 0) {
+                  Thread.sleep(1);
+                }
+              }
+            } catch (Exception e) {
+              log.warn("Exception sending events", e);
+            }
+          }
+        }.start();
+        transaction.sendResponse("started");
+        break;
+
+      case "delayed":
+        transaction.startAsync();
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              Thread.sleep(request.getParams().get("delay").getAsLong());
+              transaction.sendResponse("delayed");
+            } catch (Exception e) {
+              log.warn("Exception sending delayed response", e);
+            }
+          }
+        }.start();
+        break;
+
+      default:
+        transaction.sendError(new IllegalArgumentException(request.getMethod()));
+      }
+    }
+
+    @Override
+    public void afterConnectionEstablished(Session session) throws Exception {
+      session.setReconnectionTimeout(5000);
+    }
+  }
+
+  @Test
+  public void givenSessionReplay_whenNativeSocketIsClosedDuringEventBurst_thenNoEventIsLost()
+      throws Exception {
+
+    final int numEvents = 2000;
+    final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch allReceived = new CountDownLatch(numEvents);
+
+    // The events are not acknowledged, so all of them have to fit in the replay buffer whatever
+    // the time the client takes to reconnect
+    System.setProperty(ServerSession.SESSION_REPLAY_BUFFER_SIZE_PROP,
+        Integer.toString(2 * numEvents));
+
+    try (JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+        "ws://localhost:" + getPort() + "/reconnection_replay")) {
+
+      client.setSessionReplay(true);
+      client.setConcurrentServerRequest(false);
+      client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+        @Override
+        public void handleRequest(Transaction transaction, Request<JsonObject> request)
+            throws Exception {
+          received.add(request.getParams().get("index").getAsInt());
+          allReceived.countDown();
+        }
+      });
+
+      JsonObject params = new JsonObject();
+      params.addProperty("numEvents", numEvents);
+      assertThat(client.sendRequest("events", params).getAsString()).isEqualTo("started");
+
+      Thread.sleep(50);
+      client.closeNativeClient();
+
+      assertThat(allReceived.await(10, TimeUnit.SECONDS)).as("All events received").isTrue();
+
+      // Give time to receive unexpected duplicates
+      Thread.sleep(500);
+
+      assertThat(received).hasSize(numEvents);
+      for (int i = 0; i < numEvents; i++) {
+        assertThat(received.get(i)).isEqualTo(i);
+      }
+    } finally {
+      System.clearProperty(ServerSession.SESSION_REPLAY_BUFFER_SIZE_PROP);
+    }
+  }
+
+  @Test
+  public void givenSessionReplay_whenNativeSocketIsClosedBeforeResponse_thenResponseIsReceived()
+      throws Exception {
+
+    try (final JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+        "ws://localhost:" + getPort() + "/reconnection_replay")) {
+
+      client.setSessionReplay(true);
+      client.connect();
+
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(100);
+            client.closeNativeClient();
+          } catch (InterruptedException e) {
+            log.warn("Interrupted before closing native client", e);
+          }
+        }
+      }.start();
+
+      JsonObject params = new JsonObject();
+      params.addProperty("delay", 500);
+      assertThat(client.sendRequest("delayed", params).getAsString()).isEqualTo("delayed");
+    }
+  }
+
   @Test
   public void givenReconnectedSession_whenSessionIdIsRemovedFromClient_thenServerUsesWebSocketAsSessionIdSource()
       throws IOException, InterruptedException {
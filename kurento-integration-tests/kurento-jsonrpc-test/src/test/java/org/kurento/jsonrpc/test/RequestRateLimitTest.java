@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class RequestRateLimitTest extends JsonRpcConnectorBaseTest {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestRateLimitTest.class);
+
+  public static final int MAX_REQUESTS_PER_SECOND = 10;
+
+  public static final int REQUESTS_BURST = 10;
+
+  private static final int NUM_REQUESTS = 200;
+
+  public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+      transaction.sendResponse(request.getParams());
+    }
+  }
+
+  @Test
+  public void testFloodIsRateLimited() throws Exception {
+
+    final CountDownLatch responsesLatch = new CountDownLatch(NUM_REQUESTS);
+    final AtomicInteger accepted = new AtomicInteger();
+    final AtomicInteger limited = new AtomicInteger();
+    final AtomicInteger otherErrors = new AtomicInteger();
+
+    JsonRpcClient client = createJsonRpcClient("/rate_limit");
+
+    try {
+
+      // Session is created with a first request
+      client.sendRequest("echo", String.class);
+
+      long startTime = System.nanoTime();
+
+      for (int i = 0; i < NUM_REQUESTS; i++) {
+
+        JsonObject params = new JsonObject();
+        params.addProperty("num", i);
+
+        client.sendRequest("echo", params, new Continuation<JsonElement>() {
+          @Override
+          public void onSuccess(JsonElement result) {
+            accepted.incrementAndGet();
+            responsesLatch.countDown();
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            if (cause instanceof JsonRpcErrorException && ((JsonRpcErrorException) cause)
+                .getCode() == JsonRpcConstants.REQUEST_RATE_LIMIT_ERROR_CODE) {
+              limited.incrementAndGet();
+            } else {
+              log.warn("Unexpected error", cause);
+              otherErrors.incrementAndGet();
+            }
+            responsesLatch.countDown();
+          }
+        });
+      }
+
+      assertThat(responsesLatch.await(30, TimeUnit.SECONDS)).as("All responses received")
+          .isTrue();
+
+      double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+
+      log.info("Flood of {} requests in {} s: accepted={} limited={}", NUM_REQUESTS,
+          elapsedSeconds, accepted.get(), limited.get());
+
+      assertThat(otherErrors.get()).as("Unexpected errors").isEqualTo(0);
+      assertThat(limited.get()).as("Rate limited requests").isGreaterThan(0);
+      assertThat(accepted.get()).as("Accepted requests").isLessThanOrEqualTo(
+          REQUESTS_BURST + (int) Math.ceil(elapsedSeconds * MAX_REQUESTS_PER_SECOND));
+
+      // Bucket is refilled after a while
+      Thread.sleep(1000);
+      assertThat(client.sendRequest("echo", String.class)).isNull();
+
+    } finally {
+      client.close();
+    }
+  }
+
+}
@@ -25,13 +25,16 @@ import org.kurento.jsonrpc.test.BidirectionalMultiTest;
 import org.kurento.jsonrpc.test.BidirectionalTest;
 import org.kurento.jsonrpc.test.CloseSessionTest;
 import org.kurento.jsonrpc.test.ErrorServerTest;
+import org.kurento.jsonrpc.test.HttpClientTest;
 import org.kurento.jsonrpc.test.LargePackageTest;
+import org.kurento.jsonrpc.test.MaxWsConnectionsTest;
 import org.kurento.jsonrpc.test.MultipleSessionsTest;
 import org.kurento.jsonrpc.test.NewSessionTest;
 import org.kurento.jsonrpc.test.NotificationTest;
 import org.kurento.jsonrpc.test.PingPongTest;
 import org.kurento.jsonrpc.test.ReconnectionFromServerTest;
 import org.kurento.jsonrpc.test.ReconnectionTest;
+import org.kurento.jsonrpc.test.RequestRateLimitTest;
 import org.kurento.jsonrpc.test.ServerEventsTest;
 import org.kurento.jsonrpc.test.handler.EchoJsonRpcHandler;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -76,10 +79,29 @@ public class BootTestApplication implements JsonRpcConfigurer {
 
     registry.addHandler(new ReconnectionFromServerTest.Handler(), "/reconnection2");
 
+    registry.addHandler(new ReconnectionTest.ReplayServerHandler(), "/reconnection_replay");
+
     registry.addHandler(new LargePackageTest.Handler(), "/largepackage");
 
+    registry.addHandler(new LargePackageTest.Handler().withCompression(false),
+        "/largepackage_nodeflate");
+
     registry.addHandler(new NotificationTest.Handler(), "/notification");
 
+    registry.addHandler(new HttpClientTest.Handler(), "/http_client");
+
+    registry.addHandler(new MaxWsConnectionsTest.Handler()
+        .withMaxSessionsPerAddress(MaxWsConnectionsTest.MAX_WS_CONNECTIONS_PER_ADDRESS),
+        "/max_sessions_per_address");
+
+    registry.addHandler(new MaxWsConnectionsTest.Handler()
+        .withMaxSessions(MaxWsConnectionsTest.MAX_WS_CONNECTIONS_PER_HANDLER),
+        "/max_sessions_handler");
+
+    registry.addHandler(new RequestRateLimitTest.Handler().withRequestRateLimit(
+        RequestRateLimitTest.MAX_REQUESTS_PER_SECOND, RequestRateLimitTest.REQUESTS_BURST),
+        "/rate_limit");
+
   }
 
   @Bean
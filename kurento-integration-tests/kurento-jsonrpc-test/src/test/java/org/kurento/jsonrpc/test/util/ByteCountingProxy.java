@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TCP relay that counts the bytes exchanged between clients and a target server. It is used to
+ * measure the bandwidth used by a connection, including WebSocket framing.
+ */
+public class ByteCountingProxy implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(ByteCountingProxy.class);
+
+  private final ServerSocket serverSocket;
+  private final String targetHost;
+  private final int targetPort;
+
+  private final AtomicLong bytesToServer = new AtomicLong();
+  private final AtomicLong bytesToClient = new AtomicLong();
+
+  public ByteCountingProxy(String targetHost, int targetPort) throws IOException {
+    this.targetHost = targetHost;
+    this.targetPort = targetPort;
+    this.serverSocket = new ServerSocket(0);
+
+    Thread acceptor = new Thread("ByteCountingProxy-acceptor") {
+      @Override
+      public void run() {
+        acceptConnections();
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public long getBytesToServer() {
+    return bytesToServer.get();
+  }
+
+  public long getBytesToClient() {
+    return bytesToClient.get();
+  }
+
+  public void reset() {
+    bytesToServer.set(0);
+    bytesToClient.set(0);
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket client = serverSocket.accept();
+        Socket server = new Socket(targetHost, targetPort);
+        relay(client, server, bytesToServer);
+        relay(server, client, bytesToClient);
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          log.warn("Exception accepting connection in proxy", e);
+        }
+      }
+    }
+  }
+
+  private void relay(final Socket from, final Socket to, final AtomicLong counter) {
+
+    Thread relay = new Thread("ByteCountingProxy-relay") {
+      @Override
+      public void run() {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+          int read;
+          while ((read = in.read(buffer)) != -1) {
+            counter.addAndGet(read);
+            out.write(buffer, 0, read);
+            out.flush();
+          }
+        } catch (IOException e) {
+          log.debug("Relay closed: {}", e.getMessage());
+        } finally {
+          closeQuietly(from);
+          closeQuietly(to);
+        }
+      }
+    };
+    relay.setDaemon(true);
+    relay.start();
+  }
+
+  private void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Ignore
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.kms.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates session descriptions and ICE candidates that look like the ones produced by KMS. The
+ * media is never sent, so addresses and credentials only need to be well formed.
+ */
+public class FakeSdp {
+
+  private static final String[] DEFAULT_MEDIA = { "audio", "video" };
+
+  private static final String ADDRESS = "127.0.0.1";
+
+  private static final AtomicInteger nextPort = new AtomicInteger(40000);
+
+  private static final AtomicInteger nextSession = new AtomicInteger(1);
+
+  private final boolean webRtc;
+  private final String iceUfrag;
+  private final String icePwd;
+  private final String fingerprint;
+
+  public FakeSdp(boolean webRtc) {
+    this.webRtc = webRtc;
+    this.iceUfrag = randomToken(4);
+    this.icePwd = randomToken(22);
+    this.fingerprint = randomFingerprint();
+  }
+
+  /**
+   * Returns an offer with an audio and a video media section.
+   */
+  public String createOffer() {
+    List<String[]> media = new ArrayList<>();
+    for (int i = 0; i < DEFAULT_MEDIA.length; i++) {
+      media.add(new String[] { DEFAULT_MEDIA[i], Integer.toString(i) });
+    }
+    return createSdp(media, "actpass");
+  }
+
+  /**
+   * Returns an answer with the same media sections of the given offer.
+   */
+  public String createAnswer(String offer) {
+
+    List<String[]> media = new ArrayList<>();
+
+    String type = null;
+    String mid = null;
+    for (String line : offer.split("\r?\n")) {
+      if (line.startsWith("m=")) {
+        if (type != null) {
+          media.add(new String[] { type, mid == null ? Integer.toString(media.size()) : mid });
+        }
+        type = line.substring(2, line.indexOf(' '));
+        mid = null;
+      } else if (line.startsWith("a=mid:")) {
+        mid = line.substring("a=mid:".length()).trim();
+      }
+    }
+    if (type != null) {
+      media.add(new String[] { type, mid == null ? Integer.toString(media.size()) : mid });
+    }
+
+    return createSdp(media, "active");
+  }
+
+  /**
+   * Returns the mids of the media sections of a session description, in order.
+   */
+  public static List<String> getMids(String sdp) {
+
+    List<String> mids = new ArrayList<>();
+    if (sdp == null) {
+      return mids;
+    }
+
+    for (String line : sdp.split("\r?\n")) {
+      if (line.startsWith("a=mid:")) {
+        mids.add(line.substring("a=mid:".length()).trim());
+      }
+    }
+    return mids;
+  }
+
+  /**
+   * Returns a host candidate for the media section with the given index.
+   */
+  public String createCandidate(int mLineIndex) {
+    int foundation = mLineIndex + 1;
+    int port = nextPort();
+    return "candidate:" + foundation + " 1 UDP 2013266431 " + ADDRESS + " " + port + " typ host";
+  }
+
+  private String createSdp(List<String[]> media, String setup) {
+
+    int session = nextSession.getAndIncrement();
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("v=0\r\n");
+    sb.append("o=- ").append(session).append(' ').append(session).append(" IN IP4 ")
+        .append(ADDRESS).append("\r\n");
+    sb.append("s=Kurento Media Server\r\n");
+    sb.append("c=IN IP4 ").append(ADDRESS).append("\r\n");
+    sb.append("t=0 0\r\n");
+
+    if (webRtc) {
+      sb.append("a=msid-semantic: WMS ").append(iceUfrag).append("\r\n");
+      sb.append("a=group:BUNDLE");
+      for (String[] m : media) {
+        sb.append(' ').append(m[1]);
+      }
+      sb.append("\r\n");
+    }
+
+    for (String[] m : media) {
+
+      boolean audio = "audio".equals(m[0]);
+      String profile = webRtc ? "UDP/TLS/RTP/SAVPF" : "RTP/AVPF";
+
+      sb.append("m=").append(m[0]).append(' ').append(webRtc ? 1 : nextPort()).append(' ')
+          .append(profile).append(audio ? " 111 0" : " 100 101").append("\r\n");
+
+      if (webRtc) {
+        sb.append("a=setup:").append(setup).append("\r\n");
+        sb.append("a=ice-ufrag:").append(iceUfrag).append("\r\n");
+        sb.append("a=ice-pwd:").append(icePwd).append("\r\n");
+        sb.append("a=fingerprint:sha-256 ").append(fingerprint).append("\r\n");
+        sb.append("a=rtcp-mux\r\n");
+      }
+
+      sb.append("a=mid:").append(m[1]).append("\r\n");
+      sb.append("a=sendrecv\r\n");
+
+      if (audio) {
+        sb.append("a=rtpmap:111 opus/48000/2\r\n");
+        sb.append("a=rtpmap:0 PCMU/8000\r\n");
+      } else {
+        sb.append("a=rtpmap:100 VP8/90000\r\n");
+        sb.append("a=rtpmap:101 H264/90000\r\n");
+        sb.append("a=rtcp-fb:100 nack\r\n");
+        sb.append("a=rtcp-fb:100 nack pli\r\n");
+        sb.append("a=rtcp-fb:100 goog-remb\r\n");
+      }
+
+      sb.append("a=ssrc:").append(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE))
+          .append(" cname:user").append(session).append("\r\n");
+    }
+
+    return sb.toString();
+  }
+
+  private static int nextPort() {
+    int port = nextPort.getAndIncrement();
+    if (port > 60000) {
+      nextPort.compareAndSet(port + 1, 40000);
+    }
+    return port;
+  }
+
+  private static String randomToken(int length) {
+
+    String chars = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789+/";
+    Random random = ThreadLocalRandom.current();
+
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(chars.charAt(random.nextInt(chars.length())));
+    }
+    return sb.toString();
+  }
+
+  private static String randomFingerprint() {
+
+    Random random = ThreadLocalRandom.current();
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 32; i++) {
+      if (i > 0) {
+        sb.append(':');
+      }
+      sb.append(String.format("%02X", random.nextInt(256)));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.kms.simulator;
+
+import java.util.Properties;
+
+import org.kurento.client.KurentoClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.server.JsonRpcConfigurer;
+import org.kurento.jsonrpc.server.JsonRpcHandlerRegistry;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Media server simulator listening in a WebSocket endpoint, so it can be used by any Kurento
+ * Client as a real KMS (e.g. setting the property {@code kms.url} to {@link #getWsUri()}).
+ *
+ * <p>
+ * Tests running in the same JVM that do not need to go through the network can use
+ * {@link #createLocalClient(KmsSimulatorHandler)} instead, that connects a client directly to a
+ * simulator handler.
+ * </p>
+ */
+@Configuration
+@ComponentScan(basePackageClasses = {
+    org.kurento.jsonrpc.internal.server.config.JsonRpcConfiguration.class })
+@EnableAutoConfiguration
+public class KmsSimulator implements JsonRpcConfigurer {
+
+  public static final String KMS_PATH = "/kurento";
+
+  public static final int DEFAULT_PORT = 8888;
+
+  private ConfigurableApplicationContext context;
+  private int port;
+
+  @Bean
+  public KmsSimulatorHandler kmsSimulatorHandler() {
+    return new KmsSimulatorHandler();
+  }
+
+  @Override
+  public void registerJsonRpcHandlers(JsonRpcHandlerRegistry registry) {
+    registry.addHandler(kmsSimulatorHandler(), KMS_PATH);
+  }
+
+  /**
+   * Starts a simulator listening in the given port.
+   */
+  public static KmsSimulator start(int port) {
+
+    Properties properties = new Properties();
+    properties.put("server.port", Integer.toString(port));
+
+    SpringApplication application = new SpringApplication(KmsSimulator.class);
+    application.setDefaultProperties(properties);
+
+    ConfigurableApplicationContext context = application.run();
+
+    KmsSimulator simulator = context.getBean(KmsSimulator.class);
+    simulator.context = context;
+    simulator.port = port;
+    return simulator;
+  }
+
+  /**
+   * Creates a client connected to the given handler without a network connection.
+   */
+  public static KurentoClient createLocalClient(KmsSimulatorHandler handler) {
+    return KurentoClient.createFromJsonRpcClient(new JsonRpcClientLocal(handler));
+  }
+
+  public KmsSimulatorHandler getHandler() {
+    return context.getBean(KmsSimulatorHandler.class);
+  }
+
+  public String getWsUri() {
+    return "ws://localhost:" + port + KMS_PATH;
+  }
+
+  public void close() {
+    if (context != null) {
+      getHandler().destroy();
+      context.close();
+      context = null;
+    }
+  }
+
+  public static void main(String[] args) {
+    start(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+  }
+}
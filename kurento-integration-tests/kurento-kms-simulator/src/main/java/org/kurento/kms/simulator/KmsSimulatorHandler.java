@@ -0,0 +1,737 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.kms.simulator;
+
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_CONSTRUCTOR_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_PROPERTIES;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_TYPE;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_NAME;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.ONEVENT_DATA;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.ONEVENT_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.ONEVENT_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.ONEVENT_SUBSCRIPTION;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.ONEVENT_TYPE;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_TYPE;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_OPERATIONS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_LISTENER;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_OBJECT;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.kms.simulator.SimulatedObject.Connection;
+import org.kurento.kms.simulator.SimulatedObject.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * JSON-RPC handler that behaves as a Kurento Media Server. It implements the requests sent by
+ * Kurento Client (create, invoke, subscribe, unsubscribe, release and transaction) keeping the
+ * state of the media objects in memory, so tests can run without a media server.
+ *
+ * <p>
+ * Pipelines and their elements are created with references with the same format used by KMS, and
+ * releasing a pipeline releases its elements. Session descriptions are generated with
+ * {@link FakeSdp} and ICE gathering produces {@code IceCandidateFound} and
+ * {@code IceGatheringDone} events. Operations without a visible effect (e.g. setting a bitrate)
+ * only store their value, so the corresponding getter returns it.
+ * </p>
+ *
+ * <p>
+ * The latency of each request and the failure of operations can be configured to test the
+ * behavior of applications under adverse conditions.
+ * </p>
+ */
+public class KmsSimulatorHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+  private static final Logger log = LoggerFactory.getLogger(KmsSimulatorHandler.class);
+
+  public static final String SERVER_MANAGER_ID = "manager_ServerManager";
+
+  public static final int MEDIA_OBJECT_NOT_FOUND = 40101;
+  public static final int UNEXPECTED_ERROR = 40001;
+
+  private static final String MODULE = "kurento";
+  private static final String NEWREF_PREFIX = "newref:";
+  private static final String CHILD_SEPARATOR = "/";
+  private static final String VERSION = "6.5.0";
+
+  private static final int DEFAULT_ICE_CANDIDATES = 2;
+
+  private final Map<String, SimulatedObject> objects = new ConcurrentHashMap<>();
+  private final Set<String> failingOperations = new CopyOnWriteArraySet<>();
+  private final AtomicLong requests = new AtomicLong();
+
+  private final ScheduledExecutorService eventExecutor = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("KmsSimulator-events-%d").build());
+
+  private volatile long minLatencyMillis;
+  private volatile long maxLatencyMillis;
+  private volatile double failureProbability;
+  private volatile int iceCandidates = DEFAULT_ICE_CANDIDATES;
+
+  public KmsSimulatorHandler() {
+    objects.put(SERVER_MANAGER_ID, new SimulatedObject(SERVER_MANAGER_ID, "ServerManager", null));
+  }
+
+  /**
+   * Delays each request (a transaction counts as one request) a random time between the given
+   * values.
+   */
+  public KmsSimulatorHandler withLatency(long minMillis, long maxMillis) {
+    if (minMillis < 0 || maxMillis < minMillis) {
+      throw new IllegalArgumentException(
+          "Invalid latency: min " + minMillis + "ms, max " + maxMillis + "ms");
+    }
+    this.minLatencyMillis = minMillis;
+    this.maxLatencyMillis = maxMillis;
+    return this;
+  }
+
+  /**
+   * Makes each operation fail with the given probability, between 0 and 1.
+   */
+  public KmsSimulatorHandler withFailureProbability(double failureProbability) {
+    if (failureProbability < 0 || failureProbability > 1) {
+      throw new IllegalArgumentException("Invalid failure probability: " + failureProbability);
+    }
+    this.failureProbability = failureProbability;
+    return this;
+  }
+
+  /**
+   * Makes the given operation always fail. It can be a request method (e.g. {@code create}) or
+   * the name of an invoked operation (e.g. {@code processOffer}).
+   */
+  public KmsSimulatorHandler withFailingOperation(String operation) {
+    failingOperations.add(operation);
+    return this;
+  }
+
+  public KmsSimulatorHandler withoutFailingOperation(String operation) {
+    failingOperations.remove(operation);
+    return this;
+  }
+
+  /**
+   * Sets the number of ICE candidates found for each media section when gathering candidates.
+   */
+  public KmsSimulatorHandler withIceCandidates(int iceCandidates) {
+    this.iceCandidates = iceCandidates;
+    return this;
+  }
+
+  /**
+   * Returns the number of objects alive in the simulator, not including the server manager.
+   */
+  public int getNumObjects() {
+    return objects.size() - 1;
+  }
+
+  public SimulatedObject getObject(String id) {
+    return objects.get(id);
+  }
+
+  /**
+   * Returns the number of requests received, counting each transaction once.
+   */
+  public long getNumRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Releases all the objects and stops sending events.
+   */
+  public void destroy() {
+    eventExecutor.shutdownNow();
+    for (String id : new ArrayList<>(objects.keySet())) {
+      if (!SERVER_MANAGER_ID.equals(id)) {
+        objects.remove(id);
+      }
+    }
+  }
+
+  @Override
+  public void handleRequest(Transaction transaction, Request<JsonObject> request)
+      throws Exception {
+
+    requests.incrementAndGet();
+    simulateLatency();
+
+    String method = request.getMethod();
+    JsonObject params = request.getParams() != null ? request.getParams() : new JsonObject();
+
+    if (TRANSACTION_METHOD.equals(method)) {
+      transaction.sendResponse(executeTransaction(transaction.getSession(), params));
+      return;
+    }
+
+    try {
+      transaction.sendResponse(result(execute(transaction.getSession(), method, params)));
+    } catch (JsonRpcErrorException e) {
+      transaction.sendError(e.getError());
+    }
+  }
+
+  @Override
+  public void afterConnectionClosed(Session session, String status) throws Exception {
+    for (SimulatedObject object : objects.values()) {
+      object.removeSubscriptions(session);
+    }
+  }
+
+  private JsonArray executeTransaction(Session session, JsonObject params) {
+
+    JsonArray responses = new JsonArray();
+    List<String> newRefs = new ArrayList<>();
+
+    for (JsonElement element : params.getAsJsonArray(TRANSACTION_OPERATIONS)) {
+
+      JsonObject operation = element.getAsJsonObject();
+      String method = operation.get("method").getAsString();
+      JsonObject opParams = operation.has("params") ? operation.getAsJsonObject("params")
+          : new JsonObject();
+
+      JsonObject response = new JsonObject();
+      response.addProperty("jsonrpc", "2.0");
+      response.add("id", operation.get("id"));
+
+      String newRef = null;
+      try {
+        JsonElement value = execute(session, method, (JsonObject) resolveNewRefs(opParams,
+            newRefs));
+        if (CREATE_METHOD.equals(method)) {
+          newRef = value.getAsString();
+        }
+        response.add("result", result(value));
+      } catch (JsonRpcErrorException e) {
+        response.add("error", error(e));
+      }
+      // Failed creations keep their place, so that the next references are not shifted
+      if (CREATE_METHOD.equals(method)) {
+        newRefs.add(newRef);
+      }
+
+      responses.add(response);
+    }
+
+    return responses;
+  }
+
+  private JsonElement resolveNewRefs(JsonElement element, List<String> newRefs) {
+
+    if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+      String value = element.getAsString();
+      if (value.startsWith(NEWREF_PREFIX)) {
+        int index = Integer.parseInt(value.substring(NEWREF_PREFIX.length()));
+        if (index >= newRefs.size() || newRefs.get(index) == null) {
+          throw newError(MEDIA_OBJECT_NOT_FOUND, "MEDIA_OBJECT_NOT_FOUND",
+              "Object '" + value + "' not found");
+        }
+        return new JsonPrimitive(newRefs.get(index));
+      }
+    } else if (element.isJsonObject()) {
+      JsonObject resolved = new JsonObject();
+      for (Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+        resolved.add(entry.getKey(), resolveNewRefs(entry.getValue(), newRefs));
+      }
+      return resolved;
+    } else if (element.isJsonArray()) {
+      JsonArray resolved = new JsonArray();
+      for (JsonElement item : element.getAsJsonArray()) {
+        resolved.add(resolveNewRefs(item, newRefs));
+      }
+      return resolved;
+    }
+
+    return element;
+  }
+
+  private JsonElement execute(Session session, String method, JsonObject params) {
+
+    String operation = INVOKE_METHOD.equals(method) && params.has(INVOKE_OPERATION_NAME)
+        ? params.get(INVOKE_OPERATION_NAME).getAsString() : method;
+
+    boolean randomFailure =
+        failureProbability > 0 && ThreadLocalRandom.current().nextDouble() < failureProbability;
+    if (failingOperations.contains(operation) || randomFailure) {
+      throw newError(UNEXPECTED_ERROR, "UNEXPECTED_ERROR",
+          "Simulated failure of operation '" + operation + "'");
+    }
+
+    switch (method) {
+      case CREATE_METHOD:
+        return create(params);
+      case INVOKE_METHOD:
+        return invoke(getObject(params, INVOKE_OBJECT), operation,
+            params.has(INVOKE_OPERATION_PARAMS) ? params.getAsJsonObject(INVOKE_OPERATION_PARAMS)
+                : new JsonObject());
+      case SUBSCRIBE_METHOD:
+        return subscribe(session, getObject(params, SUBSCRIBE_OBJECT),
+            params.get(SUBSCRIBE_TYPE).getAsString());
+      case UNSUBSCRIBE_METHOD:
+        getObject(params, UNSUBSCRIBE_OBJECT)
+            .removeSubscription(params.get(UNSUBSCRIBE_LISTENER).getAsString());
+        return null;
+      case RELEASE_METHOD:
+        release(getObject(params, RELEASE_OBJECT));
+        return null;
+      default:
+        throw newError(UNEXPECTED_ERROR, "NOT_IMPLEMENTED",
+            "Method '" + method + "' not supported");
+    }
+  }
+
+  private JsonElement create(JsonObject params) {
+
+    String type = params.get(CREATE_TYPE).getAsString();
+    JsonObject constructorParams = params.has(CREATE_CONSTRUCTOR_PARAMS)
+        ? params.getAsJsonObject(CREATE_CONSTRUCTOR_PARAMS) : new JsonObject();
+
+    String localId = UUID.randomUUID().toString() + "_" + MODULE + "." + type;
+
+    SimulatedObject parent = null;
+    String id;
+    if (constructorParams.has("mediaPipeline")) {
+      parent = getObject(constructorParams, "mediaPipeline");
+      id = parent.getId() + CHILD_SEPARATOR + localId;
+    } else {
+      id = localId;
+    }
+
+    SimulatedObject object = new SimulatedObject(id, type,
+        parent != null ? parent.getId() : null);
+
+    for (Entry<String, JsonElement> entry : constructorParams.entrySet()) {
+      object.setProperty(entry.getKey(), entry.getValue());
+    }
+    if (params.has(CREATE_PROPERTIES)) {
+      for (Entry<String, JsonElement> entry : params.getAsJsonObject(CREATE_PROPERTIES)
+          .entrySet()) {
+        object.setProperty(entry.getKey(), entry.getValue());
+      }
+    }
+
+    objects.put(id, object);
+    if (parent != null) {
+      parent.addChild(id);
+    }
+
+    log.trace("Created object {}", id);
+
+    return new JsonPrimitive(id);
+  }
+
+  private void release(SimulatedObject object) {
+
+    for (String childId : object.getChildren()) {
+      SimulatedObject child = objects.get(childId);
+      if (child != null) {
+        release(child);
+      }
+    }
+
+    objects.remove(object.getId());
+
+    if (object.getParentId() != null) {
+      SimulatedObject parent = objects.get(object.getParentId());
+      if (parent != null) {
+        parent.removeChild(object.getId());
+      }
+    }
+
+    for (Connection connection : object.getSinkConnections()) {
+      SimulatedObject sink = objects.get(connection.getSink());
+      if (sink != null) {
+        sink.removeConnections(object.getId(), null);
+      }
+    }
+    for (Connection connection : object.getSourceConnections()) {
+      SimulatedObject source = objects.get(connection.getSource());
+      if (source != null) {
+        source.removeConnections(object.getId(), null);
+      }
+    }
+
+    log.trace("Released object {}", object.getId());
+  }
+
+  private JsonElement subscribe(Session session, SimulatedObject object, String eventType) {
+    String subscriptionId = UUID.randomUUID().toString();
+    object.addSubscription(new Subscription(subscriptionId, eventType, session));
+    return new JsonPrimitive(subscriptionId);
+  }
+
+  private JsonElement invoke(SimulatedObject object, String operation, JsonObject params) {
+
+    if (SERVER_MANAGER_ID.equals(object.getId())) {
+      JsonElement result = invokeServerManager(operation);
+      if (result != null) {
+        return result;
+      }
+    }
+
+    switch (operation) {
+
+      case "getMediaPipeline":
+        return new JsonPrimitive(object.getParentId() != null ? object.getParentId()
+            : object.getId());
+      case "getParent":
+        return object.getParentId() != null ? new JsonPrimitive(object.getParentId())
+            : JsonNull.INSTANCE;
+      case "getChildren":
+        return toJsonArray(object.getChildren());
+      case "getName":
+        JsonElement name = object.getProperty("name");
+        return name != null ? name : new JsonPrimitive(object.getId());
+      case "getCreationTime":
+        return new JsonPrimitive(object.getCreationTime());
+
+      case "addTag":
+        object.addTag(params.get("key").getAsString(), params.get("value").getAsString());
+        return null;
+      case "removeTag":
+        object.removeTag(params.get("key").getAsString());
+        return null;
+      case "getTag":
+        String tag = object.getTags().get(params.get("key").getAsString());
+        return tag != null ? new JsonPrimitive(tag) : JsonNull.INSTANCE;
+      case "getTags":
+        return tags(object);
+
+      case "connect":
+        connect(object, getObject(params, "sink"), mediaType(params));
+        return null;
+      case "disconnect":
+        disconnect(object, getObject(params, "sink"), mediaType(params));
+        return null;
+      case "getSinkConnections":
+        return connections(object.getSinkConnections(), mediaType(params));
+      case "getSourceConnections":
+        return connections(object.getSourceConnections(), mediaType(params));
+      case "isMediaFlowingIn":
+      case "isMediaFlowingOut":
+        return new JsonPrimitive(false);
+
+      case "generateOffer":
+        String offer = object.getSdp().createOffer();
+        object.setLocalSessionDescriptor(offer);
+        return new JsonPrimitive(offer);
+      case "processOffer":
+        String remoteOffer = params.get("offer").getAsString();
+        String answer = object.getSdp().createAnswer(remoteOffer);
+        object.setRemoteSessionDescriptor(remoteOffer);
+        object.setLocalSessionDescriptor(answer);
+        return new JsonPrimitive(answer);
+      case "processAnswer":
+        object.setRemoteSessionDescriptor(params.get("answer").getAsString());
+        return new JsonPrimitive(object.getLocalSessionDescriptor() != null
+            ? object.getLocalSessionDescriptor() : "");
+      case "getLocalSessionDescriptor":
+        return nullable(object.getLocalSessionDescriptor());
+      case "getRemoteSessionDescriptor":
+        return nullable(object.getRemoteSessionDescriptor());
+      case "gatherCandidates":
+        gatherCandidates(object);
+        return null;
+      case "addIceCandidate":
+        return null;
+
+      default:
+        return invokeAccessor(object, operation, params);
+    }
+  }
+
+  private JsonElement invokeServerManager(String operation) {
+
+    switch (operation) {
+      case "getInfo":
+        JsonObject info = complexType("ServerInfo");
+        info.addProperty("version", VERSION);
+        info.add("modules", new JsonArray());
+        info.addProperty("type", "KMS");
+        info.add("capabilities", new JsonArray());
+        return info;
+      case "getPipelines":
+        List<String> pipelines = new ArrayList<>();
+        for (SimulatedObject object : objects.values()) {
+          if ("MediaPipeline".equals(object.getType())) {
+            pipelines.add(object.getId());
+          }
+        }
+        return toJsonArray(pipelines);
+      case "getSessions":
+        return new JsonArray();
+      case "getCpuCount":
+        return new JsonPrimitive(Runtime.getRuntime().availableProcessors());
+      case "getUsedCpu":
+        return new JsonPrimitive(0.0f);
+      case "getUsedMemory":
+        return new JsonPrimitive(Runtime.getRuntime().totalMemory() / 1024);
+      case "getKmd":
+      case "getMetadata":
+        return new JsonPrimitive("");
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Simulates getters and setters of properties not modeled by the simulator: setters store their
+   * only parameter and getters return it (or null if it has not been set).
+   */
+  private JsonElement invokeAccessor(SimulatedObject object, String operation,
+      JsonObject params) {
+
+    if (operation.length() > 3 && operation.startsWith("set") && params.entrySet().size() == 1) {
+      object.setProperty(propertyName(operation), params.entrySet().iterator().next().getValue());
+      return null;
+    }
+
+    if (operation.length() > 3 && operation.startsWith("get") && params.entrySet().isEmpty()) {
+      return object.getProperty(propertyName(operation));
+    }
+
+    log.debug("Operation {} of object {} is not simulated", operation, object.getId());
+    return null;
+  }
+
+  private void connect(SimulatedObject source, SimulatedObject sink, String mediaType) {
+
+    String[] mediaTypes = mediaType != null ? new String[] { mediaType }
+        : new String[] { "AUDIO", "VIDEO", "DATA" };
+
+    for (String type : mediaTypes) {
+      Connection connection = new Connection(source.getId(), sink.getId(), type);
+      source.removeConnections(sink.getId(), type);
+      sink.removeConnections(source.getId(), type);
+      source.addSinkConnection(connection);
+      sink.addSourceConnection(connection);
+    }
+  }
+
+  private void disconnect(SimulatedObject source, SimulatedObject sink, String mediaType) {
+    source.removeConnections(sink.getId(), mediaType);
+    sink.removeConnections(source.getId(), mediaType);
+  }
+
+  private void gatherCandidates(final SimulatedObject object) {
+
+    final List<String> mids = FakeSdp.getMids(object.getLocalSessionDescriptor());
+    final int numCandidates = iceCandidates;
+
+    eventExecutor.schedule(new Runnable() {
+      @Override
+      public void run() {
+
+        for (int i = 0; i < mids.size(); i++) {
+          for (int j = 0; j < numCandidates; j++) {
+
+            JsonObject candidate = complexType("IceCandidate");
+            candidate.addProperty("candidate", object.getSdp().createCandidate(i));
+            candidate.addProperty("sdpMid", mids.get(i));
+            candidate.addProperty("sdpMLineIndex", i);
+
+            JsonObject data = eventData(object, "IceCandidateFound");
+            data.add("candidate", candidate);
+            fireEvent(object, "IceCandidateFound", data);
+          }
+        }
+
+        fireEvent(object, "IceGatheringDone", eventData(object, "IceGatheringDone"));
+      }
+    }, getLatency(), TimeUnit.MILLISECONDS);
+  }
+
+  private JsonObject eventData(SimulatedObject object, String type) {
+    JsonObject data = new JsonObject();
+    data.addProperty("source", object.getId());
+    data.addProperty("type", type);
+    data.addProperty("timestamp", Long.toString(System.currentTimeMillis() / 1000));
+    data.add("tags", tags(object));
+    return data;
+  }
+
+  private void fireEvent(SimulatedObject object, String type, JsonObject data) {
+
+    for (Subscription subscription : object.getSubscriptions(type)) {
+
+      JsonObject value = new JsonObject();
+      value.addProperty(ONEVENT_OBJECT, object.getId());
+      value.addProperty(ONEVENT_TYPE, type);
+      value.addProperty(ONEVENT_SUBSCRIPTION, subscription.getId());
+      value.add(ONEVENT_DATA, data);
+
+      JsonObject params = new JsonObject();
+      params.add("value", value);
+
+      try {
+        subscription.getSession().sendNotification(ONEVENT_METHOD, params);
+      } catch (IOException e) {
+        log.warn("Exception sending event {} of object {}", type, object.getId(), e);
+      }
+    }
+  }
+
+  private void simulateLatency() throws InterruptedException {
+    long latency = getLatency();
+    if (latency > 0) {
+      Thread.sleep(latency);
+    }
+  }
+
+  private long getLatency() {
+    long min = minLatencyMillis;
+    long max = maxLatencyMillis;
+    if (max <= min) {
+      return min;
+    }
+    return min + ThreadLocalRandom.current().nextLong(max - min + 1);
+  }
+
+  private SimulatedObject getObject(JsonObject params, String property) {
+
+    JsonElement ref = params.get(property);
+    if (ref == null || !ref.isJsonPrimitive()) {
+      throw newError(MEDIA_OBJECT_NOT_FOUND, "MEDIA_OBJECT_NOT_FOUND",
+          "Param '" + property + "' is not a valid object reference");
+    }
+
+    SimulatedObject object = objects.get(ref.getAsString());
+    if (object == null) {
+      throw newError(MEDIA_OBJECT_NOT_FOUND, "MEDIA_OBJECT_NOT_FOUND",
+          "Object '" + ref.getAsString() + "' not found");
+    }
+    return object;
+  }
+
+  private JsonArray connections(List<Connection> connections, String mediaType) {
+
+    JsonArray result = new JsonArray();
+    for (Connection connection : connections) {
+      if (mediaType == null || mediaType.equals(connection.getMediaType())) {
+        JsonObject data = complexType("ElementConnectionData");
+        data.addProperty("source", connection.getSource());
+        data.addProperty("sink", connection.getSink());
+        data.addProperty("type", connection.getMediaType());
+        data.addProperty("sourceDescription", "default");
+        data.addProperty("sinkDescription", "default");
+        result.add(data);
+      }
+    }
+    return result;
+  }
+
+  private JsonArray tags(SimulatedObject object) {
+    JsonArray result = new JsonArray();
+    for (Entry<String, String> entry : object.getTags().entrySet()) {
+      JsonObject tag = complexType("Tag");
+      tag.addProperty("key", entry.getKey());
+      tag.addProperty("value", entry.getValue());
+      result.add(tag);
+    }
+    return result;
+  }
+
+  private static String mediaType(JsonObject params) {
+    JsonElement mediaType = params.get("mediaType");
+    return mediaType != null && !mediaType.isJsonNull() ? mediaType.getAsString() : null;
+  }
+
+  private static String propertyName(String accessor) {
+    return Character.toLowerCase(accessor.charAt(3)) + accessor.substring(4);
+  }
+
+  private static JsonObject complexType(String type) {
+    JsonObject object = new JsonObject();
+    object.addProperty("__module__", MODULE);
+    object.addProperty("__type__", type);
+    return object;
+  }
+
+  private static JsonArray toJsonArray(List<String> values) {
+    JsonArray array = new JsonArray();
+    for (String value : values) {
+      array.add(new JsonPrimitive(value));
+    }
+    return array;
+  }
+
+  private static JsonElement nullable(String value) {
+    return value != null ? new JsonPrimitive(value) : JsonNull.INSTANCE;
+  }
+
+  private static JsonObject result(JsonElement value) {
+    JsonObject result = new JsonObject();
+    if (value != null) {
+      result.add("value", value);
+    }
+    return result;
+  }
+
+  private static JsonObject error(JsonRpcErrorException e) {
+    JsonObject error = new JsonObject();
+    error.addProperty("code", e.getCode());
+    error.addProperty("message", e.getServerMessage());
+    JsonObject data = new JsonObject();
+    data.addProperty("type", e.getError().getType());
+    error.add("data", data);
+    return error;
+  }
+
+  private static JsonRpcErrorException newError(int code, String type, String message) {
+    JsonObject data = new JsonObject();
+    data.addProperty("type", type);
+    return new JsonRpcErrorException(code, message, data);
+  }
+}
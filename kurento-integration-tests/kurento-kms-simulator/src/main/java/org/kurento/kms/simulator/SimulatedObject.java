@@ -0,0 +1,252 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.kms.simulator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kurento.jsonrpc.Session;
+
+import com.google.gson.JsonElement;
+
+/**
+ * State of a media object created in the simulator. Objects are not backed by an implementation
+ * of their type: properties are kept in a generic map and only the operations with a visible
+ * effect for clients (connections, SDP negotiation, ICE gathering) are modeled.
+ */
+public class SimulatedObject {
+
+  public static class Connection {
+
+    private final String source;
+    private final String sink;
+    private final String mediaType;
+
+    public Connection(String source, String sink, String mediaType) {
+      this.source = source;
+      this.sink = sink;
+      this.mediaType = mediaType;
+    }
+
+    public String getSource() {
+      return source;
+    }
+
+    public String getSink() {
+      return sink;
+    }
+
+    public String getMediaType() {
+      return mediaType;
+    }
+  }
+
+  public static class Subscription {
+
+    private final String id;
+    private final String type;
+    private final Session session;
+
+    public Subscription(String id, String type, Session session) {
+      this.id = id;
+      this.type = type;
+      this.session = session;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public Session getSession() {
+      return session;
+    }
+  }
+
+  private final String id;
+  private final String type;
+  private final String parentId;
+  private final long creationTime = System.currentTimeMillis() / 1000;
+
+  private final Map<String, JsonElement> properties = new LinkedHashMap<>();
+  private final Map<String, String> tags = new LinkedHashMap<>();
+  private final Set<String> children = new LinkedHashSet<>();
+  private final List<Connection> sinkConnections = new ArrayList<>();
+  private final List<Connection> sourceConnections = new ArrayList<>();
+  private final Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+
+  private FakeSdp sdp;
+  private String localSessionDescriptor;
+  private String remoteSessionDescriptor;
+
+  public SimulatedObject(String id, String type, String parentId) {
+    this.id = id;
+    this.type = type;
+    this.parentId = parentId;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getParentId() {
+    return parentId;
+  }
+
+  public long getCreationTime() {
+    return creationTime;
+  }
+
+  public boolean isWebRtc() {
+    return type.startsWith("WebRtc");
+  }
+
+  public synchronized JsonElement getProperty(String name) {
+    return properties.get(name);
+  }
+
+  public synchronized void setProperty(String name, JsonElement value) {
+    properties.put(name, value);
+  }
+
+  public synchronized Map<String, String> getTags() {
+    return new LinkedHashMap<>(tags);
+  }
+
+  public synchronized void addTag(String key, String value) {
+    tags.put(key, value);
+  }
+
+  public synchronized void removeTag(String key) {
+    tags.remove(key);
+  }
+
+  public synchronized List<String> getChildren() {
+    return new ArrayList<>(children);
+  }
+
+  public synchronized void addChild(String childId) {
+    children.add(childId);
+  }
+
+  public synchronized void removeChild(String childId) {
+    children.remove(childId);
+  }
+
+  public synchronized List<Connection> getSinkConnections() {
+    return new ArrayList<>(sinkConnections);
+  }
+
+  public synchronized List<Connection> getSourceConnections() {
+    return new ArrayList<>(sourceConnections);
+  }
+
+  public synchronized void addSinkConnection(Connection connection) {
+    sinkConnections.add(connection);
+  }
+
+  public synchronized void addSourceConnection(Connection connection) {
+    sourceConnections.add(connection);
+  }
+
+  /**
+   * Removes the connections with the given sink (or source) element and media type, or with all
+   * the media types if it is null.
+   */
+  public synchronized void removeConnections(String elementId, String mediaType) {
+    removeConnections(sinkConnections, elementId, mediaType, true);
+    removeConnections(sourceConnections, elementId, mediaType, false);
+  }
+
+  private void removeConnections(List<Connection> connections, String elementId,
+      String mediaType, boolean sink) {
+    for (int i = connections.size() - 1; i >= 0; i--) {
+      Connection connection = connections.get(i);
+      String peer = sink ? connection.sink : connection.source;
+      if (peer.equals(elementId)
+          && (mediaType == null || mediaType.equals(connection.mediaType))) {
+        connections.remove(i);
+      }
+    }
+  }
+
+  public synchronized void addSubscription(Subscription subscription) {
+    subscriptions.put(subscription.getId(), subscription);
+  }
+
+  public synchronized boolean removeSubscription(String subscriptionId) {
+    return subscriptions.remove(subscriptionId) != null;
+  }
+
+  public synchronized void removeSubscriptions(Session session) {
+    for (Subscription subscription : new ArrayList<>(subscriptions.values())) {
+      if (subscription.getSession() == session) {
+        subscriptions.remove(subscription.getId());
+      }
+    }
+  }
+
+  public synchronized List<Subscription> getSubscriptions(String eventType) {
+    List<Subscription> result = new ArrayList<>();
+    for (Subscription subscription : subscriptions.values()) {
+      if (subscription.getType().equals(eventType)) {
+        result.add(subscription);
+      }
+    }
+    return result;
+  }
+
+  public synchronized FakeSdp getSdp() {
+    if (sdp == null) {
+      sdp = new FakeSdp(isWebRtc());
+    }
+    return sdp;
+  }
+
+  public synchronized String getLocalSessionDescriptor() {
+    return localSessionDescriptor;
+  }
+
+  public synchronized void setLocalSessionDescriptor(String localSessionDescriptor) {
+    this.localSessionDescriptor = localSessionDescriptor;
+  }
+
+  public synchronized String getRemoteSessionDescriptor() {
+    return remoteSessionDescriptor;
+  }
+
+  public synchronized void setRemoteSessionDescriptor(String remoteSessionDescriptor) {
+    this.remoteSessionDescriptor = remoteSessionDescriptor;
+  }
+
+  @Override
+  public String toString() {
+    return "SimulatedObject [id=" + id + ", type=" + type + "]";
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.kms.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks the behavior of the simulator sending the same requests as Kurento Client.
+ */
+public class KmsSimulatorHandlerTest {
+
+  private static final int NUM_ELEMENTS = 1000;
+
+  private KmsSimulatorHandler handler;
+  private JsonRpcClientLocal client;
+  private BlockingQueue<JsonObject> events = new LinkedBlockingQueue<>();
+
+  @Before
+  public void setupSimulator() {
+
+    handler = new KmsSimulatorHandler();
+    client = new JsonRpcClientLocal(handler);
+
+    client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        events.add(request.getParams().getAsJsonObject("value"));
+      }
+    });
+  }
+
+  @After
+  public void teardown() throws IOException {
+    client.close();
+    handler.destroy();
+  }
+
+  @Test
+  public void releasingPipelineReleasesItsElements() throws IOException {
+
+    String pipeline = create("MediaPipeline", null);
+    String element = null;
+    for (int i = 0; i < NUM_ELEMENTS; i++) {
+      element = create("WebRtcEndpoint", pipeline);
+    }
+
+    assertTrue(element.startsWith(pipeline + "/"));
+    assertEquals(NUM_ELEMENTS + 1, handler.getNumObjects());
+    assertEquals(NUM_ELEMENTS, invoke(pipeline, "getChildren", null).getAsJsonArray().size());
+    assertEquals(pipeline, invoke(element, "getMediaPipeline", null).getAsString());
+
+    release(pipeline);
+
+    assertEquals(0, handler.getNumObjects());
+    try {
+      invoke(element, "getName", null);
+      fail("Released element can be invoked");
+    } catch (JsonRpcErrorException e) {
+      assertEquals(KmsSimulatorHandler.MEDIA_OBJECT_NOT_FOUND, e.getCode());
+    }
+  }
+
+  @Test
+  public void transactionResolvesNewRefs() throws IOException {
+
+    JsonArray operations = new JsonArray();
+    operations.add(request(0, "create", createParams("MediaPipeline", null)));
+    operations.add(request(1, "create", createParams("PlayerEndpoint", "newref:0")));
+    operations.add(request(2, "create", createParams("WebRtcEndpoint", "newref:0")));
+    JsonObject connect = invokeParams("newref:1", "connect");
+    connect.getAsJsonObject("operationParams").addProperty("sink", "newref:2");
+    operations.add(request(3, "invoke", connect));
+
+    JsonObject params = new JsonObject();
+    params.add("operations", operations);
+    JsonArray responses = value(client.sendRequest("transaction", params)).getAsJsonArray();
+
+    assertEquals(4, responses.size());
+    String pipeline = value(responses.get(0)).getAsString();
+    String player = value(responses.get(1)).getAsString();
+    String webRtc = value(responses.get(2)).getAsString();
+    assertTrue(player.startsWith(pipeline + "/"));
+    assertTrue(webRtc.startsWith(pipeline + "/"));
+
+    JsonArray connections = invoke(player, "getSinkConnections", null).getAsJsonArray();
+    assertEquals(3, connections.size());
+    assertEquals(webRtc, connections.get(0).getAsJsonObject().get("sink").getAsString());
+
+    release(webRtc);
+    assertEquals(0, invoke(player, "getSinkConnections", null).getAsJsonArray().size());
+  }
+
+  @Test
+  public void failedCreationsKeepTheirNewRef() throws IOException {
+
+    JsonArray operations = new JsonArray();
+    operations.add(request(0, "create", createParams("MediaPipeline", null)));
+    // Fails, because its pipeline doesn't exist
+    operations.add(request(1, "create", createParams("WebRtcEndpoint", "missing")));
+    operations.add(request(2, "create", createParams("PlayerEndpoint", "newref:0")));
+    operations.add(request(3, "invoke", invokeParams("newref:2", "getMediaPipeline")));
+    operations.add(request(4, "invoke", invokeParams("newref:1", "getMediaPipeline")));
+
+    JsonObject params = new JsonObject();
+    params.add("operations", operations);
+    JsonArray responses = value(client.sendRequest("transaction", params)).getAsJsonArray();
+
+    String pipeline = value(responses.get(0)).getAsString();
+    assertTrue(responses.get(1).getAsJsonObject().has("error"));
+    assertEquals(pipeline, value(responses.get(3)).getAsString());
+    JsonObject error = responses.get(4).getAsJsonObject().getAsJsonObject("error");
+    assertEquals(KmsSimulatorHandler.MEDIA_OBJECT_NOT_FOUND, error.get("code").getAsInt());
+  }
+
+  @Test
+  public void negotiationProducesIceCandidates()throws IOException, InterruptedException {
+
+    handler.withIceCandidates(3);
+
+    String pipeline = create("MediaPipeline", null);
+    String offerer = create("WebRtcEndpoint", pipeline);
+    String answerer = create("WebRtcEndpoint", pipeline);
+
+    subscribe(answerer, "IceCandidateFound");
+    subscribe(answerer, "IceGatheringDone");
+
+    String offer = invoke(offerer, "generateOffer", null).getAsString();
+    JsonObject offerParams = new JsonObject();
+    offerParams.addProperty("offer", offer);
+    String answer = invoke(answerer, "processOffer", offerParams).getAsString();
+
+    List<String> mids = FakeSdp.getMids(answer);
+    assertEquals(FakeSdp.getMids(offer), mids);
+    assertTrue(answer.contains("a=ice-ufrag:"));
+    assertTrue(answer.contains("a=fingerprint:sha-256 "));
+    assertEquals(answer, invoke(answerer, "getLocalSessionDescriptor", null).getAsString());
+
+    invoke(answerer, "gatherCandidates", null);
+
+    for (int i = 0; i < mids.size() * 3; i++) {
+      JsonObject event = nextEvent();
+      assertEquals("IceCandidateFound", event.get("type").getAsString());
+      assertEquals(answerer, event.get("object").getAsString());
+      JsonObject candidate = event.getAsJsonObject("data").getAsJsonObject("candidate");
+      assertEquals(mids.get(i / 3), candidate.get("sdpMid").getAsString());
+      assertTrue(candidate.get("candidate").getAsString().startsWith("candidate:"));
+    }
+    assertEquals("IceGatheringDone", nextEvent().get("type").getAsString());
+  }
+
+  @Test
+  public void injectedFailuresAreReturnedAsErrors() throws IOException {
+
+    handler.withFailingOperation("processOffer");
+
+    String pipeline = create("MediaPipeline", null);
+    String element = create("WebRtcEndpoint", pipeline);
+
+    JsonObject params = new JsonObject();
+    params.addProperty("offer", new FakeSdp(true).createOffer());
+    try {
+      invoke(element, "processOffer", params);
+      fail("Failure not injected");
+    } catch (JsonRpcErrorException e) {
+      assertEquals(KmsSimulatorHandler.UNEXPECTED_ERROR, e.getCode());
+    }
+
+    handler.withoutFailingOperation("processOffer");
+    invoke(element, "processOffer", params);
+  }
+
+  @Test
+  public void settersStoreValues() throws IOException {
+
+    String pipeline = create("MediaPipeline", null);
+    String element = create("WebRtcEndpoint", pipeline);
+
+    JsonObject params = new JsonObject();
+    params.addProperty("maxVideoSendBandwidth", 500);
+    invoke(element, "setMaxVideoSendBandwidth", params);
+
+    assertEquals(500, invoke(element, "getMaxVideoSendBandwidth", null).getAsInt());
+  }
+
+  private String create(String type, String pipeline) throws IOException {
+    return value(client.sendRequest("create", createParams(type, pipeline))).getAsString();
+  }
+
+  private JsonElement invoke(String object, String operation, JsonObject operationParams)
+      throws IOException {
+    JsonObject params = invokeParams(object, operation);
+    if (operationParams != null) {
+      params.add("operationParams", operationParams);
+    }
+    return value(client.sendRequest("invoke", params));
+  }
+
+  private void subscribe(String object, String type) throws IOException {
+    JsonObject params = new JsonObject();
+    params.addProperty("object", object);
+    params.addProperty("type", type);
+    client.sendRequest("subscribe", params);
+  }
+
+  private void release(String object) throws IOException {
+    JsonObject params = new JsonObject();
+    params.addProperty("object", object);
+    client.sendRequest("release", params);
+  }
+
+  private JsonObject nextEvent() throws InterruptedException {
+    JsonObject event = events.poll(10, TimeUnit.SECONDS);
+    if (event == null) {
+      fail("Event not received");
+    }
+    return event;
+  }
+
+  private static JsonObject createParams(String type, String pipeline) {
+    JsonObject params = new JsonObject();
+    params.addProperty("type", type);
+    JsonObject constructorParams = new JsonObject();
+    if (pipeline != null) {
+      constructorParams.addProperty("mediaPipeline", pipeline);
+    }
+    params.add("constructorParams", constructorParams);
+    return params;
+  }
+
+  private static JsonObject invokeParams(String object, String operation) {
+    JsonObject params = new JsonObject();
+    params.addProperty("object", object);
+    params.addProperty("operation", operation);
+    params.add("operationParams", new JsonObject());
+    return params;
+  }
+
+  private static JsonObject request(int id, String method, JsonObject params) {
+    JsonObject request = new JsonObject();
+    request.addProperty("jsonrpc", "2.0");
+    request.addProperty("id", id);
+    request.addProperty("method", method);
+    request.add("params", params);
+    return request;
+  }
+
+  private static JsonElement value(JsonElement result) {
+    JsonObject resultObject = result.getAsJsonObject();
+    if (resultObject.has("result")) {
+      resultObject = resultObject.getAsJsonObject("result");
+    }
+    return resultObject.get("value");
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.kms.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.ElementConnectionData;
+import org.kurento.client.EventListener;
+import org.kurento.client.IceCandidate;
+import org.kurento.client.IceCandidateFoundEvent;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.PlayerEndpoint;
+import org.kurento.client.Transaction;
+import org.kurento.client.WebRtcEndpoint;
+import org.kurento.client.internal.server.KurentoServerException;
+
+/**
+ * Uses the simulator through Kurento Client, as the tests of applications do instead of a real
+ * media server.
+ */
+public class KurentoClientSimulatorTest {
+
+  private static final int ICE_CANDIDATES = 2;
+
+  private KmsSimulatorHandler handler;
+  private KurentoClient kurento;
+
+  @Before
+  public void setupSimulator() {
+    handler = new KmsSimulatorHandler().withIceCandidates(ICE_CANDIDATES);
+    kurento = KmsSimulator.createLocalClient(handler);
+  }
+
+  @After
+  public void teardown() {
+    kurento.destroy();
+    handler.destroy();
+  }
+
+  @Test
+  public void pipelineIsConnectedAndNegotiated() throws InterruptedException {
+
+    MediaPipeline pipeline = kurento.createMediaPipeline();
+    PlayerEndpoint player = new PlayerEndpoint.Builder(pipeline, "http://localhost/video.webm")
+        .build();
+    WebRtcEndpoint webRtc = new WebRtcEndpoint.Builder(pipeline).build();
+    player.connect(webRtc);
+
+    List<ElementConnectionData> connections = player.getSinkConnections();
+    assertFalse(connections.isEmpty());
+    for (ElementConnectionData connection : connections) {
+      assertEquals(webRtc.getId(), connection.getSink().getId());
+    }
+
+    final BlockingQueue<IceCandidate> candidates = new LinkedBlockingQueue<>();
+    webRtc.addIceCandidateFoundListener(new EventListener<IceCandidateFoundEvent>() {
+      @Override
+      public void onEvent(IceCandidateFoundEvent event) {
+        candidates.add(event.getCandidate());
+      }
+    });
+
+    String offer = new FakeSdp(true).createOffer();
+    String answer = webRtc.processOffer(offer);
+    List<String> mids = FakeSdp.getMids(answer);
+    assertEquals(FakeSdp.getMids(offer), mids);
+    assertEquals(answer, webRtc.getLocalSessionDescriptor());
+
+    webRtc.gatherCandidates();
+    for (int i = 0; i < mids.size() * ICE_CANDIDATES; i++) {
+      IceCandidate candidate = candidates.poll(10, TimeUnit.SECONDS);
+      assertNotNull("Candidate " + i + " not received", candidate);
+      assertTrue(mids.contains(candidate.getSdpMid()));
+    }
+
+    pipeline.release();
+    assertEquals(0, handler.getNumObjects());
+  }
+
+  @Test
+  public void transactionsCreateElements() {
+
+    Transaction tx = kurento.beginTransaction();
+    MediaPipeline pipeline = kurento.createMediaPipeline(tx);
+    WebRtcEndpoint webRtc = new WebRtcEndpoint.Builder(pipeline).build(tx);
+    tx.commit();
+
+    assertEquals(pipeline.getId(), webRtc.getMediaPipeline().getId());
+    assertEquals(2, handler.getNumObjects());
+  }
+
+  @Test
+  public void injectedFailuresAreThrown() {
+
+    MediaPipeline pipeline = kurento.createMediaPipeline();
+    WebRtcEndpoint webRtc = new WebRtcEndpoint.Builder(pipeline).build();
+
+    handler.withFailingOperation("processOffer");
+    try {
+      webRtc.processOffer(new FakeSdp(true).createOffer());
+      fail("Failure not injected");
+    } catch (KurentoServerException e) {
+      assertEquals(KmsSimulatorHandler.UNEXPECTED_ERROR, e.getCode());
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemLayout;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the startup time of a {@link FileSystemRepository} and the latency of
+ * {@link FileSystemRepository#findRepositoryItemById(String)} with many items.
+ *
+ * <p>
+ * Usage: {@code FileSystemRepositoryBenchmark [numItems] [flat|sharded] [folder]}. By default, 1M
+ * items with the sharded layout in a new temporary folder. Items already stored in the folder are
+ * reused, so the layouts can be compared without creating the files again.
+ * </p>
+ */
+public class FileSystemRepositoryBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(FileSystemRepositoryBenchmark.class);
+
+  private static final int NUM_LOOKUPS = 100000;
+
+  private final int numItems;
+  private final String layout;
+  private final File folder;
+
+  public FileSystemRepositoryBenchmark(int numItems, String layout, File folder) {
+    this.numItems = numItems;
+    this.layout = layout;
+    this.folder = folder;
+  }
+
+  public void execute() throws IOException {
+
+    createItems();
+
+    long start = System.nanoTime();
+    FileSystemRepository repository = createRepository();
+    log.info("Startup: {} ms", elapsedMillis(start));
+
+    // The first startup of a folder without descriptor lists its files
+    start = System.nanoTime();
+    repository = createRepository();
+    log.info("Startup with descriptor: {} ms", elapsedMillis(start));
+
+    long[] latencies = new long[NUM_LOOKUPS];
+    Random random = new Random();
+    for (int i = 0; i < NUM_LOOKUPS; i++) {
+      String id = Integer.toString(random.nextInt(numItems) + 1);
+      long lookupStart = System.nanoTime();
+      repository.findRepositoryItemById(id);
+      latencies[i] = System.nanoTime() - lookupStart;
+    }
+
+    Arrays.sort(latencies);
+    log.info("findRepositoryItemById over {} items: p50 {} us, p99 {} us, max {} us", numItems,
+        percentile(latencies, 50), percentile(latencies, 99), percentile(latencies, 100));
+
+    start = System.nanoTime();
+    for (int i = 0; i < 1000; i++) {
+      repository.createRepositoryItem();
+    }
+    log.info("1000 new ids allocated in {} ms", elapsedMillis(start));
+  }
+
+  private void createItems() throws IOException {
+
+    FileSystemLayout fileSystemLayout = FileSystemRepository.createLayout(layout);
+
+    long start = System.nanoTime();
+    int created = 0;
+    for (int i = 1; i <= numItems; i++) {
+      File file = fileSystemLayout.getFile(folder, Integer.toString(i));
+      if (!file.exists()) {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[] { 1 });
+        created++;
+      }
+    }
+
+    log.info("{} items created in {} with {} layout in {} ms", created, folder, layout,
+        elapsedMillis(start));
+  }
+
+  private FileSystemRepository createRepository() {
+    RepositoryApiConfiguration config = new RepositoryApiConfiguration();
+    config.setFileSystemFolder(folder.getAbsolutePath());
+    config.setFileSystemLayout(layout);
+    return new FileSystemRepository(config, new RepositoryHttpManager());
+  }
+
+  private static long percentile(long[] sortedLatencies, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+    return sortedLatencies[Math.max(index, 0)] / 1000;
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  public static void main(String[] args) throws IOException {
+
+    int numItems = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    String layout = args.length > 1 ? args[1] : "sharded";
+    File folder = args.length > 2 ? new File(args[2])
+        : Files.createTempDirectory("repository-benchmark").toFile();
+
+    new FileSystemRepositoryBenchmark(numItems, layout, folder).execute();
+  }
+}
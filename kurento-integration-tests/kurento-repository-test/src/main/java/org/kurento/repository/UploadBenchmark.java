@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Uploads many large files concurrently to a local repository server and reports the throughput
+ * and the peak heap used by the server while receiving them.
+ *
+ * <p>
+ * Usage: {@code UploadBenchmark [numUploads] [sizeInMB] [multipart|raw]}. By default, 20
+ * concurrent multipart uploads of 100 MB each.
+ * </p>
+ */
+public class UploadBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(UploadBenchmark.class);
+
+  private static final String BOUNDARY = "KurentoUploadBenchmarkBoundary";
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final int numUploads;
+  private final long uploadSize;
+  private final boolean multipart;
+
+  private final AtomicLong peakHeapUsed = new AtomicLong();
+
+  public UploadBenchmark(int numUploads, long uploadSize, boolean multipart) {
+    this.numUploads = numUploads;
+    this.uploadSize = uploadSize;
+    this.multipart = multipart;
+  }
+
+  public void execute() throws Exception {
+
+    ConfigurableApplicationContext context = KurentoRepositoryServerApp.start();
+
+    ExecutorService exec = Executors.newFixedThreadPool(numUploads + 1);
+
+    try {
+
+      Repository repository = (Repository) context.getBean("repository");
+
+      List<RepositoryItem> items = new ArrayList<>();
+      List<RepositoryHttpRecorder> recorders = new ArrayList<>();
+      List<Callable<Long>> uploads = new ArrayList<>();
+      for (int i = 0; i < numUploads; i++) {
+        RepositoryItem item = repository.createRepositoryItem();
+        RepositoryHttpRecorder recorder = item.createRepositoryHttpRecorder();
+        final String url = recorder.getURL();
+        items.add(item);
+        recorders.add(recorder);
+        uploads.add(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            return upload(url);
+          }
+        });
+      }
+
+      System.gc();
+      long heapBefore = usedHeap();
+      peakHeapUsed.set(heapBefore);
+
+      final Future<?> sampler = exec.submit(new Runnable() {
+        @Override
+        public void run() {
+          while (!Thread.currentThread().isInterrupted()) {
+            long used = usedHeap();
+            if (used > peakHeapUsed.get()) {
+              peakHeapUsed.set(used);
+            }
+            try {
+              Thread.sleep(50);
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+        }
+      });
+
+      long start = System.nanoTime();
+
+      List<Future<Long>> results = new ArrayList<>();
+      for (Callable<Long> upload : uploads) {
+        results.add(exec.submit(upload));
+      }
+
+      long maxUploadMillis = 0;
+      for (Future<Long> result : results) {
+        maxUploadMillis = Math.max(maxUploadMillis, result.get());
+      }
+
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      sampler.cancel(true);
+
+      for (RepositoryHttpRecorder recorder : recorders) {
+        recorder.stop();
+      }
+
+      for (RepositoryItem item : items) {
+        if (item.getAttributes().getContentLength() != uploadSize) {
+          log.warn("Item {} has {} bytes instead of {}", item.getId(),
+              item.getAttributes().getContentLength(), uploadSize);
+        }
+        repository.remove(item);
+      }
+
+      long totalBytes = numUploads * uploadSize;
+      log.info("{} {} uploads of {} MB in {} ms (slowest {} ms): {} MB/s", numUploads,
+          multipart ? "multipart" : "raw", uploadSize / (1024 * 1024), elapsedMillis,
+          maxUploadMillis, totalBytes * 1000 / (1024 * 1024) / Math.max(elapsedMillis, 1));
+      log.info("Heap used: {} MB before, {} MB peak", heapBefore / (1024 * 1024),
+          peakHeapUsed.get() / (1024 * 1024));
+
+    } finally {
+      exec.shutdownNow();
+      context.close();
+    }
+  }
+
+  private long upload(String url) throws IOException {
+
+    byte[] header = ("--" + BOUNDARY + "\r\n"
+        + "Content-Disposition: form-data; name=\"file\"; filename=\"benchmark.bin\"\r\n"
+        + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    byte[] trailer = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    long contentLength = multipart ? header.length + uploadSize + trailer.length : uploadSize;
+
+    long start = System.nanoTime();
+
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    conn.setDoOutput(true);
+    conn.setRequestMethod("POST");
+    // The content is streamed without being buffered by the client
+    conn.setFixedLengthStreamingMode(contentLength);
+    conn.setRequestProperty("Content-Type",
+        multipart ? "multipart/form-data; boundary=" + BOUNDARY : "application/octet-stream");
+
+    byte[] chunk = new byte[CHUNK_SIZE];
+    for (int i = 0; i < chunk.length; i++) {
+      chunk[i] = (byte) i;
+    }
+
+    try (OutputStream os = conn.getOutputStream()) {
+      if (multipart) {
+        os.write(header);
+      }
+      long remaining = uploadSize;
+      while (remaining > 0) {
+        int length = (int) Math.min(chunk.length, remaining);
+        os.write(chunk, 0, length);
+        remaining -= length;
+      }
+      if (multipart) {
+        os.write(trailer);
+      }
+    }
+
+    int status = conn.getResponseCode();
+    conn.disconnect();
+
+    if (status != HttpURLConnection.HTTP_OK) {
+      throw new IOException("Upload to " + url + " failed with status " + status);
+    }
+
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  public static void main(String[] args) throws Exception {
+
+    int numUploads = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    long sizeInMb = args.length > 1 ? Long.parseLong(args[1]) : 100;
+    boolean multipart = args.length > 2 ? !"raw".equals(args[2]) : true;
+
+    new UploadBenchmark(numUploads, sizeInMb * 1024 * 1024, multipart).execute();
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kurento.repository.KurentoRepositoryServerApp;
+import org.kurento.repository.Repository;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryClient;
+import org.kurento.repository.RepositoryClientProvider;
+import org.kurento.repository.RepositoryHttpPlayer;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.RepositoryApplicationContextConfiguration;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.RepositoryHttpPlayerImpl;
+import org.kurento.repository.internal.http.BandwidthManager;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.service.pojo.RepositoryBandwidthLimits;
+import org.kurento.repository.service.pojo.RepositoryPlayerBandwidth;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Rates achieved with the bandwidth limits of the players, measured with transfers that send as
+ * fast as the limits allow, and limits changed through the REST API while downloading.
+ */
+public class BandwidthShapingTest {
+
+  private static final Logger log = LoggerFactory.getLogger(BandwidthShapingTest.class);
+
+  private static final int CHUNK_SIZE = 16 * 1024;
+  private static final long MEASURE_MILLIS = 2000;
+  private static final double TOLERANCE = 0.1;
+
+  private static final long KB = 1024;
+  private static final long MB = 1024 * KB;
+
+  private static ConfigurableApplicationContext app;
+  private static Repository repository;
+  private static RepositoryClient restService;
+
+  private RepositoryHttpManager httpManager = new RepositoryHttpManager();
+  private BandwidthManager bandwidthManager = httpManager.getBandwidthManager();
+
+  @BeforeClass
+  public static void setUpClass() {
+    System.setProperty(RepositoryApplicationContextConfiguration.KEY_REPO_TYPE,
+        RepositoryApiConfiguration.RepoType.FILESYSTEM.getTypeValue());
+    app = KurentoRepositoryServerApp.start();
+    repository = (Repository) app.getBean("repository");
+    restService = RepositoryClientProvider
+        .create("http://" + RepositoryApplicationContextConfiguration.SERVER_HOSTNAME + ":"
+            + RepositoryApplicationContextConfiguration.SERVER_PORT);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    app.close();
+  }
+
+  @Test
+  public void sessionLimitIsApplied() throws Exception {
+
+    bandwidthManager.setMaxSessionBandwidth(MB);
+    RepositoryHttpEndpointImpl player = createPlayer("s1");
+
+    assertRate(MB, measureRates(bandwidthManager.startTransfer(player, "10.0.0.1"))[0]);
+
+    // The limit of the player overrides the default one
+    player.setMaxBandwidth(2 * MB);
+    assertRate(2 * MB, measureRates(bandwidthManager.startTransfer(player, "10.0.0.1"))[0]);
+  }
+
+  @Test
+  public void globalBandwidthIsSharedByWeight() throws Exception {
+
+    bandwidthManager.setMaxBandwidth(3 * MB);
+    RepositoryHttpEndpointImpl light = createPlayer("light");
+    RepositoryHttpEndpointImpl heavy = createPlayer("heavy");
+    heavy.setBandwidthWeight(2);
+
+    double[] rates = measureRates(bandwidthManager.startTransfer(light, "10.0.0.1"),
+        bandwidthManager.startTransfer(heavy, "10.0.0.2"));
+
+    assertRate(MB, rates[0]);
+    assertRate(2 * MB, rates[1]);
+  }
+
+  @Test
+  public void unusedShareIsGivenToOtherSessions() throws Exception {
+
+    bandwidthManager.setMaxBandwidth(3 * MB);
+    RepositoryHttpEndpointImpl limited = createPlayer("limited");
+    limited.setMaxBandwidth(MB / 2);
+
+    double[] rates = measureRates(bandwidthManager.startTransfer(limited, "10.0.0.1"),
+        bandwidthManager.startTransfer(createPlayer("s1"), "10.0.0.2"),
+        bandwidthManager.startTransfer(createPlayer("s2"), "10.0.0.3"));
+
+    assertRate(MB / 2, rates[0]);
+    assertRate(5 * MB / 4, rates[1]);
+    assertRate(5 * MB / 4, rates[2]);
+  }
+
+  @Test
+  public void addressLimitIsSharedByItsSessions() throws Exception {
+
+    bandwidthManager.setMaxAddressBandwidth(2 * MB);
+
+    double[] rates = measureRates(bandwidthManager.startTransfer(createPlayer("s1"), "10.0.0.1"),
+        bandwidthManager.startTransfer(createPlayer("s2"), "10.0.0.1"));
+
+    assertRate(2 * MB, rates[0] + rates[1]);
+  }
+
+  @Test
+  public void limitsChangedThroughRestApiApplyToDownloads() throws Exception {
+
+    RepositoryItem item = repository.createRepositoryItem();
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(new byte[(int) MB]);
+    }
+
+    RepositoryBandwidthLimits limits = new RepositoryBandwidthLimits();
+    limits.setMaxSessionBandwidth(512 * KB);
+    assertEquals(512 * KB, (long) restService.setBandwidthLimits(limits).getMaxSessionBandwidth());
+
+    try {
+      RepositoryHttpPlayer player = item.createRepositoryHttpPlayer();
+      assertRate(512 * KB, download(player.getURL()));
+
+      RepositoryPlayerBandwidth playerBandwidth = new RepositoryPlayerBandwidth();
+      playerBandwidth.setUrl(player.getURL());
+      playerBandwidth.setMaxBandwidth(256 * KB);
+      assertEquals(256 * KB, (long) restService.setPlayerBandwidth(playerBandwidth).getBandwidth());
+      assertRate(256 * KB, download(player.getURL()));
+
+    } finally {
+      limits.setMaxSessionBandwidth(BandwidthManager.UNLIMITED);
+      restService.setBandwidthLimits(limits);
+    }
+  }
+
+  private RepositoryHttpEndpointImpl createPlayer(String sessionId) {
+    return new RepositoryHttpPlayerImpl(null, sessionId, "url/" + sessionId, httpManager);
+  }
+
+  /**
+   * Sends chunks through each transfer as fast as its bandwidth allows, returning the rate achieved
+   * by each one in bytes per second. The transfers are finished afterwards.
+   */
+  private static double[] measureRates(BandwidthManager.Transfer... transfers) throws Exception {
+
+    ExecutorService executor = Executors.newFixedThreadPool(transfers.length);
+    List<Future<Double>> rates = new ArrayList<>();
+    for (final BandwidthManager.Transfer transfer : transfers) {
+      rates.add(executor.submit(new Callable<Double>() {
+        @Override
+        public Double call() throws IOException {
+          long bytes = 0;
+          long start = System.nanoTime();
+          long elapsedNanos;
+          do {
+            transfer.acquire(CHUNK_SIZE);
+            bytes += CHUNK_SIZE;
+            elapsedNanos = System.nanoTime() - start;
+          } while (elapsedNanos < MEASURE_MILLIS * 1000000);
+          return bytes * 1e9 / elapsedNanos;
+        }
+      }));
+    }
+
+    double[] result = new double[transfers.length];
+    for (int i = 0; i < transfers.length; i++) {
+      result[i] = rates.get(i).get();
+    }
+    executor.shutdown();
+
+    for (BandwidthManager.Transfer transfer : transfers) {
+      transfer.finish();
+    }
+    return result;
+  }
+
+  /**
+   * Downloads the content of a player, returning the rate achieved in bytes per second.
+   */
+  private static double download(String url) throws IOException {
+
+    byte[] buffer = new byte[CHUNK_SIZE];
+    long bytes = 0;
+    long start = System.nanoTime();
+    try (InputStream is = new URL(url).openStream()) {
+      int n;
+      while ((n = is.read(buffer)) != -1) {
+        bytes += n;
+      }
+    }
+    return bytes * 1e9 / (System.nanoTime() - start);
+  }
+
+  private static void assertRate(long expected, double rate) {
+    log.info("Expected rate {} bytes/s, achieved {} bytes/s", expected, (long) rate);
+    assertTrue("Rate " + (long) rate + " bytes/s is not close to " + expected,
+        Math.abs(rate - expected) <= expected * TOLERANCE);
+  }
+}
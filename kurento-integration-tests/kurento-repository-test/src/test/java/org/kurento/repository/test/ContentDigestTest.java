@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
+import org.kurento.repository.internal.repoimpl.filesystem.FileRepositoryItem;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemRepository;
+
+/**
+ * Content digests and strong ETags of the items of a {@link FileSystemRepository}, without
+ * starting the repository server.
+ */
+public class ContentDigestTest {
+
+  private static final String CONTENT = "abc";
+  private static final String CONTENT_SHA256 =
+      "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+  private File folder;
+
+  @Before
+  public void createFolder() throws IOException {
+    folder = Files.createTempDirectory("repository").toFile();
+  }
+
+  @Test
+  public void digestIsUsedAsStrongETag() throws IOException {
+
+    FileSystemRepository repository = createRepository(false);
+    RepositoryItem item = store(repository, CONTENT);
+
+    assertEquals(CONTENT_SHA256,
+        item.getMetadata().get(AbstractRepositoryItem.CONTENT_DIGEST_METADATA));
+    assertEquals("\"" + CONTENT_SHA256 + "\"", item.getAttributes().getETag());
+
+    // Replacing the metadata keeps the digest
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("name", "abc");
+    item.setMetadata(metadata);
+    repository.close();
+
+    repository = createRepository(false);
+    RepositoryItem loaded = repository.findRepositoryItemById(item.getId());
+    assertEquals("abc", loaded.getMetadata().get("name"));
+    assertEquals("\"" + CONTENT_SHA256 + "\"", loaded.getAttributes().getETag());
+  }
+
+  @Test
+  public void sameSizeWritesHaveDifferentETags() throws IOException {
+
+    FileSystemRepository repository = createRepository(false);
+
+    String eTag = store(repository, "abc").getAttributes().getETag();
+    assertFalse(eTag.equals(store(repository, "abd").getAttributes().getETag()));
+  }
+
+  @Test
+  public void identicalContentIsDeduplicated() throws IOException {
+
+    FileSystemRepository repository = createRepository(true);
+    FileRepositoryItem first = (FileRepositoryItem) store(repository, CONTENT);
+    FileRepositoryItem second = (FileRepositoryItem) store(repository, CONTENT);
+    FileRepositoryItem other = (FileRepositoryItem) store(repository, "other");
+
+    assertTrue(Files.isSameFile(first.getFile().toPath(), second.getFile().toPath()));
+    assertFalse(Files.isSameFile(first.getFile().toPath(), other.getFile().toPath()));
+
+    repository.remove(first);
+    assertEquals(CONTENT, read(repository.findRepositoryItemById(second.getId())));
+
+    repository.remove(second);
+    repository.remove(other);
+    assertFalse(new File(folder, "metadata/content/" + CONTENT_SHA256.substring(0, 2) + "/"
+        + CONTENT_SHA256).exists());
+  }
+
+  private FileSystemRepository createRepository(boolean deduplication) {
+    RepositoryApiConfiguration config = new RepositoryApiConfiguration();
+    config.setFileSystemFolder(folder.getAbsolutePath());
+    config.setFileSystemDeduplication(deduplication);
+    return new FileSystemRepository(config, new RepositoryHttpManager());
+  }
+
+  private RepositoryItem store(FileSystemRepository repository, String content)
+      throws IOException {
+    RepositoryItem item = repository.createRepositoryItem();
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return item;
+  }
+
+  private String read(RepositoryItem item) throws IOException {
+    try (InputStream is = item.createInputStreamToRead()) {
+      byte[] content = new byte[(int) item.getAttributes().getContentLength()];
+      int read = 0;
+      while (read < content.length) {
+        read += is.read(content, read, content.length - read);
+      }
+      return new String(content, StandardCharsets.UTF_8);
+    }
+  }
+}
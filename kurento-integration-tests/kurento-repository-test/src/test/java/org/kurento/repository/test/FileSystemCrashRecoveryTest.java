@@ -0,0 +1,230 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItem.State;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.http.MultipartUpload;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
+import org.kurento.repository.internal.repoimpl.filesystem.FileRepositoryItem;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemRepository;
+
+/**
+ * Items being stored when the repository crashes. The crash is injected by abandoning a repository
+ * in the middle of the uploads, without closing their streams nor the repository, and starting a
+ * new one in the same folder.
+ */
+public class FileSystemCrashRecoveryTest {
+
+  private static final int CONTENT_SIZE = 256 * 1024;
+
+  private File folder;
+  private RepositoryApiConfiguration config;
+  private byte[] content;
+
+  @Before
+  public void createFolder() throws IOException {
+    folder = Files.createTempDirectory("repository").toFile();
+    config = new RepositoryApiConfiguration();
+    config.setFileSystemFolder(folder.getAbsolutePath());
+
+    content = new byte[CONTENT_SIZE];
+    new Random(0).nextBytes(content);
+  }
+
+  @Test
+  public void itemsBeingStoredAreNotServed() throws IOException {
+
+    FileSystemRepository repository = startRepository();
+    RepositoryItem item = repository.createRepositoryItem();
+    OutputStream os = item.createOutputStreamToWrite();
+    os.write(content, 0, CONTENT_SIZE / 2);
+    os.flush();
+
+    assertFalse(((FileRepositoryItem) item).getFile().exists());
+    RepositoryItem reader = repository.findRepositoryItemById(item.getId());
+    assertEquals(State.STORING, reader.getState());
+    try {
+      reader.createInputStreamToRead();
+      fail("Content being stored is readable");
+    } catch (IllegalStateException e) {
+      // Not stored yet
+    }
+
+    os.write(content, CONTENT_SIZE / 2, CONTENT_SIZE / 2);
+    os.close();
+    assertStored(repository, item.getId());
+  }
+
+  @Test
+  public void interruptedUploadsAreQuarantined() throws IOException {
+
+    FileSystemRepository repository = startRepository();
+    RepositoryItem stored = storeItem(repository);
+    RepositoryItem interrupted = repository.createRepositoryItem();
+    OutputStream os = interrupted.createOutputStreamToWrite();
+    os.write(content, 0, CONTENT_SIZE / 2);
+    os.flush();
+
+    // Crash: the stream and the repository are not closed
+    repository = startRepository();
+
+    assertStored(repository, stored.getId());
+    assertNotFound(repository, interrupted.getId());
+
+    File[] quarantined = new File(folder, "metadata/quarantine").listFiles();
+    assertEquals(1, quarantined.length);
+    assertTrue(quarantined[0].getName().startsWith(interrupted.getId() + "."));
+    assertEquals(CONTENT_SIZE / 2, quarantined[0].length());
+
+    // The item can be stored again
+    RepositoryItem retried = repository.createRepositoryItem(interrupted.getId());
+    assertEquals(State.NEW, retried.getState());
+    try (OutputStream retriedOs = retried.createOutputStreamToWrite()) {
+      retriedOs.write(content);
+    }
+    assertStored(repository, interrupted.getId());
+  }
+
+  @Test
+  public void interruptedUploadsAreDeletedWithoutQuarantine() throws IOException {
+
+    config.setFileSystemQuarantine(false);
+    FileSystemRepository repository = startRepository();
+    RepositoryItem interrupted = repository.createRepositoryItem();
+    interrupted.createOutputStreamToWrite().write(content);
+
+    repository = startRepository();
+
+    assertNotFound(repository, interrupted.getId());
+    assertFalse(new File(folder, "metadata/quarantine").exists());
+    assertEquals(0, new File(folder, "metadata/storing").listFiles().length);
+  }
+
+  @Test
+  public void interruptedMultipartUploadsAreNotServed() throws IOException {
+
+    RepositoryHttpManager httpManager = new RepositoryHttpManager();
+    FileSystemRepository repository = new FileSystemRepository(config, httpManager);
+    RepositoryItem item = repository.createRepositoryItem();
+    MultipartUpload upload = httpManager.getMultipartUploads().startUpload(
+        (RepositoryHttpEndpointImpl) item.createRepositoryHttpRecorder(), CONTENT_SIZE / 4);
+    upload.writePart(2, new ByteArrayInputStream(
+        Arrays.copyOfRange(content, CONTENT_SIZE / 4, CONTENT_SIZE / 2)));
+
+    repository = startRepository();
+
+    assertNotFound(repository, item.getId());
+    assertEquals(1, new File(folder, "metadata/quarantine").listFiles().length);
+  }
+
+  @Test
+  public void storedItemsSurviveTheCrash() throws IOException {
+
+    FileSystemRepository repository = startRepository();
+    RepositoryItem item = repository.createRepositoryItem();
+    item.getMetadata().put("name", "abc");
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(content);
+    }
+
+    repository = startRepository();
+
+    RepositoryItem loaded = assertStored(repository, item.getId());
+    assertEquals("abc", loaded.getMetadata().get("name"));
+    assertEquals(State.STORED.name(), loaded.getMetadata().get(FileRepositoryItem.STATE_METADATA));
+    assertEquals(((AbstractRepositoryItem) item).getContentDigest(),
+        ((AbstractRepositoryItem) loaded).getContentDigest());
+  }
+
+  @Test
+  public void removedItemsAreNotRestored() throws IOException {
+
+    FileSystemRepository repository = startRepository();
+    RepositoryItem item = repository.createRepositoryItem();
+    item.getMetadata().put("name", "removed");
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(content);
+    }
+    repository.remove(item);
+
+    repository = startRepository();
+
+    assertNotFound(repository, item.getId());
+    assertTrue(repository.findRepositoryItemsByAttValue("name", "removed").isEmpty());
+  }
+
+  private FileSystemRepository startRepository() {
+    return new FileSystemRepository(config, new RepositoryHttpManager());
+  }
+
+  private RepositoryItem storeItem(FileSystemRepository repository) throws IOException {
+    RepositoryItem item = repository.createRepositoryItem();
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(content);
+    }
+    return item;
+  }
+
+  private RepositoryItem assertStored(FileSystemRepository repository, String id)
+      throws IOException {
+
+    RepositoryItem item = repository.findRepositoryItemById(id);
+    assertEquals(State.STORED, item.getState());
+    try (InputStream is = item.createInputStreamToRead()) {
+      byte[] read = new byte[CONTENT_SIZE + 1];
+      int length = 0;
+      int n;
+      while ((n = is.read(read, length, read.length - length)) != -1) {
+        length += n;
+      }
+      assertArrayEquals(content, Arrays.copyOf(read, length));
+    }
+    return item;
+  }
+
+  private static void assertNotFound(FileSystemRepository repository, String id) {
+    try {
+      repository.findRepositoryItemById(id);
+      fail("Incomplete item " + id + " found");
+    } catch (NoSuchElementException e) {
+      // Incomplete items are not served
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.filesystem.FileRepositoryItem;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemLayoutMigration;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemRepository;
+import org.kurento.repository.internal.repoimpl.filesystem.FlatFileSystemLayout;
+import org.kurento.repository.internal.repoimpl.filesystem.ShardedFileSystemLayout;
+
+/**
+ * Layouts of the folder of a {@link FileSystemRepository}, without starting the repository server.
+ */
+public class FileSystemLayoutTest {
+
+  private File folder;
+
+  @Before
+  public void createFolder() throws IOException {
+    folder = Files.createTempDirectory("repository").toFile();
+  }
+
+  @Test
+  public void itemsAreStoredInShards() throws IOException {
+
+    FileSystemRepository repository = createRepository(ShardedFileSystemLayout.NAME);
+
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      ids.add(store(repository.createRepositoryItem()));
+    }
+    ids.add(store(repository.createRepositoryItem("video.webm")));
+    repository.close();
+
+    assertFalse(new File(folder, ids.get(0)).exists());
+
+    repository = createRepository(ShardedFileSystemLayout.NAME);
+    for (String id : ids) {
+      File file = ((FileRepositoryItem) repository.findRepositoryItemById(id)).getFile();
+      assertEquals(folder, file.getParentFile().getParentFile().getParentFile());
+    }
+
+    // Ids are not reused after restarting
+    long lastId = Long.parseLong(ids.get(99));
+    assertTrue(Long.parseLong(repository.createRepositoryItem().getId()) > lastId);
+  }
+
+  @Test
+  public void flatFolderIsMigrated() throws IOException {
+
+    FileSystemRepository repository = createRepository(FlatFileSystemLayout.NAME);
+
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      ids.add(store(repository.createRepositoryItem()));
+    }
+    repository.close();
+
+    try {
+      createRepository(ShardedFileSystemLayout.NAME);
+      throw new AssertionError("Flat folder used with sharded layout");
+    } catch (KurentoException e) {
+      // Expected
+    }
+
+    assertEquals(100, FileSystemLayoutMigration.migrate(folder, ShardedFileSystemLayout.NAME));
+
+    repository = createRepository(ShardedFileSystemLayout.NAME);
+    for (String id : ids) {
+      RepositoryItem item = repository.findRepositoryItemById(id);
+      assertEquals(1, item.getAttributes().getContentLength());
+    }
+    assertFalse(ids.contains(repository.createRepositoryItem().getId()));
+  }
+
+  private FileSystemRepository createRepository(String layout) {
+    RepositoryApiConfiguration config = new RepositoryApiConfiguration();
+    config.setFileSystemFolder(folder.getAbsolutePath());
+    config.setFileSystemLayout(layout);
+    return new FileSystemRepository(config, new RepositoryHttpManager());
+  }
+
+  private String store(RepositoryItem item) throws IOException {
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(1);
+    }
+    return item.getId();
+  }
+}
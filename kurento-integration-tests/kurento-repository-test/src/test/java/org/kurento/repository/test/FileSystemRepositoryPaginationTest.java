@@ -0,0 +1,139 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItemPage;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemRepository;
+import org.kurento.repository.internal.repoimpl.filesystem.ShardedFileSystemLayout;
+
+/**
+ * Pagination of the items of a {@link FileSystemRepository}, without starting the repository
+ * server.
+ */
+public class FileSystemRepositoryPaginationTest {
+
+  private static final int NUM_ITEMS = 100000;
+  private static final int PAGE_SIZE = 1000;
+
+  private static FileSystemRepository repository;
+  private static List<String> ids = new ArrayList<>();
+
+  @BeforeClass
+  public static void createItems() throws IOException {
+
+    RepositoryApiConfiguration config = new RepositoryApiConfiguration();
+    config.setFileSystemFolder(Files.createTempDirectory("repository").toString());
+    config.setFileSystemLayout(ShardedFileSystemLayout.NAME);
+    // Durability is not needed to list the items, and synchronizing each one is slow
+    config.setFileSystemSync(false);
+    repository = new FileSystemRepository(config, new RepositoryHttpManager());
+
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      RepositoryItem item = repository.createRepositoryItem();
+      Map<String, String> metadata = new HashMap<>();
+      metadata.put("group", "g" + i % 10);
+      item.setMetadata(metadata);
+      try (OutputStream os = item.createOutputStreamToWrite()) {
+        os.write(1);
+      }
+      ids.add(item.getId());
+    }
+
+    // Items without content are not listed
+    repository.createRepositoryItem();
+
+    Collections.sort(ids);
+  }
+
+  @Test
+  public void allItemsAreListedInOrder() {
+    assertEquals(ids, findAll(null, false));
+  }
+
+  @Test
+  public void itemsAreFoundByAttribute() {
+
+    Map<String, String> attributes = new HashMap<>();
+    attributes.put("group", "g3");
+    List<String> found = findAll(attributes, false);
+    assertEquals(NUM_ITEMS / 10, found.size());
+
+    attributes.put("group", "g[12]");
+    found = findAll(attributes, true);
+    assertEquals(NUM_ITEMS / 5, found.size());
+    for (String id : found) {
+      String group = repository.findRepositoryItemById(id).getMetadata().get("group");
+      assertTrue(group.equals("g1") || group.equals("g2"));
+    }
+  }
+
+  @Test
+  public void removedItemsAreNotListed() throws IOException {
+
+    RepositoryItem item = repository.createRepositoryItem("removed");
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(1);
+    }
+    repository.remove(item);
+
+    RepositoryItemPage page = repository.findRepositoryItems(null, false, null, 1);
+    page = repository.findRepositoryItems(null, false, page.getContinuationToken(), NUM_ITEMS);
+    assertEquals(NUM_ITEMS - 1, page.getItems().size());
+    assertNull(page.getContinuationToken());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidContinuationTokenIsRejected() {
+    repository.findRepositoryItems(null, false, "not a token", PAGE_SIZE);
+  }
+
+  private List<String> findAll(Map<String, String> attributes, boolean regex) {
+
+    List<String> found = new ArrayList<>();
+    String continuationToken = null;
+    do {
+      RepositoryItemPage page =
+          repository.findRepositoryItems(attributes, regex, continuationToken, PAGE_SIZE);
+      assertTrue(page.getItems().size() <= PAGE_SIZE);
+      for (RepositoryItem item : page.getItems()) {
+        found.add(item.getId());
+      }
+      continuationToken = page.getContinuationToken();
+    } while (continuationToken != null);
+
+    return found;
+  }
+}
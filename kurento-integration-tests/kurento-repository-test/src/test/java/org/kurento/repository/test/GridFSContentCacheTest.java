@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.repository.internal.repoimpl.mongo.GridFSContentCache;
+import org.kurento.repository.internal.repoimpl.mongo.GridFSContentCache.ContentSource;
+
+/**
+ * Read-through cache of GridFS content, with an in-memory stand-in of the GridFS files.
+ */
+public class GridFSContentCacheTest {
+
+  private static final int ITEM_SIZE = 256 * 1024;
+
+  /**
+   * Stand-in of the GridFS files, that counts the downloads of each one.
+   */
+  private static class StoredFiles {
+
+    private final Map<String, byte[]> contents = new HashMap<>();
+    private final Map<String, AtomicInteger> downloads = new HashMap<>();
+
+    StoredFiles(int numFiles) {
+      Random random = new Random(0);
+      for (int i = 0; i < numFiles; i++) {
+        byte[] content = new byte[ITEM_SIZE];
+        random.nextBytes(content);
+        contents.put("item" + i, content);
+        downloads.put("item" + i, new AtomicInteger());
+      }
+    }
+
+    ContentSource source(final String id) {
+      return new ContentSource() {
+        @Override
+        public InputStream openStream() {
+          downloads.get(id).incrementAndGet();
+          return new ByteArrayInputStream(contents.get(id));
+        }
+      };
+    }
+
+    File getFile(GridFSContentCache cache, String id, String version) {
+      return cache.getFile(id, version, contents.get(id).length, source(id));
+    }
+  }
+
+  private File folder;
+
+  @Before
+  public void createFolder() throws IOException {
+    folder = Files.createTempDirectory("repository-cache").toFile();
+  }
+
+  @Test
+  public void concurrentRangeReadersDownloadOnce() throws Exception {
+
+    final StoredFiles storedFiles = new StoredFiles(4);
+    final GridFSContentCache cache = new GridFSContentCache(folder, 4 * ITEM_SIZE);
+
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    List<Future<Void>> readers = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      final Random random = new Random(i);
+      readers.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          for (int j = 0; j < 200; j++) {
+            String id = "item" + random.nextInt(4);
+            int start = random.nextInt(ITEM_SIZE);
+            int length = random.nextInt(ITEM_SIZE - start) + 1;
+            assertArrayEquals(range(storedFiles.contents.get(id), start, length),
+                readRange(storedFiles.getFile(cache, id, "v1"), start, length));
+          }
+          return null;
+        }
+      }));
+    }
+
+    for (Future<Void> reader : readers) {
+      reader.get();
+    }
+    executor.shutdown();
+
+    for (AtomicInteger downloads : storedFiles.downloads.values()) {
+      assertEquals(1, downloads.get());
+    }
+    assertEquals(0, cache.getEvictionCount());
+    assertEquals(16 * 200, cache.getHitCount() + cache.getMissCount());
+  }
+
+  @Test
+  public void leastRecentlyUsedItemsAreEvicted() {
+
+    StoredFiles storedFiles = new StoredFiles(3);
+    GridFSContentCache cache = new GridFSContentCache(folder, 2 * ITEM_SIZE);
+
+    File first = storedFiles.getFile(cache, "item0", "v1");
+    storedFiles.getFile(cache, "item1", "v1");
+    storedFiles.getFile(cache, "item0", "v1");
+    storedFiles.getFile(cache, "item2", "v1");
+
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(ITEM_SIZE, cache.getEvictedBytes());
+    assertEquals(2 * ITEM_SIZE, cache.getSize());
+    assertEquals(first, storedFiles.getFile(cache, "item0", "v1"));
+
+    storedFiles.getFile(cache, "item1", "v1");
+    assertEquals(2, storedFiles.downloads.get("item1").get());
+    assertEquals(1, storedFiles.downloads.get("item0").get());
+  }
+
+  @Test
+  public void outdatedVersionsAreDownloadedAgain() {
+
+    StoredFiles storedFiles = new StoredFiles(1);
+    GridFSContentCache cache = new GridFSContentCache(folder, 2 * ITEM_SIZE);
+
+    File outdated = storedFiles.getFile(cache, "item0", "v1");
+    File updated = storedFiles.getFile(cache, "item0", "v2");
+
+    assertFalse(outdated.exists());
+    assertNotNull(updated);
+    assertEquals(2, storedFiles.downloads.get("item0").get());
+    assertEquals(ITEM_SIZE, cache.getSize());
+
+    cache.remove("item0");
+    assertFalse(updated.exists());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void itemsLargerThanCacheAreNotCached() {
+
+    StoredFiles storedFiles = new StoredFiles(1);
+    GridFSContentCache cache = new GridFSContentCache(folder, ITEM_SIZE - 1);
+
+    assertNull(storedFiles.getFile(cache, "item0", "v1"));
+    assertEquals(0, storedFiles.downloads.get("item0").get());
+  }
+
+  private static byte[] range(byte[] content, int start, int length) {
+    byte[] range = new byte[length];
+    System.arraycopy(content, start, range, 0, length);
+    return range;
+  }
+
+  private static byte[] readRange(File file, int start, int length) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      byte[] range = new byte[length];
+      raf.seek(start);
+      raf.readFully(range);
+      return range;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.repository.HttpSessionTerminatedEvent;
+import org.kurento.repository.RepositoryHttpEventListener;
+import org.kurento.repository.RepositoryItemAttributes;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Auto-termination of many concurrent HTTP endpoints, without starting the repository server.
+ */
+public class HttpSessionTimeoutTest {
+
+  private static final int NUM_ITEMS = 100;
+  private static final int NUM_SESSIONS = 10000;
+  private static final long SHORT_TIMEOUT = 300;
+  private static final long LONG_TIMEOUT = 1500;
+
+  private static class TestItem extends AbstractRepositoryItem {
+
+    public TestItem(String id) {
+      super(id, State.STORED, new RepositoryItemAttributes(), null);
+    }
+
+    @Override
+    public InputStream createInputStreamToRead() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public OutputStream createOutputStreamToWrite() {
+      return new ByteArrayOutputStream();
+    }
+  }
+
+  private ThreadPoolTaskScheduler scheduler;
+  private RepositoryHttpManager manager;
+
+  @Before
+  public void setUp() {
+    scheduler = new ThreadPoolTaskScheduler();
+    scheduler.initialize();
+
+    manager = new RepositoryHttpManager(scheduler);
+    manager.setWebappPublicUrl("http://localhost:7676");
+    manager.setServletPath("/repository_servlet/");
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void idleSessionsExpireAfterTheirTimeout() throws Exception {
+
+    final AtomicInteger terminated = new AtomicInteger();
+    RepositoryHttpEventListener<HttpSessionTerminatedEvent> listener =
+        new RepositoryHttpEventListener<HttpSessionTerminatedEvent>() {
+          @Override
+          public void onEvent(HttpSessionTerminatedEvent event) {
+            terminated.incrementAndGet();
+          }
+        };
+
+    List<TestItem> items = new ArrayList<>();
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      items.add(new TestItem("item" + i));
+    }
+
+    final List<RepositoryHttpEndpointImpl> endpoints = new ArrayList<>();
+    for (int i = 0; i < NUM_SESSIONS; i++) {
+      TestItem item = items.get(i % NUM_ITEMS);
+      RepositoryHttpEndpointImpl endpoint = (RepositoryHttpEndpointImpl) (i % 2 == 0
+          ? manager.createRepositoryHttpPlayer(item) : manager.createRepositoryHttpRecorder(item));
+      endpoint.setAutoTerminationTimeout(i % 4 < 2 ? SHORT_TIMEOUT : LONG_TIMEOUT);
+      endpoint.addSessionTerminatedListener(listener);
+      endpoints.add(endpoint);
+    }
+
+    // Every 10th session is still serving a request when the others expire
+    ExecutorService exec = Executors.newFixedThreadPool(16);
+    for (int i = 0; i < NUM_SESSIONS; i++) {
+      final RepositoryHttpEndpointImpl endpoint = endpoints.get(i);
+      final boolean keepActive = i % 10 == 9;
+      exec.execute(new Runnable() {
+        @Override
+        public void run() {
+          endpoint.requestStarted();
+          if (!keepActive) {
+            endpoint.requestFinished();
+          }
+        }
+      });
+    }
+    exec.shutdown();
+    assertTrue(exec.awaitTermination(10, TimeUnit.SECONDS));
+
+    Thread.sleep(SHORT_TIMEOUT + 500);
+
+    for (int i = 0; i < NUM_SESSIONS; i++) {
+      boolean expired = i % 4 < 2 && i % 10 != 9;
+      assertEquals("Session " + i, expired, endpoints.get(i).isTerminated());
+    }
+
+    Thread.sleep(LONG_TIMEOUT);
+
+    int numActive = NUM_SESSIONS / 10;
+    assertEquals(numActive, manager.getNumSessions());
+    assertEquals(NUM_SESSIONS - numActive, terminated.get());
+
+    // Sessions expire once their last request has finished
+    for (int i = 9; i < NUM_SESSIONS; i += 10) {
+      RepositoryHttpEndpointImpl endpoint = endpoints.get(i);
+      assertFalse("Session " + i, endpoint.isTerminated());
+      endpoint.requestFinished();
+    }
+
+    Thread.sleep(LONG_TIMEOUT + 500);
+
+    assertEquals(0, manager.getNumSessions());
+    assertEquals(NUM_SESSIONS, terminated.get());
+  }
+
+  @Test
+  public void sessionsAreDisposedByItemId() {
+
+    TestItem item = new TestItem("item");
+    TestItem otherItem = new TestItem("otherItem");
+
+    List<RepositoryHttpEndpointImpl> endpoints = new ArrayList<>();
+    for (int i = 0; i < NUM_SESSIONS; i++) {
+      endpoints.add((RepositoryHttpEndpointImpl) manager
+          .createRepositoryHttpPlayer(i % 100 == 0 ? item : otherItem));
+    }
+
+    manager.disposeHttpRepoItemElemByItemId(item, "Item removed");
+
+    assertEquals(NUM_SESSIONS - NUM_SESSIONS / 100, manager.getNumSessions());
+    for (int i = 0; i < NUM_SESSIONS; i++) {
+      RepositoryHttpEndpointImpl endpoint = endpoints.get(i);
+      assertEquals("Session " + i, i % 100 == 0, endpoint.isTerminated());
+      assertEquals(!endpoint.isTerminated(),
+          manager.getHttpRepoItemElem(endpoint.getSessionId()) == endpoint);
+    }
+  }
+}
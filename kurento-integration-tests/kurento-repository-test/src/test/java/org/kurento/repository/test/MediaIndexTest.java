@@ -0,0 +1,427 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.index.MediaIndex;
+import org.kurento.repository.internal.index.MediaIndexer;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemRepository;
+
+/**
+ * Index of the seek points of recordings, built from small WebM and MP4 files generated by the test
+ * itself.
+ */
+public class MediaIndexTest {
+
+  private static final long EBML = 0x1A45DFA3L;
+  private static final long SEGMENT = 0x18538067L;
+  private static final long INFO = 0x1549A966L;
+  private static final long TIMECODE_SCALE = 0x2AD7B1L;
+  private static final long DURATION = 0x4489L;
+  private static final long TRACKS = 0x1654AE6BL;
+  private static final long CLUSTER = 0x1F43B675L;
+  private static final long TIMECODE = 0xE7L;
+  private static final long SIMPLE_BLOCK = 0xA3L;
+  private static final long CUES = 0x1C53BB6BL;
+  private static final long CUE_POINT = 0xBBL;
+  private static final long CUE_TIME = 0xB3L;
+  private static final long CUE_TRACK_POSITIONS = 0xB7L;
+  private static final long CUE_TRACK = 0xF7L;
+  private static final long CUE_CLUSTER_POSITION = 0xF1L;
+
+  private static final long UNKNOWN_SIZE = -1;
+
+  private static final int FRAME_SIZE = 1000;
+
+  /**
+   * Generated media file, with the expected seek points.
+   */
+  private static class Media {
+
+    private final byte[] content;
+    private final List<long[]> points;
+
+    Media(byte[] content, List<long[]> points) {
+      this.content = content;
+      this.points = points;
+    }
+  }
+
+  @Test
+  public void webmCuesAreIndexed() throws IOException {
+
+    // Timecodes in units of 100 us, clusters of 1.5 s
+    Media media = createWebm(100000, 1500, 4, true, false);
+    MediaIndex index = MediaIndexer.createIndex(new ByteArrayInputStream(media.content));
+
+    assertEquals("webm", index.getFormat());
+    assertEquals(6000, index.getDuration());
+    assertPoints(media.points, index);
+
+    assertEquals(media.points.get(1)[1], index.getOffset(index.findPoint(2999)));
+    assertEquals(media.points.get(2)[1], index.getOffset(index.findPoint(3000)));
+    assertEquals(media.points.get(3)[1], index.getOffset(index.findPoint(60000)));
+  }
+
+  @Test
+  public void liveWebmClustersAreIndexed() throws IOException {
+
+    // Segment and clusters of unknown size, without cues nor duration
+    Media media = createWebm(1000000, 2000, 5, false, true);
+    MediaIndex index = MediaIndexer.createIndex(new ByteArrayInputStream(media.content));
+
+    assertEquals(-1, index.getDuration());
+    assertPoints(media.points, index);
+    assertEquals(media.points.get(2)[1], index.getOffset(index.findPoint(5000)));
+  }
+
+  @Test(expected = EOFException.class)
+  public void truncatedWebmIsRejected() throws IOException {
+
+    Media media = createWebm(100000, 1500, 4, true, false);
+
+    // File ends after the timecode scale, inside the info element
+    int length = element(EBML, element(0x4282, ascii("webm"))).length + 12 + 12
+        + uint(TIMECODE_SCALE, 100000).length;
+    MediaIndexer.createIndex(new ByteArrayInputStream(Arrays.copyOf(media.content, length)));
+  }
+
+  @Test
+  public void mp4SyncSamplesAreIndexed() throws IOException {
+
+    Media media = createMp4();
+    MediaIndex index = MediaIndexer.createIndex(new ByteArrayInputStream(media.content));
+
+    assertEquals("mp4", index.getFormat());
+    assertEquals(4000, index.getDuration());
+    assertPoints(media.points, index);
+    assertEquals(media.points.get(1)[1], index.getOffset(index.findPoint(2500)));
+  }
+
+  @Test
+  public void fragmentedMp4IsIndexed() throws IOException {
+
+    Media media = createFragmentedMp4(3);
+    MediaIndex index = MediaIndexer.createIndex(new ByteArrayInputStream(media.content));
+
+    assertEquals("mp4", index.getFormat());
+    assertPoints(media.points, index);
+  }
+
+  @Test
+  public void unknownFormatsAreNotIndexed() throws IOException {
+    byte[] content = "Not a media file".getBytes(StandardCharsets.UTF_8);
+    assertNull(MediaIndexer.createIndex(new ByteArrayInputStream(content)));
+  }
+
+  @Test
+  public void indexIsStoredInMetadata() throws IOException {
+
+    RepositoryApiConfiguration config = new RepositoryApiConfiguration();
+    config.setFileSystemFolder(Files.createTempDirectory("repository").toFile().getAbsolutePath());
+    FileSystemRepository repository = new FileSystemRepository(config,
+        new RepositoryHttpManager());
+
+    Media media = createWebm(1000000, 1000, 3, true, false);
+    RepositoryItem item = repository.createRepositoryItem();
+    item.putMetadataEntry("name", "recording");
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(media.content);
+    }
+
+    MediaIndex created = new MediaIndexer().indexItem(item);
+    assertNotNull(created);
+
+    RepositoryItem found = repository.findRepositoryItemById(item.getId());
+    assertEquals("recording", found.getMetadata().get("name"));
+    MediaIndex stored = MediaIndex.fromMetadata(found.getMetadata());
+    assertNotNull(stored);
+    assertPoints(media.points, stored);
+  }
+
+  private static void assertPoints(List<long[]> expected, MediaIndex index) {
+    assertEquals(expected.size(), index.getNumPoints());
+    for (int i = 0; i < expected.size(); i++) {
+      assertArrayEquals(expected.get(i), new long[] { index.getTime(i), index.getOffset(i) });
+    }
+  }
+
+  /**
+   * Creates a WebM file with one keyframe at the start of each cluster.
+   *
+   * @param timecodeScale
+   *          nanoseconds of each timecode unit
+   * @param clusterMillis
+   *          duration of each cluster
+   */
+  private static Media createWebm(long timecodeScale, long clusterMillis, int numClusters,
+      boolean withCues, boolean live) throws IOException {
+
+    byte[] header = element(EBML, element(0x4282, ascii("webm")));
+
+    List<byte[]> children = new ArrayList<>();
+    ByteArrayOutputStream info = new ByteArrayOutputStream();
+    info.write(uint(TIMECODE_SCALE, timecodeScale));
+    if (!live) {
+      float duration = (float) (numClusters * clusterMillis * 1000000 / timecodeScale);
+      info.write(element(DURATION, intBytes(Float.floatToIntBits(duration))));
+    }
+    children.add(element(INFO, info.toByteArray()));
+    children.add(element(TRACKS, new byte[16]));
+
+    // Position of each cluster relative to the data of the segment
+    List<long[]> relativePoints = new ArrayList<>();
+    int position = children.get(0).length + children.get(1).length;
+    for (int i = 0; i < numClusters; i++) {
+      long timecode = i * clusterMillis * 1000000 / timecodeScale;
+      byte[] cluster = live
+          ? unknownSizeElement(CLUSTER, uint(TIMECODE, timecode), frames(3))
+          : element(CLUSTER, uint(TIMECODE, timecode), frames(3));
+      relativePoints.add(new long[] { i * clusterMillis, position });
+      children.add(cluster);
+      position += cluster.length;
+    }
+
+    if (withCues) {
+      ByteArrayOutputStream cues = new ByteArrayOutputStream();
+      for (long[] point : relativePoints) {
+        cues.write(element(CUE_POINT, uint(CUE_TIME, point[0] * 1000000 / timecodeScale),
+            element(CUE_TRACK_POSITIONS, uint(CUE_TRACK, 1), uint(CUE_CLUSTER_POSITION,
+                point[1]))));
+      }
+      children.add(element(CUES, cues.toByteArray()));
+    }
+
+    byte[][] segmentChildren = children.toArray(new byte[0][]);
+    byte[] segment = live ? unknownSizeElement(SEGMENT, segmentChildren)
+        : element(SEGMENT, segmentChildren);
+
+    // Segment header of 4 bytes of id and 8 of size
+    long segmentPosition = header.length + 12;
+    List<long[]> points = new ArrayList<>();
+    for (long[] point : relativePoints) {
+      points.add(new long[] { point[0], segmentPosition + point[1] });
+    }
+    return new Media(concat(header, segment), points);
+  }
+
+  private static byte[] frames(int numFrames) throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    for (int i = 0; i < numFrames; i++) {
+      frames.write(element(SIMPLE_BLOCK, new byte[FRAME_SIZE]));
+    }
+    return frames.toByteArray();
+  }
+
+  private static byte[] element(long id, byte[]... children) throws IOException {
+    byte[] data = concat(children);
+    return elementWithSize(id, data.length, data);
+  }
+
+  private static byte[] unknownSizeElement(long id, byte[]... children) throws IOException {
+    return elementWithSize(id, UNKNOWN_SIZE, concat(children));
+  }
+
+  private static byte[] elementWithSize(long id, long size, byte[] data) throws IOException {
+    ByteArrayOutputStream element = new ByteArrayOutputStream();
+    int idLength = (64 - Long.numberOfLeadingZeros(id) + 7) / 8;
+    for (int i = idLength - 1; i >= 0; i--) {
+      element.write((int) (id >> (8 * i)));
+    }
+    // Sizes of 8 bytes, all ones if unknown
+    element.write(0x01);
+    for (int i = 6; i >= 0; i--) {
+      element.write(size == UNKNOWN_SIZE ? 0xFF : (int) (size >> (8 * i)));
+    }
+    element.write(data);
+    return element.toByteArray();
+  }
+
+  private static byte[] uint(long id, long value) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    new DataOutputStream(data).writeLong(value);
+    return element(id, data.toByteArray());
+  }
+
+  /**
+   * Creates an MP4 file with the movie box after the media data, and a video track of 8 samples of
+   * 500 ms in 3 chunks, with sync samples 1 and 5.
+   */
+  private static Media createMp4() throws IOException {
+
+    int[] sampleSizes = { 3000, 1000, 1200, 800, 2500, 900, 1100, 700 };
+    int[] samplesPerChunk = { 3, 3, 2 };
+
+    byte[] ftyp = box("ftyp", ascii("isom"), intBytes(0), ascii("isommp41"));
+
+    int mdatDataSize = 0;
+    for (int size : sampleSizes) {
+      mdatDataSize += size;
+    }
+    byte[] mdat = box("mdat", new byte[mdatDataSize]);
+
+    // Chunks are contiguous in the media data
+    int[] chunkOffsets = new int[samplesPerChunk.length];
+    int offset = ftyp.length + 8;
+    int sample = 0;
+    for (int chunk = 0; chunk < samplesPerChunk.length; chunk++) {
+      chunkOffsets[chunk] = offset;
+      for (int i = 0; i < samplesPerChunk[chunk]; i++) {
+        offset += sampleSizes[sample++];
+      }
+    }
+
+    byte[] stbl = box("stbl",
+        fullBox("stts", 0, ints(1, 8, 500)),
+        fullBox("stss", 0, ints(2, 1, 5)),
+        fullBox("stsc", 0, ints(2, 1, 3, 1, 3, 2, 1)),
+        fullBox("stsz", 0, ints(0, sampleSizes.length), ints(sampleSizes)),
+        fullBox("stco", 0, ints(chunkOffsets.length), ints(chunkOffsets)));
+    byte[] moov = box("moov", fullBox("mvhd", 0, new byte[96]), createTrack(1, 1000, 4000, stbl));
+
+    List<long[]> points = new ArrayList<>();
+    points.add(new long[] { 0, chunkOffsets[0] });
+    points.add(new long[] { 2000, chunkOffsets[1] + sampleSizes[3] });
+    return new Media(concat(ftyp, mdat, moov), points);
+  }
+
+  /**
+   * Creates a fragmented MP4 file with an audio and a video track, and a fragment of each track
+   * every 2 seconds.
+   */
+  private static Media createFragmentedMp4(int numFragments) throws IOException {
+
+    byte[] ftyp = box("ftyp", ascii("iso6"), intBytes(0), ascii("iso6dash"));
+    byte[] moov = box("moov", fullBox("mvhd", 0, new byte[96]),
+        createTrack(1, 48000, 0, box("stbl")), createTrack(2, 90000, 0, box("stbl")),
+        box("mvex"));
+    // Handler of the first track is audio
+    moov = replace(moov, ascii("vide"), ascii("soun"), 1);
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.write(ftyp);
+    file.write(moov);
+
+    List<long[]> points = new ArrayList<>();
+    for (int i = 0; i < numFragments; i++) {
+      for (int track = 1; track <= 2; track++) {
+        long timescale = track == 1 ? 48000 : 90000;
+        byte[] moof = box("moof", fullBox("mfhd", 0, ints(i + 1)),
+            box("traf", fullBox("tfhd", 0, ints(track)),
+                fullBox("tfdt", 1, longBytes(i * 2 * timescale)),
+                fullBox("trun", 0, ints(0))));
+        if (track == 2) {
+          points.add(new long[] { i * 2000, file.size() });
+        }
+        file.write(moof);
+        file.write(box("mdat", new byte[FRAME_SIZE]));
+      }
+    }
+
+    return new Media(file.toByteArray(), points);
+  }
+
+  private static byte[] createTrack(int trackId, int timescale, int duration, byte[] stbl)
+      throws IOException {
+    byte[] tkhd = fullBox("tkhd", 0, ints(0, 0, trackId), new byte[68]);
+    byte[] mdhd = fullBox("mdhd", 0, ints(0, 0, timescale, duration), new byte[4]);
+    byte[] hdlr = fullBox("hdlr", 0, ints(0), ascii("vide"), new byte[13]);
+    return box("trak", tkhd,
+        box("mdia", mdhd, hdlr, box("minf", fullBox("vmhd", 0, new byte[8]), stbl)));
+  }
+
+  private static byte[] box(String type, byte[]... children) throws IOException {
+    byte[] data = concat(children);
+    return concat(intBytes(8 + data.length), ascii(type), data);
+  }
+
+  private static byte[] fullBox(String type, int version, byte[]... children)
+      throws IOException {
+    return box(type, intBytes(version << 24), concat(children));
+  }
+
+  private static byte[] ints(int... values) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(data);
+    for (int value : values) {
+      output.writeInt(value);
+    }
+    return data.toByteArray();
+  }
+
+  private static byte[] intBytes(int value) throws IOException {
+    return ints(value);
+  }
+
+  private static byte[] longBytes(long value) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    new DataOutputStream(data).writeLong(value);
+    return data.toByteArray();
+  }
+
+  private static byte[] ascii(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] concat(byte[]... parts) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      data.write(part);
+    }
+    return data.toByteArray();
+  }
+
+  /**
+   * Replaces the first occurrences of a sequence of bytes.
+   */
+  private static byte[] replace(byte[] data, byte[] target, byte[] replacement, int count) {
+    byte[] result = data.clone();
+    int replaced = 0;
+    for (int i = 0; i + target.length <= result.length && replaced < count; i++) {
+      boolean matches = true;
+      for (int j = 0; j < target.length && matches; j++) {
+        matches = result[i + j] == target[j];
+      }
+      if (matches) {
+        System.arraycopy(replacement, 0, result, i, replacement.length);
+        replaced++;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.kurento.repository.RepositoryHttpRecorder;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
+import org.kurento.repository.test.util.BaseRepositoryTest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Multipart uploads through the HTTP protocol of the recorders, in the repository configured for
+ * the tests. In a Mongo repository the parts are composed into a GridFS file.
+ */
+public class MultipartUploadHttpTest extends BaseRepositoryTest {
+
+  // Multiple of the default GridFS chunk size
+  private static final int PART_SIZE = 2 * 255 * 1024;
+  private static final int NUM_PARTS = 3;
+  private static final int LAST_PART_SIZE = 1000;
+
+  private final byte[] content = new byte[(NUM_PARTS - 1) * PART_SIZE + LAST_PART_SIZE];
+
+  @Test
+  public void partsAreUploadedAndCompleted() throws Exception {
+
+    new Random(0).nextBytes(content);
+
+    RepositoryItem item = getRepository().createRepositoryItem();
+    RepositoryHttpRecorder recorder = item.createRepositoryHttpRecorder();
+    String uploadUrl = startUpload(recorder);
+
+    // In reverse order, with an oversized part rejected before being written
+    assertEquals(413, request("PUT", uploadUrl + "&partNumber=1", new byte[PART_SIZE + 1])
+        .getResponseCode());
+    String[] etags = new String[NUM_PARTS];
+    for (int i = NUM_PARTS; i >= 1; i--) {
+      HttpURLConnection connection = request("PUT", uploadUrl + "&partNumber=" + i, part(i));
+      assertEquals(200, connection.getResponseCode());
+      etags[i - 1] = connection.getHeaderField("ETag");
+      assertEquals("\"" + sha256(part(i)) + "\"", etags[i - 1]);
+    }
+
+    JsonArray parts = readJson(request("GET", uploadUrl, null)).getAsJsonArray("parts");
+    assertEquals(NUM_PARTS, parts.size());
+
+    // A short manifest with a wrong digest keeps all the parts
+    assertEquals(400,
+        request("POST", uploadUrl, manifest(etags, 1, sha256(content))).getResponseCode());
+    assertEquals(NUM_PARTS,
+        readJson(request("GET", uploadUrl, null)).getAsJsonArray("parts").size());
+
+    JsonObject completed = readJson(
+        request("POST", uploadUrl, manifest(etags, NUM_PARTS, sha256(content))));
+    assertEquals(sha256(content), completed.get("contentSha256").getAsString());
+    assertEquals(content.length, completed.get("length").getAsLong());
+    assertEquals(404, request("GET", uploadUrl, null).getResponseCode());
+    recorder.stop();
+
+    assertArrayEquals(content, Files.readAllBytes(downloadFromRepoItemId(item.getId()).toPath()));
+  }
+
+  @Test
+  public void abortedUploadsAreDiscarded() throws Exception {
+
+    RepositoryItem item = getRepository().createRepositoryItem();
+    RepositoryHttpRecorder recorder = item.createRepositoryHttpRecorder();
+    String uploadUrl = startUpload(recorder);
+
+    assertEquals(200, request("PUT", uploadUrl + "&partNumber=1", part(1)).getResponseCode());
+    assertEquals(204, request("DELETE", uploadUrl, null).getResponseCode());
+    assertEquals(404, request("GET", uploadUrl, null).getResponseCode());
+    assertEquals(RepositoryItem.State.NEW, item.getState());
+
+    // The recorder can start another upload
+    startUpload(recorder);
+    recorder.stop();
+  }
+
+  /**
+   * Starts an upload, returning the URL of its requests.
+   */
+  private static String startUpload(RepositoryHttpRecorder recorder) throws IOException {
+    JsonObject upload = readJson(
+        request("POST", recorder.getURL() + "?uploads&partSize=" + PART_SIZE, new byte[0]));
+    assertEquals(PART_SIZE, upload.get("partSize").getAsLong());
+    return recorder.getURL() + "?uploadId=" + upload.get("uploadId").getAsString();
+  }
+
+  private static byte[] manifest(String[] etags, int numParts, String contentSha256) {
+    JsonArray parts = new JsonArray();
+    for (int i = 1; i <= numParts; i++) {
+      JsonObject part = new JsonObject();
+      part.addProperty("partNumber", i);
+      part.addProperty("etag", etags[i - 1]);
+      parts.add(part);
+    }
+    JsonObject manifest = new JsonObject();
+    manifest.add("parts", parts);
+    manifest.addProperty("contentSha256", contentSha256);
+    return manifest.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] part(int partNumber) {
+    int start = (partNumber - 1) * PART_SIZE;
+    return Arrays.copyOfRange(content, start, Math.min(start + PART_SIZE, content.length));
+  }
+
+  private static HttpURLConnection request(String method, String url, byte[] body)
+      throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod(method);
+    if (body != null) {
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(body.length);
+      try (OutputStream os = connection.getOutputStream()) {
+        os.write(body);
+      }
+    }
+    return connection;
+  }
+
+  private static JsonObject readJson(HttpURLConnection connection) throws IOException {
+    assertEquals(200, connection.getResponseCode());
+    try (Reader reader = new InputStreamReader(connection.getInputStream(),
+        StandardCharsets.UTF_8)) {
+      return new JsonParser().parse(reader).getAsJsonObject();
+    }
+  }
+
+  private static String sha256(byte[] data) throws Exception {
+    return AbstractRepositoryItem.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+  }
+}
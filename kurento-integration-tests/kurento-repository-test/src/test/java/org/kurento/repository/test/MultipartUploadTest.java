@@ -0,0 +1,300 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItem.State;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.http.MultipartUpload;
+import org.kurento.repository.internal.http.MultipartUploadManager;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
+import org.kurento.repository.internal.repoimpl.filesystem.FileRepositoryItem;
+import org.kurento.repository.internal.repoimpl.filesystem.FileSystemRepository;
+
+/**
+ * Multipart uploads of recorders of a {@link FileSystemRepository}, without starting the repository
+ * server.
+ */
+public class MultipartUploadTest {
+
+  private static final int PART_SIZE = 64 * 1024;
+  private static final int NUM_PARTS = 10;
+  private static final int LAST_PART_SIZE = 10000;
+
+  private File folder;
+  private RepositoryHttpManager httpManager;
+  private FileSystemRepository repository;
+  private MultipartUploadManager uploads;
+  private byte[] content;
+
+  @Before
+  public void createRepository() throws IOException {
+    folder = Files.createTempDirectory("repository").toFile();
+    RepositoryApiConfiguration config = new RepositoryApiConfiguration();
+    config.setFileSystemFolder(folder.getAbsolutePath());
+    httpManager = new RepositoryHttpManager();
+    repository = new FileSystemRepository(config, httpManager);
+    uploads = httpManager.getMultipartUploads();
+
+    content = new byte[(NUM_PARTS - 1) * PART_SIZE + LAST_PART_SIZE];
+    new Random(0).nextBytes(content);
+  }
+
+  @Test
+  public void outOfOrderPartsAreAssembled() throws Exception {
+
+    RepositoryItem item = repository.createRepositoryItem();
+    final MultipartUpload upload = uploads.startUpload(createRecorder(item), PART_SIZE);
+    assertEquals(State.STORING, item.getState());
+
+    List<Integer> partNumbers = new ArrayList<>();
+    for (int i = 1; i <= NUM_PARTS; i++) {
+      partNumbers.add(i);
+    }
+    Collections.shuffle(partNumbers, new Random(0));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<String>> etags = new ArrayList<>();
+    for (final int partNumber : partNumbers) {
+      etags.add(executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws IOException {
+          return upload.writePart(partNumber, new ByteArrayInputStream(part(partNumber)));
+        }
+      }));
+    }
+
+    List<MultipartUpload.Part> manifest = new ArrayList<>();
+    for (int i = 1; i <= NUM_PARTS; i++) {
+      String etag = etags.get(partNumbers.indexOf(i)).get();
+      assertEquals(sha256(part(i)), etag);
+      manifest.add(new MultipartUpload.Part(i, -1, etag));
+    }
+    executor.shutdown();
+
+    assertEquals(sha256(content), upload.complete(manifest, sha256(content), -1));
+
+    assertEquals(State.STORED, item.getState());
+    assertEquals(content.length, item.getAttributes().getContentLength());
+    assertEquals(sha256(content),
+        item.getMetadata().get(AbstractRepositoryItem.CONTENT_DIGEST_METADATA));
+    assertArrayEquals(content, Files.readAllBytes(((FileRepositoryItem) item).getFile().toPath()));
+    assertNull(uploads.getUpload(upload.getUploadId()));
+  }
+
+  @Test
+  public void retriedPartsReplacePreviousAttempts() throws Exception {
+
+    RepositoryItem item = repository.createRepositoryItem();
+    MultipartUpload upload = uploads.startUpload(createRecorder(item), PART_SIZE);
+    writeAllParts(upload);
+
+    // A corrupted attempt, replaced by a good one
+    byte[] corrupted = part(2).clone();
+    corrupted[0]++;
+    String corruptedETag = upload.writePart(2, new ByteArrayInputStream(corrupted));
+
+    List<MultipartUpload.Part> manifest = createManifest(upload);
+    assertEquals(corruptedETag, manifest.get(1).getETag());
+    assertCompletionFails(upload, manifest, sha256(content));
+
+    String etag = upload.writePart(2, new ByteArrayInputStream(part(2)));
+    assertCompletionFails(upload, manifest, null);
+
+    // An attempt interrupted by the connection is discarded until it is retried
+    try {
+      upload.writePart(3, new BrokenInputStream(part(3)));
+      fail("Broken part written");
+    } catch (IOException e) {
+      assertEquals(NUM_PARTS - 1, upload.getParts().size());
+    }
+    upload.writePart(3, new ByteArrayInputStream(part(3)));
+
+    manifest = createManifest(upload);
+    assertEquals(etag, manifest.get(1).getETag());
+    assertEquals(sha256(content), upload.complete(manifest, sha256(content), -1));
+    assertArrayEquals(content, Files.readAllBytes(((FileRepositoryItem) item).getFile().toPath()));
+  }
+
+  @Test
+  public void finalChecksumIsVerified() throws Exception {
+
+    RepositoryItem item = repository.createRepositoryItem();
+    MultipartUpload upload = uploads.startUpload(createRecorder(item), PART_SIZE);
+    writeAllParts(upload);
+
+    List<MultipartUpload.Part> manifest = createManifest(upload);
+    assertCompletionFails(upload, manifest, sha256(part(1)));
+    assertCompletionFails(upload, manifest.subList(1, NUM_PARTS), null);
+    assertCompletionFails(upload, manifest, sha256(content), content.length - 1);
+    assertEquals(State.STORING, item.getState());
+
+    // Parts beyond the manifest are discarded
+    assertEquals(sha256(Arrays.copyOf(content, 2 * PART_SIZE)),
+        upload.complete(manifest.subList(0, 2), null, -1));
+    assertEquals(2 * PART_SIZE, item.getAttributes().getContentLength());
+  }
+
+  @Test
+  public void failedCompletionKeepsAllParts() throws Exception {
+
+    RepositoryItem item = repository.createRepositoryItem();
+    MultipartUpload upload = uploads.startUpload(createRecorder(item), PART_SIZE);
+    writeAllParts(upload);
+
+    // A short manifest with a wrong digest doesn't discard the parts beyond it
+    List<MultipartUpload.Part> manifest = createManifest(upload);
+    assertCompletionFails(upload, manifest.subList(0, 2), sha256(content));
+    assertEquals(NUM_PARTS, upload.getParts().size());
+
+    assertEquals(sha256(content), upload.complete(manifest, sha256(content), -1));
+    assertArrayEquals(content, Files.readAllBytes(((FileRepositoryItem) item).getFile().toPath()));
+  }
+
+  @Test
+  public void oversizedPartsAreRejected() throws Exception {
+
+    MultipartUpload upload = uploads.startUpload(createRecorder(repository.createRepositoryItem()),
+        PART_SIZE);
+    try {
+      upload.writePart(1, new ByteArrayInputStream(new byte[PART_SIZE + 1]));
+      fail("Oversized part written");
+    } catch (IllegalArgumentException e) {
+      assertTrue(upload.getParts().isEmpty());
+    }
+  }
+
+  @Test
+  public void abandonedUploadsAreAborted() throws Exception {
+
+    RepositoryItem idle = repository.createRepositoryItem();
+    MultipartUpload idleUpload = uploads.startUpload(createRecorder(idle), PART_SIZE);
+    idleUpload.writePart(1, new ByteArrayInputStream(part(1)));
+
+    RepositoryItem stopped = repository.createRepositoryItem();
+    RepositoryHttpEndpointImpl stoppedRecorder = createRecorder(stopped);
+    uploads.startUpload(stoppedRecorder, PART_SIZE);
+
+    assertEquals(0, uploads.expireUploads(System.currentTimeMillis()));
+    stoppedRecorder.stop();
+    assertEquals(1, uploads.expireUploads(System.currentTimeMillis()));
+    assertEquals(State.NEW, stopped.getState());
+
+    long expiration = System.currentTimeMillis() + uploads.getExpirationTime() + 1;
+    assertEquals(1, uploads.expireUploads(expiration));
+    assertEquals(0, uploads.getNumUploads());
+    assertEquals(State.NEW, idle.getState());
+    assertFalse(((FileRepositoryItem) idle).getFile().exists());
+
+    // The item can be uploaded again
+    writeAllParts(uploads.startUpload(createRecorder(idle), PART_SIZE));
+  }
+
+  private RepositoryHttpEndpointImpl createRecorder(RepositoryItem item) {
+    return (RepositoryHttpEndpointImpl) item.createRepositoryHttpRecorder();
+  }
+
+  private void writeAllParts(MultipartUpload upload) throws IOException {
+    for (int i = 1; i <= NUM_PARTS; i++) {
+      upload.writePart(i, new ByteArrayInputStream(part(i)));
+    }
+  }
+
+  private static List<MultipartUpload.Part> createManifest(MultipartUpload upload) {
+    List<MultipartUpload.Part> manifest = new ArrayList<>();
+    for (MultipartUpload.Part part : upload.getParts()) {
+      manifest.add(new MultipartUpload.Part(part.getPartNumber(), -1, part.getETag()));
+    }
+    return manifest;
+  }
+
+  private static void assertCompletionFails(MultipartUpload upload,
+      List<MultipartUpload.Part> manifest, String expectedDigest) throws IOException {
+    assertCompletionFails(upload, manifest, expectedDigest, -1);
+  }
+
+  private static void assertCompletionFails(MultipartUpload upload,
+      List<MultipartUpload.Part> manifest, String expectedDigest, long maxLength)
+      throws IOException {
+    try {
+      upload.complete(manifest, expectedDigest, maxLength);
+      fail("Upload completed");
+    } catch (IllegalArgumentException e) {
+      // The upload can be completed later
+    }
+  }
+
+  private byte[] part(int partNumber) {
+    int start = (partNumber - 1) * PART_SIZE;
+    return Arrays.copyOfRange(content, start, Math.min(start + PART_SIZE, content.length));
+  }
+
+  private static String sha256(byte[] data) throws Exception {
+    return AbstractRepositoryItem.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+  }
+
+  /**
+   * Input that fails after the first half of its content.
+   */
+  private static class BrokenInputStream extends FilterInputStream {
+
+    private int remaining;
+
+    BrokenInputStream(byte[] data) {
+      super(new ByteArrayInputStream(data));
+      remaining = data.length / 2;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        throw new IOException("Connection lost");
+      }
+      int n = super.read(b, off, Math.min(len, remaining));
+      remaining -= n;
+      return n;
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.repository.KurentoRepositoryServerApp;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryEventPublisher;
+import org.kurento.repository.RepositoryEventsHandler;
+import org.kurento.repository.RepositoryService;
+import org.kurento.repository.internal.RepositoryApplicationContextConfiguration;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.service.pojo.RepositoryEvent;
+import org.kurento.repository.service.pojo.RepositoryItemRecorder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Events of the repository streamed through the JSON-RPC events endpoint, received by local
+ * clients subscribed to single items or to all of them while many recorders upload concurrently.
+ */
+public class RepositoryEventsTest {
+
+  private static final int NUM_SESSIONS = 20;
+  private static final int CONTENT_SIZE = 64 * 1024;
+  private static final long TIMEOUT_SECONDS = 30;
+
+  private static final Gson gson = new Gson();
+
+  private static ConfigurableApplicationContext app;
+  private static RepositoryService repoService;
+  private static RepositoryEventsHandler eventsHandler;
+  private static RepositoryEventPublisher eventPublisher;
+  private static RepositoryHttpManager httpManager;
+
+  /**
+   * Local JSON-RPC client of the events endpoint, that keeps the events it receives.
+   */
+  private static class EventsClient implements Closeable {
+
+    private final JsonRpcClientLocal client = new JsonRpcClientLocal(eventsHandler);
+    private final BlockingQueue<RepositoryEvent> events = new LinkedBlockingQueue<>();
+    // When set, the client doesn't return from the reception of an event until it is released
+    private volatile CountDownLatch stalled;
+
+    EventsClient() {
+      client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+        @Override
+        public void handleRequest(Transaction transaction, Request<JsonObject> request)
+            throws InterruptedException {
+          if (stalled != null) {
+            stalled.await();
+          }
+          events.add(gson.fromJson(request.getParams().get(RepositoryEventPublisher.ONEVENT_VALUE),
+              RepositoryEvent.class));
+        }
+      });
+    }
+
+    String subscribe(String itemId) throws IOException {
+      JsonObject params = new JsonObject();
+      params.addProperty(RepositoryEventsHandler.SUBSCRIBE_ITEM, itemId);
+      return client.sendRequest(RepositoryEventsHandler.SUBSCRIBE_METHOD, params)
+          .getAsJsonObject().get("value").getAsString();
+    }
+
+    void unsubscribe(String subscription) throws IOException {
+      JsonObject params = new JsonObject();
+      params.addProperty(RepositoryEventsHandler.UNSUBSCRIBE_SUBSCRIPTION, subscription);
+      client.sendRequest(RepositoryEventsHandler.UNSUBSCRIBE_METHOD, params);
+    }
+
+    /**
+     * Waits for the next event, that must be of the given item.
+     */
+    RepositoryEvent nextEvent(String itemId) throws InterruptedException {
+      RepositoryEvent event = events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      assertNotNull("No event received for item " + itemId, event);
+      assertEquals(itemId, event.getItemId());
+      return event;
+    }
+
+    @Override
+    public void close() throws IOException {
+      client.close();
+    }
+  }
+
+  @BeforeClass
+  public static void setUpClass() {
+    System.setProperty(RepositoryApplicationContextConfiguration.KEY_REPO_TYPE,
+        RepositoryApiConfiguration.RepoType.FILESYSTEM.getTypeValue());
+    app = KurentoRepositoryServerApp.start();
+    repoService = app.getBean(RepositoryService.class);
+    eventsHandler = app.getBean(RepositoryEventsHandler.class);
+    eventPublisher = app.getBean(RepositoryEventPublisher.class);
+    httpManager = app.getBean(RepositoryHttpManager.class);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    app.close();
+  }
+
+  @Test
+  public void itemChangesAreStreamed() throws Exception {
+
+    try (EventsClient allItemsClient = new EventsClient();
+        EventsClient itemClient = new EventsClient()) {
+
+      String subscription = allItemsClient.subscribe(null);
+
+      Map<String, String> metadata = new HashMap<>();
+      metadata.put("name", "events");
+      RepositoryItemRecorder recorder = repoService.createRepositoryItem(metadata);
+      String itemId = recorder.getId();
+      String itemSubscription = itemClient.subscribe(itemId);
+
+      RepositoryEvent created = allItemsClient.nextEvent(itemId);
+      assertEquals(RepositoryEvent.ITEM_CREATED, created.getType());
+      assertEquals(subscription, created.getSubscription());
+      assertEquals(metadata, created.getMetadata());
+
+      assertEquals(200, upload(recorder.getUrl(), new byte[CONTENT_SIZE]));
+      stop(recorder);
+      for (EventsClient client : Arrays.asList(allItemsClient, itemClient)) {
+        assertEquals(RepositoryEvent.SESSION_STARTED, client.nextEvent(itemId).getType());
+        assertEquals(RepositoryEvent.SESSION_TERMINATED, client.nextEvent(itemId).getType());
+      }
+
+      metadata.put("name", "changed");
+      repoService.setRepositoryItemMetadata(itemId, metadata);
+      for (EventsClient client : Arrays.asList(allItemsClient, itemClient)) {
+        RepositoryEvent changed = client.nextEvent(itemId);
+        assertEquals(RepositoryEvent.ITEM_METADATA_CHANGED, changed.getType());
+        assertEquals("changed", changed.getMetadata().get("name"));
+      }
+
+      repoService.removeRepositoryItem(itemId);
+      assertEquals(RepositoryEvent.ITEM_REMOVED, allItemsClient.nextEvent(itemId).getType());
+      assertEquals(RepositoryEvent.ITEM_REMOVED, itemClient.nextEvent(itemId).getType());
+
+      // The subscriptions to a removed item are cancelled with it
+      try {
+        itemClient.unsubscribe(itemSubscription);
+        fail("Subscription to a removed item not cancelled");
+      } catch (JsonRpcErrorException e) {
+        assertEquals(RepositoryEventsHandler.SUBSCRIPTION_NOT_FOUND, e.getCode());
+      }
+
+      allItemsClient.unsubscribe(subscription);
+      repoService.createRepositoryItem(null);
+      assertNull(allItemsClient.events.poll(1, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void subscriptionsAreOnlyCancelledByTheirSession() throws Exception {
+
+    try (EventsClient client = new EventsClient(); EventsClient other = new EventsClient()) {
+
+      String subscription = client.subscribe(null);
+      try {
+        other.unsubscribe(subscription);
+        fail("Subscription cancelled by another session");
+      } catch (JsonRpcErrorException e) {
+        assertEquals(RepositoryEventsHandler.SUBSCRIPTION_NOT_FOUND, e.getCode());
+      }
+
+      String itemId = repoService.createRepositoryItem(null).getId();
+      assertEquals(RepositoryEvent.ITEM_CREATED, client.nextEvent(itemId).getType());
+      client.unsubscribe(subscription);
+    }
+  }
+
+  @Test
+  public void stalledSubscribersDontDelayOthers() throws Exception {
+
+    String itemId = repoService.createRepositoryItem(null).getId();
+    Map<String, String> metadata = new HashMap<>();
+
+    try (EventsClient stalledClient = new EventsClient();
+        EventsClient client = new EventsClient()) {
+
+      stalledClient.stalled = new CountDownLatch(1);
+      stalledClient.subscribe(itemId);
+      client.subscribe(itemId);
+      int numSubscriptions = eventPublisher.getNumSubscriptions();
+
+      try {
+        // The first event is being received and the rest fill the queue of the stalled client,
+        // until it overflows
+        int numEvents = RepositoryEventPublisher.MAX_PENDING_EVENTS + 2;
+        for (int i = 0; i < numEvents; i++) {
+          metadata.put("index", Integer.toString(i));
+          repoService.setRepositoryItemMetadata(itemId, metadata);
+        }
+
+        for (int i = 0; i < numEvents; i++) {
+          RepositoryEvent event = client.nextEvent(itemId);
+          assertEquals(Integer.toString(i), event.getMetadata().get("index"));
+        }
+
+        // The stalled session is dropped
+        assertEquals(numSubscriptions - 1, eventPublisher.getNumSubscriptions());
+
+      } finally {
+        stalledClient.stalled.countDown();
+      }
+    }
+  }
+
+  @Test
+  public void concurrentSessionsAreStreamedToTheirSubscribers() throws Exception {
+
+    final byte[] content = new byte[CONTENT_SIZE];
+    new Random().nextBytes(content);
+
+    List<RepositoryItemRecorder> recorders = new ArrayList<>();
+    List<EventsClient> clients = new ArrayList<>();
+    EventsClient allItemsClient = new EventsClient();
+    allItemsClient.subscribe(null);
+
+    try {
+      for (int i = 0; i < NUM_SESSIONS; i++) {
+        RepositoryItemRecorder recorder = repoService.createRepositoryItem(null);
+        EventsClient client = new EventsClient();
+        client.subscribe(recorder.getId());
+        recorders.add(recorder);
+        clients.add(client);
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(NUM_SESSIONS);
+      List<Future<Integer>> uploads = new ArrayList<>();
+      for (final RepositoryItemRecorder recorder : recorders) {
+        uploads.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws IOException {
+            int status = upload(recorder.getUrl(), content);
+            stop(recorder);
+            return status;
+          }
+        }));
+      }
+      for (Future<Integer> upload : uploads) {
+        assertEquals(200, upload.get().intValue());
+      }
+      executor.shutdown();
+
+      for (int i = 0; i < NUM_SESSIONS; i++) {
+        String itemId = recorders.get(i).getId();
+        EventsClient client = clients.get(i);
+
+        RepositoryEvent started = client.nextEvent(itemId);
+        assertEquals(RepositoryEvent.SESSION_STARTED, started.getType());
+        assertEquals(RepositoryEvent.RECORDER_ENDPOINT, started.getEndpointType());
+        assertEquals(recorders.get(i).getUrl(), started.getUrl());
+        assertEquals(RepositoryEvent.SESSION_TERMINATED, client.nextEvent(itemId).getType());
+
+        assertNull(client.events.poll(0, TimeUnit.SECONDS));
+      }
+
+      // Each item is created, recorded and terminated, in the order of its events
+      Map<String, List<String>> eventTypes = new HashMap<>();
+      for (int i = 0; i < 3 * NUM_SESSIONS; i++) {
+        RepositoryEvent event = allItemsClient.events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("Only " + i + " events received", event);
+        List<String> types = eventTypes.get(event.getItemId());
+        if (types == null) {
+          types = new ArrayList<>();
+          eventTypes.put(event.getItemId(), types);
+        }
+        types.add(event.getType());
+      }
+      for (RepositoryItemRecorder recorder : recorders) {
+        assertEquals(Arrays.asList(RepositoryEvent.ITEM_CREATED, RepositoryEvent.SESSION_STARTED,
+            RepositoryEvent.SESSION_TERMINATED), eventTypes.get(recorder.getId()));
+      }
+
+    } finally {
+      allItemsClient.close();
+      for (EventsClient client : clients) {
+        client.close();
+      }
+    }
+  }
+
+  private static void stop(RepositoryItemRecorder recorder) {
+    String url = recorder.getUrl();
+    httpManager.getHttpRepoItemElem(url.substring(url.lastIndexOf('/') + 1)).stop();
+  }
+
+  private static int upload(String url, byte[] content) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setDoOutput(true);
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "application/octet-stream");
+    connection.setFixedLengthStreamingMode(content.length);
+    try (OutputStream os = connection.getOutputStream()) {
+      os.write(content);
+    }
+    int status = connection.getResponseCode();
+    connection.disconnect();
+    return status;
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.kurento.commons.PropertiesManager.getProperty;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kurento.repository.KurentoRepositoryServerApp;
+import org.kurento.repository.Repository;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryClient;
+import org.kurento.repository.RepositoryClientProvider;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItemPage;
+import org.kurento.repository.internal.RepositoryApplicationContextConfiguration;
+import org.kurento.repository.internal.repoimpl.mongo.MongoRepository;
+import org.kurento.repository.service.pojo.RepositoryItemIdPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import retrofit.RetrofitError;
+
+/**
+ * Paginated and streamed queries of the REST API with many items. Can receive the option
+ * {@code (testWithFS=true)} to use the filesystem repository instead of Mongo.
+ */
+public class RepositoryPaginationRestTest {
+
+  private static final Logger log = LoggerFactory.getLogger(RepositoryPaginationRestTest.class);
+
+  private static final int NUM_ITEMS = 100000;
+  private static final int PAGE_SIZE = 1000;
+
+  private static ConfigurableApplicationContext app;
+  private static Repository repository;
+  private static RepositoryClient restService;
+
+  private static List<String> ids = new ArrayList<>();
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+
+    boolean testWithFS = getProperty("testWithFS", false);
+    if (testWithFS) {
+      System.setProperty(RepositoryApplicationContextConfiguration.KEY_REPO_TYPE,
+          RepositoryApiConfiguration.RepoType.FILESYSTEM.getTypeValue());
+    }
+    app = KurentoRepositoryServerApp.start();
+
+    restService = RepositoryClientProvider
+        .create("http://" + RepositoryApplicationContextConfiguration.SERVER_HOSTNAME + ":"
+            + RepositoryApplicationContextConfiguration.SERVER_PORT);
+
+    repository = (Repository) app.getBean("repository");
+    if (repository instanceof MongoRepository) {
+      ((MongoRepository) repository).getGridFS().getDB().dropDatabase();
+    } else {
+      // Items of previous executions are kept in the repository folder
+      String continuationToken = null;
+      do {
+        RepositoryItemPage page =
+            repository.findRepositoryItems(null, false, continuationToken, PAGE_SIZE);
+        for (RepositoryItem item : page.getItems()) {
+          repository.remove(item);
+        }
+        continuationToken = page.getContinuationToken();
+      } while (continuationToken != null);
+    }
+
+    log.info("Creating {} items", NUM_ITEMS);
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      RepositoryItem item = repository.createRepositoryItem();
+      Map<String, String> metadata = new HashMap<>();
+      metadata.put("group", "g" + i % 10);
+      item.setMetadata(metadata);
+      try (OutputStream os = item.createOutputStreamToWrite()) {
+        os.write(1);
+      }
+      ids.add(item.getId());
+    }
+    Collections.sort(ids);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    app.close();
+  }
+
+  @Test
+  public void allItemsAreListedInPages() {
+
+    List<String> listed = new ArrayList<>();
+    String continuationToken = null;
+    do {
+      RepositoryItemIdPage page = restService.listItems(continuationToken, PAGE_SIZE);
+      assertTrue(page.getItemIds().size() <= PAGE_SIZE);
+      listed.addAll(page.getItemIds());
+      continuationToken = page.getContinuationToken();
+    } while (continuationToken != null);
+
+    assertEquals(ids, listed);
+  }
+
+  @Test
+  public void itemsAreFoundInPages() {
+
+    Map<String, String> searchValues = new HashMap<>();
+    searchValues.put("group", "g3");
+
+    Set<String> found = new HashSet<>();
+    String continuationToken = null;
+    do {
+      RepositoryItemIdPage page =
+          restService.simpleFindItems(searchValues, continuationToken, PAGE_SIZE);
+      found.addAll(page.getItemIds());
+      continuationToken = page.getContinuationToken();
+    } while (continuationToken != null);
+
+    assertEquals(NUM_ITEMS / 10, found.size());
+  }
+
+  @Test
+  public void completeResultsAreStreamed() {
+
+    Map<String, String> searchValues = new HashMap<>();
+    searchValues.put("group", "g[12]");
+
+    assertEquals(NUM_ITEMS / 5, restService.regexFindItems(searchValues).size());
+  }
+
+  @Test
+  public void invalidContinuationTokenIsRejected() {
+    try {
+      restService.listItems("not a token", PAGE_SIZE);
+      throw new AssertionError("Invalid token accepted");
+    } catch (RetrofitError e) {
+      assertEquals(400, e.getResponse().getStatus());
+    }
+  }
+}
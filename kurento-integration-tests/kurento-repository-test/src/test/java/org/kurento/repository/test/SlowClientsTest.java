@@ -0,0 +1,241 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kurento.repository.HttpSessionStartedEvent;
+import org.kurento.repository.KurentoRepositoryServerApp;
+import org.kurento.repository.Repository;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryHttpEventListener;
+import org.kurento.repository.RepositoryHttpPlayer;
+import org.kurento.repository.RepositoryHttpRecorder;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.RepositoryApplicationContextConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Many concurrent slow players and recorders served by a small pool of container threads. Each
+ * client holds its transfer half done until all of them have started, which is only possible if
+ * the transfers don't block the threads.
+ */
+public class SlowClientsTest {
+
+  private static final int NUM_CLIENTS = 2000;
+  private static final int MAX_THREADS = 8;
+
+  private static final int UPLOAD_CHUNK_SIZE = 1024;
+  private static final int CONTENT_SIZE = 1024 * 1024;
+  private static final int RECEIVE_BUFFER_SIZE = 8 * 1024;
+  private static final int TIMEOUT_MILLIS = 60000;
+  // High enough not to slow down the players, but it keeps the container from sending the file
+  private static final long PLAYER_BANDWIDTH = 100 * 1024 * 1024;
+
+  private static ConfigurableApplicationContext app;
+  private static Repository repository;
+
+  @BeforeClass
+  public static void setUpClass() {
+    System.setProperty(RepositoryApplicationContextConfiguration.KEY_REPO_TYPE,
+        RepositoryApiConfiguration.RepoType.FILESYSTEM.getTypeValue());
+    System.setProperty("server.tomcat.max-threads", Integer.toString(MAX_THREADS));
+    app = KurentoRepositoryServerApp.start();
+    repository = (Repository) app.getBean("repository");
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    app.close();
+    System.clearProperty("server.tomcat.max-threads");
+  }
+
+  @Test
+  public void slowRecordersDontBlockThreads() throws Exception {
+
+    final CountDownLatch started = new CountDownLatch(NUM_CLIENTS);
+    List<RepositoryHttpRecorder> recorders = new ArrayList<>();
+    List<Socket> sockets = new ArrayList<>();
+
+    byte[] chunk = new byte[UPLOAD_CHUNK_SIZE];
+    new Random().nextBytes(chunk);
+
+    for (int i = 0; i < NUM_CLIENTS; i++) {
+      RepositoryHttpRecorder recorder = repository.createRepositoryItem()
+          .createRepositoryHttpRecorder();
+      recorder.setAutoTerminationTimeout(TIMEOUT_MILLIS);
+      recorder.addSessionStartedListener(
+          new RepositoryHttpEventListener<HttpSessionStartedEvent>() {
+            @Override
+            public void onEvent(HttpSessionStartedEvent event) {
+              started.countDown();
+            }
+          });
+      recorders.add(recorder);
+
+      // Only the first half of the body is sent
+      Socket socket = sendRequest(recorder.getURL(), "POST", 2 * UPLOAD_CHUNK_SIZE);
+      socket.getOutputStream().write(chunk);
+      socket.getOutputStream().flush();
+      sockets.add(socket);
+    }
+
+    assertTrue("Only " + (NUM_CLIENTS - started.getCount()) + " uploads started",
+        started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+    for (Socket socket : sockets) {
+      socket.getOutputStream().write(chunk);
+      socket.getOutputStream().flush();
+    }
+
+    for (int i = 0; i < NUM_CLIENTS; i++) {
+      try (Socket socket = sockets.get(i)) {
+        assertEquals(200, readHeaders(new BufferedInputStream(socket.getInputStream())));
+      }
+      RepositoryHttpRecorder recorder = recorders.get(i);
+      recorder.stop();
+      assertEquals(2 * UPLOAD_CHUNK_SIZE,
+          recorder.getRepositoryItem().getAttributes().getContentLength());
+    }
+  }
+
+  @Test
+  public void slowPlayersDontBlockThreads() throws Exception {
+
+    byte[] content = new byte[CONTENT_SIZE];
+    new Random().nextBytes(content);
+    RepositoryItem item = repository.createRepositoryItem();
+    try (OutputStream os = item.createOutputStreamToWrite()) {
+      os.write(content);
+    }
+
+    List<Socket> sockets = new ArrayList<>();
+    List<InputStream> inputs = new ArrayList<>();
+    for (int i = 0; i < NUM_CLIENTS; i++) {
+      RepositoryHttpPlayer player = item.createRepositoryHttpPlayer();
+      player.setAutoTerminationTimeout(TIMEOUT_MILLIS);
+      player.setMaxBandwidth(PLAYER_BANDWIDTH);
+      Socket socket = sendRequest(player.getURL(), "GET", -1);
+      sockets.add(socket);
+      inputs.add(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    // The responses of all players are started before any of them is read completely
+    byte[] first = new byte[RECEIVE_BUFFER_SIZE];
+    for (InputStream input : inputs) {
+      assertEquals(200, readHeaders(input));
+      readFully(input, first);
+    }
+
+    byte[] received = new byte[CONTENT_SIZE];
+    for (int i = 0; i < NUM_CLIENTS; i++) {
+      try (Socket socket = sockets.get(i)) {
+        System.arraycopy(first, 0, received, 0, first.length);
+        readFully(inputs.get(i), received, first.length);
+        assertArrayEquals(content, received);
+      }
+    }
+  }
+
+  private static Socket sendRequest(String url, String method, int contentLength)
+      throws IOException {
+
+    URL parsedUrl = new URL(url);
+    Socket socket = new Socket();
+    // Small buffers, so that the server can't send the whole content without the client reading it
+    socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+    socket.setSoTimeout(TIMEOUT_MILLIS);
+    socket.connect(new InetSocketAddress(parsedUrl.getHost(), parsedUrl.getPort()));
+
+    StringBuilder request = new StringBuilder();
+    request.append(method).append(' ').append(parsedUrl.getPath()).append(" HTTP/1.1\r\n");
+    request.append("Host: ").append(parsedUrl.getHost()).append(':').append(parsedUrl.getPort())
+        .append("\r\n");
+    request.append("Connection: close\r\n");
+    if (contentLength >= 0) {
+      request.append("Content-Type: application/octet-stream\r\n");
+      request.append("Content-Length: ").append(contentLength).append("\r\n");
+    }
+    request.append("\r\n");
+
+    socket.getOutputStream().write(request.toString().getBytes(StandardCharsets.US_ASCII));
+    socket.getOutputStream().flush();
+    return socket;
+  }
+
+  /**
+   * Reads the status line and headers of a response, returning the status code.
+   */
+  private static int readHeaders(InputStream input) throws IOException {
+
+    String statusLine = readLine(input);
+    while (!readLine(input).isEmpty()) {
+      // Headers are not checked
+    }
+    return Integer.parseInt(statusLine.split(" ")[1]);
+  }
+
+  private static String readLine(InputStream input) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = input.read()) != '\n') {
+      if (c == -1) {
+        throw new IOException("Connection closed reading headers");
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+  private static void readFully(InputStream input, byte[] buffer) throws IOException {
+    readFully(input, buffer, 0);
+  }
+
+  private static void readFully(InputStream input, byte[] buffer, int offset)
+      throws IOException {
+    int read = offset;
+    while (read < buffer.length) {
+      int n = input.read(buffer, read, buffer.length - read);
+      if (n == -1) {
+        throw new IOException("Connection closed after " + read + " bytes");
+      }
+      read += n;
+    }
+  }
+}
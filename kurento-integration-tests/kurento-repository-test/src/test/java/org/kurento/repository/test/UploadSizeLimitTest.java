@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.RepositoryHttpRecorder;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.test.util.BaseRepositoryTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+public class UploadSizeLimitTest extends BaseRepositoryTest {
+
+  private static final int MAX_UPLOAD_SIZE = 1000;
+
+  private RepositoryApiConfiguration config;
+
+  @Before
+  public void setMaxUploadSize() {
+    config = repositoryServer.getBean(RepositoryApiConfiguration.class);
+    config.setMaxUploadSize(MAX_UPLOAD_SIZE);
+  }
+
+  @After
+  public void resetMaxUploadSize() {
+    config.setMaxUploadSize(-1);
+  }
+
+  @Test
+  public void uploadsLargerThanMaxSizeAreRejected() {
+
+    assertEquals(HttpStatus.REQUEST_ENTITY_TOO_LARGE, upload(new byte[MAX_UPLOAD_SIZE + 1]));
+    assertEquals(HttpStatus.OK, upload(new byte[MAX_UPLOAD_SIZE]));
+  }
+
+  private HttpStatus upload(byte[] content) {
+
+    RepositoryItem item = getRepository().createRepositoryItem();
+    RepositoryHttpRecorder recorder = item.createRepositoryHttpRecorder();
+
+    ResponseEntity<String> entity =
+        getRestTemplate().postForEntity(recorder.getURL(), content, String.class);
+
+    recorder.stop();
+
+    return entity.getStatusCode();
+  }
+}
@@ -0,0 +1,412 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.load;
+
+import static org.kurento.commons.PropertiesManager.getProperty;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.test.load.RequestMix.RequestTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Headless load generator for JSON-RPC servers. It opens a number of clients that send requests
+ * chosen from a {@link RequestMix} at a fixed rate, optionally subscribing to server events, and
+ * records the latency of the responses in a {@link LoadReport}.
+ *
+ * <p>
+ * Requests are sent asynchronously following a schedule, and their latency is measured from the
+ * time they were scheduled. This way, when the server stalls, the latency of the requests that
+ * should have been sent in the meantime is accounted for, instead of being hidden because the
+ * load generator itself was waiting (coordinated omission).
+ * </p>
+ *
+ * <p>
+ * It can be launched as a Java application configured with the properties {@code load.wsUri},
+ * {@code load.clients}, {@code load.rate} (requests per second of each client),
+ * {@code load.duration} (seconds) and {@code load.output} (path of the reports, without
+ * extension). By default, it sends {@code echo} requests, as answered by
+ * {@code EchoJsonRpcHandler}.
+ * </p>
+ */
+public class JsonRpcLoadGenerator {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcLoadGenerator.class);
+
+  public static final String LOAD_WS_URI_PROP = "load.wsUri";
+  public static final String LOAD_WS_URI_DEFAULT = "ws://localhost:8080/jsonrpc";
+  public static final String LOAD_CLIENTS_PROP = "load.clients";
+  public static final int LOAD_CLIENTS_DEFAULT = 100;
+  public static final String LOAD_RATE_PROP = "load.rate";
+  public static final double LOAD_RATE_DEFAULT = 10;
+  public static final String LOAD_DURATION_PROP = "load.duration";
+  public static final int LOAD_DURATION_DEFAULT = 30; // seconds
+  public static final String LOAD_OUTPUT_PROP = "load.output";
+  public static final String LOAD_OUTPUT_DEFAULT = "target/load-report";
+
+  private static final int CONNECTION_THREADS = 16;
+  private static final long DRAIN_TIMEOUT_MILLIS = 10000;
+
+  /**
+   * Creates and connects the clients of the load generator.
+   */
+  public interface ClientFactory {
+    JsonRpcClient createClient() throws IOException;
+  }
+
+  private final ClientFactory clientFactory;
+
+  private int numClients = LOAD_CLIENTS_DEFAULT;
+  private double requestRate = LOAD_RATE_DEFAULT;
+  private long durationMillis = TimeUnit.SECONDS.toMillis(LOAD_DURATION_DEFAULT);
+  private long reportIntervalMillis = 1000;
+  private RequestMix requestMix = new RequestMix();
+  private String subscriptionMethod;
+  private JsonObject subscriptionParams;
+
+  private final List<JsonRpcClient> clients = new CopyOnWriteArrayList<>();
+  private final AtomicLong intervalRequests = new AtomicLong();
+  private final AtomicLong intervalErrors = new AtomicLong();
+  private final AtomicLong intervalEvents = new AtomicLong();
+  private final AtomicLong totalRequests = new AtomicLong();
+  private final AtomicLong totalErrors = new AtomicLong();
+  private final AtomicLong totalEvents = new AtomicLong();
+  private final AtomicLong pendingRequests = new AtomicLong();
+  private final AtomicReference<LatencyHistogram> intervalLatency = new AtomicReference<>(
+      new LatencyHistogram());
+  private final AtomicReference<LatencyHistogram> intervalServiceLatency = new AtomicReference<>(
+      new LatencyHistogram());
+  private final LatencyHistogram totalLatency = new LatencyHistogram();
+  private final LatencyHistogram totalServiceLatency = new LatencyHistogram();
+
+  public JsonRpcLoadGenerator(final String wsUri) {
+    this(new ClientFactory() {
+      @Override
+      public JsonRpcClient createClient() throws IOException {
+        JsonRpcClient client = new JsonRpcClientWebSocket(wsUri);
+        client.connect();
+        return client;
+      }
+    });
+  }
+
+  public JsonRpcLoadGenerator(ClientFactory clientFactory) {
+    this.clientFactory = clientFactory;
+  }
+
+  public JsonRpcLoadGenerator withClients(int numClients) {
+    this.numClients = numClients;
+    return this;
+  }
+
+  /**
+   * Sets the number of requests sent per second by each client.
+   */
+  public JsonRpcLoadGenerator withRequestRate(double requestRate) {
+    if (requestRate <= 0) {
+      throw new IllegalArgumentException("Request rate must be positive: " + requestRate);
+    }
+    this.requestRate = requestRate;
+    return this;
+  }
+
+  public JsonRpcLoadGenerator withDuration(long duration, TimeUnit unit) {
+    this.durationMillis = unit.toMillis(duration);
+    return this;
+  }
+
+  public JsonRpcLoadGenerator withReportInterval(long interval, TimeUnit unit) {
+    this.reportIntervalMillis = unit.toMillis(interval);
+    return this;
+  }
+
+  public JsonRpcLoadGenerator withRequestMix(RequestMix requestMix) {
+    this.requestMix = requestMix;
+    return this;
+  }
+
+  /**
+   * Makes each client send the given request after connecting. Requests (and notifications)
+   * received from the server afterwards are counted as events.
+   */
+  public JsonRpcLoadGenerator withSubscription(String method, JsonObject params) {
+    this.subscriptionMethod = method;
+    this.subscriptionParams = params;
+    return this;
+  }
+
+  public LoadReport run() throws InterruptedException {
+
+    if (requestMix.isEmpty()) {
+      throw new IllegalStateException("Request mix without requests");
+    }
+
+    LoadReport report = new LoadReport();
+
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("JsonRpcLoadGenerator-%d").build());
+
+    try {
+
+      connectClients();
+
+      log.info("Sending {} requests/s with {} clients during {} ms",
+          requestRate * clients.size(), clients.size(), durationMillis);
+
+      long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestRate);
+      long startNanos = System.nanoTime();
+      long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+
+      List<ScheduledFuture<?>> tasks = new ArrayList<>();
+      for (int i = 0; i < clients.size(); i++) {
+        // Clients are spread along the period to avoid bursts
+        long offsetNanos = periodNanos * i / clients.size();
+        tasks.add(scheduler.scheduleAtFixedRate(
+            new ClientLoad(clients.get(i), startNanos + offsetNanos, periodNanos, endNanos),
+            offsetNanos, periodNanos, TimeUnit.NANOSECONDS));
+      }
+
+      final long startMillis = System.currentTimeMillis();
+      final LoadReport sampledReport = report;
+      tasks.add(scheduler.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          sampledReport.addSample(takeSample(System.currentTimeMillis() - startMillis));
+        }
+      }, reportIntervalMillis, reportIntervalMillis, TimeUnit.MILLISECONDS));
+
+      TimeUnit.NANOSECONDS.sleep(endNanos - System.nanoTime());
+
+      for (ScheduledFuture<?> task : tasks) {
+        task.cancel(false);
+      }
+
+      long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+      while (pendingRequests.get() > 0 && System.currentTimeMillis() < drainDeadline) {
+        Thread.sleep(10);
+      }
+      if (pendingRequests.get() > 0) {
+        log.warn("{} requests without response after {} ms", pendingRequests.get(),
+            DRAIN_TIMEOUT_MILLIS);
+      }
+
+      report.addSample(takeSample(System.currentTimeMillis() - startMillis));
+      report.setTotals(clients.size(), durationMillis, totalRequests.get(), totalErrors.get(),
+          totalEvents.get(), totalLatency, totalServiceLatency);
+
+      return report;
+
+    } finally {
+      scheduler.shutdownNow();
+      closeClients();
+    }
+  }
+
+  private void connectClients() throws InterruptedException {
+
+    ExecutorService executor = Executors.newFixedThreadPool(CONNECTION_THREADS,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("JsonRpcLoadGenerator-connect-%d").build());
+
+    try {
+
+      List<Future<JsonRpcClient>> futures = new ArrayList<>();
+      for (int i = 0; i < numClients; i++) {
+        futures.add(executor.submit(new Callable<JsonRpcClient>() {
+          @Override
+          public JsonRpcClient call() throws Exception {
+            return connectClient();
+          }
+        }));
+      }
+
+      int failures = 0;
+      for (Future<JsonRpcClient> future : futures) {
+        try {
+          clients.add(future.get());
+        } catch (ExecutionException e) {
+          if (failures++ == 0) {
+            log.warn("Exception connecting client", e.getCause());
+          }
+        }
+      }
+
+      if (failures > 0) {
+        log.warn("{} of {} clients could not connect", failures, numClients);
+      }
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private JsonRpcClient connectClient() throws IOException {
+
+    JsonRpcClient client = clientFactory.createClient();
+
+    client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        intervalEvents.incrementAndGet();
+        totalEvents.incrementAndGet();
+      }
+    });
+
+    if (subscriptionMethod != null) {
+      client.sendRequest(subscriptionMethod, subscriptionParams);
+    }
+
+    return client;
+  }
+
+  private void closeClients() {
+    for (JsonRpcClient client : clients) {
+      try {
+        client.close();
+      } catch (IOException e) {
+        log.debug("Exception closing client", e);
+      }
+    }
+    clients.clear();
+  }
+
+  private LoadReport.Sample takeSample(long time) {
+    return new LoadReport.Sample(time, clients.size(), intervalRequests.getAndSet(0),
+        intervalErrors.getAndSet(0), intervalEvents.getAndSet(0),
+        intervalLatency.getAndSet(new LatencyHistogram()),
+        intervalServiceLatency.getAndSet(new LatencyHistogram()));
+  }
+
+  private void recordResponse(long intendedNanos, long sentNanos) {
+
+    long now = System.nanoTime();
+    long latency = TimeUnit.NANOSECONDS.toMicros(now - intendedNanos);
+    long serviceLatency = TimeUnit.NANOSECONDS.toMicros(now - sentNanos);
+
+    intervalLatency.get().recordValue(latency);
+    intervalServiceLatency.get().recordValue(serviceLatency);
+    totalLatency.recordValue(latency);
+    totalServiceLatency.recordValue(serviceLatency);
+  }
+
+  private class ClientLoad implements Runnable {
+
+    private final JsonRpcClient client;
+    private final long periodNanos;
+    private final long endNanos;
+    private long nextNanos;
+
+    private ClientLoad(JsonRpcClient client, long firstNanos, long periodNanos, long endNanos) {
+      this.client = client;
+      this.nextNanos = firstNanos;
+      this.periodNanos = periodNanos;
+      this.endNanos = endNanos;
+    }
+
+    @Override
+    public void run() {
+
+      final long intendedNanos = nextNanos;
+      nextNanos += periodNanos;
+
+      if (intendedNanos >= endNanos) {
+        return;
+      }
+
+      RequestTemplate template = requestMix.next(ThreadLocalRandom.current());
+
+      intervalRequests.incrementAndGet();
+      totalRequests.incrementAndGet();
+      pendingRequests.incrementAndGet();
+
+      final long sentNanos = System.nanoTime();
+
+      try {
+        client.sendRequest(template.getMethod(), template.getParams(),
+            new Continuation<JsonElement>() {
+              @Override
+              public void onSuccess(JsonElement result) {
+                recordResponse(intendedNanos, sentNanos);
+                pendingRequests.decrementAndGet();
+              }
+
+              @Override
+              public void onError(Throwable cause) {
+                intervalErrors.incrementAndGet();
+                totalErrors.incrementAndGet();
+                pendingRequests.decrementAndGet();
+              }
+            });
+      } catch (Exception e) {
+        log.debug("Exception sending request", e);
+        intervalErrors.incrementAndGet();
+        totalErrors.incrementAndGet();
+        pendingRequests.decrementAndGet();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException, IOException {
+
+    JsonObject params = new JsonObject();
+    params.addProperty("message", "Hello from JsonRpcLoadGenerator");
+
+    JsonRpcLoadGenerator generator = new JsonRpcLoadGenerator(
+        getProperty(LOAD_WS_URI_PROP, LOAD_WS_URI_DEFAULT))
+            .withClients(getProperty(LOAD_CLIENTS_PROP, LOAD_CLIENTS_DEFAULT))
+            .withRequestRate(getProperty(LOAD_RATE_PROP, LOAD_RATE_DEFAULT))
+            .withDuration(getProperty(LOAD_DURATION_PROP, LOAD_DURATION_DEFAULT), TimeUnit.SECONDS)
+            .withRequestMix(new RequestMix().add("echo", params, 1));
+
+    LoadReport report = generator.run();
+
+    String output = getProperty(LOAD_OUTPUT_PROP, LOAD_OUTPUT_DEFAULT);
+    report.writeCsv(output + ".csv");
+    report.writeJson(output + ".json");
+
+    log.info("{}", report);
+    log.info("Reports written to {}.csv and {}.json", output, output);
+  }
+}
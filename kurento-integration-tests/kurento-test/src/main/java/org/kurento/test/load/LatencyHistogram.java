@@ -0,0 +1,167 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies (in microseconds) with the log-linear layout of HdrHistogram: values are
+ * grouped in buckets covering a power of two, each one divided in 1024 sub-buckets, so any value
+ * is recorded with a relative error below 0.1% using a fixed amount of memory. Values can be
+ * recorded concurrently without locking.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 10;
+  private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+  private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT * 2;
+  private static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+
+  /**
+   * Highest value that can be recorded (about 19 hours). Higher values are recorded as this one.
+   */
+  public static final long MAX_VALUE = (1L << 36) - 1;
+
+  private static final int BUCKET_COUNT = 64 - Long.numberOfLeadingZeros(MAX_VALUE)
+      - SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+
+  private final AtomicLongArray counts = new AtomicLongArray(
+      (BUCKET_COUNT + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE);
+
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalSum = new AtomicLong();
+  private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong maxValue = new AtomicLong();
+
+  public void recordValue(long value) {
+
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative values cannot be recorded: " + value);
+    }
+
+    value = Math.min(value, MAX_VALUE);
+
+    counts.incrementAndGet(countsIndex(value));
+    totalCount.incrementAndGet();
+    totalSum.addAndGet(value);
+
+    long min;
+    while (value < (min = minValue.get()) && !minValue.compareAndSet(min, value)) {
+      // Retry
+    }
+    long max;
+    while (value > (max = maxValue.get()) && !maxValue.compareAndSet(max, value)) {
+      // Retry
+    }
+  }
+
+  /**
+   * Adds the values recorded in other histogram to this one.
+   */
+  public void add(LatencyHistogram other) {
+
+    for (int i = 0; i < counts.length(); i++) {
+      long count = other.counts.get(i);
+      if (count != 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+
+    totalCount.addAndGet(other.totalCount.get());
+    totalSum.addAndGet(other.totalSum.get());
+
+    long otherMin = other.minValue.get();
+    long min;
+    while (otherMin < (min = minValue.get()) && !minValue.compareAndSet(min, otherMin)) {
+      // Retry
+    }
+    long otherMax = other.maxValue.get();
+    long max;
+    while (otherMax > (max = maxValue.get()) && !maxValue.compareAndSet(max, otherMax)) {
+      // Retry
+    }
+  }
+
+  public long getTotalCount() {
+    return totalCount.get();
+  }
+
+  public long getMinValue() {
+    return totalCount.get() == 0 ? 0 : minValue.get();
+  }
+
+  public long getMaxValue() {
+    return maxValue.get();
+  }
+
+  public double getMean() {
+    long count = totalCount.get();
+    return count == 0 ? 0 : (double) totalSum.get() / count;
+  }
+
+  /**
+   * Returns the value below which the given percentage of the recorded values fall, rounded up to
+   * the highest value of its sub-bucket (and never higher than the maximum recorded value).
+   *
+   * @param percentile
+   *          percentage between 0 and 100
+   */
+  public long getValueAtPercentile(double percentile) {
+
+    long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+
+    double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+    long countAtPercentile = Math.max(1, (long) Math.ceil(fraction * count));
+
+    long accumulated = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      accumulated += counts.get(i);
+      if (accumulated >= countAtPercentile) {
+        return Math.min(highestEquivalentValue(i), getMaxValue());
+      }
+    }
+
+    return getMaxValue();
+  }
+
+  private static int countsIndex(long value) {
+
+    int bucketIndex = 63 - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK)
+        - SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+    int subBucketIndex = (int) (value >>> bucketIndex);
+
+    return (bucketIndex << SUB_BUCKET_HALF_COUNT_MAGNITUDE) + subBucketIndex;
+  }
+
+  private static long highestEquivalentValue(int index) {
+
+    int bucketIndex = (index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+    int subBucketIndex = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+    if (bucketIndex < 0) {
+      subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+      bucketIndex = 0;
+    }
+
+    long lowestValue = (long) subBucketIndex << bucketIndex;
+    return lowestValue + (1L << bucketIndex) - 1;
+  }
+}
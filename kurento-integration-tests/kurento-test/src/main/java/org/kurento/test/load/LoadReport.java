@@ -0,0 +1,258 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.load;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Results of a {@link JsonRpcLoadGenerator} run: a sample of each report interval and the
+ * latency percentiles of the whole run.
+ *
+ * <p>
+ * Latencies are reported in milliseconds. The corrected latency is measured from the time each
+ * request should have been sent according to the configured rate, so the delays of requests that
+ * could not be sent while the server was stalled are accounted for (coordinated omission). The
+ * service latency is measured from the time the request was actually sent.
+ * </p>
+ *
+ * <p>
+ * The CSV file uses the layout of {@link org.kurento.test.monitor.MonitorSampleRegistrer} (time
+ * formatted as minutes and seconds, followed by the number of clients and the average latency),
+ * so both can be processed with the same tools.
+ * </p>
+ */
+public class LoadReport {
+
+  public static class Stats {
+
+    private long count;
+    private double mean;
+    private double p50;
+    private double p90;
+    private double p99;
+    private double p999;
+    private double max;
+
+    public Stats(LatencyHistogram histogram) {
+      this.count = histogram.getTotalCount();
+      this.mean = histogram.getMean() / 1000;
+      this.p50 = histogram.getValueAtPercentile(50) / 1000.0;
+      this.p90 = histogram.getValueAtPercentile(90) / 1000.0;
+      this.p99 = histogram.getValueAtPercentile(99) / 1000.0;
+      this.p999 = histogram.getValueAtPercentile(99.9) / 1000.0;
+      this.max = histogram.getMaxValue() / 1000.0;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMean() {
+      return mean;
+    }
+
+    public double getP50() {
+      return p50;
+    }
+
+    public double getP90() {
+      return p90;
+    }
+
+    public double getP99() {
+      return p99;
+    }
+
+    public double getP999() {
+      return p999;
+    }
+
+    public double getMax() {
+      return max;
+    }
+  }
+
+  public static class Sample {
+
+    private long time;
+    private int numClients;
+    private long requests;
+    private long errors;
+    private long events;
+    private Stats latency;
+    private Stats serviceLatency;
+
+    public Sample(long time, int numClients, long requests, long errors, long events,
+        LatencyHistogram latency, LatencyHistogram serviceLatency) {
+      this.time = time;
+      this.numClients = numClients;
+      this.requests = requests;
+      this.errors = errors;
+      this.events = events;
+      this.latency = new Stats(latency);
+      this.serviceLatency = new Stats(serviceLatency);
+    }
+
+    public long getTime() {
+      return time;
+    }
+
+    public int getNumClients() {
+      return numClients;
+    }
+
+    public long getRequests() {
+      return requests;
+    }
+
+    public long getErrors() {
+      return errors;
+    }
+
+    public long getEvents() {
+      return events;
+    }
+
+    public Stats getLatency() {
+      return latency;
+    }
+
+    public Stats getServiceLatency() {
+      return serviceLatency;
+    }
+  }
+
+  private int numClients;
+  private long durationMillis;
+  private long requests;
+  private long errors;
+  private long events;
+  private Stats latency;
+  private Stats serviceLatency;
+  private List<Sample> samples = new ArrayList<>();
+
+  void addSample(Sample sample) {
+    samples.add(sample);
+  }
+
+  void setTotals(int numClients, long durationMillis, long requests, long errors, long events,
+      LatencyHistogram latency, LatencyHistogram serviceLatency) {
+    this.numClients = numClients;
+    this.durationMillis = durationMillis;
+    this.requests = requests;
+    this.errors = errors;
+    this.events = events;
+    this.latency = new Stats(latency);
+    this.serviceLatency = new Stats(serviceLatency);
+  }
+
+  public int getNumClients() {
+    return numClients;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public long getRequests() {
+    return requests;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  public long getEvents() {
+    return events;
+  }
+
+  public Stats getLatency() {
+    return latency;
+  }
+
+  public Stats getServiceLatency() {
+    return serviceLatency;
+  }
+
+  public List<Sample> getSamples() {
+    return samples;
+  }
+
+  public void writeCsv(String csvFile) throws IOException {
+
+    createParentDirectories(csvFile);
+
+    try (PrintWriter pw = new PrintWriter(new FileWriter(csvFile))) {
+
+      pw.println("time,clients_number,requests,errors,events,latency_ms_avg,latency_ms_p50"
+          + ",latency_ms_p90,latency_ms_p99,latency_ms_p999,latency_ms_max"
+          + ",service_latency_ms_avg,service_latency_ms_p99");
+
+      SimpleDateFormat simpleDateFormat = new SimpleDateFormat("mm:ss.SSS");
+
+      for (Sample sample : samples) {
+        pw.print(simpleDateFormat.format(sample.time) + ",");
+        pw.print(sample.numClients + "," + sample.requests + "," + sample.errors + ","
+            + sample.events);
+        pw.format(Locale.ENGLISH, ",%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f",
+            sample.latency.mean, sample.latency.p50, sample.latency.p90, sample.latency.p99,
+            sample.latency.p999, sample.latency.max, sample.serviceLatency.mean,
+            sample.serviceLatency.p99);
+        pw.println("");
+      }
+    }
+  }
+
+  public void writeJson(String jsonFile) throws IOException {
+
+    createParentDirectories(jsonFile);
+
+    Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    try (PrintWriter pw = new PrintWriter(new FileWriter(jsonFile))) {
+      gson.toJson(this, pw);
+    }
+  }
+
+  private void createParentDirectories(String file) throws IOException {
+    Path parent = Paths.get(file).getParent();
+    if (parent != null && !Files.exists(parent)) {
+      Files.createDirectories(parent);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ENGLISH,
+        "%d clients, %d requests in %d ms (%d errors, %d events). Latency ms: mean %.2f,"
+            + " p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f (service p99 %.2f)",
+        numClients, requests, durationMillis, errors, events, latency.mean, latency.p50,
+        latency.p90, latency.p99, latency.p999, latency.max, serviceLatency.p99);
+  }
+}
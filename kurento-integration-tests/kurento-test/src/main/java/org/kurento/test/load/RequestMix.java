@@ -0,0 +1,94 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Weighted set of requests sent by the clients of a {@link JsonRpcLoadGenerator}. Each time a
+ * client sends a request, one of them is chosen at random with a probability proportional to its
+ * weight.
+ */
+public class RequestMix {
+
+  public static class RequestTemplate {
+
+    private final String method;
+    private final JsonObject params;
+    private final int weight;
+
+    private RequestTemplate(String method, JsonObject params, int weight) {
+      this.method = method;
+      this.params = params;
+      this.weight = weight;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public JsonObject getParams() {
+      return params;
+    }
+
+    public int getWeight() {
+      return weight;
+    }
+  }
+
+  private final List<RequestTemplate> templates = new ArrayList<>();
+  private int totalWeight;
+
+  public RequestMix add(String method, JsonObject params, int weight) {
+    if (weight < 1) {
+      throw new IllegalArgumentException("Weight must be at least 1: " + weight);
+    }
+    templates.add(new RequestTemplate(method, params, weight));
+    totalWeight += weight;
+    return this;
+  }
+
+  public boolean isEmpty() {
+    return templates.isEmpty();
+  }
+
+  public List<RequestTemplate> getTemplates() {
+    return templates;
+  }
+
+  public RequestTemplate next(Random random) {
+
+    if (templates.isEmpty()) {
+      throw new IllegalStateException("Request mix without requests");
+    }
+
+    int value = random.nextInt(totalWeight);
+    for (RequestTemplate template : templates) {
+      value -= template.weight;
+      if (value < 0) {
+        return template;
+      }
+    }
+
+    return templates.get(templates.size() - 1);
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.test.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Checks the percentiles computed by {@link LatencyHistogram} and runs the load generator against
+ * an in-process echo handler.
+ */
+public class JsonRpcLoadGeneratorTest {
+
+  public static class EchoHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+      if ("fail".equals(request.getMethod())) {
+        transaction.sendError(1, "FAIL", "Injected failure");
+      } else {
+        transaction.sendResponse(request.getParams());
+      }
+    }
+  }
+
+  @Test
+  public void histogramPercentiles() {
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10000; i++) {
+      histogram.recordValue(i * 100);
+    }
+
+    assertEquals(10000, histogram.getTotalCount());
+    assertEquals(100, histogram.getMinValue());
+    assertEquals(1000000, histogram.getMaxValue());
+    assertEquals(500050, histogram.getMean(), 0.001);
+    assertWithinPrecision(500000, histogram.getValueAtPercentile(50));
+    assertWithinPrecision(990000, histogram.getValueAtPercentile(99));
+    assertWithinPrecision(999000, histogram.getValueAtPercentile(99.9));
+    assertEquals(1000000, histogram.getValueAtPercentile(100));
+
+    LatencyHistogram other = new LatencyHistogram();
+    other.recordValue(LatencyHistogram.MAX_VALUE + 1);
+    histogram.add(other);
+
+    assertEquals(10001, histogram.getTotalCount());
+    assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMaxValue());
+  }
+
+  @Test
+  public void loadIsReported() throws InterruptedException, IOException {
+
+    final EchoHandler handler = new EchoHandler();
+
+    RequestMix mix = new RequestMix().add("echo", new JsonObject(), 9).add("fail",
+        new JsonObject(), 1);
+
+    LoadReport report = new JsonRpcLoadGenerator(new JsonRpcLoadGenerator.ClientFactory() {
+      @Override
+      public JsonRpcClient createClient() {
+        return new JsonRpcClientLocal(handler);
+      }
+    }).withClients(20).withRequestRate(50).withDuration(1, TimeUnit.SECONDS)
+        .withReportInterval(200, TimeUnit.MILLISECONDS).withRequestMix(mix).run();
+
+    assertEquals(20, report.getNumClients());
+    assertTrue(report.getRequests() > 500);
+    assertTrue(report.getErrors() > 0);
+    assertEquals(report.getRequests() - report.getErrors(), report.getLatency().getCount());
+    assertTrue(report.getSamples().size() >= 5);
+
+    Path dir = Files.createTempDirectory("load-report");
+    report.writeCsv(dir.resolve("report.csv").toString());
+    report.writeJson(dir.resolve("report.json").toString());
+
+    List<String> lines = Files.readAllLines(dir.resolve("report.csv"), StandardCharsets.UTF_8);
+    assertTrue(lines.get(0).startsWith("time,clients_number,"));
+    assertEquals(report.getSamples().size() + 1, lines.size());
+  }
+
+  private void assertWithinPrecision(long expected, long value) {
+    assertTrue("Expected " + expected + " but was " + value,
+        Math.abs(value - expected) <= expected / 1000);
+  }
+}
@@ -31,6 +31,11 @@ public abstract class DefaultJsonRpcHandler<P> implements JsonRpcHandler<P> {
   private boolean useSockJs;
   private String label;
   private boolean pingWatchdog = false;
+  private boolean compression = true;
+  private long maxSessions;
+  private long maxSessionsPerAddress;
+  private double maxRequestsPerSecond;
+  private int requestsBurst;
 
   private List<String> allowedOrigins = ImmutableList.of();
 
@@ -100,4 +105,66 @@ public abstract class DefaultJsonRpcHandler<P> implements JsonRpcHandler<P> {
   public boolean isPingWatchdog() {
     return pingWatchdog;
   }
+
+  public DefaultJsonRpcHandler<P> withCompression(boolean compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  /**
+   * @return true if the permessage-deflate WebSocket extension can be negotiated with the clients
+   *         of this handler
+   */
+  public boolean isCompressionEnabled() {
+    return compression;
+  }
+
+  public DefaultJsonRpcHandler<P> withMaxSessions(long maxSessions) {
+    this.maxSessions = maxSessions;
+    return this;
+  }
+
+  /**
+   * @return max number of concurrent WebSocket sessions accepted by this handler, or 0 to use the
+   *         server default (ws.maxSessions)
+   */
+  public long getMaxSessions() {
+    return maxSessions;
+  }
+
+  public DefaultJsonRpcHandler<P> withMaxSessionsPerAddress(long maxSessionsPerAddress) {
+    this.maxSessionsPerAddress = maxSessionsPerAddress;
+    return this;
+  }
+
+  /**
+   * @return max number of concurrent WebSocket sessions accepted by this handler from the same
+   *         remote address, or 0 to use the server default (ws.maxSessionsPerAddress)
+   */
+  public long getMaxSessionsPerAddress() {
+    return maxSessionsPerAddress;
+  }
+
+  public DefaultJsonRpcHandler<P> withRequestRateLimit(double maxRequestsPerSecond,
+      int requestsBurst) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    this.requestsBurst = requestsBurst;
+    return this;
+  }
+
+  /**
+   * @return sustained number of requests per second allowed in each session of this handler, or 0
+   *         to use the server default (ws.maxRequestsPerSecond). Negative means no limit.
+   */
+  public double getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  /**
+   * @return number of requests that a session can send in a burst above the sustained rate, or 0
+   *         to use the server default (ws.requestsBurst)
+   */
+  public int getRequestsBurst() {
+    return requestsBurst;
+  }
 }
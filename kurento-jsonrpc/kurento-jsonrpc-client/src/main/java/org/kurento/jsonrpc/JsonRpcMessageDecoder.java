@@ -0,0 +1,337 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ID_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.JSON_RPC_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.PARAMS_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.RESULT_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SEQUENCE_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SESSION_ID_PROPERTY;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Decodes JSON-RPC messages reading the text only once. The message is classified as request or
+ * response while it is read, and the params or result are bound directly to the requested type
+ * with cached {@link TypeAdapter}s. Objects are read as a tree only when the session id has to be
+ * extracted from them.
+ *
+ * <p>
+ * Decoded messages are equivalent to the ones obtained with {@link JsonUtils#fromJsonRequest} and
+ * {@link JsonUtils#fromJsonResponse} from a {@link JsonObject}.
+ * </p>
+ */
+public class JsonRpcMessageDecoder {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcMessageDecoder.class);
+
+  private static final ConcurrentMap<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+  private static class DecodedMessage {
+
+    private Integer id;
+    private String method;
+    private String version;
+    private boolean hasResult;
+    private Object result;
+    private ResponseError error;
+    private Object params;
+    private String sessionId;
+    private Long sequenceNumber;
+  }
+
+  private JsonRpcMessageDecoder() {
+  }
+
+  /**
+   * Decodes a request or a response. Returns null if the text is empty.
+   *
+   * @param json
+   *          the message text
+   * @param paramsType
+   *          type of the params if the message is a request
+   * @param resultType
+   *          type of the result if the message is a response
+   */
+  public static Message decode(String json, Type paramsType, Type resultType) {
+
+    DecodedMessage decoded = read(json, paramsType, resultType);
+
+    if (decoded == null) {
+      return null;
+    }
+
+    if (decoded.method != null) {
+      return toRequest(decoded);
+    } else {
+      return toResponse(decoded, json);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> Request<T> decodeRequest(String json, Type paramsType) {
+
+    DecodedMessage decoded = read(json, paramsType, paramsType);
+
+    if (decoded == null) {
+      return null;
+    }
+
+    if (decoded.method == null) {
+      throw new JsonParseException(
+          "Invalid JsonRpc request lacking '" + METHOD_PROPERTY + "' field");
+    }
+
+    return (Request<T>) toRequest(decoded);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> Response<T> decodeResponse(String json, Type resultType) {
+
+    try {
+
+      DecodedMessage decoded = read(json, resultType, resultType);
+
+      if (decoded == null) {
+        return null;
+      }
+
+      return (Response<T>) toResponse(decoded, json);
+
+    } catch (JsonSyntaxException e) {
+      throw new JsonRpcException("Exception converting Json '" + json
+          + "' to a JSON-RPC response with params as class " + resultType, e);
+    }
+  }
+
+  private static Request<Object> toRequest(DecodedMessage decoded) {
+
+    Request<Object> request = new Request<>(decoded.id, decoded.method, decoded.params);
+    request.setSessionId(decoded.sessionId);
+    request.setSequenceNumber(decoded.sequenceNumber);
+    return request;
+  }
+
+  private static Response<Object> toResponse(DecodedMessage decoded, String json) {
+
+    if (decoded.version == null) {
+      throw new JsonParseException(
+          "Invalid JsonRpc response lacking version '" + JSON_RPC_PROPERTY + "' field");
+    }
+
+    if (!decoded.version.equals(JsonRpcConstants.JSON_RPC_VERSION)) {
+      throw new JsonParseException("Invalid JsonRpc version");
+    }
+
+    Response<Object> response;
+    if (decoded.error != null) {
+      response = new Response<>(decoded.id, decoded.error);
+    } else {
+      if (!decoded.hasResult) {
+        log.warn("Invalid JsonRpc response: " + json + " It lacks a valid '" + RESULT_PROPERTY
+            + "' or '" + ERROR_PROPERTY + "' field");
+      }
+      response = new Response<>(decoded.id, decoded.result);
+    }
+
+    response.setSessionId(decoded.sessionId);
+    response.setSequenceNumber(decoded.sequenceNumber);
+    return response;
+  }
+
+  private static DecodedMessage read(String json, Type paramsType, Type resultType) {
+
+    if (json == null) {
+      return null;
+    }
+
+    JsonReader reader = new JsonReader(new StringReader(json));
+    reader.setLenient(true);
+
+    try {
+
+      try {
+        reader.peek();
+      } catch (EOFException e) {
+        // Empty messages are decoded as null, like Gson does
+        return null;
+      }
+
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        throw new JsonParseException("JsonObject expected, found " + reader.peek());
+      }
+
+      DecodedMessage decoded = new DecodedMessage();
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+
+        String name = reader.nextName();
+
+        switch (name) {
+        case JSON_RPC_PROPERTY:
+          decoded.version = readString(reader);
+          break;
+        case ID_PROPERTY:
+          decoded.id = readId(reader, json);
+          break;
+        case METHOD_PROPERTY:
+          decoded.method = readString(reader);
+          break;
+        case PARAMS_PROPERTY:
+          decoded.params = readPayload(reader, paramsType, decoded);
+          break;
+        case RESULT_PROPERTY:
+          decoded.hasResult = true;
+          decoded.result = readPayload(reader, resultType, decoded);
+          break;
+        case ERROR_PROPERTY:
+          decoded.error = readError(reader);
+          break;
+        case SEQUENCE_PROPERTY:
+          decoded.sequenceNumber = readLong(reader);
+          break;
+        default:
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      return decoded;
+
+    } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonRpcException("Exception reading Json '" + json + "'", e);
+    }
+  }
+
+  private static String readString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+
+  private static Long readLong(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextLong();
+  }
+
+  private static Integer readId(JsonReader reader, String json) throws IOException {
+
+    JsonToken token = reader.peek();
+
+    if (token == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+
+    if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+      try {
+        return Integer.valueOf(reader.nextInt());
+      } catch (NumberFormatException e) {
+        // Handled below
+      }
+    }
+
+    throw new JsonParseException("Invalid format in '" + ID_PROPERTY + "' field in message "
+        + json);
+  }
+
+  private static ResponseError readError(JsonReader reader) throws IOException {
+    return (ResponseError) getAdapter(ResponseError.class).read(reader);
+  }
+
+  private static Object readPayload(JsonReader reader, Type type, DecodedMessage decoded)
+      throws IOException {
+
+    boolean skip = type == null || type == Void.class || type == void.class;
+
+    if (JsonUtils.INJECT_SESSION_ID && reader.peek() == JsonToken.BEGIN_OBJECT) {
+
+      JsonObject tree = (JsonObject) getAdapter(JsonElement.class).read(reader);
+
+      JsonElement sessionIdJson = tree.remove(SESSION_ID_PROPERTY);
+      if (sessionIdJson != null && !(sessionIdJson instanceof JsonNull)) {
+        decoded.sessionId = sessionIdJson.getAsString();
+      }
+
+      if (skip) {
+        return null;
+      }
+
+      if (type == JsonElement.class || type == JsonObject.class) {
+        return tree;
+      }
+
+      return getAdapter(type).fromJsonTree(tree);
+    }
+
+    if (skip) {
+      reader.skipValue();
+      return null;
+    }
+
+    return getAdapter(type).read(reader);
+  }
+
+  private static TypeAdapter<?> getAdapter(Type type) {
+
+    TypeAdapter<?> adapter = adapters.get(type);
+
+    if (adapter == null) {
+      adapter = JsonUtils.getGson().getAdapter(TypeToken.get(type));
+      adapters.putIfAbsent(type, adapter);
+    }
+
+    return adapter;
+  }
+
+}
@@ -32,6 +32,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.kurento.jsonrpc.internal.JsonRpcConstants;
 import org.kurento.jsonrpc.message.Message;
@@ -71,6 +73,10 @@ public class JsonUtils {
    */
   private static Gson gson;
 
+  private static final ConcurrentMap<Type, Type> requestTypes = new ConcurrentHashMap<>();
+
+  private static final ConcurrentMap<Type, Type> responseTypes = new ConcurrentHashMap<>();
+
   /**
    * Serialise Java object to JSON (as String).
    *
@@ -88,39 +94,16 @@ public class JsonUtils {
   }
 
   public static Message fromJsonMessage(String message) {
-    JsonObject json = fromJson(message, JsonObject.class);
-    if (json.has(METHOD_PROPERTY)) {
-      return fromJsonRequest(json, JsonObject.class);
-    } else {
-      return fromJsonResponse(json, JsonElement.class);
-    }
+    return JsonRpcMessageDecoder.decode(message, JsonObject.class, JsonElement.class);
   }
 
   public static <T> Request<T> fromJsonRequest(String json, Class<T> paramsClass) {
-
-    if (INJECT_SESSION_ID) {
-      // TODO Optimise this implementation if possible
-      return fromJsonRequestInject(fromJson(json, JsonObject.class), paramsClass);
-    }
-
-    return getGson().fromJson(json,
-        $Gson$Types.newParameterizedTypeWithOwner(null, Request.class, paramsClass));
+    return JsonRpcMessageDecoder.decodeRequest(json, paramsClass);
   }
 
   public static <T> Response<T> fromJsonResponse(String json, Class<T> resultClass) {
-
-    if (INJECT_SESSION_ID) {
-      // TODO Optimise this implementation if possible
-      return fromJsonResponseInject(fromJson(json, JsonObject.class), resultClass);
-    }
-    try {
-      return getGson().fromJson(json,
-          $Gson$Types.newParameterizedTypeWithOwner(null, Response.class, resultClass));
-
-    } catch (JsonSyntaxException e) {
-      throw new JsonRpcException("Exception converting Json '" + json
-          + "' to a JSON-RPC response with params as class " + resultClass.getName(), e);
-    }
+    return JsonRpcMessageDecoder.decodeResponse(json,
+        resultClass != null ? resultClass : JsonElement.class);
   }
 
   public static <T> Request<T> fromJsonRequest(JsonObject json, Class<T> paramsClass) {
@@ -133,7 +116,7 @@ public class JsonUtils {
     }
 
     return getGson().fromJson(json,
-        $Gson$Types.newParameterizedTypeWithOwner(null, Request.class, paramsClass));
+        getRequestType(paramsClass));
 
   }
 
@@ -146,7 +129,7 @@ public class JsonUtils {
     }
 
     return getGson().fromJson(json,
-        $Gson$Types.newParameterizedTypeWithOwner(null, Response.class, resultClass));
+        getResponseType(resultClass));
 
   }
 
@@ -160,10 +143,10 @@ public class JsonUtils {
       Response<T> response;
       if (resultClass != null) {
         response = JsonUtils.fromJson(jsonObject,
-            $Gson$Types.newParameterizedTypeWithOwner(null, Response.class, resultClass));
+            getResponseType(resultClass));
       } else {
         response = JsonUtils.fromJson(jsonObject,
-            $Gson$Types.newParameterizedTypeWithOwner(null, Response.class, JsonElement.class));
+            getResponseType(JsonElement.class));
       }
 
       response.setSessionId(sessionId);
@@ -179,7 +162,7 @@ public class JsonUtils {
 
     String sessionId = extractSessionId(jsonObject, PARAMS_PROPERTY);
     Request<T> request = getGson().fromJson(jsonObject,
-        $Gson$Types.newParameterizedTypeWithOwner(null, Request.class, paramsClass));
+        getRequestType(paramsClass));
 
     request.setSessionId(sessionId);
     return request;
@@ -206,13 +189,11 @@ public class JsonUtils {
   }
 
   public static <T> String toJsonRequest(Request<T> request) {
-    return getGson().toJson(request, $Gson$Types.newParameterizedTypeWithOwner(null, Request.class,
-        getClassOrNull(request.getParams())));
+    return getGson().toJson(request, getRequestType(getClassOrNull(request.getParams())));
   }
 
   public static <T> String toJsonResponse(Response<T> request) {
-    return getGson().toJson(request, $Gson$Types.newParameterizedTypeWithOwner(null, Response.class,
-        getClassOrNull(request.getResult())));
+    return getGson().toJson(request, getResponseType(getClassOrNull(request.getResult())));
   }
 
   public static <T> T fromJson(String json, Class<T> clazz) {
@@ -231,6 +212,29 @@ public class JsonUtils {
     return getGson().fromJson(json, type);
   }
 
+  private static Type getRequestType(Type paramsType) {
+    return getParameterizedType(requestTypes, Request.class, paramsType);
+  }
+
+  private static Type getResponseType(Type resultType) {
+    return getParameterizedType(responseTypes, Response.class, resultType);
+  }
+
+  private static Type getParameterizedType(ConcurrentMap<Type, Type> cache, Class<?> rawType,
+      Type argument) {
+
+    if (argument == null) {
+      return $Gson$Types.newParameterizedTypeWithOwner(null, rawType, argument);
+    }
+
+    Type type = cache.get(argument);
+    if (type == null) {
+      type = $Gson$Types.newParameterizedTypeWithOwner(null, rawType, argument);
+      cache.putIfAbsent(argument, type);
+    }
+    return type;
+  }
+
   private static Class<?> getClassOrNull(Object object) {
     return object == null ? null : object.getClass();
   }
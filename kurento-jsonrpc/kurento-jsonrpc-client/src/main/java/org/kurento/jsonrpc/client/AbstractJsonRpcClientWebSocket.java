@@ -17,11 +17,11 @@
 
 package org.kurento.jsonrpc.client;
 
-import static org.kurento.jsonrpc.JsonUtils.fromJson;
-import static org.kurento.jsonrpc.JsonUtils.fromJsonRequest;
-import static org.kurento.jsonrpc.JsonUtils.fromJsonResponse;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ACK_PROPERTY;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CONNECT;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_ERROR_CODE;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.REPLAY_PROPERTY;
 
 import java.io.IOException;
 import java.net.URI;
@@ -41,6 +41,7 @@ import org.kurento.commons.TimeoutRuntimeException;
 import org.kurento.jsonrpc.JsonRpcClientClosedException;
 import org.kurento.jsonrpc.JsonRpcErrorException;
 import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.JsonRpcMessageDecoder;
 import org.kurento.jsonrpc.internal.JsonRpcConstants;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
@@ -93,6 +94,10 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   private boolean concurrentServerRequest = true;
 
+  private volatile boolean sessionReplay;
+
+  private volatile long lastSequenceNumber;
+
   private boolean tryReconnectingForever;
   private long tryReconnectingMaxTime;
 
@@ -197,6 +202,29 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     return concurrentServerRequest;
   }
 
+  /**
+   * Configures if the server has to keep the messages sent to this client until they are
+   * acknowledged. If enabled, responses and requests sent by the server while the client is
+   * reconnecting are re-delivered when the session is resumed, instead of being lost. Received
+   * messages are acknowledged in heartbeats and when reconnecting.
+   *
+   * It has to be configured before connecting. By default sessionReplay is false.
+   *
+   * @param sessionReplay
+   */
+  public void setSessionReplay(boolean sessionReplay) {
+    this.sessionReplay = sessionReplay;
+  }
+
+  public boolean isSessionReplay() {
+    return sessionReplay;
+  }
+
+  @Override
+  protected Long getAcknowledgedSequenceNumber() {
+    return sessionReplay ? lastSequenceNumber : null;
+  }
+
   private void fireEvent(Runnable r) {
     createExecServiceIfNecessary();
     reqResEventExec.submit(r);
@@ -535,25 +563,34 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     }
   }
 
-  protected void handleResponseFromServer(JsonObject message) {
-
-    Response<JsonElement> response = fromJsonResponse(message, JsonElement.class);
+  protected void handleResponseFromServer(Response<JsonElement> response) {
 
     setSessionId(response.getSessionId());
 
     pendingRequests.handleResponse(response);
   }
 
+  @SuppressWarnings("unchecked")
   protected void receivedTextMessage(String message) {
 
     try {
 
-      JsonObject jsonMessage = fromJson(message, JsonObject.class);
+      Message jsonMessage = JsonRpcMessageDecoder.decode(message, JsonElement.class,
+          JsonElement.class);
+
+      Long sequenceNumber = jsonMessage.getSequenceNumber();
+      if (sequenceNumber != null) {
+        if (sequenceNumber <= lastSequenceNumber) {
+          log.debug("{} Discarding message {} already received", label, sequenceNumber);
+          return;
+        }
+        lastSequenceNumber = sequenceNumber;
+      }
 
-      if (jsonMessage.has(JsonRpcConstants.METHOD_PROPERTY)) {
-        handleRequestFromServer(jsonMessage);
+      if (jsonMessage instanceof Request) {
+        handleRequestFromServer((Request<JsonElement>) jsonMessage);
       } else {
-        handleResponseFromServer(jsonMessage);
+        handleResponseFromServer((Response<JsonElement>) jsonMessage);
       }
 
     } catch (Exception e) {
@@ -561,7 +598,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     }
   }
 
-  void handleRequestFromServer(final JsonObject message) {
+  void handleRequestFromServer(final Request<JsonElement> request) {
 
     if (concurrentServerRequest) {
 
@@ -570,16 +607,16 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       reqResEventExec.submit(new Runnable() {
         @Override
         public void run() {
-          handlerManager.handleRequest(session, fromJsonRequest(message, JsonElement.class), rs);
+          handlerManager.handleRequest(session, request, rs);
         }
       });
 
     } else {
 
       try {
-        handlerManager.handleRequest(session, fromJsonRequest(message, JsonElement.class), rs);
+        handlerManager.handleRequest(session, request, rs);
       } catch (Exception e) {
-        log.warn("{} Exception processing request {}", label, message, e);
+        log.warn("{} Exception processing request {}", label, request, e);
       }
     }
   }
@@ -766,8 +803,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
     } else {
 
-      if (startSessionWhenConnected) {
-        rsHelper.sendRequest(METHOD_CONNECT, String.class);
+      if (startSessionWhenConnected || sessionReplay) {
+        rsHelper.sendRequest(METHOD_CONNECT, createConnectParams(), String.class);
       }
 
       handlerManager.afterConnectionEstablished(session);
@@ -781,7 +818,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   boolean executeConnectProtocol() throws IOException {
     try {
-      rsHelper.sendRequest(METHOD_CONNECT, String.class);
+      rsHelper.sendRequest(METHOD_CONNECT, createConnectParams(), String.class);
 
       log.info("{} Reconnected to the same session in server {}", label, uri);
 
@@ -790,14 +827,15 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     } catch (JsonRpcErrorException e) {
 
       // Invalid session exception
-      if (e.getCode() == 40007) {
+      if (e.getCode() == RECONNECTION_ERROR_CODE) {
 
         pendingRequests.closeAllPendingRequests();
 
         try {
 
           rsHelper.setSessionId(null);
-          rsHelper.sendRequest(METHOD_CONNECT, String.class);
+          lastSequenceNumber = 0;
+          rsHelper.sendRequest(METHOD_CONNECT, createConnectParams(), String.class);
 
           log.info("{} Reconnected to a new session in server {}", label, uri);
 
@@ -815,6 +853,22 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     }
   }
 
+  /**
+   * Params of the connect request. With session replay, they ask the server to enable it in new
+   * sessions and acknowledge the messages received before reconnecting.
+   */
+  private JsonObject createConnectParams() {
+
+    if (!sessionReplay) {
+      return null;
+    }
+
+    JsonObject params = new JsonObject();
+    params.addProperty(REPLAY_PROPERTY, true);
+    params.addProperty(ACK_PROPERTY, lastSequenceNumber);
+    return params;
+  }
+
   void configureResponseSender() {
     rs = new ResponseSender() {
       @Override
@@ -73,7 +73,9 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 
   private static class PingParams {
     @SuppressWarnings("unused")
-    public long interval;
+    public Long interval;
+    @SuppressWarnings("unused")
+    public Long ack;
   }
 
   protected JsonRpcHandlerManager handlerManager = new JsonRpcHandlerManager();
@@ -81,8 +83,8 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
   protected Object registerInfo;
   protected ClientSession session;
   protected String label = "";
-  protected long connectionTimeout = PropertiesManager
-      .getProperty("jsonRpcClientWebSocket.connectionTimeout", 5000);
+  protected long connectionTimeout = PropertiesManager.getConfig()
+      .getDurationMillis("jsonRpcClientWebSocket.connectionTimeout", 5000);
   protected int idleTimeout = 300000;
   protected int heartbeatInterval = 0;
   private static final int DEFAULT_HEARTBEAT_INTERVAL = 5000;
@@ -248,7 +250,7 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
     if (heartbeat == null || heartbeat.isCancelled()) {
 
       pingParams = new PingParams();
-      pingParams.interval = interval;
+      pingParams.interval = (long) interval;
 
       log.debug("{} Enabling heartbeat with an interval of {} ms", label, interval);
       this.heartbeating = true;
@@ -262,7 +264,17 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
         @Override
         public void run() {
           try {
-            JsonObject response = sendRequest(METHOD_PING, pingParams).getAsJsonObject();
+            PingParams params = pingParams;
+
+            Long acknowledged = getAcknowledgedSequenceNumber();
+            if (acknowledged != null) {
+              if (params == null) {
+                params = new PingParams();
+              }
+              params.ack = acknowledged;
+            }
+
+            JsonObject response = sendRequest(METHOD_PING, params).getAsJsonObject();
 
             pingParams = null;
 
@@ -278,6 +290,14 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
     }
   }
 
+  /**
+   * Returns the sequence number of the last message received from a server that keeps a replay
+   * buffer for this client, so it is acknowledged in heartbeats. Null if there is no replay buffer.
+   */
+  protected Long getAcknowledgedSequenceNumber() {
+    return null;
+  }
+
   private ScheduledExecutorService createScheduler() {
     return Executors.newSingleThreadScheduledExecutor(
         ThreadFactoryCreator.create("JsonRpcClient-hearbeatExec"));
@@ -17,19 +17,41 @@
 
 package org.kurento.jsonrpc.client;
 
+import static org.kurento.jsonrpc.JsonUtils.INJECT_SESSION_ID;
 import static org.kurento.jsonrpc.JsonUtils.fromJsonResponse;
-import static org.kurento.jsonrpc.JsonUtils.toJson;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-
-import org.apache.http.client.ClientProtocolException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.internal.HttpResponseSender;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
@@ -39,18 +61,54 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
 
+/**
+ * JSON-RPC client over HTTP. Requests are sent with a non-blocking HTTP client that keeps
+ * persistent connections to the server, so both synchronous requests and requests with a
+ * {@link Continuation} are supported.
+ *
+ * Requests from server are received with long polling: a poll request is held by the server until
+ * there are requests to deliver, and a new poll is sent as soon as the previous one is answered.
+ * Responses to server requests are sent as soon as they are produced, in a poll request that the
+ * server answers right away without releasing the held one.
+ */
 public class JsonRpcClientHttp extends JsonRpcClient {
 
   private final Logger log = LoggerFactory.getLogger(JsonRpcClient.class);
 
-  private Thread longPoolingThread;
-  private String url;
+  private static final Type REQUEST_LIST_TYPE = new TypeToken<List<Request<JsonElement>>>() {
+  }.getType();
+
+  private long requestTimeout = PropertiesManager.getProperty("jsonRpcClientHttp.timeout", 60000);
+
+  private final int maxConnections =
+      PropertiesManager.getProperty("jsonRpcClientHttp.maxConnections", 20);
+
+  private final long pollRetryDelay =
+      PropertiesManager.getProperty("jsonRpcClientHttp.pollRetryDelay", 1000);
+
+  private final String url;
 
-  private HttpResponseSender rs;
+  private final HttpResponseSender rs;
+
+  private final AtomicInteger pollId = new AtomicInteger();
+
+  private final Object clientLock = new Object();
+
+  private volatile CloseableHttpAsyncClient httpClient;
+  private volatile ExecutorService callbackExec;
+  private volatile ScheduledExecutorService pollRetryExec;
+  private volatile boolean polling;
 
   public JsonRpcClientHttp(String url) {
     this.url = url;
-    this.rs = new HttpResponseSender();
+    this.rs = new HttpResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        super.sendResponse(message);
+        // The held poll may not be answered until the server request times out
+        sendResponses();
+      }
+    };
     this.rsHelper = new JsonRpcRequestSenderHelper() {
       @Override
       public <P, R> Response<R> internalSendRequest(Request<P> request, Class<R> resultClass)
@@ -60,132 +118,366 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
       @Override
       protected void internalSendRequest(Request<? extends Object> request,
-          Class<JsonElement> class1, Continuation<Response<JsonElement>> continuation) {
-        throw new UnsupportedOperationException("Async client int local is unavailable");
+          Class<JsonElement> resultClass, Continuation<Response<JsonElement>> continuation) {
+        internalSendRequestHttp(request, resultClass, continuation);
       }
     };
   }
 
-  private void updateSession(Response<?> response) {
+  private CloseableHttpAsyncClient getHttpClient() {
 
-    String sessionId = response.getSessionId();
+    if (closedByClient) {
+      throw new JsonRpcException(label + " JsonRpcClientHttp has been closed");
+    }
 
-    rsHelper.setSessionId(sessionId);
+    if (httpClient == null) {
+      synchronized (clientLock) {
+        if (httpClient == null) {
 
-    if (session == null) {
-      session = new ClientSession(sessionId, registerInfo, this);
+          RequestConfig requestConfig =
+              RequestConfig.custom().setConnectTimeout((int) connectionTimeout)
+                  .setConnectionRequestTimeout((int) connectionTimeout).build();
 
-      handlerManager.afterConnectionEstablished(session);
+          CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+              .setMaxConnPerRoute(maxConnections).setMaxConnTotal(maxConnections)
+              .setDefaultRequestConfig(requestConfig).build();
 
-      startPooling();
-    }
-  }
+          client.start();
 
-  private void startPooling() {
-    this.longPoolingThread = new Thread() {
-      @Override
-      public void run() {
-        longPooling();
+          callbackExec = Executors
+              .newCachedThreadPool(ThreadFactoryCreator.create("JsonRpcClientHttp-callbackExec"));
+          pollRetryExec = Executors.newScheduledThreadPool(1,
+              ThreadFactoryCreator.create("JsonRpcClientHttp-pollRetryExec"));
+
+          httpClient = client;
+        }
       }
-    };
+    }
 
-    this.longPoolingThread.start();
+    return httpClient;
   }
 
-  private void longPooling() {
+  private HttpPost createPost(Request<?> request) {
+    HttpPost post = new HttpPost(url);
+    // The session id is injected, so the server can match polls and requests with the session
+    post.setEntity(new StringEntity(request.toString(), ContentType.APPLICATION_JSON));
+    return post;
+  }
 
-    while (true) {
+  private String readContent(HttpResponse httpResponse) throws IOException {
 
-      try {
-        Thread.sleep(1000);
-      } catch (InterruptedException e) {
-        log.debug("Long polling thread interrupted", e);
-      }
+    int statusCode = httpResponse.getStatusLine().getStatusCode();
+    String content = httpResponse.getEntity() != null
+        ? EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8) : null;
 
-      if (Thread.interrupted()) {
-        break;
-      }
+    if (statusCode >= 300) {
+      throw new TransportException(label + " Server " + url + " answered with status "
+          + httpResponse.getStatusLine());
+    }
 
-      try {
+    return content;
+  }
 
-        JsonElement requestsListJsonObject = this.sendRequest(Request.POLL_METHOD_NAME,
-            rs.getResponseListToSend(), JsonElement.class);
+  private <R> Response<R> processResponse(Request<?> request, String resultJson,
+      Class<R> resultClass) {
 
-        log.info("Response from pool: {}", requestsListJsonObject);
+    if (resultJson == null || resultJson.trim().isEmpty()) {
+      return new Response<>(request.getId(),
+          new ResponseError(3, "The server send an empty response"));
+    }
 
-        Type collectionType = new TypeToken<List<Request<JsonElement>>>() {
-        }.getType();
+    // Results are converted as in other transports, as the session id may be injected in them
+    Response<JsonElement> response = fromJsonResponse(resultJson, JsonElement.class);
 
-        List<Request<JsonElement>> requestList = JsonUtils.fromJson(requestsListJsonObject,
-            collectionType);
+    updateSession(response);
 
-        processServerRequests(requestList);
+    return MessageUtils.convertResponse(response, resultClass);
+  }
 
-      } catch (IOException e) {
-        // TODO Decide what to do in this case. If the net connection is
-        // lost, this will retry indefinitely
-        log.error("Exception when waiting for events (long-polling). Retry", e);
+  private void updateSession(Response<?> response) {
+
+    String sessionId = response.getSessionId();
+
+    if (sessionId != null) {
+      rsHelper.setSessionId(sessionId);
+    }
+
+    boolean created = false;
+    synchronized (clientLock) {
+      if (session == null) {
+        session = new ClientSession(sessionId, registerInfo, this);
+        created = true;
       }
     }
-  }
 
-  private void processServerRequests(List<Request<JsonElement>> requestList) {
-    for (Request<JsonElement> request : requestList) {
-      handlerManager.handleRequest(session, request, rs);
+    if (created) {
+      handlerManager.afterConnectionEstablished(session);
+      startPolling();
     }
   }
 
   private <P, R> Response<R> internalSendRequestHttp(Request<P> request, Class<R> resultClass)
       throws IOException {
 
-    String resultJson = org.apache.http.client.fluent.Request.Post(url)
-        .bodyString(toJson(request), ContentType.APPLICATION_JSON).execute().returnContent()
-        .asString();
+    log.debug("{} Req-> {}", label, request);
 
-    if (resultJson == null || resultJson.trim().isEmpty()) {
-      return new Response<>(request.getId(), new ResponseError(3,
-          "The server send an empty response"));
+    Future<HttpResponse> future = getHttpClient().execute(createPost(request), null);
+
+    String resultJson;
+    try {
+
+      resultJson = readContent(future.get(requestTimeout, TimeUnit.MILLISECONDS));
+
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw new JsonRpcException(label + " Interrupted while waiting for a response", e);
+    } catch (ExecutionException e) {
+      throw new TransportException(label + " Exception sending request to " + url,
+          e.getCause());
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new JsonRpcException(label + " Timeout of " + requestTimeout
+          + " milliseconds waiting from response to request " + request, e);
     }
 
-    Response<R> response = fromJsonResponse(resultJson, resultClass);
+    log.debug("{} <-Res {}", label, resultJson);
 
-    updateSession(response);
+    return processResponse(request, resultJson, resultClass);
+  }
+
+  private void internalSendRequestHttp(final Request<? extends Object> request,
+      final Class<JsonElement> resultClass,
+      final Continuation<Response<JsonElement>> continuation) {
+
+    log.debug("{} Req-> {}", label, request);
+
+    try {
 
-    return response;
+      getHttpClient().execute(createPost(request), new FutureCallback<HttpResponse>() {
+        @Override
+        public void completed(final HttpResponse httpResponse) {
+          // The response is processed out of the I/O dispatcher thread, as continuations may
+          // block sending new requests
+          callbackExec.execute(new Runnable() {
+            @Override
+            public void run() {
+              Response<JsonElement> response;
+              try {
+                String resultJson = readContent(httpResponse);
+                log.debug("{} <-Res {}", label, resultJson);
+                response = processResponse(request, resultJson, resultClass);
+              } catch (Exception e) {
+                continuation.onError(e);
+                return;
+              }
+              continuation.onSuccess(response);
+            }
+          });
+        }
+
+        @Override
+        public void failed(Exception e) {
+          continuation.onError(
+              new TransportException(label + " Exception sending request to " + url, e));
+        }
+
+        @Override
+        public void cancelled() {
+          continuation.onError(new TransportException(label + " Request " + request
+              + " to " + url + " has been cancelled"));
+        }
+      });
+
+    } catch (Exception e) {
+      continuation.onError(e);
+    }
+  }
+
+  private void startPolling() {
+    polling = true;
+    poll();
+  }
+
+  private Request<Object> createPollRequest(List<Response<Object>> responses) {
+
+    Request<Object> request = new Request<Object>(pollId.incrementAndGet(),
+        Request.POLL_METHOD_NAME, responses);
+
+    if (INJECT_SESSION_ID) {
+      request.setSessionId(rsHelper.getSessionId());
+    }
+
+    return request;
+  }
+
+  private void poll() {
+
+    if (!polling) {
+      return;
+    }
+
+    internalSendRequestHttp(createPollRequest(rs.getResponseListToSend()), JsonElement.class,
+        new Continuation<Response<JsonElement>>() {
+
+          @Override
+          public void onSuccess(Response<JsonElement> response) {
+
+            if (response.getError() != null) {
+              log.warn("{} Error received when polling {}: {}", label, url, response.getError());
+              schedulePoll();
+              return;
+            }
+
+            // Poll again before processing the requests, so server requests sent meanwhile
+            // don't wait for the handlers to finish
+            poll();
+
+            processPollResult(response);
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            if (polling) {
+              log.warn("{} Exception when waiting for events (long-polling). Retrying in {} ms",
+                  label, pollRetryDelay, cause);
+              schedulePoll();
+            }
+          }
+        });
+  }
+
+  private void sendResponses() {
+
+    if (!polling) {
+      return;
+    }
+
+    final List<Response<Object>> responses = rs.getResponseListToSend();
+
+    if (responses.isEmpty()) {
+      return;
+    }
+
+    internalSendRequestHttp(createPollRequest(responses), JsonElement.class,
+        new Continuation<Response<JsonElement>>() {
+
+          @Override
+          public void onSuccess(Response<JsonElement> response) {
+            if (response.getError() != null) {
+              log.warn("{} Error received when sending responses to {}: {}", label, url,
+                  response.getError());
+            } else {
+              processPollResult(response);
+            }
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            log.warn("{} Exception sending responses {} to {}", label, responses, url, cause);
+          }
+        });
+  }
+
+  private void processPollResult(Response<JsonElement> response) {
+    try {
+      List<Request<JsonElement>> requestList =
+          JsonUtils.extractJavaValueFromResult(response.getResult(), REQUEST_LIST_TYPE);
+      processServerRequests(requestList);
+    } catch (Exception e) {
+      log.error("{} Exception processing requests received when polling {}", label, url, e);
+    }
+  }
+
+  private void schedulePoll() {
+
+    ScheduledExecutorService scheduler = pollRetryExec;
+
+    if (polling && scheduler != null && !scheduler.isShutdown()) {
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          poll();
+        }
+      }, pollRetryDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void processServerRequests(List<Request<JsonElement>> requestList) {
+    if (requestList != null) {
+      for (Request<JsonElement> request : requestList) {
+        handlerManager.handleRequest(session, request, rs);
+      }
+    }
   }
 
   @Override
   public void close() {
-    if (this.longPoolingThread != null) {
-      log.info("Interrupted!!!");
-      this.longPoolingThread.interrupt();
+
+    polling = false;
+
+    if (session != null) {
+      handlerManager.afterConnectionClosed(session, "Client closed connection");
+      session = null;
     }
-    handlerManager.afterConnectionClosed(session, "Client closed connection");
-    session = null;
+
     try {
       super.close();
     } catch (IOException e) {
       log.error("Exception while executing close from base class JsonRpcClient", e);
     }
+
+    synchronized (clientLock) {
+
+      if (callbackExec != null) {
+        callbackExec.shutdown();
+        callbackExec = null;
+      }
+
+      if (pollRetryExec != null) {
+        pollRetryExec.shutdownNow();
+        pollRetryExec = null;
+      }
+
+      if (httpClient != null) {
+        try {
+          httpClient.close();
+        } catch (IOException e) {
+          log.warn("{} Could not properly close http client", label, e);
+        }
+        httpClient = null;
+      }
+    }
   }
 
   @Override
   public void connect() throws IOException {
 
-    try {
+    HttpPost post = new HttpPost(url);
+    post.setEntity(new StringEntity("", ContentType.APPLICATION_JSON));
 
-      org.apache.http.client.fluent.Request.Post(url).bodyString("", ContentType.APPLICATION_JSON)
-      .execute();
+    Future<HttpResponse> future = getHttpClient().execute(post, null);
 
-    } catch (ClientProtocolException e) {
-      // Silence http connection exception. This indicate that server is
-      // reachable and running
+    try {
+      // Any answer, even an error one, indicates that server is reachable and running
+      future.get(connectionTimeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      throw new JsonRpcException(label + " Interrupted while connecting to " + url, e);
+    } catch (ExecutionException e) {
+      throw new TransportException(label + " Exception connecting to " + url, e.getCause());
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new TransportException(
+          label + " Timeout of " + connectionTimeout + " ms connecting to " + url, e);
     }
   }
 
   @Override
-  public void setRequestTimeout(long requesTimeout) {
-    log.warn("setRequestTimeout(...) method will be ignored");
+  public void setRequestTimeout(long requestTimeout) {
+    this.requestTimeout = requestTimeout;
+  }
+
+  public long getRequestTimeout() {
+    return requestTimeout;
   }
 
 }
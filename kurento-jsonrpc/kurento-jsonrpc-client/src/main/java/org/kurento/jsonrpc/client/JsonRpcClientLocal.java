@@ -18,6 +18,7 @@
 package org.kurento.jsonrpc.client;
 
 import java.io.IOException;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -50,7 +51,8 @@ public class JsonRpcClientLocal extends JsonRpcClient {
     this.remoteHandler = handler;
     this.remoteHandlerManager.setJsonRpcHandler(remoteHandler);
 
-    session = new ClientSession("XXX", null, this);
+    // Each client is a different session for the handler
+    session = new ClientSession(UUID.randomUUID().toString(), null, this);
 
     rsHelper = new JsonRpcRequestSenderHelper() {
       @Override
@@ -123,7 +125,10 @@ public class JsonRpcClientLocal extends JsonRpcClient {
                   }
                 });
 
-            Response<R2> response2 = (Response<R2>) response[0];
+            if (request.getId() == null) {
+              // Notifications are not answered
+              return null;
+            }
 
             try {
               responseLatch.await(10, TimeUnit.SECONDS);
@@ -131,6 +136,8 @@ public class JsonRpcClientLocal extends JsonRpcClient {
               throw new RuntimeException(e);
             }
 
+            Response<R2> response2 = (Response<R2>) response[0];
+
             log.debug("<-- {}", response2);
 
             Object result = response2.getResult();
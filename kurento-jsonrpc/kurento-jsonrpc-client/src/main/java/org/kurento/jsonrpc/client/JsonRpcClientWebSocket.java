@@ -29,8 +29,10 @@ import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.kurento.commons.PropertiesManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +42,8 @@ public class JsonRpcClientWebSocket extends AbstractJsonRpcClientWebSocket {
 
   private static final int MAX_PACKET_SIZE = 1000000;
 
+  private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
   @WebSocket
   public class WebSocketClientSocket {
 
@@ -64,6 +68,15 @@ public class JsonRpcClientWebSocket extends AbstractJsonRpcClientWebSocket {
   protected volatile Session jettyWsSession;
   protected volatile WebSocketClient jettyClient;
 
+  private boolean compression =
+      PropertiesManager.getProperty("jsonRpcClientWebSocket.compression", false);
+
+  private boolean clientNoContextTakeover = PropertiesManager
+      .getProperty("jsonRpcClientWebSocket.compression.clientNoContextTakeover", false);
+
+  private boolean serverNoContextTakeover = PropertiesManager
+      .getProperty("jsonRpcClientWebSocket.compression.serverNoContextTakeover", false);
+
   public JsonRpcClientWebSocket(String url) {
     this(url, null, new SslContextFactory());
   }
@@ -82,6 +95,65 @@ public class JsonRpcClientWebSocket extends AbstractJsonRpcClientWebSocket {
     this.sslContextFactory = sslContextFactory;
   }
 
+  /**
+   * Configures if this client offers the permessage-deflate extension (RFC 7692) to the server.
+   * If the server doesn't accept it, messages are exchanged uncompressed. Messages smaller than
+   * {@link MinSizePerMessageDeflateExtension#MIN_SIZE_PROPERTY} bytes are never compressed.
+   *
+   * By default compression is disabled. It takes effect in the next connection.
+   *
+   * @param compression
+   */
+  public void setCompression(boolean compression) {
+    this.compression = compression;
+  }
+
+  public boolean isCompression() {
+    return compression;
+  }
+
+  /**
+   * Asks the server to reset the compression context of the messages sent by this client after
+   * each message. It reduces memory usage at the cost of a worse compression ratio.
+   */
+  public void setClientNoContextTakeover(boolean clientNoContextTakeover) {
+    this.clientNoContextTakeover = clientNoContextTakeover;
+  }
+
+  public boolean isClientNoContextTakeover() {
+    return clientNoContextTakeover;
+  }
+
+  /**
+   * Asks the server to reset the compression context of the messages it sends after each
+   * message. It reduces memory usage at the cost of a worse compression ratio.
+   */
+  public void setServerNoContextTakeover(boolean serverNoContextTakeover) {
+    this.serverNoContextTakeover = serverNoContextTakeover;
+  }
+
+  public boolean isServerNoContextTakeover() {
+    return serverNoContextTakeover;
+  }
+
+  /**
+   * @return true if permessage-deflate was negotiated with the server in the current connection
+   */
+  public boolean isCompressionNegotiated() {
+
+    Session wsSession = jettyWsSession;
+    if (wsSession == null || wsSession.getUpgradeResponse() == null) {
+      return false;
+    }
+
+    for (ExtensionConfig extension : wsSession.getUpgradeResponse().getExtensions()) {
+      if (PERMESSAGE_DEFLATE.equals(extension.getName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   protected void sendTextMessage(String jsonMessage) throws IOException {
 
@@ -113,6 +185,9 @@ public class JsonRpcClientWebSocket extends AbstractJsonRpcClientWebSocket {
       policy.setMaxBinaryMessageSize(MAX_PACKET_SIZE);
       policy.setMaxTextMessageSize(MAX_PACKET_SIZE);
 
+      jettyClient.getExtensionFactory().register(PERMESSAGE_DEFLATE,
+          MinSizePerMessageDeflateExtension.class);
+
       jettyClient.start();
 
     }
@@ -123,9 +198,9 @@ public class JsonRpcClientWebSocket extends AbstractJsonRpcClientWebSocket {
 
       try {
 
-        jettyWsSession =
-            jettyClient.connect(new WebSocketClientSocket(), uri, new ClientUpgradeRequest())
-                .get(this.connectionTimeout, TimeUnit.MILLISECONDS);
+        jettyWsSession = jettyClient
+            .connect(new WebSocketClientSocket(), uri, createUpgradeRequest())
+            .get(this.connectionTimeout, TimeUnit.MILLISECONDS);
 
         jettyWsSession.setIdleTimeout(this.idleTimeout);
 
@@ -146,6 +221,24 @@ public class JsonRpcClientWebSocket extends AbstractJsonRpcClientWebSocket {
 
   }
 
+  private ClientUpgradeRequest createUpgradeRequest() {
+
+    ClientUpgradeRequest request = new ClientUpgradeRequest();
+
+    if (compression) {
+      ExtensionConfig deflate = new ExtensionConfig(PERMESSAGE_DEFLATE);
+      if (clientNoContextTakeover) {
+        deflate.setParameter("client_no_context_takeover");
+      }
+      if (serverNoContextTakeover) {
+        deflate.setParameter("server_no_context_takeover");
+      }
+      request.addExtensions(deflate);
+    }
+
+    return request;
+  }
+
   @Override
   public void closeNativeClient() {
     if (jettyClient != null) {
@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
+import org.kurento.commons.PropertiesManager;
+
+/**
+ * RFC 7692 permessage-deflate extension that sends small text messages uncompressed. Deflating
+ * a few bytes (pings, short responses) costs more CPU than it saves on the wire, and the RFC
+ * allows uncompressed messages (RSV1 unset) in a session with the extension negotiated.
+ *
+ * Compressed frames are written from the queue of the parent extension, so an uncompressed frame
+ * is held until the compressed frames sent before it have been written. Otherwise it could
+ * overtake them.
+ *
+ * Jetty instantiates extensions by class, so the threshold is read from the
+ * {@value #MIN_SIZE_PROPERTY} property.
+ */
+public class MinSizePerMessageDeflateExtension extends PerMessageDeflateExtension {
+
+  public static final String MIN_SIZE_PROPERTY = "jsonRpcClientWebSocket.compression.minSize";
+
+  private static final int DEFAULT_MIN_SIZE = 256;
+
+  private static class OutgoingFrame {
+
+    private final Frame frame;
+    private final WriteCallback callback;
+    private final BatchMode batchMode;
+    private final boolean compress;
+
+    OutgoingFrame(Frame frame, WriteCallback callback, BatchMode batchMode, boolean compress) {
+      this.frame = frame;
+      this.callback = callback;
+      this.batchMode = batchMode;
+      this.compress = compress;
+    }
+  }
+
+  private class CompressedFrameCallback implements WriteCallback {
+
+    private final WriteCallback callback;
+
+    CompressedFrameCallback(WriteCallback callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void writeSuccess() {
+      try {
+        if (callback != null) {
+          callback.writeSuccess();
+        }
+      } finally {
+        compressedFrameWritten();
+      }
+    }
+
+    @Override
+    public void writeFailed(Throwable x) {
+      try {
+        if (callback != null) {
+          callback.writeFailed(x);
+        }
+      } finally {
+        compressedFrameWritten();
+      }
+    }
+  }
+
+  private final int minSize = PropertiesManager.getProperty(MIN_SIZE_PROPERTY, DEFAULT_MIN_SIZE);
+
+  // Frames waiting for the compressed frames sent before them. Guarded by itself.
+  private final Queue<OutgoingFrame> outgoingFrames = new ArrayDeque<>();
+
+  // Compressed frames handed to the parent extension that have not been written yet
+  private int pendingCompressedFrames;
+
+  @Override
+  public void outgoingFrame(Frame frame, WriteCallback callback, BatchMode batchMode) {
+
+    // Only whole text messages are bypassed. Fragments and control frames keep the default
+    // handling so the compression context stays consistent.
+    boolean compress = frame.getType() != Frame.Type.TEXT || !frame.isFin()
+        || frame.getPayloadLength() >= minSize;
+
+    synchronized (outgoingFrames) {
+      outgoingFrames.add(new OutgoingFrame(frame, callback, batchMode, compress));
+      sendOutgoingFrames();
+    }
+  }
+
+  private void compressedFrameWritten() {
+    synchronized (outgoingFrames) {
+      pendingCompressedFrames--;
+      sendOutgoingFrames();
+    }
+  }
+
+  // Must be invoked holding the lock of outgoingFrames
+  private void sendOutgoingFrames() {
+    OutgoingFrame outgoing;
+    while ((outgoing = outgoingFrames.peek()) != null) {
+      if (outgoing.compress) {
+        outgoingFrames.poll();
+        pendingCompressedFrames++;
+        super.outgoingFrame(outgoing.frame, new CompressedFrameCallback(outgoing.callback),
+            outgoing.batchMode);
+      } else if (pendingCompressedFrames == 0) {
+        outgoingFrames.poll();
+        nextOutgoingFrame(outgoing.frame, outgoing.callback, outgoing.batchMode);
+      } else {
+        return;
+      }
+    }
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+}
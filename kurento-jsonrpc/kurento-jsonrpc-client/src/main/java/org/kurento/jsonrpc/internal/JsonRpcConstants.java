@@ -45,6 +45,12 @@ public class JsonRpcConstants {
 
   public static final String SESSION_ID_PROPERTY = "sessionId";
 
+  public static final String SEQUENCE_PROPERTY = "seq";
+
+  public static final String REPLAY_PROPERTY = "replay";
+
+  public static final String ACK_PROPERTY = "ack";
+
   public static final String METHOD_START = "start";
 
   public static final String METHOD_TERMINATE = "terminate";
@@ -71,6 +77,12 @@ public class JsonRpcConstants {
 
   public static final String RECONNECTION_SUCCESSFUL = "reconnection successful";
 
+  public static final int RECONNECTION_ERROR_CODE = 40007;
+
+  public static final int REQUEST_RATE_LIMIT_ERROR_CODE = 40029;
+
+  public static final String REQUEST_RATE_LIMIT_ERROR = "request rate limit exceeded";
+
   public static final int ERROR_NO_ERROR = 0;
 
   public static final int ERROR_APPLICATION_TERMINATION = 1;
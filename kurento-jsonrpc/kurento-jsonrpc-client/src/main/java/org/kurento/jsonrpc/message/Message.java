@@ -37,6 +37,12 @@ public abstract class Message {
 
   protected transient String sessionId;
 
+  /**
+   * Sequence number of messages sent by a server that keeps a replay buffer for the session.
+   */
+  @SerializedName(JsonRpcConstants.SEQUENCE_PROPERTY)
+  private Long sequenceNumber;
+
   public Message() {
   }
 
@@ -61,4 +67,12 @@ public abstract class Message {
     this.sessionId = sessionId;
   }
 
+  public Long getSequenceNumber() {
+    return sequenceNumber;
+  }
+
+  public void setSequenceNumber(Long sequenceNumber) {
+    this.sequenceNumber = sequenceNumber;
+  }
+
 }
@@ -80,6 +80,12 @@ public class MessageUtils {
       return null;
     }
 
+    if (JsonElement.class.isAssignableFrom(resultClass)
+        && resultClass.isInstance(resultJsonObject)) {
+      // Already decoded as requested
+      return resultClass.cast(resultJsonObject);
+    }
+
     R resultR = null;
     if (resultClass == String.class || resultClass == Boolean.class
         || resultClass == Character.class || Number.class.isAssignableFrom(resultClass)
@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import org.kurento.jsonrpc.JsonRpcMessageDecoder;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Compares decoding responses with {@link JsonRpcMessageDecoder} with the previous path: parsing
+ * into a {@link JsonObject}, converting to a response with {@link JsonElement} result and
+ * converting the result again to the requested type. Run it as a Java application; it is not
+ * executed as part of the test suite.
+ */
+public class JsonRpcMessageDecoderBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcMessageDecoderBenchmark.class);
+
+  private static final int WARMUP_ITERATIONS = 200000;
+
+  private static final int ITERATIONS = 1000000;
+
+  private static final String OBJECT_RESPONSE = "{\"id\":1,\"result\":{\"value\":\"Value1\","
+      + "\"sessionId\":\"4d2b1ad5-d8d7-4f0d-9c9a-1e0c2a1a7b3e\"},\"jsonrpc\":\"2.0\"}";
+
+  private static final String STRING_RESPONSE = "{\"id\":1,\"result\":\"OK\",\"jsonrpc\":\"2.0\"}";
+
+  public static void main(String[] args) {
+
+    run("object result", OBJECT_RESPONSE, JsonElement.class);
+    run("string result", STRING_RESPONSE, String.class);
+  }
+
+  private static void run(String name, String json, Class<?> resultClass) {
+
+    runDecoder(json, resultClass, WARMUP_ITERATIONS);
+    runPrevious(json, resultClass, WARMUP_ITERATIONS);
+
+    long decoderNanos = runDecoder(json, resultClass, ITERATIONS);
+    long previousNanos = runPrevious(json, resultClass, ITERATIONS);
+
+    log.info("Responses with {}: {}", name, ITERATIONS);
+    log.info("JsonRpcMessageDecoder: {} ns/message", decoderNanos / ITERATIONS);
+    log.info("JsonObject + convertResponse: {} ns/message", previousNanos / ITERATIONS);
+  }
+
+  private static long runDecoder(String json, Class<?> resultClass, int iterations) {
+
+    long start = System.nanoTime();
+    int hash = 0;
+    for (int i = 0; i < iterations; i++) {
+      Response<?> response = JsonRpcMessageDecoder.decodeResponse(json, resultClass);
+      hash += response.getResult().hashCode();
+    }
+    long time = System.nanoTime() - start;
+
+    log.trace("Hash {}", hash);
+    return time;
+  }
+
+  private static long runPrevious(String json, Class<?> resultClass, int iterations) {
+
+    long start = System.nanoTime();
+    int hash = 0;
+    for (int i = 0; i < iterations; i++) {
+      JsonObject message = JsonUtils.fromJson(json, JsonObject.class);
+      Response<JsonElement> response = JsonUtils.fromJsonResponse(message, JsonElement.class);
+      hash += MessageUtils.convertResponse(response, resultClass).getResult().hashCode();
+    }
+    long time = System.nanoTime() - start;
+
+    log.trace("Hash {}", hash);
+    return time;
+  }
+
+}
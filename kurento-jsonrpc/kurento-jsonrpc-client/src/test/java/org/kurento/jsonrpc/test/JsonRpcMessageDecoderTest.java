@@ -0,0 +1,167 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonRpcMessageDecoder;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Conformance of {@link JsonRpcMessageDecoder} with the decoding based on {@link JsonObject} done
+ * by {@link JsonUtils}.
+ */
+public class JsonRpcMessageDecoderTest {
+
+  static class Params {
+    String param1;
+    int param2;
+    Data data;
+  }
+
+  static class Data {
+    String data1;
+  }
+
+  private static final String[] REQUESTS = {
+      "{\"id\":1,\"method\":\"method\",\"params\":{\"param1\":\"Value1\",\"param2\":2},"
+          + "\"jsonrpc\":\"2.0\"}",
+      "{\"id\":2,\"method\":\"method\",\"params\":{\"param1\":\"Value1\","
+          + "\"data\":{\"data1\":\"X\"},\"sessionId\":\"xxxxxxx\"},\"jsonrpc\":\"2.0\"}",
+      "{\"method\":\"notification\",\"params\":{\"param1\":\"Value1\"},\"jsonrpc\":\"2.0\"}",
+      "{\"jsonrpc\":\"2.0\",\"params\":{\"param2\":5},\"method\":\"method\",\"id\":3}",
+      "{\"id\":4,\"method\":\"method\",\"jsonrpc\":\"2.0\"}",
+      "{\"id\":\"5\",\"method\":\"method\",\"params\":{},\"jsonrpc\":\"2.0\"}",
+      "{\"id\":6,\"method\":\"method\",\"params\":{\"sessionId\":\"xxxxxxx\"},\"jsonrpc\":\"2.0\","
+          + "\"unknown\":[1,2,{\"a\":null}]}" };
+
+  private static final String[] RESPONSES = {
+      "{\"id\":1,\"result\":{\"data1\":\"Value1\"},\"jsonrpc\":\"2.0\"}",
+      "{\"id\":2,\"result\":{\"data1\":\"Value1\",\"sessionId\":\"xxxxxxx\"},\"jsonrpc\":\"2.0\"}",
+      "{\"jsonrpc\":\"2.0\",\"result\":{\"sessionId\":\"xxxxxxx\"},\"id\":3}",
+      "{\"id\":4,\"result\":null,\"jsonrpc\":\"2.0\"}",
+      "{\"id\":5,\"error\":{\"code\":-32601,\"message\":\"Method not found\",\"data\":\"method\"},"
+          + "\"jsonrpc\":\"2.0\"}",
+      "{\"id\":6,\"error\":{\"code\":40029,\"message\":\"request rate limit exceeded\","
+          + "\"data\":{\"sessionId\":\"xxxxxxx\"}},\"jsonrpc\":\"2.0\"}" };
+
+  private static final String[] PRIMITIVE_RESPONSES = {
+      "{\"id\":1,\"result\":\"OK\",\"jsonrpc\":\"2.0\"}",
+      "{\"id\":2,\"result\":[\"a\",\"b\"],\"jsonrpc\":\"2.0\"}",
+      "{\"id\":3,\"result\":25,\"jsonrpc\":\"2.0\"}" };
+
+  @Test
+  public void requestsAreDecodedAsBefore() {
+    for (String json : REQUESTS) {
+      assertSameRequest(json, JsonElement.class);
+      assertSameRequest(json, Params.class);
+    }
+  }
+
+  @Test
+  public void responsesAreDecodedAsBefore() {
+    for (String json : RESPONSES) {
+      assertSameResponse(json, JsonElement.class);
+      assertSameResponse(json, Data.class);
+    }
+    for (String json : PRIMITIVE_RESPONSES) {
+      assertSameResponse(json, JsonElement.class);
+    }
+    assertSameResponse(PRIMITIVE_RESPONSES[0], String.class);
+    assertSameResponse(PRIMITIVE_RESPONSES[2], Integer.class);
+  }
+
+  @Test
+  public void messagesAreClassified() {
+
+    for (String json : REQUESTS) {
+      Message message = JsonRpcMessageDecoder.decode(json, JsonElement.class, JsonElement.class);
+      assertTrue(json, message instanceof Request);
+    }
+
+    for (String json : RESPONSES) {
+      Message message = JsonRpcMessageDecoder.decode(json, JsonElement.class, JsonElement.class);
+      assertTrue(json, message instanceof Response);
+    }
+  }
+
+  @Test
+  public void sequenceNumberIsEncodedAndDecoded() {
+
+    Response<String> response = new Response<>(7, "result");
+    response.setSequenceNumber(42L);
+
+    Message decoded = JsonRpcMessageDecoder.decode(response.toString(), JsonElement.class,
+        JsonElement.class);
+
+    assertEquals(Long.valueOf(42), decoded.getSequenceNumber());
+    assertNull(JsonRpcMessageDecoder.decode(new Response<>(7, "result").toString(),
+        JsonElement.class, JsonElement.class).getSequenceNumber());
+  }
+
+  @Test
+  public void emptyMessageIsDecodedAsNull() {
+    assertNull(JsonRpcMessageDecoder.decode("", JsonElement.class, JsonElement.class));
+    assertNull(JsonRpcMessageDecoder.decode("  ", JsonElement.class, JsonElement.class));
+  }
+
+  private void assertSameRequest(String json, Class<?> paramsClass) {
+
+    Request<?> expected = JsonUtils.fromJsonRequest(JsonUtils.fromJson(json, JsonObject.class),
+        paramsClass);
+    Request<?> actual = JsonRpcMessageDecoder.decodeRequest(json, paramsClass);
+
+    assertEquals(json, expected.getId(), actual.getId());
+    assertEquals(json, expected.getMethod(), actual.getMethod());
+    assertEquals(json, expected.getSessionId(), actual.getSessionId());
+    assertEquals(json, toJson(expected.getParams()), toJson(actual.getParams()));
+    assertEquals(json, classOf(expected.getParams()), classOf(actual.getParams()));
+  }
+
+  private void assertSameResponse(String json, Class<?> resultClass) {
+
+    Response<?> expected = JsonUtils.fromJsonResponse(JsonUtils.fromJson(json, JsonObject.class),
+        resultClass);
+    Response<?> actual = JsonRpcMessageDecoder.decodeResponse(json, resultClass);
+
+    assertEquals(json, expected.getId(), actual.getId());
+    assertEquals(json, expected.getSessionId(), actual.getSessionId());
+    assertEquals(json, expected.isError(), actual.isError());
+    assertEquals(json, toJson(expected.getResult()), toJson(actual.getResult()));
+    assertEquals(json, classOf(expected.getResult()), classOf(actual.getResult()));
+    assertEquals(json, toJson(expected.getError()), toJson(actual.getError()));
+  }
+
+  private Class<?> classOf(Object object) {
+    return object == null ? null : object.getClass();
+  }
+
+  private JsonElement toJson(Object object) {
+    return object == null ? null : JsonUtils.toJsonElement(object);
+  }
+
+}
@@ -18,12 +18,27 @@
 package org.kurento.jsonrpc.internal.http;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.JsonRpcMessageDecoder;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
@@ -31,18 +46,50 @@ import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
 import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.HttpRequestHandler;
 
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.JsonElement;
 
+/**
+ * Handles JSON-RPC over HTTP. Every request is processed with servlet async support, so container
+ * threads are not blocked while handlers compute the response or while poll requests wait for
+ * requests from server.
+ */
 public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcHttpRequestHandler.class);
+
+  private static final long POLL_TIMEOUT =
+      PropertiesManager.getProperty("jsonRpcServerHttp.pollTimeout", 25000);
+
+  private static final long ASYNC_TIMEOUT =
+      PropertiesManager.getProperty("jsonRpcServerHttp.asyncTimeout", 60000);
+
+  private static final long TIMEOUT =
+      PropertiesManager.getProperty("jsonRpcServerHttp.timeout", 10000);
+
   private final class HttpRequestServerSession extends ServerSession {
 
+    private final PendingRequests pendingRequests = new PendingRequests();
+
+    private final List<Request<?>> requestsToSend = new ArrayList<>();
+
+    private Request<JsonElement> pendingPoll;
+    private ResponseSender pendingPollSender;
+    private ScheduledFuture<?> pendingPollTimeout;
+
     private HttpRequestServerSession(String sessionId, Object registerInfo,
         SessionsManager sessionsManager, String internalSessionId) {
 
@@ -53,33 +100,238 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
         @Override
         protected <P, R> Response<R> internalSendRequest(Request<P> request, Class<R> resultClass)
             throws IOException {
-          // TODO Poner aquí la cola de mensajes que devolver al
-          // cliente cuando haga pooling
-          return new Response<>();
+          return sendRequestHttp(request, resultClass);
         }
 
         @Override
         protected void internalSendRequest(Request<? extends Object> request,
-            Class<JsonElement> class1, Continuation<Response<JsonElement>> continuation) {
-          throw new UnsupportedOperationException("Async client is unavailable");
+            Class<JsonElement> resultClass, Continuation<Response<JsonElement>> continuation) {
+          sendRequestHttp(request, resultClass, continuation);
         }
       });
     }
 
+    private <P, R> Response<R> sendRequestHttp(Request<P> request, Class<R> resultClass) {
+
+      ListenableFuture<Response<JsonElement>> responseFuture = null;
+
+      if (request.getId() != null) {
+        responseFuture = pendingRequests.prepareResponse(request.getId());
+      }
+
+      enqueueRequest(request);
+
+      if (responseFuture == null) {
+        return null;
+      }
+
+      try {
+
+        return MessageUtils.convertResponse(responseFuture.get(TIMEOUT, TimeUnit.MILLISECONDS),
+            resultClass);
+
+      } catch (InterruptedException e) {
+        throw new JsonRpcException("Interrupted while waiting for a response", e);
+      } catch (ExecutionException e) {
+        throw new JsonRpcException("This exception shouldn't be thrown", e);
+      } catch (TimeoutException e) {
+        throw new TransportException("Timeout of " + TIMEOUT
+            + " milliseconds waiting from response to request with id:" + request.getId()
+            + ". Request: " + request, e);
+      }
+    }
+
+    private void sendRequestHttp(Request<? extends Object> request,
+        final Class<JsonElement> resultClass,
+        final Continuation<Response<JsonElement>> continuation) {
+
+      try {
+
+        ListenableFuture<Response<JsonElement>> responseFuture = null;
+
+        if (request.getId() != null) {
+          responseFuture = pendingRequests.prepareResponse(request.getId());
+        }
+
+        enqueueRequest(request);
+
+        if (responseFuture == null) {
+          continuation.onSuccess(null);
+          return;
+        }
+
+        Futures.addCallback(responseFuture, new FutureCallback<Response<JsonElement>>() {
+          @Override
+          public void onSuccess(Response<JsonElement> response) {
+            try {
+              continuation.onSuccess(MessageUtils.convertResponse(response, resultClass));
+            } catch (Exception e) {
+              log.error("Exception while processing response", e);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            continuation.onError(t);
+          }
+        });
+
+      } catch (Exception e) {
+        continuation.onError(e);
+      }
+    }
+
+    private void enqueueRequest(Request<?> request) {
+
+      log.debug("Req-> {} (queued for poll of session {})", request, getSessionId());
+
+      synchronized (this) {
+        requestsToSend.add(request);
+        if (pendingPoll != null) {
+          respondPendingPoll();
+        }
+      }
+    }
+
+    @Override
+    public synchronized void processPollRequest(Request<JsonElement> request,
+        ResponseSender responseSender) throws IOException {
+
+      if (carriesResponses(request)) {
+        // The client sends the responses to requests from server as soon as they are produced.
+        // These polls are answered right away and the held one is kept.
+        sendPollResponse(request, responseSender, drainRequests());
+        return;
+      }
+
+      if (pendingPoll != null) {
+        // Only one poll can be waiting. The old one is answered without requests.
+        List<Request<?>> noRequests = Collections.emptyList();
+        sendPollResponse(pendingPoll, pendingPollSender, noRequests);
+        clearPendingPoll();
+      }
+
+      if (!requestsToSend.isEmpty()) {
+        sendPollResponse(request, responseSender, drainRequests());
+        return;
+      }
+
+      pendingPoll = request;
+      pendingPollSender = responseSender;
+      pendingPollTimeout = taskScheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (HttpRequestServerSession.this) {
+            if (pendingPoll != null) {
+              respondPendingPoll();
+            }
+          }
+        }
+      }, new Date(System.currentTimeMillis() + POLL_TIMEOUT));
+    }
+
+    private boolean carriesResponses(Request<JsonElement> poll) {
+      List<?> responses = JsonUtils.extractJavaValueFromResult(poll.getParams(), List.class);
+      return responses != null && !responses.isEmpty();
+    }
+
+    private void respondPendingPoll() {
+      try {
+        sendPollResponse(pendingPoll, pendingPollSender, drainRequests());
+      } catch (IOException e) {
+        log.warn("Exception sending poll response to session {}", getSessionId(), e);
+      }
+      clearPendingPoll();
+    }
+
+    private void clearPendingPoll() {
+      if (pendingPollTimeout != null) {
+        pendingPollTimeout.cancel(false);
+      }
+      pendingPoll = null;
+      pendingPollSender = null;
+      pendingPollTimeout = null;
+    }
+
+    private List<Request<?>> drainRequests() {
+      List<Request<?>> requests = new ArrayList<>(requestsToSend);
+      requestsToSend.clear();
+      return requests;
+    }
+
+    private void sendPollResponse(Request<JsonElement> poll, ResponseSender responseSender,
+        List<Request<?>> requests) throws IOException {
+      responseSender.sendResponse(new Response<Object>(getSessionId(), poll.getId(), requests));
+    }
+
     @Override
     public void handleResponse(Response<JsonElement> response) {
+      pendingRequests.handleResponse(response);
     }
 
     @Override
     public void closeNativeSession(String reason) {
-      throw new UnsupportedOperationException();
+      synchronized (this) {
+        if (pendingPoll != null) {
+          respondPendingPoll();
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        closeNativeSession("Session closed");
+        pendingRequests.closeAllPendingRequests();
+      } finally {
+        super.close();
+      }
+    }
+  }
+
+  private static class AsyncResponseSender implements ResponseSender {
+
+    private final AsyncContext asyncContext;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    public AsyncResponseSender(AsyncContext asyncContext) {
+      this.asyncContext = asyncContext;
+    }
+
+    @Override
+    public void sendResponse(Message message) throws IOException {
+      if (completed.compareAndSet(false, true)) {
+        try {
+          asyncContext.getResponse().setContentType("application/json");
+          asyncContext.getResponse().getWriter().println(message);
+        } finally {
+          asyncContext.complete();
+        }
+      } else {
+        log.warn("Discarding message {} because HTTP request has been already answered", message);
+      }
+    }
+
+    @Override
+    public void sendPingResponse(Message message) throws IOException {
+      sendResponse(message);
+    }
+
+    public void completeWithoutResponse() {
+      if (completed.compareAndSet(false, true)) {
+        asyncContext.complete();
+      }
     }
   }
 
   private final ProtocolManager protocolManager;
 
-  public JsonRpcHttpRequestHandler(ProtocolManager protocolManager) {
+  private final TaskScheduler taskScheduler;
+
+  public JsonRpcHttpRequestHandler(ProtocolManager protocolManager,
+      TaskScheduler taskScheduler) {
     this.protocolManager = protocolManager;
+    this.taskScheduler = taskScheduler;
   }
 
   @Override
@@ -102,18 +354,6 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
       }
     };
 
-    ResponseSender responseSender = new ResponseSender() {
-      @Override
-      public void sendResponse(Message message) throws IOException {
-        servletResponse.getWriter().println(message);
-      }
-
-      @Override
-      public void sendPingResponse(Message message) throws IOException {
-        sendResponse(message);
-      }
-    };
-
     String internalSessionId = null;
 
     HttpSession session = servletRequest.getSession(false);
@@ -121,7 +361,35 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
       internalSessionId = session.getId();
     }
 
-    protocolManager.processMessage(messageJson, factory, responseSender, internalSessionId);
+    Message message = JsonRpcMessageDecoder.decode(messageJson, JsonElement.class,
+        JsonElement.class);
+
+    if (message == null) {
+      // Empty requests are used by clients to check the server is reachable
+      return;
+    }
+
+    AsyncContext asyncContext = servletRequest.startAsync();
+    asyncContext.setTimeout(ASYNC_TIMEOUT);
+
+    AsyncResponseSender responseSender = new AsyncResponseSender(asyncContext);
+
+    boolean processed = false;
+    try {
+
+      protocolManager.processMessage(message, factory, responseSender, internalSessionId);
+      processed = true;
+
+    } finally {
+      // Notifications and responses from client are not answered
+      if (!processed || !isRequestWithId(message)) {
+        responseSender.completeWithoutResponse();
+      }
+    }
+  }
+
+  private boolean isRequestWithId(Message message) {
+    return message instanceof Request && ((Request<?>) message).getId() != null;
   }
 
   /**
@@ -51,6 +51,13 @@ public class PerSessionJsonRpcHandler<T> implements JsonRpcHandler<T>, BeanFacto
 
   private boolean pingWachdog;
 
+  private boolean compression = true;
+
+  private long maxSessions;
+  private long maxSessionsPerAddress;
+  private double maxRequestsPerSecond;
+  private int requestsBurst;
+
   public PerSessionJsonRpcHandler(String handlerName) {
     this(handlerName, null);
   }
@@ -190,6 +197,48 @@ public class PerSessionJsonRpcHandler<T> implements JsonRpcHandler<T>, BeanFacto
     return pingWachdog;
   }
 
+  public PerSessionJsonRpcHandler<T> withCompression(boolean compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  public boolean isCompressionEnabled() {
+    return compression;
+  }
+
+  public PerSessionJsonRpcHandler<T> withMaxSessions(long maxSessions) {
+    this.maxSessions = maxSessions;
+    return this;
+  }
+
+  public long getMaxSessions() {
+    return maxSessions;
+  }
+
+  public PerSessionJsonRpcHandler<T> withMaxSessionsPerAddress(long maxSessionsPerAddress) {
+    this.maxSessionsPerAddress = maxSessionsPerAddress;
+    return this;
+  }
+
+  public long getMaxSessionsPerAddress() {
+    return maxSessionsPerAddress;
+  }
+
+  public PerSessionJsonRpcHandler<T> withRequestRateLimit(double maxRequestsPerSecond,
+      int requestsBurst) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    this.requestsBurst = requestsBurst;
+    return this;
+  }
+
+  public double getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  public int getRequestsBurst() {
+    return requestsBurst;
+  }
+
   @Override
   public final PerSessionJsonRpcHandler<T> withAllowedOrigins(String... origins) {
     this.allowedOrigins = ImmutableList.copyOf(origins);
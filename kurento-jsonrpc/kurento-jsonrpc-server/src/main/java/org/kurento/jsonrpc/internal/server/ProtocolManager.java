@@ -17,31 +17,39 @@
 
 package org.kurento.jsonrpc.internal.server;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ACK_PROPERTY;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CLOSE;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CONNECT;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG_PAYLOAD;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_ERROR;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_ERROR_CODE;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_SUCCESSFUL;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.REPLAY_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.REQUEST_RATE_LIMIT_ERROR;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.REQUEST_RATE_LIMIT_ERROR_CODE;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ScheduledFuture;
 
 import javax.annotation.PostConstruct;
 
+import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.SecretGenerator;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcMessageDecoder;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.internal.server.PingWatchdogManager.NativeSessionCloser;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
@@ -61,8 +69,19 @@ public class ProtocolManager {
 
   public static final String CLIENT_CLOSED_CLOSE_REASON = "Client sent close message";
 
+  public static final String REPLAY_OVERFLOW_CLOSE_REASON =
+      "Messages not received by client were discarded from replay buffer";
+
   private static final String INTERVAL_PROPERTY = "interval";
 
+  private static final Type POLL_RESPONSES_TYPE = new TypeToken<List<Response<JsonElement>>>() {
+  }.getType();
+
+  private static final double MAX_REQUESTS_PER_SECOND =
+      PropertiesManager.getProperty("ws.maxRequestsPerSecond", -1.0);
+
+  private static final int REQUESTS_BURST = PropertiesManager.getProperty("ws.requestsBurst", 0);
+
   public interface ServerSessionFactory {
     ServerSession createSession(String sessionId, Object registerInfo,
         SessionsManager sessionsManager);
@@ -93,13 +112,19 @@ public class ProtocolManager {
 
   private PingWatchdogManager pingWachdogManager;
 
+  private double maxRequestsPerSecond;
+
+  private int requestsBurst;
+
   public ProtocolManager(JsonRpcHandler<?> handler) {
     this.handlerManager = new JsonRpcHandlerManager(handler);
+    configureRequestRateLimit(handler);
   }
 
   public ProtocolManager(JsonRpcHandler<?> handler, SessionsManager sessionsManager,
       TaskScheduler taskScheduler) {
     this.handlerManager = new JsonRpcHandlerManager(handler);
+    configureRequestRateLimit(handler);
     this.sessionsManager = sessionsManager;
     this.taskScheduler = taskScheduler;
     postConstruct();
@@ -123,16 +148,70 @@ public class ProtocolManager {
     this.pingWachdogManager = new PingWatchdogManager(taskScheduler, nativeSessionCloser);
   }
 
+  private void configureRequestRateLimit(JsonRpcHandler<?> handler) {
+
+    // Zero values, and handlers without their own limits, use the server defaults
+    double handlerRate = 0;
+    int handlerBurst = 0;
+    if (handler instanceof DefaultJsonRpcHandler) {
+      handlerRate = ((DefaultJsonRpcHandler<?>) handler).getMaxRequestsPerSecond();
+      handlerBurst = ((DefaultJsonRpcHandler<?>) handler).getRequestsBurst();
+    } else if (handler instanceof PerSessionJsonRpcHandler) {
+      handlerRate = ((PerSessionJsonRpcHandler<?>) handler).getMaxRequestsPerSecond();
+      handlerBurst = ((PerSessionJsonRpcHandler<?>) handler).getRequestsBurst();
+    }
+
+    setRequestRateLimit(handlerRate != 0 ? handlerRate : MAX_REQUESTS_PER_SECOND,
+        handlerBurst != 0 ? handlerBurst : REQUESTS_BURST);
+  }
+
   public void setLabel(String label) {
     this.label = "[" + label + "] ";
   }
 
+  /**
+   * Configures the max number of requests per second allowed in each session created from now on.
+   * Sessions can send up to requestsBurst requests (or the requests allowed in one second if not
+   * specified) before being limited.
+   *
+   * @param maxRequestsPerSecond
+   *          sustained requests per second. Zero or negative disables the limit
+   * @param requestsBurst
+   *          max number of requests allowed in a burst
+   */
+  public void setRequestRateLimit(double maxRequestsPerSecond, int requestsBurst) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    this.requestsBurst = requestsBurst > 0 ? requestsBurst
+        : (int) Math.max(1, Math.ceil(maxRequestsPerSecond));
+  }
+
   public void processMessage(String messageJson, ServerSessionFactory factory,
       ResponseSender responseSender, String internalSessionId) throws IOException {
 
-    JsonObject messagetJsonObject = JsonUtils.fromJson(messageJson, JsonObject.class);
+    Message message = JsonRpcMessageDecoder.decode(messageJson, JsonElement.class,
+        JsonElement.class);
+
+    if (message == null) {
+      return;
+    }
 
-    processMessage(messagetJsonObject, factory, responseSender, internalSessionId);
+    processMessage(message, factory, responseSender, internalSessionId);
+  }
+
+  /**
+   * Process an already decoded message. Requests must have {@link JsonElement} params and
+   * responses must have {@link JsonElement} result.
+   */
+  @SuppressWarnings("unchecked")
+  public void processMessage(Message message, ServerSessionFactory factory,
+      ResponseSender responseSender, String internalSessionId) throws IOException {
+
+    if (message instanceof Request) {
+      processRequestMessage(factory, (Request<JsonElement>) message, responseSender,
+          internalSessionId);
+    } else {
+      processResponseMessage((Response<JsonElement>) message, internalSessionId);
+    }
   }
 
   /**
@@ -149,9 +228,12 @@ public class ProtocolManager {
       ResponseSender responseSender, String internalSessionId) throws IOException {
 
     if (messagetJsonObject.has(Request.METHOD_FIELD_NAME)) {
-      processRequestMessage(factory, messagetJsonObject, responseSender, internalSessionId);
+      processRequestMessage(factory,
+          JsonUtils.fromJsonRequest(messagetJsonObject, JsonElement.class), responseSender,
+          internalSessionId);
     } else {
-      processResponseMessage(messagetJsonObject, internalSessionId);
+      processResponseMessage(JsonUtils.fromJsonResponse(messagetJsonObject, JsonElement.class),
+          internalSessionId);
     }
   }
 
@@ -159,11 +241,9 @@ public class ProtocolManager {
   // entity "RequestContext" or similar. In this way, there are less
   // parameters
   // and the implementation is easier
-  private void processRequestMessage(ServerSessionFactory factory, JsonObject requestJsonObject,
-      final ResponseSender responseSender, String transportId) throws IOException {
-
-    final Request<JsonElement> request = JsonUtils.fromJsonRequest(requestJsonObject,
-        JsonElement.class);
+  private void processRequestMessage(ServerSessionFactory factory,
+      final Request<JsonElement> request, ResponseSender responseSender, String transportId)
+      throws IOException {
 
     switch (request.getMethod()) {
     case METHOD_CONNECT:
@@ -185,6 +265,9 @@ public class ProtocolManager {
 
       final ServerSession session = getOrCreateSession(factory, transportId, request);
 
+      // Sessions with replay enabled keep responses until the client acknowledges them
+      final ResponseSender sessionResponseSender = session.getResponseSender(responseSender);
+
       log.debug("{} Req-> {} [jsonRpcSessionId={}, transportId={}]", label, request,
           session.getSessionId(), transportId);
 
@@ -193,29 +276,29 @@ public class ProtocolManager {
       // And for no contaminate the ProtocolManager.
       if (request.getMethod().equals(Request.POLL_METHOD_NAME)) {
 
-        Type collectionType = new TypeToken<List<Response<JsonElement>>>() {
-        }.getType();
+        List<Response<JsonElement>> responseList =
+            JsonUtils.extractJavaValueFromResult(request.getParams(), POLL_RESPONSES_TYPE);
 
-        List<Response<JsonElement>> responseList = JsonUtils.fromJson(request.getParams(),
-            collectionType);
-
-        for (Response<JsonElement> response : responseList) {
-          session.handleResponse(response);
+        if (responseList != null) {
+          for (Response<JsonElement> response : responseList) {
+            session.handleResponse(response);
+          }
         }
 
-        // Wait for some time if there is a request from server to
-        // client
-
-        // TODO Allow send empty responses. Now you have to send at
-        // least an
-        // empty string
-        responseSender.sendResponse(new Response<Object>(request.getId(), Collections.emptyList()));
+        // The session answers when it has requests for the client. HTTP sessions hold the poll
+        // until then.
+        session.processPollRequest(request, sessionResponseSender);
 
       } else {
+
+        if (!acquireRequestPermit(session, request, sessionResponseSender)) {
+          break;
+        }
+
         session.processRequest(new Runnable() {
           @Override
           public void run() {
-            handlerManager.handleRequest(session, request, responseSender);
+            handlerManager.handleRequest(session, request, sessionResponseSender);
           }
         });
       }
@@ -224,6 +307,28 @@ public class ProtocolManager {
 
   }
 
+  private boolean acquireRequestPermit(ServerSession session, Request<JsonElement> request,
+      ResponseSender responseSender) throws IOException {
+
+    TokenBucket rateLimiter = session.getRequestRateLimiter();
+
+    if (rateLimiter == null || rateLimiter.tryAcquire()) {
+      return true;
+    }
+
+    if (request.getId() != null) {
+      log.debug("{} Request rate limit reached in session {}. Rejecting request {}", label,
+          session.getSessionId(), request);
+      responseSender.sendResponse(new Response<>(request.getId(),
+          new ResponseError(REQUEST_RATE_LIMIT_ERROR_CODE, REQUEST_RATE_LIMIT_ERROR)));
+    } else {
+      log.warn("{} Request rate limit reached in session {}. Discarding notification {}", label,
+          session.getSessionId(), request);
+    }
+
+    return false;
+  }
+
   private ServerSession getOrCreateSession(ServerSessionFactory factory, String transportId,
       Request<JsonElement> request) {
 
@@ -292,6 +397,12 @@ public class ProtocolManager {
         if (element.has(INTERVAL_PROPERTY)) {
           interval = element.get(INTERVAL_PROPERTY).getAsLong();
         }
+        if (element.has(ACK_PROPERTY)) {
+          ServerSession session = sessionsManager.getByTransportId(transportId);
+          if (session != null) {
+            session.acknowledge(element.get(ACK_PROPERTY).getAsLong());
+          }
+        }
       }
 
       pingWachdogManager.pingReceived(transportId, interval);
@@ -332,12 +443,28 @@ public class ProtocolManager {
 
       ServerSession session = getOrCreateSession(factory, transportId, request);
 
+      if (getBooleanParam(request, REPLAY_PROPERTY)) {
+        session.enableReplay();
+      }
+
       responseSender.sendResponse(new Response<>(session.getSessionId(), request.getId(), "OK"));
 
     } else {
 
       ServerSession session = sessionsManager.get(sessionId);
-      if (session != null) {
+
+      long acknowledged = getLongParam(request, ACK_PROPERTY, 0);
+
+      if (session != null && !session.canResume(acknowledged)) {
+
+        log.warn("{} Session {} can't be resumed: messages after {} were discarded from replay"
+            + " buffer", label, sessionId, acknowledged);
+
+        closeSession(session, REPLAY_OVERFLOW_CLOSE_REASON);
+        responseSender.sendResponse(new Response<>(request.getId(),
+            new ResponseError(RECONNECTION_ERROR_CODE, RECONNECTION_ERROR)));
+
+      } else if (session != null) {
 
         String oldTransportId = session.getTransportId();
         session.setTransportId(transportId);
@@ -352,6 +479,12 @@ public class ProtocolManager {
         responseSender
             .sendResponse(new Response<>(sessionId, request.getId(), RECONNECTION_SUCCESSFUL));
 
+        if (!session.resume(acknowledged)) {
+          log.warn("{} Session {} closed: messages after {} were discarded from replay buffer"
+              + " while resuming", label, sessionId, acknowledged);
+          closeSession(session, REPLAY_OVERFLOW_CLOSE_REASON);
+        }
+
       } else {
 
         session = createSessionAsOldIfKnowByHandler(factory, sessionId);
@@ -360,18 +493,36 @@ public class ProtocolManager {
           responseSender
               .sendResponse(new Response<>(sessionId, request.getId(), RECONNECTION_SUCCESSFUL));
         } else {
-          responseSender.sendResponse(
-              new Response<>(request.getId(), new ResponseError(40007, RECONNECTION_ERROR)));
+          responseSender.sendResponse(new Response<>(request.getId(),
+              new ResponseError(RECONNECTION_ERROR_CODE, RECONNECTION_ERROR)));
         }
       }
     }
   }
 
+  private boolean getBooleanParam(Request<JsonElement> request, String name) {
+    JsonElement params = request.getParams();
+    return params instanceof JsonObject && ((JsonObject) params).has(name)
+        && ((JsonObject) params).get(name).getAsBoolean();
+  }
+
+  private long getLongParam(Request<JsonElement> request, String name, long defaultValue) {
+    JsonElement params = request.getParams();
+    if (params instanceof JsonObject && ((JsonObject) params).has(name)) {
+      return ((JsonObject) params).get(name).getAsLong();
+    }
+    return defaultValue;
+  }
+
   private ServerSession createSession(ServerSessionFactory factory, Object registerInfo,
       String sessionId) {
 
     ServerSession session = factory.createSession(sessionId, registerInfo, sessionsManager);
 
+    if (maxRequestsPerSecond > 0) {
+      session.setRequestRateLimiter(new TokenBucket(maxRequestsPerSecond, requestsBurst));
+    }
+
     pingWachdogManager.associateSessionId(session.getTransportId(), sessionId);
 
     sessionsManager.put(session);
@@ -386,10 +537,7 @@ public class ProtocolManager {
     return createSession(factory, registerInfo, sessionId);
   }
 
-  private void processResponseMessage(JsonObject messagetJsonObject, String internalSessionId) {
-
-    Response<JsonElement> response = JsonUtils.fromJsonResponse(messagetJsonObject,
-        JsonElement.class);
+  private void processResponseMessage(Response<JsonElement> response, String internalSessionId) {
 
     ServerSession session = sessionsManager.getByTransportId(internalSessionId);
 
@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded buffer of the messages sent by the server in a session, kept until the client
+ * acknowledges them so they can be re-delivered when the client reconnects after a transport
+ * drop. Messages are numbered consecutively starting from 1.
+ *
+ * <p>
+ * When the buffer is full, the oldest message is discarded. If the client hasn't received it, the
+ * session can't be resumed without losing messages.
+ * </p>
+ */
+public class ReplayBuffer {
+
+  private static class Entry {
+
+    private final long sequenceNumber;
+    private final String message;
+
+    private Entry(long sequenceNumber, String message) {
+      this.sequenceNumber = sequenceNumber;
+      this.message = message;
+    }
+  }
+
+  private final int capacity;
+  private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+  private long lastSequenceNumber;
+  private long lastDiscarded;
+
+  public ReplayBuffer(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Replay buffer capacity must be at least 1: " + capacity);
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Reserves the sequence number of the next message. It has to be added with
+   * {@link #add(long, String)} before reserving another one.
+   */
+  public synchronized long nextSequenceNumber() {
+    return ++lastSequenceNumber;
+  }
+
+  public synchronized void add(long sequenceNumber, String message) {
+
+    if (sequenceNumber != lastSequenceNumber) {
+      throw new IllegalStateException("Expected message with sequence number "
+          + lastSequenceNumber + " but was " + sequenceNumber);
+    }
+
+    entries.addLast(new Entry(sequenceNumber, message));
+
+    if (entries.size() > capacity) {
+      lastDiscarded = entries.removeFirst().sequenceNumber;
+    }
+  }
+
+  /**
+   * Removes the messages with a sequence number lower or equal than the given one.
+   */
+  public synchronized void acknowledge(long sequenceNumber) {
+    while (!entries.isEmpty() && entries.peekFirst().sequenceNumber <= sequenceNumber) {
+      entries.removeFirst();
+    }
+  }
+
+  /**
+   * Returns true if all messages after the acknowledged one are still in the buffer.
+   */
+  public synchronized boolean canResume(long acknowledged) {
+    return acknowledged >= lastDiscarded;
+  }
+
+  /**
+   * Acknowledges the given sequence number and returns the messages sent after it, in order.
+   * Returns null if some of them were discarded because the buffer was full.
+   */
+  public synchronized List<String> getUnacknowledged(long acknowledged) {
+
+    if (!canResume(acknowledged)) {
+      return null;
+    }
+
+    acknowledge(acknowledged);
+
+    List<String> messages = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      messages.add(entry.message);
+    }
+    return messages;
+  }
+
+  public synchronized long getLastSequenceNumber() {
+    return lastSequenceNumber;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+}
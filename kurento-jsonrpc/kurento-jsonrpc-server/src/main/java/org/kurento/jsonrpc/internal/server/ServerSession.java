@@ -18,18 +18,21 @@
 package org.kurento.jsonrpc.internal.server;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 
@@ -41,6 +44,9 @@ public abstract class ServerSession extends AbstractSession {
   public static final String SESSION_RECONNECTION_TIME_PROP = "ws.sessionReconnectionTime";
   private static final int SESSION_RECONNECTION_TIME_DEFAULT = 10;
 
+  public static final String SESSION_REPLAY_BUFFER_SIZE_PROP = "ws.sessionReplayBufferSize";
+  private static final int SESSION_REPLAY_BUFFER_SIZE_DEFAULT = 1000;
+
   private final SessionsManager sessionsManager;
   private JsonRpcRequestSenderHelper rsHelper;
   private String transportId;
@@ -49,9 +55,12 @@ public abstract class ServerSession extends AbstractSession {
 
   private volatile ConcurrentMap<String, Object> attributes;
 
-  private long reconnectionTimeoutInMillis = PropertiesManager.getProperty(
-      SESSION_RECONNECTION_TIME_PROP, SESSION_RECONNECTION_TIME_DEFAULT) * 1000;
+  private long reconnectionTimeoutInMillis = PropertiesManager.getConfig().getDurationMillis(
+      SESSION_RECONNECTION_TIME_PROP, TimeUnit.SECONDS.toMillis(SESSION_RECONNECTION_TIME_DEFAULT),
+      TimeUnit.SECONDS);
   private boolean gracefullyClosed;
+  private TokenBucket requestRateLimiter;
+  private volatile ReplayBuffer replayBuffer;
 
   public ServerSession(String sessionId, Object registerInfo, SessionsManager sessionsManager,
       String transportId) {
@@ -164,6 +173,14 @@ public abstract class ServerSession extends AbstractSession {
     return closeTimerTask;
   }
 
+  public void setRequestRateLimiter(TokenBucket requestRateLimiter) {
+    this.requestRateLimiter = requestRateLimiter;
+  }
+
+  public TokenBucket getRequestRateLimiter() {
+    return requestRateLimiter;
+  }
+
   @Override
   public void setReconnectionTimeout(long reconnectionTimeoutInMillis) {
     this.reconnectionTimeoutInMillis = reconnectionTimeoutInMillis;
@@ -188,6 +205,71 @@ public abstract class ServerSession extends AbstractSession {
 
   public abstract void closeNativeSession(String reason);
 
+  /**
+   * Returns true if this transport can re-deliver messages after a reconnection.
+   */
+  public boolean isReplaySupported() {
+    return false;
+  }
+
+  /**
+   * Keeps the messages sent from now on in a replay buffer until the client acknowledges them. It
+   * has no effect if the transport doesn't support replay.
+   */
+  public synchronized void enableReplay() {
+    if (isReplaySupported() && replayBuffer == null) {
+      replayBuffer = new ReplayBuffer(PropertiesManager.getProperty(
+          SESSION_REPLAY_BUFFER_SIZE_PROP, SESSION_REPLAY_BUFFER_SIZE_DEFAULT));
+    }
+  }
+
+  public ReplayBuffer getReplayBuffer() {
+    return replayBuffer;
+  }
+
+  /**
+   * Discards the buffered messages received by the client, if replay is enabled.
+   */
+  public void acknowledge(long sequenceNumber) {
+    if (replayBuffer != null) {
+      replayBuffer.acknowledge(sequenceNumber);
+    }
+  }
+
+  /**
+   * Returns true if the session can be resumed without losing messages sent after the
+   * acknowledged one.
+   */
+  public boolean canResume(long acknowledged) {
+    return replayBuffer == null || replayBuffer.canResume(acknowledged);
+  }
+
+  /**
+   * Re-delivers the messages sent after the acknowledged one through the transport the session
+   * was reconnected with. Returns false if some of them can't be re-delivered.
+   */
+  public boolean resume(long acknowledged) throws IOException {
+    return true;
+  }
+
+  /**
+   * Returns the sender used to answer the requests received through a transport. By default
+   * responses are sent directly through it.
+   */
+  public ResponseSender getResponseSender(ResponseSender transportResponseSender) {
+    return transportResponseSender;
+  }
+
+  /**
+   * Answers a poll request from a client that can't receive requests from server in other way.
+   * Transports with server push have no requests to deliver, so the poll is answered with an empty
+   * list.
+   */
+  public void processPollRequest(Request<JsonElement> request, ResponseSender responseSender)
+      throws IOException {
+    responseSender.sendResponse(new Response<Object>(request.getId(), Collections.emptyList()));
+  }
+
   public void processRequest(Runnable task) {
     sessionExecutor.execute(task);
   }
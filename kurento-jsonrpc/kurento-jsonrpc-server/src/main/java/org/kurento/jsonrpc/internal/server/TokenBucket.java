@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket used to limit the rate of requests in a session. The bucket is refilled with
+ * {@code tokensPerSecond} tokens per second, up to {@code capacity} tokens.
+ */
+public class TokenBucket {
+
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final double tokensPerSecond;
+  private final double capacity;
+
+  private double tokens;
+  private long lastRefillNanos;
+
+  public TokenBucket(double tokensPerSecond, int capacity) {
+
+    if (tokensPerSecond <= 0) {
+      throw new IllegalArgumentException("tokensPerSecond must be positive: " + tokensPerSecond);
+    }
+
+    this.tokensPerSecond = tokensPerSecond;
+    this.capacity = Math.max(1, capacity);
+    this.tokens = this.capacity;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Takes a token from the bucket if there is one available.
+   *
+   * @return true if the token has been taken, false if the rate limit has been reached
+   */
+  public synchronized boolean tryAcquire() {
+
+    long now = System.nanoTime();
+    tokens = Math.min(capacity,
+        tokens + (now - lastRefillNanos) * tokensPerSecond / NANOS_PER_SECOND);
+    lastRefillNanos = now;
+
+    if (tokens >= 1) {
+      tokens--;
+      return true;
+    }
+
+    return false;
+  }
+
+  public double getTokensPerSecond() {
+    return tokensPerSecond;
+  }
+
+  public int getCapacity() {
+    return (int) capacity;
+  }
+}
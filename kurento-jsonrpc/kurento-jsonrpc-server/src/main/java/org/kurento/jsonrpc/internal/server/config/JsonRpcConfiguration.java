@@ -26,12 +26,15 @@ import java.util.Map.Entry;
 
 import org.apache.catalina.Context;
 import org.apache.tomcat.websocket.server.WsSci;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.internal.http.JsonRpcHttpRequestHandler;
 import org.kurento.jsonrpc.internal.server.PerSessionJsonRpcHandler;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.internal.ws.JsonRpcWebSocketHandler;
+import org.kurento.jsonrpc.internal.ws.PerMessageDeflateUpgradeStrategy;
 import org.kurento.jsonrpc.server.JsonRpcConfigurer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.embedded.tomcat.TomcatContextCustomizer;
@@ -49,11 +52,21 @@ import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistration;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
 @Configuration
 @EnableWebSocket
 public class JsonRpcConfiguration implements WebSocketConfigurer {
 
+  private static final boolean WS_COMPRESSION =
+      PropertiesManager.getProperty("ws.compression", true);
+
+  private static final boolean WS_COMPRESSION_SERVER_NO_CONTEXT_TAKEOVER =
+      PropertiesManager.getProperty("ws.compression.serverNoContextTakeover", false);
+
+  private static final boolean WS_COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER =
+      PropertiesManager.getProperty("ws.compression.clientNoContextTakeover", false);
+
   // public static class LoggerHandshakeInterceptor implements
   // HandshakeInterceptor {
   //
@@ -161,8 +174,9 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
   private void putHandlersMappings(Map<String, Object> urlMap, JsonRpcHandler<?> handler,
       List<String> paths) {
 
-    JsonRpcHttpRequestHandler requestHandler =
-        new JsonRpcHttpRequestHandler((ProtocolManager) ctx.getBean("protocolManager", handler));
+    JsonRpcHttpRequestHandler requestHandler = new JsonRpcHttpRequestHandler(
+        (ProtocolManager) ctx.getBean("protocolManager", handler),
+        ctx.getBean("jsonrpcTaskScheduler", TaskScheduler.class));
 
     for (String path : paths) {
       urlMap.put(path, requestHandler);
@@ -219,10 +233,27 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 
     protocolManager.setPingWachdog(handler.isPingWatchdog());
 
+    if (handler instanceof DefaultJsonRpcHandler) {
+      DefaultJsonRpcHandler<?> defaultHandler = (DefaultJsonRpcHandler<?>) handler;
+      wsHandler.setMaxConnections(defaultHandler.getMaxSessions());
+      wsHandler.setMaxConnectionsPerAddress(defaultHandler.getMaxSessionsPerAddress());
+    } else if (handler instanceof PerSessionJsonRpcHandler) {
+      PerSessionJsonRpcHandler<?> perSessionHandler = (PerSessionJsonRpcHandler<?>) handler;
+      wsHandler.setMaxConnections(perSessionHandler.getMaxSessions());
+      wsHandler.setMaxConnectionsPerAddress(perSessionHandler.getMaxSessionsPerAddress());
+    }
+
+    DefaultHandshakeHandler handshakeHandler =
+        new DefaultHandshakeHandler(new PerMessageDeflateUpgradeStrategy(
+            WS_COMPRESSION && isCompressionEnabled(handler),
+            WS_COMPRESSION_SERVER_NO_CONTEXT_TAKEOVER, WS_COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER));
+
     for (String path : paths) {
 
       WebSocketHandlerRegistration registration = wsHandlerRegistry.addHandler(wsHandler, path);
 
+      registration.setHandshakeHandler(handshakeHandler);
+
       List<String> origins = handler.allowedOrigins();
       registration.setAllowedOrigins(origins.toArray(new String[origins.size()]));
 
@@ -236,6 +267,17 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
     }
   }
 
+  private boolean isCompressionEnabled(JsonRpcHandler<?> handler) {
+    if (handler instanceof DefaultJsonRpcHandler) {
+      return ((DefaultJsonRpcHandler<?>) handler).isCompressionEnabled();
+    }
+    if (handler instanceof PerSessionJsonRpcHandler) {
+      return ((PerSessionJsonRpcHandler<?>) handler).isCompressionEnabled();
+    }
+    // Other implementations of the handler interface keep the server setting
+    return true;
+  }
+
   // This methods workaround the bug
   // https://jira.springsource.org/browse/SPR-10841
   @Bean
@@ -18,6 +18,10 @@
 package org.kurento.jsonrpc.internal.ws;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.kurento.commons.PropertiesManager;
@@ -29,6 +33,7 @@ import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
@@ -43,12 +48,24 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
   private static final long MAX_WS_CONNECTIONS = PropertiesManager
       .getProperty("ws.maxSessions", Long.MAX_VALUE);
 
-  private static final AtomicLong numConnections = new AtomicLong();
+  private static final long MAX_WS_CONNECTIONS_PER_ADDRESS = PropertiesManager
+      .getProperty("ws.maxSessionsPerAddress", Long.MAX_VALUE);
+
+  private static final String ADMITTED_ADDRESS_ATTRIBUTE =
+      JsonRpcWebSocketHandler.class.getName() + ".admittedAddress";
 
   private static final Logger log = LoggerFactory.getLogger(JsonRpcWebSocketHandler.class);
 
   private final ProtocolManager protocolManager;
 
+  private final AtomicLong numConnections = new AtomicLong();
+
+  private final Map<String, Long> numConnectionsPerAddress = new HashMap<>();
+
+  private long maxConnections = MAX_WS_CONNECTIONS;
+
+  private long maxConnectionsPerAddress = MAX_WS_CONNECTIONS_PER_ADDRESS;
+
   private String label = "";
 
   public JsonRpcWebSocketHandler(ProtocolManager protocolManager) {
@@ -60,15 +77,42 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
     this.protocolManager.setLabel(label);
   }
 
+  /**
+   * Max number of concurrent WebSocket sessions accepted by this handler. Zero or negative values
+   * keep the server default (ws.maxSessions).
+   */
+  public void setMaxConnections(long maxConnections) {
+    this.maxConnections = maxConnections > 0 ? maxConnections : MAX_WS_CONNECTIONS;
+  }
+
+  /**
+   * Max number of concurrent WebSocket sessions accepted by this handler from the same remote
+   * address. Zero or negative values keep the server default (ws.maxSessionsPerAddress).
+   */
+  public void setMaxConnectionsPerAddress(long maxConnectionsPerAddress) {
+    this.maxConnectionsPerAddress =
+        maxConnectionsPerAddress > 0 ? maxConnectionsPerAddress : MAX_WS_CONNECTIONS_PER_ADDRESS;
+  }
+
+  public long getNumConnections() {
+    return numConnections.get();
+  }
+
   @Override
   public void afterConnectionEstablished(WebSocketSession session) throws Exception {
 
+    String address = getRemoteAddress(session);
+
     try {
-      incNumConnectionsIfAllowed();
+      admitConnection(address);
+      session.getAttributes().put(ADMITTED_ADDRESS_ATTRIBUTE, address);
     } catch (MaxNumberWsConnectionsReachedException e) {
-      log.warn("Closed a WS connection because MAX_WS_CONNECTIONS={} limit reached",
-          MAX_WS_CONNECTIONS);
-      session.close();
+      log.warn(
+          "{} Closed a WS connection from {} because limit reached (maxSessions={}, "
+              + "maxSessionsPerAddress={})",
+          label, address, maxConnections, maxConnectionsPerAddress);
+      session.close(CloseStatus.POLICY_VIOLATION);
+      return;
     }
 
     try {
@@ -85,26 +129,66 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
     }
   }
 
-  private void incNumConnectionsIfAllowed() throws MaxNumberWsConnectionsReachedException {
+  private String getRemoteAddress(WebSocketSession session) {
+    InetSocketAddress remoteAddress = session.getRemoteAddress();
+    if (remoteAddress == null) {
+      return "unknown";
+    }
+    InetAddress address = remoteAddress.getAddress();
+    return address != null ? address.getHostAddress() : remoteAddress.getHostString();
+  }
+
+  private void admitConnection(String address) throws MaxNumberWsConnectionsReachedException {
+
+    incIfAllowed(numConnections, maxConnections);
+
+    synchronized (numConnectionsPerAddress) {
+      Long addressConnections = numConnectionsPerAddress.get(address);
+      long current = addressConnections != null ? addressConnections : 0;
+      if (current >= maxConnectionsPerAddress) {
+        numConnections.decrementAndGet();
+        throw new MaxNumberWsConnectionsReachedException();
+      }
+      numConnectionsPerAddress.put(address, current + 1);
+    }
+  }
+
+  private void releaseConnection(String address) {
+
+    numConnections.decrementAndGet();
+
+    synchronized (numConnectionsPerAddress) {
+      Long addressConnections = numConnectionsPerAddress.get(address);
+      if (addressConnections == null || addressConnections <= 1) {
+        // Entries are removed when empty to avoid leaking one per client address
+        numConnectionsPerAddress.remove(address);
+      } else {
+        numConnectionsPerAddress.put(address, addressConnections - 1);
+      }
+    }
+  }
+
+  private void incIfAllowed(AtomicLong counter, long max)
+      throws MaxNumberWsConnectionsReachedException {
 
     while (true) {
 
-      long curNumConn = numConnections.get();
-      if (curNumConn >= MAX_WS_CONNECTIONS) {
+      long curNumConn = counter.get();
+      if (curNumConn >= max) {
         throw new MaxNumberWsConnectionsReachedException();
       }
 
       // Try updating the value, but only if it's equal to the
       // one we've just seen. If it is different, we have to check again if now
       // there are room for a new client.
-      boolean setSuccessful = numConnections.compareAndSet(curNumConn, curNumConn + 1);
+      boolean setSuccessful = counter.compareAndSet(curNumConn, curNumConn + 1);
 
       if (setSuccessful) {
-        // We have incremented numConnections. Exiting.
+        // We have incremented the counter. Exiting.
         break;
       }
 
-      // Another thread updated the numConnections between our get and
+      // Another thread updated the counter between our get and
       // compareAndSet calls. It is possible that we check again
     }
   }
@@ -113,7 +197,13 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
   public void afterConnectionClosed(WebSocketSession wsSession,
       org.springframework.web.socket.CloseStatus status) throws Exception {
 
-    numConnections.decrementAndGet();
+    String admittedAddress = (String) wsSession.getAttributes().remove(ADMITTED_ADDRESS_ATTRIBUTE);
+    if (admittedAddress == null) {
+      // Connection rejected by admission control
+      return;
+    }
+
+    releaseConnection(admittedAddress);
 
     try {
       ServerSession session = (ServerSession) protocolManager
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.ws;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.websocket.Endpoint;
+import javax.websocket.Extension;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrategy;
+
+/**
+ * Tomcat upgrade strategy that controls the negotiation of the permessage-deflate extension (RFC
+ * 7692). Tomcat negotiates the extension from the Sec-WebSocket-Extensions header of the request,
+ * so the offer is rewritten before the upgrade: it is removed when compression is disabled, and
+ * the no_context_takeover parameters configured in the server are added to it.
+ */
+public class PerMessageDeflateUpgradeStrategy extends TomcatRequestUpgradeStrategy {
+
+  private static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
+  private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+  private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+  private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+  private final boolean compression;
+  private final boolean serverNoContextTakeover;
+  private final boolean clientNoContextTakeover;
+
+  public PerMessageDeflateUpgradeStrategy(boolean compression, boolean serverNoContextTakeover,
+      boolean clientNoContextTakeover) {
+    this.compression = compression;
+    this.serverNoContextTakeover = serverNoContextTakeover;
+    this.clientNoContextTakeover = clientNoContextTakeover;
+  }
+
+  @Override
+  public void upgradeInternal(ServerHttpRequest request, ServerHttpResponse response,
+      String selectedProtocol, List<Extension> selectedExtensions, Endpoint endpoint)
+      throws HandshakeFailureException {
+
+    HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+
+    String extensions = rewriteExtensions(servletRequest.getHeaders(EXTENSIONS_HEADER));
+
+    super.upgradeInternal(
+        new ServletServerHttpRequest(new ExtensionsRequestWrapper(servletRequest, extensions)),
+        response, selectedProtocol, selectedExtensions, endpoint);
+  }
+
+  String rewriteExtensions(Enumeration<String> headerValues) {
+
+    List<String> offers = new ArrayList<>();
+
+    if (headerValues != null) {
+      while (headerValues.hasMoreElements()) {
+        for (String offer : headerValues.nextElement().split(",")) {
+
+          offer = offer.trim();
+          if (offer.isEmpty()) {
+            continue;
+          }
+
+          if (!PERMESSAGE_DEFLATE.equals(getExtensionName(offer))) {
+            offers.add(offer);
+          } else if (compression) {
+            offers.add(addParameters(offer));
+          }
+        }
+      }
+    }
+
+    return offers.isEmpty() ? null : StringUtils.collectionToDelimitedString(offers, ", ");
+  }
+
+  private String addParameters(String offer) {
+
+    StringBuilder sb = new StringBuilder(offer);
+
+    if (serverNoContextTakeover && !offer.contains(SERVER_NO_CONTEXT_TAKEOVER)) {
+      sb.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+    }
+
+    if (clientNoContextTakeover && !offer.contains(CLIENT_NO_CONTEXT_TAKEOVER)) {
+      sb.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+    }
+
+    return sb.toString();
+  }
+
+  private String getExtensionName(String offer) {
+    int index = offer.indexOf(';');
+    return (index == -1 ? offer : offer.substring(0, index)).trim();
+  }
+
+  private static class ExtensionsRequestWrapper extends HttpServletRequestWrapper {
+
+    private final String extensions;
+
+    public ExtensionsRequestWrapper(HttpServletRequest request, String extensions) {
+      super(request);
+      this.extensions = extensions;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      if (EXTENSIONS_HEADER.equalsIgnoreCase(name)) {
+        return extensions;
+      }
+      return super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+      if (EXTENSIONS_HEADER.equalsIgnoreCase(name)) {
+        List<String> values = extensions == null ? Collections.<String> emptyList()
+            : Collections.singletonList(extensions);
+        return Collections.enumeration(values);
+      }
+      return super.getHeaders(name);
+    }
+  }
+}
@@ -18,6 +18,7 @@
 package org.kurento.jsonrpc.internal.ws;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -32,8 +33,11 @@ import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.ReplayBuffer;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
@@ -52,7 +56,11 @@ public class WebSocketServerSession extends ServerSession {
 
   private static Logger log = LoggerFactory.getLogger(WebSocketServerSession.class);
 
-  private WebSocketSession wsSession;
+  private volatile WebSocketSession wsSession;
+
+  private final Object sendLock = new Object();
+
+  private boolean resuming;
 
   private final PendingRequests pendingRequests = new PendingRequests();
 
@@ -113,9 +121,7 @@ public class WebSocketServerSession extends ServerSession {
     }
 
     try {
-      synchronized (wsSession) {
-        wsSession.sendMessage(new TextMessage(JsonUtils.toJson(request)));
-      }
+      sendMessage(request);
     } catch (Exception e) {
       throw new KurentoException("Exception while sending message '" + JsonUtils.toJson(request)
           + "' to websocket with native sessionId '" + wsSession.getId() + "'", e);
@@ -147,6 +153,113 @@ public class WebSocketServerSession extends ServerSession {
     return MessageUtils.convertResponse(responseJsonObject, resultClass);
   }
 
+  private void sendMessage(Message message) throws IOException {
+
+    ReplayBuffer replayBuffer = getReplayBuffer();
+
+    if (replayBuffer == null) {
+      WebSocketSession currentWsSession = wsSession;
+      synchronized (currentWsSession) {
+        currentWsSession.sendMessage(new TextMessage(toJson(message)));
+      }
+      return;
+    }
+
+    // Messages are numbered and sent under the same lock, so they reach the client in order
+    synchronized (sendLock) {
+
+      long sequenceNumber = replayBuffer.nextSequenceNumber();
+      message.setSequenceNumber(sequenceNumber);
+      String json = toJson(message);
+      replayBuffer.add(sequenceNumber, json);
+
+      if (resuming || !wsSession.isOpen()) {
+        log.debug("Message {} of session {} buffered until the client reconnects",
+            sequenceNumber, getSessionId());
+        return;
+      }
+
+      try {
+        sendText(json);
+      } catch (IOException e) {
+        log.debug("Exception sending message {} of session {}. It will be re-delivered when the"
+            + " client reconnects", sequenceNumber, getSessionId(), e);
+      }
+    }
+  }
+
+  private String toJson(Message message) {
+    // Requests are sent without injecting the sessionId, as before replay was supported
+    return message instanceof Request ? JsonUtils.toJson(message) : message.toString();
+  }
+
+  private void sendText(String json) throws IOException {
+    WebSocketSession currentWsSession = wsSession;
+    synchronized (currentWsSession) {
+      currentWsSession.sendMessage(new TextMessage(json));
+    }
+  }
+
+  @Override
+  public boolean isReplaySupported() {
+    return true;
+  }
+
+  @Override
+  public ResponseSender getResponseSender(final ResponseSender transportResponseSender) {
+
+    if (getReplayBuffer() == null) {
+      return transportResponseSender;
+    }
+
+    return new ResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        log.debug("Res<- {} (replay)", message);
+        sendMessage(message);
+      }
+
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
+        transportResponseSender.sendPingResponse(message);
+      }
+    };
+  }
+
+  @Override
+  public boolean resume(long acknowledged) throws IOException {
+
+    ReplayBuffer replayBuffer = getReplayBuffer();
+
+    if (replayBuffer == null) {
+      return true;
+    }
+
+    synchronized (sendLock) {
+
+      try {
+
+        List<String> messages = replayBuffer.getUnacknowledged(acknowledged);
+
+        if (messages == null) {
+          return false;
+        }
+
+        log.debug("Re-delivering {} messages after {} in session {}", messages.size(),
+            acknowledged, getSessionId());
+
+        for (String json : messages) {
+          sendText(json);
+        }
+
+        return true;
+
+      } finally {
+        resuming = false;
+      }
+    }
+  }
+
   @Override
   public void handleResponse(Response<JsonElement> response) {
     pendingRequests.handleResponse(response);
@@ -163,8 +276,10 @@ public class WebSocketServerSession extends ServerSession {
   }
 
   public void updateWebSocketSession(WebSocketSession wsSession) {
-    synchronized (wsSession) {
+    synchronized (sendLock) {
       this.wsSession = wsSession;
+      // New messages wait until the unacknowledged ones are re-delivered
+      this.resuming = getReplayBuffer() != null;
     }
   }
 
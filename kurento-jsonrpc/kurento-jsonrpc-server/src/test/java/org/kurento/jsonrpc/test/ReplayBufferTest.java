@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.ReplayBuffer;
+
+public class ReplayBufferTest {
+
+  private static void add(ReplayBuffer buffer, String message) {
+    buffer.add(buffer.nextSequenceNumber(), message);
+  }
+
+  @Test
+  public void unacknowledgedMessagesAreReplayedInOrder() {
+
+    ReplayBuffer buffer = new ReplayBuffer(10);
+    add(buffer, "m1");
+    add(buffer, "m2");
+    add(buffer, "m3");
+
+    buffer.acknowledge(1);
+
+    assertEquals(2, buffer.size());
+    assertEquals(Arrays.asList("m2", "m3"), buffer.getUnacknowledged(1));
+    assertEquals(Arrays.asList("m3"), buffer.getUnacknowledged(2));
+    assertEquals(1, buffer.size());
+    assertEquals(3, buffer.getLastSequenceNumber());
+  }
+
+  @Test
+  public void sessionCantBeResumedAfterDiscardingUnacknowledgedMessages() {
+
+    ReplayBuffer buffer = new ReplayBuffer(2);
+    add(buffer, "m1");
+    add(buffer, "m2");
+    add(buffer, "m3");
+
+    assertEquals(2, buffer.size());
+    assertFalse(buffer.canResume(0));
+    assertNull(buffer.getUnacknowledged(0));
+    assertTrue(buffer.canResume(1));
+    assertEquals(Arrays.asList("m2", "m3"), buffer.getUnacknowledged(1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void messagesMustBeAddedInOrder() {
+
+    ReplayBuffer buffer = new ReplayBuffer(2);
+    long first = buffer.nextSequenceNumber();
+    buffer.nextSequenceNumber();
+    buffer.add(first, "m1");
+  }
+}
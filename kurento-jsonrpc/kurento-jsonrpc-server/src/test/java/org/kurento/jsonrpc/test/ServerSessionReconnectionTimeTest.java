@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+
+public class ServerSessionReconnectionTimeTest {
+
+  private static class TestServerSession extends ServerSession {
+
+    TestServerSession() {
+      super("session", null, new SessionsManager(), "transport");
+    }
+
+    @Override
+    public void handleResponse(Response<JsonElement> response) {
+    }
+
+    @Override
+    public void closeNativeSession(String reason) {
+    }
+  }
+
+  @After
+  public void restoreConfig() {
+    System.clearProperty(ServerSession.SESSION_RECONNECTION_TIME_PROP);
+    PropertiesManager.reloadConfig();
+  }
+
+  private long reconnectionTimeout(String value) throws IOException {
+    System.setProperty(ServerSession.SESSION_RECONNECTION_TIME_PROP, value);
+    PropertiesManager.reloadConfig();
+    TestServerSession session = new TestServerSession();
+    try {
+      return session.getReconnectionTimeoutInMillis();
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void subSecondReconnectionTimeIsNotTruncated() throws IOException {
+    assertEquals(500, reconnectionTimeout("500ms"));
+  }
+
+  @Test
+  public void reconnectionTimeWithoutUnitIsInSeconds() throws IOException {
+    assertEquals(3000, reconnectionTimeout("3"));
+  }
+}
@@ -19,8 +19,13 @@ package org.kurento.repository;
 import java.util.Map;
 import java.util.Set;
 
+import org.kurento.repository.service.pojo.RepositoryBandwidthLimits;
+import org.kurento.repository.service.pojo.RepositoryItemIdPage;
+import org.kurento.repository.service.pojo.RepositoryItemMediaIndex;
 import org.kurento.repository.service.pojo.RepositoryItemPlayer;
 import org.kurento.repository.service.pojo.RepositoryItemRecorder;
+import org.kurento.repository.service.pojo.RepositoryItemSeek;
+import org.kurento.repository.service.pojo.RepositoryPlayerBandwidth;
 
 import retrofit.client.Response;
 import retrofit.http.Body;
@@ -29,6 +34,7 @@ import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.PUT;
 import retrofit.http.Path;
+import retrofit.http.Query;
 
 /**
  * Client API for the Kurento repository server application. It uses REST as means of communicating
@@ -92,6 +98,52 @@ public interface RepositoryClient {
   @POST("/repo/item/find/regex")
   Set<String> regexFindItems(@Body Map<String, String> searchValues);
 
+  /**
+   * Lists the identifiers of all the repository items, one page at a time.
+   *
+   * @param continuationToken
+   *          the continuation token of the previous page, or null to obtain the first one
+   * @param limit
+   *          maximum number of identifiers in the page
+   * @return a {@link RepositoryItemIdPage} with the identifiers, ordered, and the token of the
+   *         next page
+   */
+  @GET("/repo/item")
+  RepositoryItemIdPage listItems(@Query("continuationToken") String continuationToken,
+      @Query("limit") int limit);
+
+  /**
+   * Searches for repository items by each pair of attributes and their expected values, one page at
+   * a time.
+   *
+   * @param searchValues
+   *          pairs of attributes and their values
+   * @param continuationToken
+   *          the continuation token of the previous page, or null to obtain the first one
+   * @param limit
+   *          maximum number of identifiers in the page
+   * @return a {@link RepositoryItemIdPage} with the identifiers of the repository items found
+   */
+  @POST("/repo/item/find/page")
+  RepositoryItemIdPage simpleFindItems(@Body Map<String, String> searchValues,
+      @Query("continuationToken") String continuationToken, @Query("limit") int limit);
+
+  /**
+   * Searches for repository items by each pair of attributes whose values can be regex Strings, one
+   * page at a time.
+   *
+   * @param searchValues
+   *          pairs of attributes and their values
+   * @param continuationToken
+   *          the continuation token of the previous page, or null to obtain the first one
+   * @param limit
+   *          maximum number of identifiers in the page
+   * @return a {@link RepositoryItemIdPage} with the identifiers of the repository items found
+   */
+  @POST("/repo/item/find/regex/page")
+  RepositoryItemIdPage regexFindItems(@Body Map<String, String> searchValues,
+      @Query("continuationToken") String continuationToken, @Query("limit") int limit);
+
   /**
    * Returns the metadata from a repository item.
    *
@@ -115,4 +167,76 @@ public interface RepositoryClient {
   Response setRepositoryItemMetadata(@Path("itemId") String itemId,
       @Body Map<String, String> metadata);
 
+  /**
+   * Returns the index of the seek points of a recorded repository item.
+   *
+   * @param itemId
+   *          the id of an existing repository item, already indexed
+   * @return the {@link RepositoryItemMediaIndex} of the item
+   */
+  @GET("/repo/item/{itemId}/index")
+  RepositoryItemMediaIndex getMediaIndex(@Path("itemId") String itemId);
+
+  /**
+   * Indexes the WebM or MP4 content of a repository item, replacing its previous index if any.
+   *
+   * @param itemId
+   *          the id of an existing repository item, with its content stored
+   * @return the new {@link RepositoryItemMediaIndex} of the item
+   */
+  @POST("/repo/item/{itemId}/index")
+  RepositoryItemMediaIndex indexRepositoryItem(@Path("itemId") String itemId);
+
+  /**
+   * Obtains the byte range to request to play an indexed repository item from the given time.
+   *
+   * @param itemId
+   *          the id of an existing repository item, already indexed
+   * @param time
+   *          the time to play from, in milliseconds
+   * @return a {@link RepositoryItemSeek} with the range and the time of the seek point it starts at
+   */
+  @GET("/repo/item/{itemId}/index/seek")
+  RepositoryItemSeek seek(@Path("itemId") String itemId, @Query("time") long time);
+
+  /**
+   * Returns the bandwidth limits of the players of the repository.
+   *
+   * @return the current {@link RepositoryBandwidthLimits}
+   */
+  @GET("/repo/bandwidth")
+  RepositoryBandwidthLimits getBandwidthLimits();
+
+  /**
+   * Changes the bandwidth limits of the players of the repository. The new limits apply to the
+   * content being sent.
+   *
+   * @param limits
+   *          the limits to change, null values are left unchanged
+   * @return the updated {@link RepositoryBandwidthLimits}
+   */
+  @PUT("/repo/bandwidth")
+  RepositoryBandwidthLimits setBandwidthLimits(@Body RepositoryBandwidthLimits limits);
+
+  /**
+   * Returns the bandwidth settings of a player.
+   *
+   * @param url
+   *          the URL of the player
+   * @return the {@link RepositoryPlayerBandwidth} of the player, with its current bandwidth
+   */
+  @GET("/repo/bandwidth/player")
+  RepositoryPlayerBandwidth getPlayerBandwidth(@Query("url") String url);
+
+  /**
+   * Changes the bandwidth limit or the weight of a player. The new settings apply to the content
+   * being sent.
+   *
+   * @param playerBandwidth
+   *          the URL of the player and the settings to change, null values are left unchanged
+   * @return the updated {@link RepositoryPlayerBandwidth} of the player
+   */
+  @PUT("/repo/bandwidth/player")
+  RepositoryPlayerBandwidth setPlayerBandwidth(@Body RepositoryPlayerBandwidth playerBandwidth);
+
 }
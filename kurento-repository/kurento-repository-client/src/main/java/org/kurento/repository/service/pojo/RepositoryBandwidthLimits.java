@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.service.pojo;
+
+/**
+ * <em>POJO</em> representing the bandwidth limits of the repository players, in bytes per second
+ * (-1 means no limit). The global limit is shared among the active players in proportion to their
+ * weights, the session limit applies to each player without a limit of its own and the address
+ * limit to all the requests from the same client address. Null values are left unchanged when the
+ * limits are updated.
+ */
+public class RepositoryBandwidthLimits {
+  private Long maxBandwidth;
+  private Long maxSessionBandwidth;
+  private Long maxAddressBandwidth;
+
+  public Long getMaxBandwidth() {
+    return maxBandwidth;
+  }
+
+  public void setMaxBandwidth(Long maxBandwidth) {
+    this.maxBandwidth = maxBandwidth;
+  }
+
+  public Long getMaxSessionBandwidth() {
+    return maxSessionBandwidth;
+  }
+
+  public void setMaxSessionBandwidth(Long maxSessionBandwidth) {
+    this.maxSessionBandwidth = maxSessionBandwidth;
+  }
+
+  public Long getMaxAddressBandwidth() {
+    return maxAddressBandwidth;
+  }
+
+  public void setMaxAddressBandwidth(Long maxAddressBandwidth) {
+    this.maxAddressBandwidth = maxAddressBandwidth;
+  }
+
+  @Override
+  public String toString() {
+    return "[maxBandwidth=" + maxBandwidth + ", maxSessionBandwidth=" + maxSessionBandwidth
+        + ", maxAddressBandwidth=" + maxAddressBandwidth + "]";
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.service.pojo;
+
+import java.util.Map;
+
+/**
+ * <em>POJO</em> representing an event of the repository, sent to the clients subscribed through the
+ * JSON-RPC events endpoint. All the events have a type, the id of the item and the time in
+ * milliseconds; the events of the HTTP sessions also have the URL and type of the endpoint, and
+ * the events of creation and metadata changes have the metadata of the item.
+ */
+public class RepositoryEvent {
+
+  public static final String ITEM_CREATED = "ItemCreated";
+  public static final String ITEM_METADATA_CHANGED = "ItemMetadataChanged";
+  public static final String ITEM_REMOVED = "ItemRemoved";
+  public static final String SESSION_STARTED = "SessionStarted";
+  public static final String SESSION_TERMINATED = "SessionTerminated";
+  public static final String SESSION_ERROR = "SessionError";
+
+  public static final String PLAYER_ENDPOINT = "player";
+  public static final String RECORDER_ENDPOINT = "recorder";
+
+  private String subscription;
+  private String type;
+  private String itemId;
+  private long timestamp;
+  private String url;
+  private String endpointType;
+  private String description;
+  private Map<String, String> metadata;
+
+  public String getSubscription() {
+    return subscription;
+  }
+
+  public void setSubscription(String subscription) {
+    this.subscription = subscription;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  public String getItemId() {
+    return itemId;
+  }
+
+  public void setItemId(String itemId) {
+    this.itemId = itemId;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public void setTimestamp(long timestamp) {
+    this.timestamp = timestamp;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public String getEndpointType() {
+    return endpointType;
+  }
+
+  public void setEndpointType(String endpointType) {
+    this.endpointType = endpointType;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public void setDescription(String description) {
+    this.description = description;
+  }
+
+  public Map<String, String> getMetadata() {
+    return metadata;
+  }
+
+  public void setMetadata(Map<String, String> metadata) {
+    this.metadata = metadata;
+  }
+
+  @Override
+  public String toString() {
+    return "[type=" + type + ", itemId=" + itemId + ", timestamp=" + timestamp + ", url=" + url
+        + ", endpointType=" + endpointType + ", description=" + description + ", metadata="
+        + metadata + "]";
+  }
+}
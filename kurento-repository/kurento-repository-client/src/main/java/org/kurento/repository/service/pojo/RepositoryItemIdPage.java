@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.service.pojo;
+
+import java.util.List;
+
+/**
+ * <em>POJO</em> representing a page of the identifiers of the repository items found by a query.
+ * The next page is requested with its continuation token, which is null in the last page.
+ */
+public class RepositoryItemIdPage {
+  private List<String> itemIds;
+  private String continuationToken;
+
+  public List<String> getItemIds() {
+    return itemIds;
+  }
+
+  public void setItemIds(List<String> itemIds) {
+    this.itemIds = itemIds;
+  }
+
+  public String getContinuationToken() {
+    return continuationToken;
+  }
+
+  public void setContinuationToken(String continuationToken) {
+    this.continuationToken = continuationToken;
+  }
+
+  @Override
+  public String toString() {
+    return "[itemIds=" + itemIds + ", continuationToken=" + continuationToken + "]";
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.service.pojo;
+
+/**
+ * <em>POJO</em> representing the answer to a seek in a recorded item: the byte range of the content
+ * to request (both ends included) to play it from the requested time, and the time of the seek
+ * point the range starts at, in milliseconds.
+ */
+public class RepositoryItemSeek {
+  private String itemId;
+  private long time;
+  private long pointTime;
+  private long rangeStart;
+  private long rangeEnd;
+
+  public String getItemId() {
+    return itemId;
+  }
+
+  public void setItemId(String itemId) {
+    this.itemId = itemId;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public void setTime(long time) {
+    this.time = time;
+  }
+
+  public long getPointTime() {
+    return pointTime;
+  }
+
+  public void setPointTime(long pointTime) {
+    this.pointTime = pointTime;
+  }
+
+  public long getRangeStart() {
+    return rangeStart;
+  }
+
+  public void setRangeStart(long rangeStart) {
+    this.rangeStart = rangeStart;
+  }
+
+  public long getRangeEnd() {
+    return rangeEnd;
+  }
+
+  public void setRangeEnd(long rangeEnd) {
+    this.rangeEnd = rangeEnd;
+  }
+
+  @Override
+  public String toString() {
+    return "[itemId=" + itemId + ", time=" + time + ", pointTime=" + pointTime + ", range="
+        + rangeStart + "-" + rangeEnd + "]";
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.service.pojo;
+
+/**
+ * <em>POJO</em> representing the bandwidth settings of a player, identified by its URL. The limit
+ * is in bytes per second (-1 means the session limit of the repository is used) and the weight sets
+ * the part of the global bandwidth given to the player. Null values are left unchanged when the
+ * settings are updated. The bandwidth currently assigned to the player is only informative.
+ */
+public class RepositoryPlayerBandwidth {
+  private String url;
+  private Long maxBandwidth;
+  private Integer weight;
+  private Long bandwidth;
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public Long getMaxBandwidth() {
+    return maxBandwidth;
+  }
+
+  public void setMaxBandwidth(Long maxBandwidth) {
+    this.maxBandwidth = maxBandwidth;
+  }
+
+  public Integer getWeight() {
+    return weight;
+  }
+
+  public void setWeight(Integer weight) {
+    this.weight = weight;
+  }
+
+  public Long getBandwidth() {
+    return bandwidth;
+  }
+
+  public void setBandwidth(Long bandwidth) {
+    this.bandwidth = bandwidth;
+  }
+
+  @Override
+  public String toString() {
+    return "[url=" + url + ", maxBandwidth=" + maxBandwidth + ", weight=" + weight
+        + ", bandwidth=" + bandwidth + "]";
+  }
+}
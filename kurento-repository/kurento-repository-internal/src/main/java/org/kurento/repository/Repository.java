@@ -18,6 +18,7 @@
 package org.kurento.repository;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * This interface represents the main interface to interact with a repository of items. In the
@@ -87,6 +88,28 @@ public interface Repository {
    */
   List<RepositoryItem> findRepositoryItemsByAttRegex(String attribute, String regex);
 
+  /**
+   * Returns a page of the repository items with any of the specified values in the attributes of
+   * their metadata, ordered by id. If no attributes are given, all repository items are returned.
+   * Unlike the methods returning lists, the matching items are never loaded at once, so this method
+   * should be used when there can be many of them.
+   *
+   * @param attributes
+   *          attribute names of the metadata and their expected values. Can be null or empty
+   * @param regex
+   *          if true, the values are regular expressions to match the attributes' values, as in
+   *          {@link #findRepositoryItemsByAttRegex(String, String)}
+   * @param continuationToken
+   *          the continuation token of the previous page, or null to request the first one
+   * @param limit
+   *          maximum number of items of the page
+   * @return a page with at most limit items
+   * @throws IllegalArgumentException
+   *           if the continuation token is not valid
+   */
+  RepositoryItemPage findRepositoryItems(Map<String, String> attributes, boolean regex,
+      String continuationToken, int limit);
+
   /**
    * Removes the specified repository item.
    *
@@ -23,6 +23,9 @@ public class RepositoryApiConfiguration {
   private static final String DEFAULT_MONGO_GRIDFS = "fs";
   private static final String DEFAULT_MONGO_DBNAME = "kurento-repository";
   public static final String DEFAULT_FILESYSTEM_LOC = "repository";
+  public static final String DEFAULT_FILESYSTEM_LAYOUT = "flat";
+  public static final String DEFAULT_MONGO_CACHE_FOLDER = "repository-cache";
+  public static final long DEFAULT_MULTIPART_UPLOAD_EXPIRATION = 24 * 60 * 60 * 1000;
 
   public enum RepoType {
     FILESYSTEM("filesystem"), MONGODB("mongodb");
@@ -58,9 +61,21 @@ public class RepositoryApiConfiguration {
   private String webappPublicUrl = "";
   private RepoType repositoryType = RepoType.FILESYSTEM;
   private String fileSystemFolder = DEFAULT_FILESYSTEM_LOC;
+  private String fileSystemLayout = DEFAULT_FILESYSTEM_LAYOUT;
+  private boolean fileSystemDeduplication;
+  private boolean fileSystemQuarantine = true;
+  private boolean fileSystemSync = true;
   private String mongoDatabaseName = DEFAULT_MONGO_DBNAME;
   private String mongoGridFSCollectionName = DEFAULT_MONGO_GRIDFS;
   private String mongoUrlConnection = DEFAULT_MONGO_URL;
+  private String mongoCacheFolder = DEFAULT_MONGO_CACHE_FOLDER;
+  private long mongoCacheMaxSize;
+  private long maxUploadSize = -1;
+  private long maxBandwidth = -1;
+  private long maxSessionBandwidth = -1;
+  private long maxAddressBandwidth = -1;
+  private long multipartUploadExpiration = DEFAULT_MULTIPART_UPLOAD_EXPIRATION;
+  private boolean mediaIndexing;
 
   /**
    * Returns the repository public URL. The default value is "" and can be changed using
@@ -127,6 +142,105 @@ public class RepositoryApiConfiguration {
     this.fileSystemFolder = fileSystemFolder;
   }
 
+  /**
+   * Returns the layout of the files inside the folder of the repository. The default value is
+   * "flat" and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setFileSystemLayout(String)}. This property is only used when
+   * the repository type is "filesystem".
+   *
+   * @return the layout of the repository folder.
+   */
+  public String getFileSystemLayout() {
+    return fileSystemLayout;
+  }
+
+  /**
+   * Sets the layout of the files inside the folder of the repository. With "flat", all items are
+   * stored directly in the folder. With "sharded", they are spread in sub-folders by the hash of
+   * their ids, which keeps directories small when there are many items. A folder created with a
+   * layout has to be migrated before being used with another one. This property is only used when
+   * the repository type is "filesystem".
+   *
+   * @param fileSystemLayout
+   *          "flat" or "sharded"
+   */
+  public void setFileSystemLayout(String fileSystemLayout) {
+    this.fileSystemLayout = fileSystemLayout;
+  }
+
+  /**
+   * Returns whether items with identical content share the same file. The default value is false
+   * and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setFileSystemDeduplication(boolean)}. This property is only
+   * used when the repository type is "filesystem".
+   *
+   * @return true if the content of the items is de-duplicated.
+   */
+  public boolean isFileSystemDeduplication() {
+    return fileSystemDeduplication;
+  }
+
+  /**
+   * Enables the de-duplication of the content of the items. When enabled, the file of a new item is
+   * replaced by a hard link to the file of a previous item with the same SHA-256 digest, so that
+   * identical uploads share storage. The filesystem of the repository folder has to support hard
+   * links. This property is only used when the repository type is "filesystem".
+   *
+   * @param fileSystemDeduplication
+   *          true to de-duplicate the content of the items
+   */
+  public void setFileSystemDeduplication(boolean fileSystemDeduplication) {
+    this.fileSystemDeduplication = fileSystemDeduplication;
+  }
+
+  /**
+   * Returns true if the content of the items left incomplete by a crash is kept aside when the
+   * repository starts. This property is only used when the repository type is "filesystem".
+   *
+   * @return true if incomplete content is quarantined, false if it is deleted.
+   */
+  public boolean isFileSystemQuarantine() {
+    return fileSystemQuarantine;
+  }
+
+  /**
+   * Sets what is done with the content of the items that were being stored when the repository
+   * stopped abruptly. When enabled (the default value), the partial files are moved to the folder
+   * "metadata/quarantine" of the repository, where they can be inspected. Otherwise, they are
+   * deleted. In both cases the items are back in state NEW. This property is only used when the
+   * repository type is "filesystem".
+   *
+   * @param fileSystemQuarantine
+   *          true to quarantine incomplete content, false to delete it
+   */
+  public void setFileSystemQuarantine(boolean fileSystemQuarantine) {
+    this.fileSystemQuarantine = fileSystemQuarantine;
+  }
+
+  /**
+   * Returns true if the content and the metadata of the items are synchronized with the disk when
+   * they are stored. This property is only used when the repository type is "filesystem".
+   *
+   * @return true if the stored items are synchronized with the disk.
+   */
+  public boolean isFileSystemSync() {
+    return fileSystemSync;
+  }
+
+  /**
+   * Enables the synchronization with the disk of the items when they are stored (the default
+   * value), so that they survive a crash of the operating system. Without it, items are still never
+   * left incomplete when the repository process crashes, but the last ones stored may be lost if
+   * the operating system crashes. This property is only used when the repository type is
+   * "filesystem".
+   *
+   * @param fileSystemSync
+   *          true to synchronize the stored items with the disk
+   */
+  public void setFileSystemSync(boolean fileSystemSync) {
+    this.fileSystemSync = fileSystemSync;
+  }
+
   /**
    * Returns the database name used for the repository. The default value is "kurento-repository"
    * and can be changed with a properties file or with the method
@@ -196,4 +310,189 @@ public class RepositoryApiConfiguration {
   public void setMongoUrlConnection(String mongoUrlConnection) {
     this.mongoUrlConnection = mongoUrlConnection;
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns the local folder where the content of GridFS items is cached. The default value is
+   * "repository-cache" and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setMongoCacheFolder(String)}. This property is only used when
+   * the repository type is "mongodb" and the cache is enabled.
+   *
+   * @return the folder of the content cache.
+   */
+  public String getMongoCacheFolder() {
+    return mongoCacheFolder;
+  }
+
+  /**
+   * Sets the local folder where the content of GridFS items is cached. The folder is dedicated to
+   * the cache, and its files are deleted on startup. This property is only used when the repository
+   * type is "mongodb" and the cache is enabled.
+   *
+   * @param mongoCacheFolder
+   *          folder of the content cache
+   */
+  public void setMongoCacheFolder(String mongoCacheFolder) {
+    this.mongoCacheFolder = mongoCacheFolder;
+  }
+
+  /**
+   * Returns the maximum size in bytes of the local cache of GridFS content. The default value is 0,
+   * which disables the cache, and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setMongoCacheMaxSize(long)}. This property is only used when
+   * the repository type is "mongodb".
+   *
+   * @return the maximum size of the content cache.
+   */
+  public long getMongoCacheMaxSize() {
+    return mongoCacheMaxSize;
+  }
+
+  /**
+   * Sets the maximum size in bytes of the local cache of GridFS content. When enabled, stored items
+   * are downloaded once to the cache folder and served from there, evicting the least recently used
+   * ones when the size is exceeded. This property is only used when the repository type is
+   * "mongodb".
+   *
+   * @param mongoCacheMaxSize
+   *          maximum size in bytes, or 0 to disable the cache
+   */
+  public void setMongoCacheMaxSize(long mongoCacheMaxSize) {
+    this.mongoCacheMaxSize = mongoCacheMaxSize;
+  }
+
+  /**
+   * Returns the maximum number of bytes that can be uploaded to a repository item through HTTP. The
+   * default value is -1 (no limit) and can be changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setMaxUploadSize(long)}.
+   *
+   * @return the maximum upload size in bytes, or -1 if there is no limit.
+   */
+  public long getMaxUploadSize() {
+    return maxUploadSize;
+  }
+
+  /**
+   * Sets the maximum number of bytes that can be uploaded to a repository item through HTTP. Larger
+   * uploads are rejected with status 413 (Request Entity Too Large).
+   *
+   * @param maxUploadSize
+   *          maximum upload size in bytes, or -1 for no limit
+   */
+  public void setMaxUploadSize(long maxUploadSize) {
+    this.maxUploadSize = maxUploadSize;
+  }
+
+  /**
+   * Returns the maximum rate, in bytes per second, at which the content of the repository items is
+   * sent to all the HTTP players together. It is shared among the active players in proportion to
+   * their weights. The default value is -1 (no limit) and can be changed with a properties file or
+   * with the method {@link RepositoryApiConfiguration#setMaxBandwidth(long)}.
+   *
+   * @return the maximum global bandwidth in bytes per second, or -1 if there is no limit.
+   */
+  public long getMaxBandwidth() {
+    return maxBandwidth;
+  }
+
+  /**
+   * Sets the maximum rate, in bytes per second, at which the content of the repository items is
+   * sent to all the HTTP players together.
+   *
+   * @param maxBandwidth
+   *          maximum global bandwidth in bytes per second, or -1 for no limit
+   */
+  public void setMaxBandwidth(long maxBandwidth) {
+    this.maxBandwidth = maxBandwidth;
+  }
+
+  /**
+   * Returns the maximum rate, in bytes per second, at which the content is sent to each HTTP player
+   * without a limit of its own. The default value is -1 (no limit) and can be changed with a
+   * properties file or with the method
+   * {@link RepositoryApiConfiguration#setMaxSessionBandwidth(long)}.
+   *
+   * @return the default bandwidth of a player in bytes per second, or -1 if there is no limit.
+   */
+  public long getMaxSessionBandwidth() {
+    return maxSessionBandwidth;
+  }
+
+  /**
+   * Sets the maximum rate, in bytes per second, at which the content is sent to each HTTP player
+   * without a limit of its own.
+   *
+   * @param maxSessionBandwidth
+   *          default bandwidth of a player in bytes per second, or -1 for no limit
+   */
+  public void setMaxSessionBandwidth(long maxSessionBandwidth) {
+    this.maxSessionBandwidth = maxSessionBandwidth;
+  }
+
+  /**
+   * Returns the maximum rate, in bytes per second, at which the content is sent to all the HTTP
+   * requests from the same client address. The default value is -1 (no limit) and can be changed
+   * with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setMaxAddressBandwidth(long)}.
+   *
+   * @return the bandwidth of a client address in bytes per second, or -1 if there is no limit.
+   */
+  public long getMaxAddressBandwidth() {
+    return maxAddressBandwidth;
+  }
+
+  /**
+   * Sets the maximum rate, in bytes per second, at which the content is sent to all the HTTP
+   * requests from the same client address.
+   *
+   * @param maxAddressBandwidth
+   *          bandwidth of a client address in bytes per second, or -1 for no limit
+   */
+  public void setMaxAddressBandwidth(long maxAddressBandwidth) {
+    this.maxAddressBandwidth = maxAddressBandwidth;
+  }
+
+  /**
+   * Returns the time without activity after which a multipart upload is considered abandoned and
+   * its parts are discarded. The default value is 24 hours and can be changed with a properties
+   * file or with the method {@link RepositoryApiConfiguration#setMultipartUploadExpiration(long)}.
+   *
+   * @return the expiration time of the multipart uploads in milliseconds.
+   */
+  public long getMultipartUploadExpiration() {
+    return multipartUploadExpiration;
+  }
+
+  /**
+   * Sets the time without activity after which a multipart upload is considered abandoned and its
+   * parts are discarded.
+   *
+   * @param multipartUploadExpiration
+   *          expiration time of the multipart uploads in milliseconds
+   */
+  public void setMultipartUploadExpiration(long multipartUploadExpiration) {
+    this.multipartUploadExpiration = multipartUploadExpiration;
+  }
+
+  /**
+   * Returns true if the content of each recorder is indexed once the recorder is stopped, storing
+   * the offsets of its seek points in the metadata of the item. Disabled by default, it can be
+   * changed with a properties file or with the method
+   * {@link RepositoryApiConfiguration#setMediaIndexing(boolean)}.
+   *
+   * @return true if the recordings are indexed.
+   */
+  public boolean isMediaIndexing() {
+    return mediaIndexing;
+  }
+
+  /**
+   * Sets whether the WebM and MP4 contents of the recorders are indexed in background once they
+   * are stopped.
+   *
+   * @param mediaIndexing
+   *          true to index the recordings
+   */
+  public void setMediaIndexing(boolean mediaIndexing) {
+    this.mediaIndexing = mediaIndexing;
+  }
+}
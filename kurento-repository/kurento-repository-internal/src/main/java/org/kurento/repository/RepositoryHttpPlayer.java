@@ -19,4 +19,38 @@ package org.kurento.repository;
 
 public interface RepositoryHttpPlayer extends RepositoryHttpEndpoint {
 
+  /**
+   * Limits the rate at which the content is sent through this player, for all its requests
+   * together. It can be changed while the content is being sent.
+   *
+   * @param bytesPerSecond
+   *          maximum bandwidth in bytes per second, or -1 to use the default limit of the players
+   *          of the repository
+   */
+  void setMaxBandwidth(long bytesPerSecond);
+
+  /**
+   * Returns the rate limit of this player.
+   *
+   * @return the maximum bandwidth in bytes per second, or -1 if the default limit of the players
+   *         of the repository is used
+   */
+  long getMaxBandwidth();
+
+  /**
+   * Sets the weight of this player in the share of the global bandwidth of the repository. Each
+   * active player receives a part of the global bandwidth proportional to its weight. The default
+   * weight is 1.
+   *
+   * @param weight
+   *          a positive weight
+   */
+  void setBandwidthWeight(int weight);
+
+  /**
+   * Returns the weight of this player in the share of the global bandwidth of the repository.
+   *
+   * @return the weight of this player
+   */
+  int getBandwidthWeight();
 }
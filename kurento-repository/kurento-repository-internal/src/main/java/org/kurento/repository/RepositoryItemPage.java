@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.repository;
+
+import java.util.List;
+
+/**
+ * A page of repository items, returned by
+ * {@link Repository#findRepositoryItems(java.util.Map, boolean, String, int)}. The next page is
+ * requested with the continuation token of this one.
+ */
+public class RepositoryItemPage {
+
+  private final List<RepositoryItem> items;
+  private final String continuationToken;
+
+  public RepositoryItemPage(List<RepositoryItem> items, String continuationToken) {
+    this.items = items;
+    this.continuationToken = continuationToken;
+  }
+
+  /**
+   * Returns the items of this page, ordered by id.
+   *
+   * @return the items of the page.
+   */
+  public List<RepositoryItem> getItems() {
+    return items;
+  }
+
+  /**
+   * Returns the token used to request the next page. It is opaque for the users of the repository.
+   * The next page can be empty if there were no more items after this one.
+   *
+   * @return the continuation token, or null if this is the last page.
+   */
+  public String getContinuationToken() {
+    return continuationToken;
+  }
+}
@@ -17,10 +17,10 @@
 
 package org.kurento.repository.internal;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.kurento.repository.HttpSessionErrorEvent;
 import org.kurento.repository.HttpSessionStartedEvent;
@@ -52,14 +52,14 @@ public class ListenerManager {
     addListener(listener, HttpSessionErrorEvent.class);
   }
 
-  // TODO Improve concurrency
+  // Listeners are fired without locking, while others may be added from other threads
   protected synchronized <E extends RepositoryHttpSessionEvent> void addListener(
       RepositoryHttpEventListener<E> listener, Class<E> eventType) {
 
     List<RepositoryHttpEventListener> listenersType = listeners.get(eventType);
 
     if (listenersType == null) {
-      listenersType = new ArrayList<>();
+      listenersType = new CopyOnWriteArrayList<>();
       listeners.put(eventType, listenersType);
     }
 
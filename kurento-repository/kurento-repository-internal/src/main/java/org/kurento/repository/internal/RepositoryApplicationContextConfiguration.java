@@ -44,11 +44,25 @@ public class RepositoryApplicationContextConfiguration {
   public static final String KEY_REPO_PORT = "repository.port";
   public static final String KEY_REPO_TYPE = "repository.type";
 
+  public static final String KEY_MAX_UPLOAD_SIZE = "repository.maxUploadSize";
+  public static final String KEY_MULTIPART_UPLOAD_EXPIRATION =
+      "repository.multipartUploadExpiration";
+  public static final String KEY_MEDIA_INDEXING = "repository.mediaIndexing";
+  public static final String KEY_BANDWIDTH_MAX = "repository.bandwidth.max";
+  public static final String KEY_BANDWIDTH_SESSION = "repository.bandwidth.session";
+  public static final String KEY_BANDWIDTH_ADDRESS = "repository.bandwidth.address";
+
   public static final String KEY_FS_FOLDER = "repository.filesystem.folder";
+  public static final String KEY_FS_LAYOUT = "repository.filesystem.layout";
+  public static final String KEY_FS_DEDUPLICATION = "repository.filesystem.deduplication";
+  public static final String KEY_FS_QUARANTINE = "repository.filesystem.quarantine";
+  public static final String KEY_FS_SYNC = "repository.filesystem.sync";
 
   public static final String KEY_MG_DB = "repository.mongodb.dbName";
   public static final String KEY_MG_GRID = "repository.mongodb.gridName";
   public static final String KEY_MG_URL = "repository.mongodb.urlConn";
+  public static final String KEY_MG_CACHE_FOLDER = "repository.mongodb.cache.folder";
+  public static final String KEY_MG_CACHE_MAX_SIZE = "repository.mongodb.cache.maxSize";
 
   static {
     ConfigFileManager.loadConfigFile(KEY_CONFIG_FILENAME);
@@ -96,11 +110,44 @@ public class RepositoryApplicationContextConfiguration {
     config.setRepositoryType(type);
     StringBuilder sb = new StringBuilder(type.getTypeValue());
 
+    long maxUploadSize = getProperty(KEY_MAX_UPLOAD_SIZE, config.getMaxUploadSize());
+    config.setMaxUploadSize(maxUploadSize);
+    sb.append("\n\t").append("maxUploadSize : ").append(maxUploadSize);
+    long multipartUploadExpiration =
+        getProperty(KEY_MULTIPART_UPLOAD_EXPIRATION, config.getMultipartUploadExpiration());
+    config.setMultipartUploadExpiration(multipartUploadExpiration);
+    sb.append("\n\t").append("multipartUploadExpiration : ").append(multipartUploadExpiration);
+    boolean mediaIndexing = getProperty(KEY_MEDIA_INDEXING, config.isMediaIndexing());
+    config.setMediaIndexing(mediaIndexing);
+    sb.append("\n\t").append("mediaIndexing : ").append(mediaIndexing);
+    long maxBandwidth = getProperty(KEY_BANDWIDTH_MAX, config.getMaxBandwidth());
+    config.setMaxBandwidth(maxBandwidth);
+    sb.append("\n\t").append("bandwidth.max : ").append(maxBandwidth);
+    long maxSessionBandwidth = getProperty(KEY_BANDWIDTH_SESSION, config.getMaxSessionBandwidth());
+    config.setMaxSessionBandwidth(maxSessionBandwidth);
+    sb.append("\n\t").append("bandwidth.session : ").append(maxSessionBandwidth);
+    long maxAddressBandwidth = getProperty(KEY_BANDWIDTH_ADDRESS, config.getMaxAddressBandwidth());
+    config.setMaxAddressBandwidth(maxAddressBandwidth);
+    sb.append("\n\t").append("bandwidth.address : ").append(maxAddressBandwidth);
+
     if (type.isFilesystem()) {
 
       String filesFolder = getProperty(KEY_FS_FOLDER, config.getFileSystemFolder());
       config.setFileSystemFolder(filesFolder);
       sb.append("\n\t").append("folder : ").append(filesFolder);
+      String layout = getProperty(KEY_FS_LAYOUT, config.getFileSystemLayout());
+      config.setFileSystemLayout(layout);
+      sb.append("\n\t").append("layout : ").append(layout);
+      boolean deduplication =
+          getProperty(KEY_FS_DEDUPLICATION, config.isFileSystemDeduplication());
+      config.setFileSystemDeduplication(deduplication);
+      sb.append("\n\t").append("deduplication : ").append(deduplication);
+      boolean quarantine = getProperty(KEY_FS_QUARANTINE, config.isFileSystemQuarantine());
+      config.setFileSystemQuarantine(quarantine);
+      sb.append("\n\t").append("quarantine : ").append(quarantine);
+      boolean sync = getProperty(KEY_FS_SYNC, config.isFileSystemSync());
+      config.setFileSystemSync(sync);
+      sb.append("\n\t").append("sync : ").append(sync);
 
     } else if (type.isMongoDB()) {
 
@@ -113,6 +160,12 @@ public class RepositoryApplicationContextConfiguration {
       String url = getProperty(KEY_MG_URL, config.getMongoUrlConnection());
       config.setMongoUrlConnection(url);
       sb.append("\n\t").append("urlConn : ").append(url);
+      String cacheFolder = getProperty(KEY_MG_CACHE_FOLDER, config.getMongoCacheFolder());
+      config.setMongoCacheFolder(cacheFolder);
+      sb.append("\n\t").append("cacheFolder : ").append(cacheFolder);
+      long cacheMaxSize = getProperty(KEY_MG_CACHE_MAX_SIZE, config.getMongoCacheMaxSize());
+      config.setMongoCacheMaxSize(cacheMaxSize);
+      sb.append("\n\t").append("cacheMaxSize : ").append(cacheMaxSize);
     }
 
     log.info("Repository config: {}", sb.toString());
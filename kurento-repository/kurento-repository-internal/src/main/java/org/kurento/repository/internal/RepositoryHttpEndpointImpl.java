@@ -20,8 +20,7 @@ package org.kurento.repository.internal;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Date;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.output.ProxyOutputStream;
 import org.kurento.commons.exception.KurentoException;
@@ -30,6 +29,7 @@ import org.kurento.repository.HttpSessionStartedEvent;
 import org.kurento.repository.HttpSessionTerminatedEvent;
 import org.kurento.repository.RepositoryHttpEndpoint;
 import org.kurento.repository.RepositoryHttpEventListener;
+import org.kurento.repository.RepositoryHttpSessionEvent;
 import org.kurento.repository.RepositoryItem;
 import org.kurento.repository.internal.http.RepositoryHttpManager;
 
@@ -45,16 +45,22 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
 
   private final ListenerManager listeners = new ListenerManager();
 
-  private long disconnectionTimeoutInMillis = 5000;
+  private volatile long disconnectionTimeoutInMillis = 5000;
 
-  @SuppressWarnings("rawtypes")
-  private volatile ScheduledFuture lastStartedTimerFuture;
+  private final AtomicInteger activeRequests = new AtomicInteger();
+
+  private volatile long lastActivityTime = System.currentTimeMillis();
+
+  private volatile boolean terminated;
 
   private boolean startedEventFired;
 
   private long writtenBytes;
   private boolean outputStreamClosed;
 
+  private volatile long maxBandwidth = -1;
+  private volatile int bandwidthWeight = 1;
+
   public RepositoryHttpEndpointImpl(RepositoryItem repositoryItem, String sessionId, String url,
       RepositoryHttpManager httpManager) {
     this.repositoryItem = repositoryItem;
@@ -90,7 +96,7 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
   }
 
   private void fireMediaSessionStartedEvent(HttpSessionStartedEvent event) {
-    listeners.fireEvent(event);
+    fireEvent(event);
   }
 
   @Override
@@ -100,7 +106,7 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
   }
 
   private void fireMediaSessionTerminatedEvent(HttpSessionTerminatedEvent event) {
-    listeners.fireEvent(event);
+    fireEvent(event);
   }
 
   @Override
@@ -108,6 +114,15 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
     listeners.addErrorEventListener(listener);
   }
 
+  /**
+   * Fires an event to the listeners of this endpoint, and then to the listeners of all the
+   * endpoints of the manager.
+   */
+  private void fireEvent(RepositoryHttpSessionEvent event) {
+    listeners.fireEvent(event);
+    httpManager.getListeners().fireEvent(event);
+  }
+
   public synchronized void fireStartedEventIfFirstTime() {
     if (!startedEventFired) {
       fireMediaSessionStartedEvent(new HttpSessionStartedEvent(this));
@@ -162,54 +177,91 @@ public class RepositoryHttpEndpointImpl implements RepositoryHttpEndpoint {
     return writtenBytes;
   }
 
-  // TODO Review for potentially race conditions if the timer is cancelled at
-  // the same time it is executing
-  public void stopInTimeout() {
+  /**
+   * Marks the start of a request. The endpoint is not auto-terminated while serving requests.
+   */
+  public void requestStarted() {
+    lastActivityTime = System.currentTimeMillis();
+    activeRequests.incrementAndGet();
+  }
 
-    lastStartedTimerFuture = httpManager.getScheduler().schedule(new Runnable() {
-      @Override
-      public void run() {
-        stop();
-      }
-    }, new Date(System.currentTimeMillis() + disconnectionTimeoutInMillis));
+  /**
+   * Marks the end of a request. The auto-termination timeout counts from the end of the last
+   * request.
+   */
+  public void requestFinished() {
+    lastActivityTime = System.currentTimeMillis();
+    activeRequests.decrementAndGet();
+    httpManager.trackTimeout(this);
   }
 
-  public void stopCurrentTimer() {
-    if (lastStartedTimerFuture != null) {
-      lastStartedTimerFuture.cancel(false);
+  public long getExpirationTime() {
+    if (activeRequests.get() > 0) {
+      return System.currentTimeMillis() + disconnectionTimeoutInMillis;
     }
+    return lastActivityTime + disconnectionTimeoutInMillis;
+  }
+
+  public boolean isExpired(long now) {
+    return activeRequests.get() == 0 && now >= lastActivityTime + disconnectionTimeoutInMillis;
+  }
+
+  public boolean isTerminated() {
+    return terminated;
   }
 
   public String getSessionId() {
     return sessionId;
   }
 
+  public void setMaxBandwidth(long bytesPerSecond) {
+    this.maxBandwidth = bytesPerSecond;
+    httpManager.getBandwidthManager().updateShares();
+  }
+
+  public long getMaxBandwidth() {
+    return maxBandwidth;
+  }
+
+  public void setBandwidthWeight(int weight) {
+    if (weight <= 0) {
+      throw new IllegalArgumentException("Bandwidth weight must be positive: " + weight);
+    }
+    this.bandwidthWeight = weight;
+    httpManager.getBandwidthManager().updateShares();
+  }
+
+  public int getBandwidthWeight() {
+    return bandwidthWeight;
+  }
+
+  protected RepositoryHttpManager getHttpManager() {
+    return httpManager;
+  }
+
   public void fireSessionErrorEvent(Exception ex) {
-    listeners.fireEvent(new HttpSessionErrorEvent(this, ex));
+    fireEvent(new HttpSessionErrorEvent(this, ex));
   }
 
   public void forceStopHttpManager(String message) {
-    stopTimerAndCloseOS();
-    listeners.fireEvent(new HttpSessionErrorEvent(this, message));
+    terminateAndCloseOS();
+    fireEvent(new HttpSessionErrorEvent(this, message));
   }
 
-  // TODO Review for potentially race conditions if the timer is cancelled at
-  // the same time it is executing
+  // TODO Review for potentially race conditions if a request starts at
+  // the same time the endpoint expires
   // TODO Investigate how to "lock" the item when is been served to a client.
   // If we don't do, we can obtain a closed stream exception
   @Override
   public void stop() {
 
     httpManager.disposeHttpRepoItemElem(sessionId);
-    stopTimerAndCloseOS();
+    terminateAndCloseOS();
     fireSessionTerminatedEvent();
   }
 
-  private void stopTimerAndCloseOS() {
-    if (lastStartedTimerFuture != null) {
-      lastStartedTimerFuture.cancel(false);
-      lastStartedTimerFuture = null;
-    }
+  private void terminateAndCloseOS() {
+    terminated = true;
 
     if (os != null) {
       try {
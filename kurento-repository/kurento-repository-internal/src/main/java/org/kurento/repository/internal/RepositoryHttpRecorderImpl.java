@@ -29,4 +29,10 @@ public class RepositoryHttpRecorderImpl extends RepositoryHttpEndpointImpl
     super(repositoryItem, id, url, httpManager);
   }
 
+  @Override
+  public void stop() {
+    super.stop();
+    getHttpManager().recordingTerminated(this);
+  }
+
 }
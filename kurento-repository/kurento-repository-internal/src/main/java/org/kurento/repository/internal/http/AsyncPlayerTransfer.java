@@ -0,0 +1,238 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * Sends the content of a repository item to a player with non-blocking writes. The container
+ * thread is released as soon as the transfer is started, and the content is written from the
+ * container callbacks while the client can receive it, so slow clients don't hold any thread.
+ *
+ * <p>
+ * The endpoint is kept alive while the transfer is in progress: the request is finished when the
+ * asynchronous processing completes, either because all the content was sent or because of an
+ * error.
+ * </p>
+ *
+ * <p>
+ * When the bandwidth of the transfer is exhausted the writes are paused, without holding any
+ * thread, and they are resumed in a container thread once the bandwidth is available again.
+ * </p>
+ */
+class AsyncPlayerTransfer implements WriteListener, AsyncListener {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncPlayerTransfer.class);
+
+  private final RepositoryHttpEndpointImpl elem;
+  private final AsyncContext asyncContext;
+  private final InputStream input;
+  private final ServletOutputStream output;
+  private final byte[] buffer;
+  private final BandwidthManager.Transfer bandwidth;
+  private final TaskScheduler scheduler;
+
+  private long remaining;
+  // Bytes read into the buffer and not written yet
+  private int pendingBytes;
+  private boolean paused;
+  private volatile boolean completed;
+
+  private AsyncPlayerTransfer(RepositoryHttpEndpointImpl elem, AsyncContext asyncContext,
+      InputStream input, ServletOutputStream output, long length, int bufferSize,
+      BandwidthManager.Transfer bandwidth, TaskScheduler scheduler) {
+    this.elem = elem;
+    this.asyncContext = asyncContext;
+    this.input = input;
+    this.output = output;
+    this.remaining = length;
+    this.buffer = new byte[bufferSize];
+    this.bandwidth = bandwidth;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Starts the asynchronous transfer of a part of the content of the item. The request must have
+   * been started in the endpoint, and it is finished when the transfer completes.
+   *
+   * @param start
+   *          First byte to send
+   * @param length
+   *          Number of bytes to send, or -1 to send until the end of the content
+   * @param bandwidth
+   *          Bandwidth of the transfer, finished when the transfer completes
+   * @param scheduler
+   *          Scheduler used to resume the writes paused by the bandwidth limits
+   */
+  static void start(RepositoryHttpEndpointImpl elem, HttpServletRequest request,
+      HttpServletResponse response, long start, long length, int bufferSize,
+      BandwidthManager.Transfer bandwidth, TaskScheduler scheduler) throws IOException {
+
+    InputStream input = elem.createRepoItemInputStream();
+    try {
+      long skipped = 0;
+      while (skipped < start) {
+        long n = input.skip(start - skipped);
+        if (n <= 0) {
+          throw new IOException("Has been skiped " + skipped + " when " + start + " is required");
+        }
+        skipped += n;
+      }
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+
+    AsyncContext asyncContext = request.startAsync(request, response);
+    // Slow clients are only limited by the auto-termination of the endpoint
+    asyncContext.setTimeout(0);
+
+    AsyncPlayerTransfer transfer = new AsyncPlayerTransfer(elem, asyncContext, input,
+        response.getOutputStream(), length >= 0 ? length : Long.MAX_VALUE, bufferSize, bandwidth,
+        scheduler);
+    asyncContext.addListener(transfer);
+    transfer.output.setWriteListener(transfer);
+  }
+
+  @Override
+  public synchronized void onWritePossible() throws IOException {
+
+    if (paused) {
+      return;
+    }
+
+    while (!completed && output.isReady()) {
+
+      if (pendingBytes > 0) {
+        output.write(buffer, 0, pendingBytes);
+        pendingBytes = 0;
+        continue;
+      }
+
+      int readBytes = -1;
+      if (remaining > 0) {
+        readBytes = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      }
+
+      if (readBytes == -1) {
+        complete();
+      } else {
+        remaining -= readBytes;
+        pendingBytes = readBytes;
+        long delay = bandwidth.reserve(readBytes);
+        if (delay > 0) {
+          pause(delay);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops writing until the given time has passed. The output is still ready, so the container
+   * won't call {@link #onWritePossible()} again: the writes are resumed in a container thread
+   * started by the asynchronous context.
+   */
+  private void pause(long delayNanos) {
+    paused = true;
+    long delayMillis = TimeUnit.NANOSECONDS.toMillis(delayNanos) + 1;
+    scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (completed) {
+          return;
+        }
+        try {
+          asyncContext.start(new Runnable() {
+            @Override
+            public void run() {
+              resume();
+            }
+          });
+        } catch (IllegalStateException e) {
+          // Completed meanwhile
+          log.debug("Transfer of HTTP endpoint {} not resumed", elem.getSessionId(), e);
+        }
+      }
+    }, new Date(System.currentTimeMillis() + delayMillis));
+  }
+
+  private synchronized void resume() {
+    paused = false;
+    try {
+      onWritePossible();
+    } catch (IOException e) {
+      onError(e);
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    log.debug("Error sending content of HTTP endpoint {}", elem.getSessionId(), t);
+    complete();
+  }
+
+  private void complete() {
+    if (!completed) {
+      completed = true;
+      asyncContext.complete();
+    }
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) {
+    try {
+      input.close();
+    } catch (IOException e) {
+      log.debug("Exception closing content of HTTP endpoint {}", elem.getSessionId(), e);
+    }
+    bandwidth.finish();
+    elem.requestFinished();
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) {
+    complete();
+  }
+
+  @Override
+  public void onError(AsyncEvent event) {
+    onError(event.getThrowable());
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {
+    // Nothing to do
+  }
+}
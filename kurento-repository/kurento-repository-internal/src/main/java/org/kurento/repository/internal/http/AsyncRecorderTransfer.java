@@ -0,0 +1,176 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives the content uploaded by a recorder with non-blocking reads. The container thread is
+ * released as soon as the transfer is started, and the content is written to the item from the
+ * container callbacks as it arrives, so slow clients don't hold any thread.
+ *
+ * <p>
+ * The endpoint is kept alive while the transfer is in progress: the request is finished when the
+ * asynchronous processing completes, either because all the content was received or because of an
+ * error.
+ * </p>
+ */
+class AsyncRecorderTransfer implements ReadListener, AsyncListener {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncRecorderTransfer.class);
+
+  private final RepositoryHttpEndpointImpl elem;
+  private final AsyncContext asyncContext;
+  private final ServletInputStream input;
+  private final OutputStream output;
+  private final long maxUploadSize;
+  private final byte[] buffer;
+
+  private long toSkip;
+  private long receivedBytes;
+  private volatile boolean completed;
+
+  private AsyncRecorderTransfer(RepositoryHttpEndpointImpl elem, AsyncContext asyncContext,
+      ServletInputStream input, OutputStream output, long skip, long maxUploadSize,
+      int bufferSize) {
+    this.elem = elem;
+    this.asyncContext = asyncContext;
+    this.input = input;
+    this.output = output;
+    this.toSkip = skip;
+    this.maxUploadSize = maxUploadSize;
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Starts the asynchronous reception of the request body. The request must have been started in
+   * the endpoint, and it is finished when the transfer completes.
+   *
+   * @param skip
+   *          Number of bytes at the beginning of the body that were already written to the item
+   * @param maxUploadSize
+   *          Maximum size of the content of the item, or -1 for no limit
+   */
+  static void start(RepositoryHttpEndpointImpl elem, HttpServletRequest request,
+      HttpServletResponse response, long skip, long maxUploadSize, int bufferSize)
+      throws IOException {
+
+    OutputStream output = elem.getRepoItemOutputStream();
+
+    AsyncContext asyncContext = request.startAsync(request, response);
+    // Slow clients are only limited by the auto-termination of the endpoint
+    asyncContext.setTimeout(0);
+
+    AsyncRecorderTransfer transfer = new AsyncRecorderTransfer(elem, asyncContext,
+        request.getInputStream(), output, skip, maxUploadSize, bufferSize);
+    asyncContext.addListener(transfer);
+    transfer.input.setReadListener(transfer);
+  }
+
+  @Override
+  public void onDataAvailable() throws IOException {
+
+    int readBytes;
+    while (!completed && input.isReady() && (readBytes = input.read(buffer)) != -1) {
+
+      int offset = (int) Math.min(toSkip, readBytes);
+      toSkip -= offset;
+      int length = readBytes - offset;
+
+      if (maxUploadSize >= 0 && elem.getWrittenBytes() + length > maxUploadSize) {
+        log.warn("Upload to HTTP endpoint {} rejected: more than {} bytes", elem.getSessionId(),
+            maxUploadSize);
+        elem.fireSessionErrorEvent(new IOException(
+            "Upload exceeds the maximum size of " + maxUploadSize + " bytes"));
+        ((HttpServletResponse) asyncContext.getResponse())
+            .sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        complete();
+        return;
+      }
+
+      output.write(buffer, offset, length);
+      receivedBytes += length;
+    }
+  }
+
+  @Override
+  public void onAllDataRead() throws IOException {
+    if (!completed) {
+      log.info("Bytes received: {}", receivedBytes);
+      ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_OK);
+      complete();
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (!completed) {
+      log.warn("Exception when uploading content to HTTP endpoint {}", elem.getSessionId(), t);
+      elem.fireSessionErrorEvent(t instanceof Exception ? (Exception) t : new IOException(t));
+      HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+      if (!response.isCommitted()) {
+        try {
+          response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } catch (IOException e) {
+          log.debug("Error response not sent to HTTP endpoint {}", elem.getSessionId(), e);
+        }
+      }
+      complete();
+    }
+  }
+
+  private void complete() {
+    if (!completed) {
+      completed = true;
+      asyncContext.complete();
+    }
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) {
+    elem.requestFinished();
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) {
+    complete();
+  }
+
+  @Override
+  public void onError(AsyncEvent event) {
+    onError(event.getThrowable());
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {
+    // Nothing to do
+  }
+}
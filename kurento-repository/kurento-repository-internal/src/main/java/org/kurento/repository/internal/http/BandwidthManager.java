@@ -0,0 +1,332 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+
+/**
+ * Shapes the bandwidth used to send the content of the repository items to the HTTP clients. Three
+ * limits are applied, all of them in bytes per second and disabled with -1:
+ * <ul>
+ * <li>A global limit, shared among the active sessions (endpoints with content being sent) in
+ * proportion to their weights. The share a session can't use because of its own limit is given to
+ * the rest of the sessions.</li>
+ * <li>A limit per session, either the one of the endpoint or the default one of the manager.</li>
+ * <li>A limit per client address, for all the requests from the same address together.</li>
+ * </ul>
+ *
+ * <p>
+ * Each limit is a token bucket implemented as a virtual scheduling: the bucket keeps the time at
+ * which all the bytes sent so far are paid off, and a transfer that gets ahead of that time by more
+ * than the burst tolerance waits for the difference. The limits can be changed at any moment, and
+ * the new rates are used by the next bytes sent.
+ * </p>
+ */
+public class BandwidthManager {
+
+  /**
+   * Value of the limits that are not applied.
+   */
+  public static final long UNLIMITED = -1;
+
+  /**
+   * Time a transfer can get ahead of its rate, so that it can send a buffer at once after being
+   * idle.
+   */
+  private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private static class TokenBucket {
+
+    private long pendingUntil = System.nanoTime();
+
+    /**
+     * Reserves the given bytes, returning the nanoseconds to wait before sending them.
+     */
+    synchronized long reserve(int bytes, long rate, long now) {
+      pendingUntil = Math.max(pendingUntil, now) + bytes * TimeUnit.SECONDS.toNanos(1) / rate;
+      return Math.max(0, pendingUntil - now - BURST_NANOS);
+    }
+  }
+
+  private static class SessionState {
+
+    private final RepositoryHttpEndpointImpl elem;
+    private final TokenBucket bucket = new TokenBucket();
+    private int transfers;
+    private volatile long share = UNLIMITED;
+
+    SessionState(RepositoryHttpEndpointImpl elem) {
+      this.elem = elem;
+    }
+  }
+
+  private static class AddressState {
+
+    private final TokenBucket bucket = new TokenBucket();
+    private int transfers;
+  }
+
+  /**
+   * Transfer of content to a client, that reserves the bandwidth of each chunk before sending it.
+   * It must be finished when all the content is sent or the transfer fails.
+   */
+  public class Transfer {
+
+    private final SessionState session;
+    private final String address;
+    private final AddressState addressState;
+    private boolean finished;
+
+    private Transfer(SessionState session, String address, AddressState addressState) {
+      this.session = session;
+      this.address = address;
+      this.addressState = addressState;
+    }
+
+    /**
+     * Reserves the bandwidth to send the given bytes.
+     *
+     * @return the nanoseconds to wait before sending them, 0 if they can be sent now
+     */
+    public long reserve(int bytes) {
+
+      long now = System.nanoTime();
+      long delay = 0;
+
+      long sessionRate = getSessionRate(session);
+      if (sessionRate > 0) {
+        delay = session.bucket.reserve(bytes, sessionRate, now);
+      }
+
+      long addressRate = maxAddressBandwidth;
+      if (addressRate > 0) {
+        delay = Math.max(delay, addressState.bucket.reserve(bytes, addressRate, now));
+      }
+
+      return delay;
+    }
+
+    /**
+     * Blocks until the given bytes can be sent.
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+      long delay = reserve(bytes);
+      if (delay > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for bandwidth");
+        }
+      }
+    }
+
+    public void finish() {
+      finishTransfer(this);
+    }
+  }
+
+  private volatile long maxBandwidth = UNLIMITED;
+  private volatile long maxSessionBandwidth = UNLIMITED;
+  private volatile long maxAddressBandwidth = UNLIMITED;
+
+  // Guarded by this
+  private final Map<RepositoryHttpEndpointImpl, SessionState> sessions = new HashMap<>();
+  private final Map<String, AddressState> addresses = new HashMap<>();
+
+  /**
+   * Starts a transfer of the content of an endpoint. The session of the endpoint takes part in the
+   * share of the global bandwidth until all its transfers are finished.
+   *
+   * @param elem
+   *          endpoint whose content is sent
+   * @param address
+   *          address of the client
+   */
+  public synchronized Transfer startTransfer(RepositoryHttpEndpointImpl elem, String address) {
+
+    SessionState session = sessions.get(elem);
+    if (session == null) {
+      session = new SessionState(elem);
+      sessions.put(elem, session);
+    }
+    session.transfers++;
+
+    AddressState addressState = addresses.get(address);
+    if (addressState == null) {
+      addressState = new AddressState();
+      addresses.put(address, addressState);
+    }
+    addressState.transfers++;
+
+    if (session.transfers == 1) {
+      updateShares();
+    }
+
+    return new Transfer(session, address, addressState);
+  }
+
+  private synchronized void finishTransfer(Transfer transfer) {
+
+    if (transfer.finished) {
+      return;
+    }
+    transfer.finished = true;
+
+    if (--transfer.addressState.transfers == 0) {
+      addresses.remove(transfer.address);
+    }
+
+    if (--transfer.session.transfers == 0) {
+      sessions.remove(transfer.session.elem);
+      updateShares();
+    }
+  }
+
+  /**
+   * Returns true if the content of the endpoint is sent with a limited bandwidth, so that it has to
+   * be copied by the servlet instead of being sent by the container.
+   */
+  public boolean isLimited(RepositoryHttpEndpointImpl elem) {
+    return maxBandwidth > 0 || maxAddressBandwidth > 0 || getSessionLimit(elem) > 0;
+  }
+
+  /**
+   * Computes the share of the global bandwidth of each active session. The bandwidth is split in
+   * proportion to the weights, and the part exceeding the limit of a session is split among the
+   * rest of the sessions. It must be called when the limits or the weights change.
+   */
+  public synchronized void updateShares() {
+
+    long remainingBandwidth = maxBandwidth;
+    if (remainingBandwidth <= 0) {
+      return;
+    }
+
+    // Ordered by limit per unit of weight, so that the limited sessions are assigned first
+    List<SessionState> ordered = new ArrayList<>(sessions.values());
+    Collections.sort(ordered, new Comparator<SessionState>() {
+      @Override
+      public int compare(SessionState s1, SessionState s2) {
+        return Double.compare(limitPerWeight(s1), limitPerWeight(s2));
+      }
+    });
+
+    long remainingWeight = 0;
+    for (SessionState session : ordered) {
+      remainingWeight += session.elem.getBandwidthWeight();
+    }
+
+    for (SessionState session : ordered) {
+      int weight = session.elem.getBandwidthWeight();
+      long share = Math.max(1, remainingBandwidth * weight / remainingWeight);
+      long limit = getSessionLimit(session.elem);
+      if (limit > 0 && limit < share) {
+        share = limit;
+      }
+      session.share = share;
+      remainingBandwidth = Math.max(0, remainingBandwidth - share);
+      remainingWeight -= weight;
+    }
+  }
+
+  private double limitPerWeight(SessionState session) {
+    long limit = getSessionLimit(session.elem);
+    return limit > 0 ? (double) limit / session.elem.getBandwidthWeight() : Double.MAX_VALUE;
+  }
+
+  private long getSessionLimit(RepositoryHttpEndpointImpl elem) {
+    long limit = elem.getMaxBandwidth();
+    return limit > 0 ? limit : maxSessionBandwidth;
+  }
+
+  private long getSessionRate(SessionState session) {
+    return maxBandwidth > 0 ? session.share : getSessionLimit(session.elem);
+  }
+
+  /**
+   * Returns the bandwidth currently assigned to an endpoint, in bytes per second.
+   *
+   * @return the bandwidth of the endpoint, or -1 if it is not limited
+   */
+  public synchronized long getSessionBandwidth(RepositoryHttpEndpointImpl elem) {
+    SessionState session = sessions.get(elem);
+    if (session == null) {
+      return maxBandwidth > 0 ? maxBandwidth : getSessionLimit(elem);
+    }
+    long rate = getSessionRate(session);
+    return rate > 0 ? rate : UNLIMITED;
+  }
+
+  public synchronized int getNumActiveSessions() {
+    return sessions.size();
+  }
+
+  public long getMaxBandwidth() {
+    return maxBandwidth;
+  }
+
+  /**
+   * Sets the global bandwidth, shared among the active sessions.
+   *
+   * @param maxBandwidth
+   *          bytes per second, or -1 for no limit
+   */
+  public void setMaxBandwidth(long maxBandwidth) {
+    this.maxBandwidth = maxBandwidth;
+    updateShares();
+  }
+
+  public long getMaxSessionBandwidth() {
+    return maxSessionBandwidth;
+  }
+
+  /**
+   * Sets the bandwidth of each session whose endpoint doesn't have a limit of its own.
+   *
+   * @param maxSessionBandwidth
+   *          bytes per second, or -1 for no limit
+   */
+  public void setMaxSessionBandwidth(long maxSessionBandwidth) {
+    this.maxSessionBandwidth = maxSessionBandwidth;
+    updateShares();
+  }
+
+  public long getMaxAddressBandwidth() {
+    return maxAddressBandwidth;
+  }
+
+  /**
+   * Sets the bandwidth of all the transfers to the same client address.
+   *
+   * @param maxAddressBandwidth
+   *          bytes per second, or -1 for no limit
+   */
+  public void setMaxAddressBandwidth(long maxAddressBandwidth) {
+    this.maxAddressBandwidth = maxAddressBandwidth;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Auto-termination of idle HTTP endpoints with a hashed timing wheel. Endpoints only record the
+ * time of their last activity, so no task is scheduled nor cancelled on each request. The wheel is
+ * advanced periodically by {@link #expire(long)}, which visits the buckets of the elapsed ticks,
+ * stops the endpoints whose timeout has expired and moves the rest to the bucket of their current
+ * deadline.
+ */
+public class HttpSessionTimeoutWheel {
+
+  private static final Logger log = LoggerFactory.getLogger(HttpSessionTimeoutWheel.class);
+
+  public static final long DEFAULT_TICK_MILLIS = 100;
+
+  public static final int DEFAULT_NUM_BUCKETS = 256;
+
+  private final long tickMillis;
+
+  private final List<Set<RepositoryHttpEndpointImpl>> buckets;
+
+  private final Set<RepositoryHttpEndpointImpl> tracked = newConcurrentSet();
+
+  private volatile long lastTick = -1;
+
+  public HttpSessionTimeoutWheel() {
+    this(DEFAULT_TICK_MILLIS, DEFAULT_NUM_BUCKETS);
+  }
+
+  public HttpSessionTimeoutWheel(long tickMillis, int numBuckets) {
+
+    if (tickMillis <= 0 || numBuckets <= 0) {
+      throw new IllegalArgumentException(
+          "Tick and number of buckets must be positive: " + tickMillis + ", " + numBuckets);
+    }
+
+    this.tickMillis = tickMillis;
+    this.buckets = new ArrayList<>(numBuckets);
+    for (int i = 0; i < numBuckets; i++) {
+      buckets.add(newConcurrentSet());
+    }
+  }
+
+  public long getTickMillis() {
+    return tickMillis;
+  }
+
+  /**
+   * Starts tracking the timeout of the endpoint, if not tracked yet. It is tracked until it
+   * expires or it is stopped.
+   */
+  public void track(RepositoryHttpEndpointImpl endpoint) {
+    if (tracked.add(endpoint)) {
+      bucketFor(endpoint.getExpirationTime()).add(endpoint);
+    }
+  }
+
+  public int getNumTracked() {
+    return tracked.size();
+  }
+
+  /**
+   * Stops the endpoints whose timeout expired before the given time.
+   */
+  public synchronized void expire(long now) {
+
+    long currentTick = now / tickMillis;
+
+    long firstTick = lastTick < 0 ? currentTick : lastTick + 1;
+    // A full turn visits all buckets, there is no need to visit them again
+    firstTick = Math.max(firstTick, currentTick - buckets.size() + 1);
+
+    for (long tick = firstTick; tick <= currentTick; tick++) {
+
+      lastTick = tick;
+
+      Set<RepositoryHttpEndpointImpl> bucket = bucket(tick);
+      if (bucket.isEmpty()) {
+        continue;
+      }
+
+      for (RepositoryHttpEndpointImpl endpoint : new ArrayList<>(bucket)) {
+
+        bucket.remove(endpoint);
+
+        if (endpoint.isTerminated()) {
+          tracked.remove(endpoint);
+        } else if (endpoint.isExpired(now)) {
+          tracked.remove(endpoint);
+          stop(endpoint);
+        } else {
+          bucketFor(endpoint.getExpirationTime()).add(endpoint);
+        }
+      }
+    }
+  }
+
+  private void stop(RepositoryHttpEndpointImpl endpoint) {
+    try {
+      log.debug("Auto-terminating HTTP endpoint {} after {} ms without activity",
+          endpoint.getSessionId(), endpoint.getAutoTerminationTimeout());
+      endpoint.stop();
+    } catch (Exception e) {
+      log.warn("Exception stopping HTTP endpoint {}", endpoint.getSessionId(), e);
+    }
+  }
+
+  private Set<RepositoryHttpEndpointImpl> bucketFor(long deadline) {
+    // Deadlines in ticks already visited are handled in the next one
+    return bucket(Math.max(deadline / tickMillis, lastTick + 1));
+  }
+
+  private Set<RepositoryHttpEndpointImpl> bucket(long tick) {
+    return buckets.get((int) (tick % buckets.size()));
+  }
+
+  private static Set<RepositoryHttpEndpointImpl> newConcurrentSet() {
+    return Collections.newSetFromMap(new ConcurrentHashMap<RepositoryHttpEndpointImpl, Boolean>());
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
+import org.kurento.repository.internal.repoimpl.MultipartContentWriter;
+
+/**
+ * Upload of the content of a recorder in numbered parts of a fixed size, that can be sent in
+ * parallel, in any order and retried. Each part is written in place as it is received, and the
+ * content is completed with a manifest listing the parts and their ETags (the SHA-256 digest of
+ * each part), or aborted discarding all of them.
+ *
+ * <p>
+ * The endpoint of the recorder is kept alive while the upload is in progress, so that it can be
+ * resumed after the connection is lost. Uploads abandoned by the clients are aborted by the
+ * {@link MultipartUploadManager} after some time without activity.
+ * </p>
+ */
+public class MultipartUpload {
+
+  private enum UploadState {
+    UPLOADING, COMPLETING, COMPLETED, ABORTED
+  }
+
+  /**
+   * Part received, identified by its number (starting at 1).
+   */
+  public static class Part {
+
+    private final int partNumber;
+    private final long size;
+    private final String etag;
+
+    public Part(int partNumber, long size, String etag) {
+      this.partNumber = partNumber;
+      this.size = size;
+      this.etag = etag;
+    }
+
+    public int getPartNumber() {
+      return partNumber;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public String getETag() {
+      return etag;
+    }
+  }
+
+  private final String uploadId;
+  private final RepositoryHttpEndpointImpl elem;
+  private final MultipartContentWriter writer;
+  private final MultipartUploadManager manager;
+
+  private final Map<Integer, Part> parts = new ConcurrentSkipListMap<>();
+
+  // Guarded by this
+  private final Set<Integer> writingParts = new HashSet<>();
+  private UploadState state = UploadState.UPLOADING;
+
+  private volatile long lastActivityTime = System.currentTimeMillis();
+
+  MultipartUpload(String uploadId, RepositoryHttpEndpointImpl elem, long partSize,
+      MultipartUploadManager manager) {
+
+    this.uploadId = uploadId;
+    this.elem = elem;
+    this.manager = manager;
+    this.writer = ((AbstractRepositoryItem) elem.getRepositoryItem())
+        .createMultipartContentWriter(partSize);
+
+    elem.requestStarted();
+  }
+
+  public String getUploadId() {
+    return uploadId;
+  }
+
+  public RepositoryHttpEndpointImpl getEndpoint() {
+    return elem;
+  }
+
+  public long getPartSize() {
+    return writer.getPartSize();
+  }
+
+  /**
+   * Returns the parts received, ordered by their number.
+   */
+  public List<Part> getParts() {
+    return new ArrayList<>(parts.values());
+  }
+
+  public long getLastActivityTime() {
+    return lastActivityTime;
+  }
+
+  /**
+   * Writes a part, replacing the previous attempts of the same part. Parts larger than the part
+   * size are rejected, and the part is discarded if it can't be received completely.
+   *
+   * @return the ETag of the part
+   * @throws IllegalArgumentException
+   *           if the part number is not valid or the part is too large
+   * @throws IllegalStateException
+   *           if the upload is not in progress or the part is being written by other request
+   */
+  public String writePart(int partNumber, InputStream input) throws IOException {
+
+    if (partNumber < 1) {
+      throw new IllegalArgumentException("Invalid part number " + partNumber);
+    }
+
+    synchronized (this) {
+      checkUploading();
+      if (!writingParts.add(partNumber)) {
+        throw new IllegalStateException("Part " + partNumber + " is already being written");
+      }
+    }
+
+    boolean written = false;
+    try {
+      // Previous attempts are replaced in place, so they are not valid anymore
+      parts.remove(partNumber);
+      lastActivityTime = System.currentTimeMillis();
+
+      MessageDigest partDigest = AbstractRepositoryItem.createContentDigest();
+      InputStream partInput = new BoundedInputStream(input, getPartSize());
+      long size = writer.writePart((partNumber - 1) * getPartSize(),
+          new DigestInputStream(partInput, partDigest));
+      if (input.read() != -1) {
+        throw new IllegalArgumentException(
+            "Part " + partNumber + " is larger than the part size " + getPartSize());
+      }
+
+      String etag = AbstractRepositoryItem.toHex(partDigest.digest());
+      parts.put(partNumber, new Part(partNumber, size, etag));
+      written = true;
+      return etag;
+
+    } finally {
+      synchronized (this) {
+        writingParts.remove(partNumber);
+      }
+      lastActivityTime = System.currentTimeMillis();
+      if (!written) {
+        parts.remove(partNumber);
+      }
+    }
+  }
+
+  /**
+   * Completes the upload with the parts of the manifest, that must be all the parts from the first
+   * one with the ETags they were received with. All of them but the last must have the part size.
+   * Parts received that are not in the manifest are discarded. If the manifest or the digest are
+   * not valid, the upload stays in progress so that the wrong parts can be sent again.
+   *
+   * @param manifest
+   *          numbers and ETags of the parts of the content, in order
+   * @param expectedDigest
+   *          SHA-256 digest of the whole content in hexadecimal, or null if it is not checked
+   * @param maxLength
+   *          maximum length of the content, or -1 if there is no limit
+   * @return the SHA-256 digest of the content in hexadecimal
+   * @throws IllegalArgumentException
+   *           if the manifest doesn't match the parts received or the digest doesn't match
+   * @throws IllegalStateException
+   *           if the upload is not in progress or some part is being written
+   */
+  public String complete(List<Part> manifest, String expectedDigest, long maxLength)
+      throws IOException {
+
+    synchronized (this) {
+      checkUploading();
+      if (!writingParts.isEmpty()) {
+        throw new IllegalStateException("Parts " + writingParts + " are being written");
+      }
+      state = UploadState.COMPLETING;
+    }
+
+    boolean completed = false;
+    try {
+      long length = getContentLength(manifest);
+      if (maxLength >= 0 && length > maxLength) {
+        throw new IllegalArgumentException(
+            "Upload exceeds the maximum size of " + maxLength + " bytes");
+      }
+
+      String digest = writer.complete(length, expectedDigest);
+      completed = true;
+      return digest;
+
+    } finally {
+      synchronized (this) {
+        state = completed ? UploadState.COMPLETED : UploadState.UPLOADING;
+      }
+      lastActivityTime = System.currentTimeMillis();
+      if (completed) {
+        finish();
+      }
+    }
+  }
+
+  private long getContentLength(List<Part> manifest) {
+
+    if (manifest == null || manifest.isEmpty()) {
+      throw new IllegalArgumentException("The manifest has no parts");
+    }
+
+    long length = 0;
+    for (int i = 0; i < manifest.size(); i++) {
+
+      Part listed = manifest.get(i);
+      if (listed.getPartNumber() != i + 1) {
+        throw new IllegalArgumentException("Part " + (i + 1) + " is missing in the manifest");
+      }
+
+      Part received = parts.get(listed.getPartNumber());
+      if (received == null) {
+        throw new IllegalArgumentException("Part " + listed.getPartNumber() + " not received");
+      }
+      if (listed.getETag() == null || !received.getETag().equals(listed.getETag())) {
+        throw new IllegalArgumentException("ETag of part " + listed.getPartNumber()
+            + " doesn't match the received one " + received.getETag());
+      }
+      if (i < manifest.size() - 1 && received.getSize() != getPartSize()) {
+        throw new IllegalArgumentException("Part " + listed.getPartNumber() + " has "
+            + received.getSize() + " bytes instead of the part size " + getPartSize());
+      }
+
+      length += received.getSize();
+    }
+    return length;
+  }
+
+  /**
+   * Discards all the parts of the upload, leaving the item without content.
+   *
+   * @throws IllegalStateException
+   *           if the upload is being completed or it was already completed
+   */
+  public void abort() {
+
+    synchronized (this) {
+      if (state == UploadState.ABORTED) {
+        return;
+      }
+      if (state != UploadState.UPLOADING) {
+        throw new IllegalStateException("Upload " + uploadId + " is " + state);
+      }
+      state = UploadState.ABORTED;
+    }
+
+    parts.clear();
+    writer.abort();
+    finish();
+  }
+
+  synchronized boolean isWritingParts() {
+    return !writingParts.isEmpty();
+  }
+
+  private void checkUploading() {
+    if (state != UploadState.UPLOADING) {
+      throw new IllegalStateException("Upload " + uploadId + " is " + state);
+    }
+  }
+
+  private void finish() {
+    manager.removeUpload(this);
+    elem.requestFinished();
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Requests of the multipart upload protocol, sent to the URL of a recorder with these parameters:
+ * <ul>
+ * <li>{@code POST ?uploads&partSize=N}: starts an upload with parts of N bytes, returning
+ * <code>{"uploadId": id, "partSize": N}</code>.</li>
+ * <li>{@code PUT ?uploadId=id&partNumber=n}: uploads the part n, starting at 1, returning its ETag
+ * (the SHA-256 digest of the part). A part can be uploaded again to replace it.</li>
+ * <li>{@code GET ?uploadId=id}: lists the parts received, to resume an upload.</li>
+ * <li>{@code POST ?uploadId=id}: completes the upload with the manifest
+ * <code>{"parts": [{"partNumber": n, "etag": etag}, ...], "contentSha256": digest}</code>, where
+ * the digest of the whole content is optional, returning
+ * <code>{"contentSha256": digest, "length": length}</code>.</li>
+ * <li>{@code DELETE ?uploadId=id}: aborts the upload, discarding its parts.</li>
+ * </ul>
+ */
+class MultipartUploadHandler {
+
+  private static final Logger log = LoggerFactory.getLogger(MultipartUploadHandler.class);
+
+  static final String UPLOADS_PARAM = "uploads";
+  static final String UPLOAD_ID_PARAM = "uploadId";
+  static final String PART_NUMBER_PARAM = "partNumber";
+  static final String PART_SIZE_PARAM = "partSize";
+
+  private static final int SC_CONFLICT = 409;
+  private static final int SC_REQUEST_ENTITY_TOO_LARGE = 413;
+
+  private static final Gson gson = new Gson();
+
+  private static class UploadInfo {
+    String uploadId;
+    long partSize;
+    List<PartInfo> parts;
+  }
+
+  private static class PartInfo {
+    int partNumber;
+    Long size;
+    String etag;
+  }
+
+  private static class Manifest {
+    List<PartInfo> parts;
+    String contentSha256;
+  }
+
+  private static class CompletedUpload {
+    String contentSha256;
+    long length;
+  }
+
+  private final MultipartUploadManager uploads;
+  private final long maxUploadSize;
+
+  MultipartUploadHandler(MultipartUploadManager uploads, long maxUploadSize) {
+    this.uploads = uploads;
+    this.maxUploadSize = maxUploadSize;
+  }
+
+  /**
+   * Returns true if the request belongs to the multipart upload protocol. The parameters are read
+   * from the query string, so that the body of the request is not consumed.
+   */
+  static boolean isMultipartUploadRequest(HttpServletRequest request) {
+    Map<String, String> params = parseQueryString(request.getQueryString());
+    return params.containsKey(UPLOAD_ID_PARAM)
+        || params.containsKey(UPLOADS_PARAM) && "POST".equals(request.getMethod());
+  }
+
+  void handle(RepositoryHttpEndpointImpl elem, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+
+    Map<String, String> params = parseQueryString(request.getQueryString());
+    String method = request.getMethod();
+
+    try {
+
+      if (!params.containsKey(UPLOAD_ID_PARAM)) {
+        startUpload(elem, params, response);
+        return;
+      }
+
+      MultipartUpload upload = uploads.getUpload(params.get(UPLOAD_ID_PARAM));
+      if (upload == null || upload.getEndpoint() != elem) {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND,
+            "Upload " + params.get(UPLOAD_ID_PARAM) + " not found");
+        return;
+      }
+
+      switch (method) {
+        case "PUT":
+          writePart(upload, params, request, response);
+          break;
+        case "POST":
+          complete(upload, request, response);
+          break;
+        case "GET":
+          writeJson(response, createUploadInfo(upload));
+          break;
+        case "DELETE":
+          upload.abort();
+          response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+          break;
+        default:
+          response.setHeader("Allow", "GET, POST, PUT, DELETE");
+          response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+      }
+
+    } catch (IllegalArgumentException | JsonParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+    } catch (IllegalStateException e) {
+      response.sendError(SC_CONFLICT, e.getMessage());
+    }
+  }
+
+  private void startUpload(RepositoryHttpEndpointImpl elem, Map<String, String> params,
+      HttpServletResponse response) throws IOException {
+
+    String partSize = params.get(PART_SIZE_PARAM);
+    if (partSize == null) {
+      throw new IllegalArgumentException("Parameter " + PART_SIZE_PARAM + " is required");
+    }
+
+    MultipartUpload upload = uploads.startUpload(elem, Long.parseLong(partSize));
+    elem.fireStartedEventIfFirstTime();
+
+    UploadInfo info = new UploadInfo();
+    info.uploadId = upload.getUploadId();
+    info.partSize = upload.getPartSize();
+    writeJson(response, info);
+  }
+
+  private void writePart(MultipartUpload upload, Map<String, String> params,
+      HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+    String partNumberParam = params.get(PART_NUMBER_PARAM);
+    if (partNumberParam == null) {
+      throw new IllegalArgumentException("Parameter " + PART_NUMBER_PARAM + " is required");
+    }
+    int partNumber = Integer.parseInt(partNumberParam);
+
+    // Rejected before reading the body
+    long contentLength = request.getContentLengthLong();
+    if (contentLength > upload.getPartSize()) {
+      response.sendError(SC_REQUEST_ENTITY_TOO_LARGE,
+          "Parts can't be larger than " + upload.getPartSize() + " bytes");
+      return;
+    }
+    long partEnd = (partNumber - 1) * upload.getPartSize() + Math.max(contentLength, 0);
+    if (maxUploadSize >= 0 && partEnd > maxUploadSize) {
+      response.sendError(SC_REQUEST_ENTITY_TOO_LARGE,
+          "Upload exceeds the maximum size of " + maxUploadSize + " bytes");
+      return;
+    }
+
+    String etag = upload.writePart(partNumber, request.getInputStream());
+    log.debug("Part {} of multipart upload {} received", partNumber, upload.getUploadId());
+
+    response.setHeader("ETag", "\"" + etag + "\"");
+    response.setStatus(HttpServletResponse.SC_OK);
+  }
+
+  private void complete(MultipartUpload upload, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+
+    Manifest manifest = gson.fromJson(
+        new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8), Manifest.class);
+    if (manifest == null || manifest.parts == null) {
+      throw new IllegalArgumentException("The manifest has no parts");
+    }
+
+    List<MultipartUpload.Part> parts = new ArrayList<>();
+    for (PartInfo part : manifest.parts) {
+      parts.add(new MultipartUpload.Part(part.partNumber, -1, unquote(part.etag)));
+    }
+
+    CompletedUpload completed = new CompletedUpload();
+    completed.contentSha256 = upload.complete(parts, manifest.contentSha256, maxUploadSize);
+    completed.length = upload.getEndpoint().getRepositoryItem().getAttributes().getContentLength();
+    log.info("Multipart upload {} completed with {} parts ({} bytes)", upload.getUploadId(),
+        parts.size(), completed.length);
+
+    response.setHeader("ETag", "\"" + completed.contentSha256 + "\"");
+    writeJson(response, completed);
+  }
+
+  private static UploadInfo createUploadInfo(MultipartUpload upload) {
+    UploadInfo info = new UploadInfo();
+    info.uploadId = upload.getUploadId();
+    info.partSize = upload.getPartSize();
+    info.parts = new ArrayList<>();
+    for (MultipartUpload.Part part : upload.getParts()) {
+      PartInfo partInfo = new PartInfo();
+      partInfo.partNumber = part.getPartNumber();
+      partInfo.size = part.getSize();
+      partInfo.etag = "\"" + part.getETag() + "\"";
+      info.parts.add(partInfo);
+    }
+    return info;
+  }
+
+  private static void writeJson(HttpServletResponse response, Object value) throws IOException {
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    gson.toJson(value, response.getWriter());
+    response.getWriter().flush();
+  }
+
+  private static String unquote(String etag) {
+    if (etag != null && etag.length() >= 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+      return etag.substring(1, etag.length() - 1);
+    }
+    return etag;
+  }
+
+  private static Map<String, String> parseQueryString(String queryString) {
+
+    Map<String, String> params = new HashMap<>();
+    if (queryString == null) {
+      return params;
+    }
+
+    try {
+      for (String param : queryString.split("&")) {
+        int equals = param.indexOf('=');
+        String name = equals >= 0 ? param.substring(0, equals) : param;
+        String value = equals >= 0 ? param.substring(equals + 1) : "";
+        params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+      }
+    } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+      log.debug("Invalid query string {}", queryString, e);
+    }
+    return params;
+  }
+}
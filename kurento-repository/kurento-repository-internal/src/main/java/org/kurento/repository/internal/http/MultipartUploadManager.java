@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.commons.SecretGenerator;
+import org.kurento.repository.RepositoryApiConfiguration;
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multipart uploads in progress, by upload id. Uploads abandoned by the clients are aborted when
+ * {@link #expireUploads(long)} is called, either because they have no activity during the
+ * expiration time or because their recorder was stopped.
+ */
+public class MultipartUploadManager {
+
+  private static final Logger log = LoggerFactory.getLogger(MultipartUploadManager.class);
+
+  private final ConcurrentMap<String, MultipartUpload> uploads = new ConcurrentHashMap<>();
+
+  private final SecretGenerator generator = new SecretGenerator();
+
+  private volatile long expirationMillis =
+      RepositoryApiConfiguration.DEFAULT_MULTIPART_UPLOAD_EXPIRATION;
+
+  /**
+   * Starts a multipart upload of the content of the item of a recorder.
+   *
+   * @param elem
+   *          the recorder
+   * @param partSize
+   *          size of all the parts but the last one, in bytes
+   * @throws IllegalArgumentException
+   *           if the part size is not supported by the repository
+   * @throws IllegalStateException
+   *           if the content of the item is already being written or it is stored
+   */
+  public MultipartUpload startUpload(RepositoryHttpEndpointImpl elem, long partSize) {
+    MultipartUpload upload = new MultipartUpload(generator.nextSecret(), elem, partSize, this);
+    uploads.put(upload.getUploadId(), upload);
+    log.debug("Multipart upload {} started for item {} with parts of {} bytes",
+        upload.getUploadId(), elem.getRepositoryItem().getId(), partSize);
+    return upload;
+  }
+
+  /**
+   * Returns the upload in progress with the given id, or null if there is none.
+   */
+  public MultipartUpload getUpload(String uploadId) {
+    return uploadId == null ? null : uploads.get(uploadId);
+  }
+
+  void removeUpload(MultipartUpload upload) {
+    uploads.remove(upload.getUploadId(), upload);
+  }
+
+  /**
+   * Aborts the uploads whose recorder was stopped and the ones without activity during the
+   * expiration time, unless they are receiving parts.
+   *
+   * @return the number of uploads aborted
+   */
+  public int expireUploads(long now) {
+
+    int expired = 0;
+    for (MultipartUpload upload : uploads.values()) {
+
+      boolean abandoned = upload.getEndpoint().isTerminated()
+          || now - upload.getLastActivityTime() > expirationMillis && !upload.isWritingParts();
+      if (!abandoned) {
+        continue;
+      }
+
+      try {
+        upload.abort();
+        expired++;
+        log.info("Multipart upload {} of item {} aborted after being abandoned",
+            upload.getUploadId(), upload.getEndpoint().getRepositoryItem().getId());
+      } catch (IllegalStateException e) {
+        // Being completed
+        log.debug("Multipart upload {} not expired", upload.getUploadId(), e);
+      }
+    }
+    return expired;
+  }
+
+  public int getNumUploads() {
+    return uploads.size();
+  }
+
+  public long getExpirationTime() {
+    return expirationMillis;
+  }
+
+  /**
+   * Sets the time without activity after which an upload is aborted.
+   */
+  public void setExpirationTime(long expirationMillis) {
+    this.expirationMillis = expirationMillis;
+  }
+}
@@ -17,20 +17,28 @@
 
 package org.kurento.repository.internal.http;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import javax.annotation.PostConstruct;
+
 import org.kurento.commons.SecretGenerator;
 import org.kurento.repository.RepositoryApiConfiguration;
 import org.kurento.repository.RepositoryHttpEndpoint;
 import org.kurento.repository.RepositoryHttpPlayer;
 import org.kurento.repository.RepositoryHttpRecorder;
 import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.internal.ListenerManager;
 import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
 import org.kurento.repository.internal.RepositoryHttpPlayerImpl;
 import org.kurento.repository.internal.RepositoryHttpRecorderImpl;
+import org.kurento.repository.internal.index.MediaIndexer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.TaskScheduler;
@@ -39,6 +47,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class RepositoryHttpManager {
 
+  private static final long MULTIPART_UPLOADS_EXPIRATION_PERIOD = 60000;
+
   @Autowired
   private RepositoryApiConfiguration config;
 
@@ -49,12 +59,57 @@ public class RepositoryHttpManager {
   private final ConcurrentMap<String, RepositoryHttpEndpointImpl> sessions =
       new ConcurrentHashMap<>();
 
+  // Index of sessions by item id, guarded by itself. Updated at the same time than sessions
+  private final Map<String, Set<RepositoryHttpEndpointImpl>> sessionsByItemId = new HashMap<>();
+
+  private final HttpSessionTimeoutWheel timeoutWheel = new HttpSessionTimeoutWheel();
+
   private final SecretGenerator generator = new SecretGenerator();
 
+  private final BandwidthManager bandwidthManager = new BandwidthManager();
+
+  private final MultipartUploadManager multipartUploads = new MultipartUploadManager();
+
+  private final MediaIndexer mediaIndexer = new MediaIndexer();
+
+  // Listeners of the session events of all the endpoints
+  private final ListenerManager listeners = new ListenerManager();
+
   @Autowired
   @Qualifier("repositoryTaskScheduler")
   private TaskScheduler scheduler;
 
+  public RepositoryHttpManager() {
+  }
+
+  public RepositoryHttpManager(TaskScheduler scheduler) {
+    this.scheduler = scheduler;
+    postConstruct();
+  }
+
+  @PostConstruct
+  private void postConstruct() {
+    if (config != null) {
+      bandwidthManager.setMaxBandwidth(config.getMaxBandwidth());
+      bandwidthManager.setMaxSessionBandwidth(config.getMaxSessionBandwidth());
+      bandwidthManager.setMaxAddressBandwidth(config.getMaxAddressBandwidth());
+      multipartUploads.setExpirationTime(config.getMultipartUploadExpiration());
+      mediaIndexer.setEnabled(config.isMediaIndexing());
+    }
+    scheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        timeoutWheel.expire(System.currentTimeMillis());
+      }
+    }, timeoutWheel.getTickMillis());
+    scheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        multipartUploads.expireUploads(System.currentTimeMillis());
+      }
+    }, MULTIPART_UPLOADS_EXPIRATION_PERIOD);
+  }
+
   public RepositoryHttpPlayer createRepositoryHttpPlayer(RepositoryItem repositoryItem) {
     return (RepositoryHttpPlayer) createRepositoryHttpElem(repositoryItem,
         RepositoryHttpPlayer.class, null);
@@ -94,7 +149,20 @@ public class RepositoryHttpManager {
       elem = new RepositoryHttpRecorderImpl(repositoryItem, sessionIdInUrl, url, this);
     }
 
-    sessions.put(sessionIdInUrl, elem);
+    synchronized (sessionsByItemId) {
+      RepositoryHttpEndpointImpl oldElem = sessions.put(sessionIdInUrl, elem);
+      if (oldElem != null) {
+        removeFromItemIndex(oldElem);
+      }
+
+      String itemId = repositoryItem.getId();
+      Set<RepositoryHttpEndpointImpl> itemSessions = sessionsByItemId.get(itemId);
+      if (itemSessions == null) {
+        itemSessions = new HashSet<>();
+        sessionsByItemId.put(itemId, itemSessions);
+      }
+      itemSessions.add(elem);
+    }
 
     return elem;
   }
@@ -119,29 +187,83 @@ public class RepositoryHttpManager {
     return scheduler;
   }
 
+  public BandwidthManager getBandwidthManager() {
+    return bandwidthManager;
+  }
+
+  public MultipartUploadManager getMultipartUploads() {
+    return multipartUploads;
+  }
+
+  /**
+   * Returns the listeners of the session events of all the endpoints of the manager, fired after
+   * the listeners of each endpoint.
+   */
+  public ListenerManager getListeners() {
+    return listeners;
+  }
+
+  public MediaIndexer getMediaIndexer() {
+    return mediaIndexer;
+  }
+
+  /**
+   * Indexes in background the content written by a recorder that has been stopped, if the indexing
+   * of the recordings is enabled.
+   */
+  public void recordingTerminated(RepositoryHttpRecorderImpl recorder) {
+    mediaIndexer.recordingTerminated(recorder.getRepositoryItem(), scheduler);
+  }
+
+  /**
+   * Starts counting the auto-termination timeout of the endpoint, if not counting yet.
+   */
+  public void trackTimeout(RepositoryHttpEndpointImpl elem) {
+    timeoutWheel.track(elem);
+  }
+
   public void disposeHttpRepoItemElem(String sessionId) {
-    sessions.remove(sessionId);
+    synchronized (sessionsByItemId) {
+      RepositoryHttpEndpointImpl elem = sessions.remove(sessionId);
+      if (elem != null) {
+        removeFromItemIndex(elem);
+      }
+    }
   }
 
   public void disposeHttpRepoItemElemByItemId(RepositoryItem item, String message) {
 
-    // We don't use another map indexed by RepositoryItemIds for several
-    // reasons:
-    // * Memory consumption
-    // * More complex code (development time, difficult to maintain and
-    // test)
-    // * It is very unlike this operation is called in a reasonable use case
-
-    Iterator<Entry<String, RepositoryHttpEndpointImpl>> it = sessions.entrySet().iterator();
-
-    while (it.hasNext()) {
-      Entry<String, RepositoryHttpEndpointImpl> entry = it.next();
-      RepositoryHttpEndpointImpl elem = entry.getValue();
-      if (elem.getRepositoryItem().getId().equals(item.getId())) {
-        elem.forceStopHttpManager(message);
-        it.remove();
+    List<RepositoryHttpEndpointImpl> elems;
+
+    synchronized (sessionsByItemId) {
+      Set<RepositoryHttpEndpointImpl> itemSessions = sessionsByItemId.remove(item.getId());
+      if (itemSessions == null) {
+        return;
+      }
+      elems = new ArrayList<>(itemSessions);
+      for (RepositoryHttpEndpointImpl elem : elems) {
+        sessions.remove(elem.getSessionId(), elem);
       }
     }
+
+    for (RepositoryHttpEndpointImpl elem : elems) {
+      elem.forceStopHttpManager(message);
+    }
+  }
+
+  private void removeFromItemIndex(RepositoryHttpEndpointImpl elem) {
+    String itemId = elem.getRepositoryItem().getId();
+    Set<RepositoryHttpEndpointImpl> itemSessions = sessionsByItemId.get(itemId);
+    if (itemSessions != null) {
+      itemSessions.remove(elem);
+      if (itemSessions.isEmpty()) {
+        sessionsByItemId.remove(itemId);
+      }
+    }
+  }
+
+  public int getNumSessions() {
+    return sessions.size();
   }
 
   public void setWebappPublicUrl(String webappUrl) {
@@ -23,6 +23,7 @@ import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static javax.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
 import static javax.servlet.http.HttpServletResponse.SC_PRECONDITION_FAILED;
+import static javax.servlet.http.HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
 import static javax.servlet.http.HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
 
 import java.io.BufferedInputStream;
@@ -51,17 +52,17 @@ import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.fileupload.util.Streams;
-import org.apache.commons.io.IOUtils;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.repository.RepositoryApiConfiguration;
 import org.kurento.repository.RepositoryItem;
 import org.kurento.repository.RepositoryItemAttributes;
 import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-@WebServlet(value = "/repository_servlet/*", loadOnStartup = 1)
+@WebServlet(value = "/repository_servlet/*", loadOnStartup = 1, asyncSupported = true)
 public class RepositoryHttpServlet extends HttpServlet {
 
   protected static class Range {
@@ -106,6 +107,18 @@ public class RepositoryHttpServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Thrown when an upload exceeds the maximum size configured for the repository.
+   */
+  private static class UploadSizeExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UploadSizeExceededException(long maxUploadSize) {
+      super("Upload exceeds the maximum size of " + maxUploadSize + " bytes");
+    }
+  }
+
   private static Logger log = LoggerFactory.getLogger(RepositoryHttpServlet.class);
 
   private static final long serialVersionUID = 1L;
@@ -125,6 +138,11 @@ public class RepositoryHttpServlet extends HttpServlet {
    */
   protected static final int FILE_BUFFER_SIZE = 4096;
 
+  /**
+   * The buffer size to use when receiving uploaded content.
+   */
+  private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+
   /**
    * The input buffer size to use when serving resources.
    */
@@ -135,6 +153,21 @@ public class RepositoryHttpServlet extends HttpServlet {
    */
   private static final int OUTPUT_BUFFER_SIZE = 2048;
 
+  /**
+   * The buffer size of each asynchronous transfer. It is kept small, as there can be thousands of
+   * concurrent transfers with slow clients.
+   */
+  private static final int ASYNC_BUFFER_SIZE = 16 * 1024;
+
+  /**
+   * Request attributes of the sendfile support of Tomcat, used to serve local files without
+   * copying them through the servlet.
+   */
+  private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
   /**
    * The debugging detail level for this servlet.
    */
@@ -149,6 +182,8 @@ public class RepositoryHttpServlet extends HttpServlet {
   @Autowired
   private RepositoryApiConfiguration config;
 
+  private transient MultipartUploadHandler multipartUploadHandler;
+
   /**
    * Finalize this servlet.
    */
@@ -168,6 +203,9 @@ public class RepositoryHttpServlet extends HttpServlet {
     configureServletMapping(servletConfig);
     configureWebappPublicUrl(servletConfig);
 
+    multipartUploadHandler = new MultipartUploadHandler(repoHttpManager.getMultipartUploads(),
+        config.getMaxUploadSize());
+
     if (servletConfig.getInitParameter("debug") != null) {
       debug = Integer.parseInt(getServletConfig().getInitParameter("debug"));
     }
@@ -211,10 +249,39 @@ public class RepositoryHttpServlet extends HttpServlet {
   protected void service(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
     logRequest(req);
-    super.service(req, resp);
+    if (MultipartUploadHandler.isMultipartUploadRequest(req)) {
+      handleMultipartUpload(req, resp);
+    } else {
+      super.service(req, resp);
+    }
     logResponse(resp);
   }
 
+  /**
+   * Process a request of the multipart upload protocol, where the parts of the content of a
+   * recorder are uploaded in parallel and assembled when the upload is completed.
+   *
+   * @param req
+   *          The servlet request we are processing
+   * @param resp
+   *          The servlet response we are creating
+   *
+   * @exception IOException
+   *              if an input/output error occurs
+   */
+  protected void handleMultipartUpload(HttpServletRequest req, HttpServletResponse resp)
+      throws IOException {
+
+    RepositoryHttpEndpointImpl elem = repoHttpManager.getHttpRepoItemElem(extractSessionId(req));
+
+    if (elem == null) {
+      resp.sendError(SC_NOT_FOUND, req.getRequestURI());
+      return;
+    }
+
+    multipartUploadHandler.handle(elem, req, resp);
+  }
+
   /**
    * Override default implementation to ensure that TRACE is correctly handled.
    *
@@ -331,15 +398,34 @@ public class RepositoryHttpServlet extends HttpServlet {
       return;
     }
 
-    elem.stopCurrentTimer();
+    Range range = parseContentRange(req, resp);
+
+    if (exceedsMaxUploadSize(range != null ? range.end + 1 : getRequestContentLength(req))) {
+      // Rejected before reading the body
+      resp.sendError(SC_REQUEST_ENTITY_TOO_LARGE);
+      return;
+    }
+
     elem.fireStartedEventIfFirstTime();
+    elem.requestStarted();
+
+    if (req.isAsyncSupported() && isAsyncUpload(req, range, elem)) {
+      // Bytes of an overlapping range that were already written are skipped
+      long skip = range != null ? elem.getWrittenBytes() - range.start : 0;
+      try {
+        AsyncRecorderTransfer.start(elem, req, resp, skip, config.getMaxUploadSize(),
+            ASYNC_BUFFER_SIZE);
+      } catch (IOException | RuntimeException e) {
+        elem.requestFinished();
+        throw e;
+      }
+      return;
+    }
 
     try (InputStream requestInputStream = req.getInputStream()) {
 
       OutputStream repoItemOutputStream = elem.getRepoItemOutputStream();
 
-      Range range = parseContentRange(req, resp);
-
       if (range != null) {
 
         if (range.start > elem.getWrittenBytes()) {
@@ -367,7 +453,7 @@ public class RepositoryHttpServlet extends HttpServlet {
 
         } else if (range.start == elem.getWrittenBytes()) {
 
-          IOUtils.copy(requestInputStream, repoItemOutputStream);
+          copyUpload(requestInputStream, repoItemOutputStream, elem);
 
           resp.setStatus(SC_OK);
         }
@@ -378,17 +464,19 @@ public class RepositoryHttpServlet extends HttpServlet {
 
         if (isMultipart) {
 
-          uploadMultipart(req, resp, repoItemOutputStream);
+          uploadMultipart(req, resp, repoItemOutputStream, elem);
 
         } else {
 
           try {
 
             log.info("Start to receive bytes (estimated " + req.getContentLength() + " bytes)");
-            int bytes = IOUtils.copy(requestInputStream, repoItemOutputStream);
+            long bytes = copyUpload(requestInputStream, repoItemOutputStream, elem);
             resp.setStatus(SC_OK);
             log.info("Bytes received: " + bytes);
 
+          } catch (UploadSizeExceededException e) {
+            throw e;
           } catch (Exception e) {
 
             log.warn("Exception when uploading content", e);
@@ -399,13 +487,73 @@ public class RepositoryHttpServlet extends HttpServlet {
         }
       }
 
+    } catch (UploadSizeExceededException e) {
+
+      log.warn("Upload to HTTP endpoint {} rejected: {}", sessionId, e.getMessage());
+
+      elem.fireSessionErrorEvent(e);
+      resp.sendError(SC_REQUEST_ENTITY_TOO_LARGE);
+
     } finally {
-      elem.stopInTimeout();
+      elem.requestFinished();
+    }
+  }
+
+  /**
+   * Uploads that copy the request body to the item are received with non-blocking reads. Multipart
+   * uploads are parsed with blocking reads.
+   */
+  private boolean isAsyncUpload(HttpServletRequest req, Range range,
+      RepositoryHttpEndpointImpl elem) {
+    if (range != null) {
+      return range.start <= elem.getWrittenBytes() && range.end > elem.getWrittenBytes();
+    }
+    return !ServletFileUpload.isMultipartContent(req);
+  }
+
+  private boolean exceedsMaxUploadSize(long size) {
+    long maxUploadSize = config.getMaxUploadSize();
+    return maxUploadSize >= 0 && size > maxUploadSize;
+  }
+
+  private static long getRequestContentLength(HttpServletRequest req) {
+    // getContentLength() is an int and can't represent uploads larger than 2 GB
+    String contentLength = req.getHeader("Content-Length");
+    if (contentLength != null) {
+      try {
+        return Long.parseLong(contentLength.trim());
+      } catch (NumberFormatException e) {
+        log.debug("Invalid Content-Length header: {}", contentLength);
+      }
     }
+    return -1;
+  }
+
+  /**
+   * Copies the uploaded content to the repository item in large chunks, without buffering it in
+   * memory nor in temporary files. The copy is aborted as soon as the content written to the item
+   * exceeds the maximum upload size.
+   */
+  private long copyUpload(InputStream istream, OutputStream ostream,
+      RepositoryHttpEndpointImpl elem) throws IOException {
+
+    long maxUploadSize = config.getMaxUploadSize();
+
+    byte[] buffer = new byte[UPLOAD_BUFFER_SIZE];
+    long count = 0;
+    int readBytes;
+    while ((readBytes = istream.read(buffer)) != -1) {
+      if (maxUploadSize >= 0 && elem.getWrittenBytes() + readBytes > maxUploadSize) {
+        throw new UploadSizeExceededException(maxUploadSize);
+      }
+      ostream.write(buffer, 0, readBytes);
+      count += readBytes;
+    }
+    return count;
   }
 
   private void uploadMultipart(HttpServletRequest req, HttpServletResponse resp,
-      OutputStream repoItemOutputStrem) throws IOException {
+      OutputStream repoItemOutputStrem, RepositoryHttpEndpointImpl elem) throws IOException {
 
     log.info("Multipart detected");
 
@@ -429,9 +577,9 @@ public class RepositoryHttpServlet extends HttpServlet {
 
             log.info("Start to receive bytes (estimated bytes)",
                 Integer.toString(req.getContentLength()));
-            int bytes = IOUtils.copy(stream, repoItemOutputStrem);
+            long bytes = copyUpload(stream, repoItemOutputStrem, elem);
             resp.setStatus(SC_OK);
-            log.info("Bytes received: {}", Integer.toString(bytes));
+            log.info("Bytes received: {}", bytes);
           }
         }
       }
@@ -595,8 +743,6 @@ public class RepositoryHttpServlet extends HttpServlet {
   protected void serveResource(HttpServletRequest request, HttpServletResponse response,
       boolean content) throws IOException, ServletException {
 
-    boolean serveContent = content;
-
     // Identify the requested resource path
     String sessionId = extractSessionId(request);
 
@@ -614,6 +760,23 @@ public class RepositoryHttpServlet extends HttpServlet {
 
     elem.fireStartedEventIfFirstTime();
 
+    elem.requestStarted();
+    try {
+      serveResource(elem, sessionId, request, response, content);
+    } finally {
+      // Asynchronous transfers finish the request when they complete
+      if (!request.isAsyncStarted()) {
+        elem.requestFinished();
+      }
+    }
+  }
+
+  private void serveResource(RepositoryHttpEndpointImpl elem, String sessionId,
+      HttpServletRequest request, HttpServletResponse response, boolean content)
+      throws IOException, ServletException {
+
+    boolean serveContent = content;
+
     RepositoryItem repositoryItem = elem.getRepositoryItem();
     RepositoryItemAttributes attributes = repositoryItem.getAttributes();
 
@@ -679,9 +842,11 @@ public class RepositoryHttpServlet extends HttpServlet {
         }
       }
 
-      // Copy the input stream to our output stream (if requested)
-      if (serveContent) {
-        copy(elem, response);
+      // Copy the input stream to our output stream (if requested), unless the container can send
+      // the file and nothing else has written to the response
+      boolean canSendFile = !contentWritten && contentLength >= 0;
+      if (serveContent && !(canSendFile && sendFile(request, elem, 0, contentLength))) {
+        copy(elem, request, response, null);
       }
 
     } else {
@@ -705,8 +870,8 @@ public class RepositoryHttpServlet extends HttpServlet {
         setContentLength(response, length);
         setContentType(response, contentType);
 
-        if (serveContent) {
-          copy(elem, response, range);
+        if (serveContent && !sendFile(request, elem, range.start, length)) {
+          copy(elem, request, response, range);
         }
 
       } else {
@@ -714,13 +879,10 @@ public class RepositoryHttpServlet extends HttpServlet {
         response.setContentType("multipart/byteranges; boundary=" + MIME_SEPARATION);
 
         if (serveContent) {
-          copy(elem, response, ranges, contentType);
+          copy(elem, request, response, ranges, contentType);
         }
       }
     }
-
-    elem.stopInTimeout();
-
   }
 
   private String getContentType(RepositoryHttpEndpointImpl repoItemHttpElem,
@@ -1064,7 +1226,8 @@ public class RepositoryHttpServlet extends HttpServlet {
 
         while (!conditionSatisfied && commaTokenizer.hasMoreTokens()) {
           String currentToken = commaTokenizer.nextToken();
-          if (currentToken.trim().equals(eTag)) {
+          // If-None-Match uses the weak comparison (RFC 7232)
+          if (opaqueTag(currentToken.trim()).equals(opaqueTag(eTag))) {
             conditionSatisfied = true;
           }
         }
@@ -1093,6 +1256,10 @@ public class RepositoryHttpServlet extends HttpServlet {
     return true;
   }
 
+  private static String opaqueTag(String eTag) {
+    return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+  }
+
   /**
    * Check if the if-unmodified-since condition is satisfied.
    *
@@ -1126,6 +1293,127 @@ public class RepositoryHttpServlet extends HttpServlet {
     return true;
   }
 
+  /**
+   * Serves a part of the content of the item with the zero-copy path of the servlet container, if
+   * it supports it and the content is available in a local file.
+   *
+   * @param request
+   *          The servlet request we are processing
+   * @param repoItemHttpElem
+   *          The cache entry for the source resource
+   * @param start
+   *          First byte to serve
+   * @param length
+   *          Number of bytes to serve
+   * @return true if the content will be sent by the container, false if it has to be copied
+   */
+  protected boolean sendFile(HttpServletRequest request,
+      RepositoryHttpEndpointImpl repoItemHttpElem, long start, long length) {
+
+    if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+      return false;
+    }
+
+    // The container can't shape the bandwidth of the content it sends
+    if (repoHttpManager.getBandwidthManager().isLimited(repoItemHttpElem)) {
+      return false;
+    }
+
+    RepositoryItem repositoryItem = repoItemHttpElem.getRepositoryItem();
+    if (!(repositoryItem instanceof AbstractRepositoryItem)) {
+      return false;
+    }
+
+    File contentFile = ((AbstractRepositoryItem) repositoryItem).getLocalContentFile();
+    if (contentFile == null) {
+      return false;
+    }
+
+    request.setAttribute(SENDFILE_FILENAME_ATTR, contentFile.getAbsolutePath());
+    request.setAttribute(SENDFILE_START_ATTR, start);
+    request.setAttribute(SENDFILE_END_ATTR, start + length);
+    return true;
+  }
+
+  /**
+   * Copy the content of the item, or a range of it, to the response. Requests that support
+   * asynchronous processing are served with non-blocking writes, releasing the thread while the
+   * client receives the content. The content is sent within the bandwidth limits of the endpoint
+   * and the client address.
+   *
+   * @param repoItemHttpElem
+   *          The cache entry for the source resource
+   * @param request
+   *          The servlet request we are processing
+   * @param response
+   *          The response we are writing to
+   * @param range
+   *          Range asked by the client, or null for the whole content
+   * @exception IOException
+   *              if an input/output error occurs
+   */
+  protected void copy(RepositoryHttpEndpointImpl repoItemHttpElem, HttpServletRequest request,
+      HttpServletResponse response, Range range) throws IOException {
+
+    BandwidthManager.Transfer transfer = startTransfer(repoItemHttpElem, request);
+
+    if (request.isAsyncSupported()) {
+      long start = range != null ? range.start : 0;
+      long length = range != null ? range.end - range.start + 1 : -1;
+      try {
+        AsyncPlayerTransfer.start(repoItemHttpElem, request, response, start, length,
+            ASYNC_BUFFER_SIZE, transfer, repoHttpManager.getScheduler());
+      } catch (IOException | RuntimeException e) {
+        transfer.finish();
+        throw e;
+      }
+    } else {
+      try {
+        copy(repoItemHttpElem, response, range, transfer);
+      } finally {
+        transfer.finish();
+      }
+    }
+  }
+
+  /**
+   * Copy the requested ranges of the item to a multipart response, within the bandwidth limits of
+   * the endpoint and the client address.
+   *
+   * @param repoItemHttpElem
+   *          The cache entry for the source resource
+   * @param request
+   *          The servlet request we are processing
+   * @param response
+   *          The response we are writing to
+   * @param ranges
+   *          Enumeration of the ranges the client wanted to retrieve
+   * @param contentType
+   *          Content type of the resource
+   * @exception IOException
+   *              if an input/output error occurs
+   */
+  protected void copy(RepositoryHttpEndpointImpl repoItemHttpElem, HttpServletRequest request,
+      HttpServletResponse response, List<Range> ranges, String contentType) throws IOException {
+
+    BandwidthManager.Transfer transfer = startTransfer(repoItemHttpElem, request);
+    try {
+      copy(repoItemHttpElem, response, ranges, contentType, transfer);
+    } finally {
+      transfer.finish();
+    }
+  }
+
+  private BandwidthManager.Transfer startTransfer(RepositoryHttpEndpointImpl repoItemHttpElem,
+      HttpServletRequest request) {
+    return repoHttpManager.getBandwidthManager().startTransfer(repoItemHttpElem,
+        request.getRemoteAddr());
+  }
+
+  private static OutputStream throttle(OutputStream ostream, BandwidthManager.Transfer transfer) {
+    return transfer != null ? new ThrottledOutputStream(ostream, transfer) : ostream;
+  }
+
   /**
    * Copy the contents of the specified input stream to the specified output stream, and ensure that
    * both streams are closed before returning (even in the face of an exception).
@@ -1158,6 +1446,26 @@ public class RepositoryHttpServlet extends HttpServlet {
    */
   protected void copy(RepositoryHttpEndpointImpl repoItemHttpElem, HttpServletResponse response,
       Range range) throws IOException {
+    copy(repoItemHttpElem, response, range, null);
+  }
+
+  /**
+   * Copy the content of the item, or a range of it, to the response, blocking the writes until the
+   * bandwidth of the transfer allows them.
+   *
+   * @param repoItemHttpElem
+   *          The cache entry for the source resource
+   * @param response
+   *          The response we are writing to
+   * @param range
+   *          Range asked by the client, or null for the whole content
+   * @param transfer
+   *          Bandwidth of the transfer, or null to send the content without limits
+   * @exception IOException
+   *              if an input/output error occurs
+   */
+  protected void copy(RepositoryHttpEndpointImpl repoItemHttpElem, HttpServletResponse response,
+      Range range, BandwidthManager.Transfer transfer) throws IOException {
 
     try {
       response.setBufferSize(OUTPUT_BUFFER_SIZE);
@@ -1172,9 +1480,9 @@ public class RepositoryHttpServlet extends HttpServlet {
           repoItemHttpElem.createRepoItemInputStream(), INPUT_BUFFER_SIZE)) {
 
         if (range != null) {
-          exception = copyStreamsRange(istream, ostream, range);
+          exception = copyStreamsRange(istream, throttle(ostream, transfer), range);
         } else {
-          exception = copyStreams(istream, ostream);
+          exception = copyStreams(istream, throttle(ostream, transfer));
         }
 
       }
@@ -1203,6 +1511,29 @@ public class RepositoryHttpServlet extends HttpServlet {
    */
   protected void copy(RepositoryHttpEndpointImpl repoItemHttpElem, HttpServletResponse response,
       List<Range> ranges, String contentType) throws IOException {
+    copy(repoItemHttpElem, response, ranges, contentType, null);
+  }
+
+  /**
+   * Copy the requested ranges of the item to a multipart response, blocking the writes of the
+   * content until the bandwidth of the transfer allows them.
+   *
+   * @param repoItemHttpElem
+   *          The cache entry for the source resource
+   * @param response
+   *          The response we are writing to
+   * @param ranges
+   *          Enumeration of the ranges the client wanted to retrieve
+   * @param contentType
+   *          Content type of the resource
+   * @param transfer
+   *          Bandwidth of the transfer, or null to send the content without limits
+   * @exception IOException
+   *              if an input/output error occurs
+   */
+  protected void copy(RepositoryHttpEndpointImpl repoItemHttpElem, HttpServletResponse response,
+      List<Range> ranges, String contentType, BandwidthManager.Transfer transfer)
+      throws IOException {
 
     try {
       response.setBufferSize(OUTPUT_BUFFER_SIZE);
@@ -1230,7 +1561,7 @@ public class RepositoryHttpServlet extends HttpServlet {
               + "/" + currentRange.length);
           ostream.println();
 
-          exception = copyStreamsRange(istream, ostream, currentRange);
+          exception = copyStreamsRange(istream, throttle(ostream, transfer), currentRange);
 
           if (exception != null) {
             break;
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that blocks the writes until the bandwidth of the transfer allows them. It doesn't
+ * close the wrapped stream.
+ */
+class ThrottledOutputStream extends FilterOutputStream {
+
+  private final BandwidthManager.Transfer transfer;
+
+  ThrottledOutputStream(OutputStream out, BandwidthManager.Transfer transfer) {
+    super(out);
+    this.transfer = transfer;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    transfer.acquire(1);
+    out.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    transfer.acquire(len);
+    out.write(b, off, len);
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.index;
+
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Index of the seek points of a recorded media file: the times of the keyframes (or of the clusters
+ * or fragments starting with one) and the offsets in the content where they can be read from. It is
+ * stored as JSON in the metadata of the item, so that a seek to any time is answered with a single
+ * byte range.
+ */
+public class MediaIndex {
+
+  /**
+   * Metadata entry of the item with the index, in JSON.
+   */
+  public static final String METADATA_KEY = "mediaIndex";
+
+  private static final Gson gson = new Gson();
+
+  private String format;
+  private long duration;
+  // Pairs of time in milliseconds and offset in bytes, ordered by time
+  private long[][] points;
+
+  public MediaIndex(String format, long duration, long[][] points) {
+    this.format = format;
+    this.duration = duration;
+    this.points = points;
+  }
+
+  /**
+   * Returns the index stored in the metadata of an item, or null if the item is not indexed.
+   */
+  public static MediaIndex fromMetadata(Map<String, String> metadata) {
+    String json = metadata != null ? metadata.get(METADATA_KEY) : null;
+    if (json == null) {
+      return null;
+    }
+    try {
+      MediaIndex index = gson.fromJson(json, MediaIndex.class);
+      return index != null && index.points != null ? index : null;
+    } catch (JsonParseException e) {
+      return null;
+    }
+  }
+
+  public String toJson() {
+    return gson.toJson(this);
+  }
+
+  /**
+   * Returns the container format: "webm" or "mp4".
+   */
+  public String getFormat() {
+    return format;
+  }
+
+  /**
+   * Returns the duration of the media in milliseconds, or -1 if it is unknown.
+   */
+  public long getDuration() {
+    return duration;
+  }
+
+  public int getNumPoints() {
+    return points.length;
+  }
+
+  public long getTime(int point) {
+    return points[point][0];
+  }
+
+  public long getOffset(int point) {
+    return points[point][1];
+  }
+
+  /**
+   * Finds the seek point to play the media from the given time: the last one at or before it, or
+   * the first one if the time is before all of them.
+   *
+   * @return the number of the point, or -1 if the index has no points
+   */
+  public int findPoint(long time) {
+
+    int low = 0;
+    int high = points.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (points[mid][0] <= time) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return points.length == 0 ? -1 : Math.max(0, high);
+  }
+}
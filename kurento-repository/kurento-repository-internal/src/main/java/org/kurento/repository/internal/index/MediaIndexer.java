@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.index;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItem.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * Builds the index of seek points of the recorded items, reading their content once without any
+ * external tool. WebM and MP4 contents are supported, detected by their first bytes; other contents
+ * are not indexed.
+ *
+ * <p>
+ * When enabled, the content of each recorder is indexed in background once the recorder is
+ * stopped, and the index is stored in the metadata of the item.
+ * </p>
+ */
+public class MediaIndexer {
+
+  private static final Logger log = LoggerFactory.getLogger(MediaIndexer.class);
+
+  private static final int HEADER_SIZE = 12;
+
+  private static final byte[] WEBM_MAGIC = { 0x1A, 0x45, (byte) 0xDF, (byte) 0xA3 };
+
+  // Types of the boxes an MP4 file can start with
+  private static final String[] MP4_BOX_TYPES = { "ftyp", "styp", "moov", "moof", "mdat", "free",
+      "skip", "wide" };
+
+  private volatile boolean enabled;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Indexes the content of a recorder that has been stopped, in a task of the given scheduler. It
+   * does nothing if the indexing is disabled or the item was not stored.
+   */
+  public void recordingTerminated(final RepositoryItem item, TaskScheduler scheduler) {
+
+    if (!enabled || item.getState() != State.STORED) {
+      return;
+    }
+
+    scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          MediaIndex index = indexItem(item);
+          if (index != null) {
+            log.debug("Indexed {} item {} with {} seek points", index.getFormat(), item.getId(),
+                index.getNumPoints());
+          }
+        } catch (IOException | RuntimeException e) {
+          log.warn("Exception indexing item {}", item.getId(), e);
+        }
+      }
+    }, new Date());
+  }
+
+  /**
+   * Builds the index of a stored item and puts it in its metadata.
+   *
+   * @return the index, or null if the format of the content is not supported
+   */
+  public MediaIndex indexItem(RepositoryItem item) throws IOException {
+
+    if (item.getState() != State.STORED) {
+      throw new IllegalStateException("Item " + item.getId() + " is not stored yet");
+    }
+
+    MediaIndex index;
+    try (InputStream input = item.createInputStreamToRead()) {
+      index = createIndex(input);
+    }
+
+    if (index != null) {
+      Map<String, String> metadata = new HashMap<>(item.getMetadata());
+      metadata.put(MediaIndex.METADATA_KEY, index.toJson());
+      item.setMetadata(metadata);
+    }
+    return index;
+  }
+
+  /**
+   * Builds the index of a media content.
+   *
+   * @return the index, or null if the format of the content is not supported
+   * @throws IOException
+   *           if the content can't be read or is malformed
+   */
+  public static MediaIndex createIndex(InputStream content) throws IOException {
+
+    BufferedInputStream input = new BufferedInputStream(content);
+    byte[] header = new byte[HEADER_SIZE];
+    input.mark(HEADER_SIZE);
+    int headerSize = IOUtils.read(input, header);
+    input.reset();
+
+    CountingInputStream countingInput = new CountingInputStream(input);
+    if (isWebm(header, headerSize)) {
+      return new WebmIndexParser(countingInput).parse();
+    } else if (isMp4(header, headerSize)) {
+      return new Mp4IndexParser(countingInput).parse();
+    } else {
+      return null;
+    }
+  }
+
+  private static boolean isWebm(byte[] header, int headerSize) {
+    return headerSize >= WEBM_MAGIC.length
+        && Arrays.equals(WEBM_MAGIC, Arrays.copyOf(header, WEBM_MAGIC.length));
+  }
+
+  private static boolean isMp4(byte[] header, int headerSize) {
+    if (headerSize < 8) {
+      return false;
+    }
+    String type = new String(header, 4, 4, StandardCharsets.US_ASCII);
+    return Arrays.asList(MP4_BOX_TYPES).contains(type);
+  }
+
+  static void sortPoints(long[][] points) {
+    Arrays.sort(points, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] p1, long[] p2) {
+        return p1[0] != p2[0] ? Long.compare(p1[0], p2[0]) : Long.compare(p1[1], p2[1]);
+      }
+    });
+  }
+
+  /**
+   * Skips the given bytes of the input, failing if it ends before.
+   */
+  static void skipFully(InputStream input, long bytes) throws IOException {
+    long remaining = bytes;
+    while (remaining > 0) {
+      long skipped = input.skip(remaining);
+      if (skipped <= 0) {
+        if (input.read() == -1) {
+          throw new EOFException("Unexpected end of media content");
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+}
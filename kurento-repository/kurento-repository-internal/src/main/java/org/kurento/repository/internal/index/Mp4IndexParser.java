@@ -0,0 +1,416 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.index;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Reads the seek points of an MP4 (ISO base media) file, walking the top level boxes and skipping
+ * the media data. Only the movie box is read into memory. The points are taken from the video
+ * track (or the first track if there is no video):
+ * <ul>
+ * <li>In regular files, the sync samples of the sample table, with their absolute offsets. If all
+ * the samples are sync samples, as in audio tracks, one point per second is kept.</li>
+ * <li>In fragmented files, the start of each movie fragment with its decode time, as recorders
+ * start the fragments with a keyframe.</li>
+ * </ul>
+ */
+class Mp4IndexParser {
+
+  static final String FORMAT = "mp4";
+
+  private static final int MAX_BOX_SIZE = 64 * 1024 * 1024;
+
+  // Minimum time between points when all the samples are sync samples
+  private static final long MIN_POINT_INTERVAL_MILLIS = 1000;
+
+  private static class Track {
+
+    private long id;
+    private String handler;
+    private long timescale;
+    private long duration;
+    private long[] timeToSample;
+    private long[] syncSamples;
+    private long[] sampleToChunk;
+    private long defaultSampleSize;
+    private long[] sampleSizes;
+    private long[] chunkOffsets;
+  }
+
+  private static class Fragment {
+
+    private final long position;
+    private final long trackId;
+    private final long decodeTime;
+
+    Fragment(long position, long trackId, long decodeTime) {
+      this.position = position;
+      this.trackId = trackId;
+      this.decodeTime = decodeTime;
+    }
+  }
+
+  private final CountingInputStream input;
+
+  private final List<Track> tracks = new ArrayList<>();
+  private final List<Fragment> fragments = new ArrayList<>();
+
+  Mp4IndexParser(CountingInputStream input) {
+    this.input = input;
+  }
+
+  MediaIndex parse() throws IOException {
+
+    byte[] header = new byte[8];
+    while (true) {
+
+      long position = input.getByteCount();
+      int read = IOUtils.read(input, header);
+      if (read == 0) {
+        break;
+      } else if (read < header.length) {
+        throw new EOFException("Unexpected end of MP4 file");
+      }
+
+      ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+      long size = headerBuffer.getInt() & 0xFFFFFFFFL;
+      String type = new String(header, 4, 4, StandardCharsets.US_ASCII);
+      if (size == 1) {
+        byte[] largeSize = new byte[8];
+        IOUtils.readFully(input, largeSize);
+        size = ByteBuffer.wrap(largeSize).getLong();
+      } else if (size == 0) {
+        // The box extends to the end of the file
+        if (!"moov".equals(type) && !"moof".equals(type)) {
+          break;
+        }
+        size = -1;
+      }
+
+      long bodySize = size >= 0 ? size - (input.getByteCount() - position) : -1;
+      if (size >= 0 && bodySize < 0) {
+        throw new IOException("Invalid size of box " + type + " at " + position);
+      }
+
+      if ("moov".equals(type) || "moof".equals(type)) {
+        ByteBuffer body = readBody(type, bodySize);
+        try {
+          if ("moov".equals(type)) {
+            parseContainer(body, null);
+          } else {
+            parseFragment(body, position);
+          }
+        } catch (BufferUnderflowException e) {
+          throw new IOException("Truncated box " + type + " at " + position, e);
+        }
+      } else {
+        MediaIndexer.skipFully(input, bodySize);
+      }
+    }
+
+    Track track = selectTrack();
+    if (track == null) {
+      throw new IOException("MP4 file without tracks");
+    }
+
+    long[][] points = fragments.isEmpty() ? getSamplePoints(track) : getFragmentPoints(track);
+    MediaIndexer.sortPoints(points);
+
+    long duration = track.timescale > 0 && track.duration > 0
+        ? track.duration * 1000 / track.timescale : -1;
+    return new MediaIndex(FORMAT, duration, points);
+  }
+
+  private ByteBuffer readBody(String type, long bodySize) throws IOException {
+    if (bodySize > MAX_BOX_SIZE) {
+      throw new IOException("Box " + type + " of " + bodySize + " bytes is too large to index");
+    }
+    if (bodySize < 0) {
+      return ByteBuffer.wrap(IOUtils.toByteArray(input));
+    }
+    byte[] body = new byte[(int) bodySize];
+    IOUtils.readFully(input, body);
+    return ByteBuffer.wrap(body);
+  }
+
+  /**
+   * Parses the children of a box of the movie, collecting the tracks and their sample tables.
+   */
+  private void parseContainer(ByteBuffer body, Track track) {
+
+    while (body.remaining() >= 8) {
+
+      int start = body.position();
+      long size = body.getInt() & 0xFFFFFFFFL;
+      String type = readType(body);
+      if (size == 1) {
+        size = body.getLong();
+      } else if (size == 0) {
+        size = body.limit() - start;
+      }
+      if (size < body.position() - start || size > body.limit() - start) {
+        break;
+      }
+
+      ByteBuffer child = body.slice();
+      child.limit((int) (size - (body.position() - start)));
+      body.position((int) (start + size));
+
+      switch (type) {
+        case "trak":
+          Track newTrack = new Track();
+          tracks.add(newTrack);
+          parseContainer(child, newTrack);
+          break;
+        case "mdia":
+        case "minf":
+        case "stbl":
+          if (track != null) {
+            parseContainer(child, track);
+          }
+          break;
+        default:
+          if (track != null) {
+            parseTrackBox(type, child, track);
+          }
+      }
+    }
+  }
+
+  private void parseTrackBox(String type, ByteBuffer box, Track track) {
+
+    if (box.remaining() < 4) {
+      return;
+    }
+    int version = box.get() & 0xFF;
+    box.position(4);
+
+    switch (type) {
+      case "tkhd":
+        box.position(box.position() + (version == 1 ? 16 : 8));
+        track.id = box.getInt() & 0xFFFFFFFFL;
+        break;
+      case "mdhd":
+        box.position(box.position() + (version == 1 ? 16 : 8));
+        track.timescale = box.getInt() & 0xFFFFFFFFL;
+        track.duration = version == 1 ? box.getLong() : box.getInt() & 0xFFFFFFFFL;
+        break;
+      case "hdlr":
+        box.getInt();
+        track.handler = readType(box);
+        break;
+      case "stts":
+        track.timeToSample = readTable(box, 2, false);
+        break;
+      case "stss":
+        track.syncSamples = readTable(box, 1, false);
+        break;
+      case "stsc":
+        track.sampleToChunk = readTable(box, 3, false);
+        break;
+      case "stsz":
+        track.defaultSampleSize = box.getInt() & 0xFFFFFFFFL;
+        long sampleCount = box.getInt() & 0xFFFFFFFFL;
+        if (track.defaultSampleSize == 0) {
+          track.sampleSizes = readValues(box, sampleCount, false);
+        } else {
+          track.sampleSizes = new long[] { sampleCount };
+        }
+        break;
+      case "stco":
+        track.chunkOffsets = readTable(box, 1, false);
+        break;
+      case "co64":
+        track.chunkOffsets = readTable(box, 1, true);
+        break;
+      default:
+        // Not needed for the index
+    }
+  }
+
+  /**
+   * Parses a movie fragment, keeping the decode time of each of its track fragments.
+   */
+  private void parseFragment(ByteBuffer body, long position) {
+
+    while (body.remaining() >= 8) {
+
+      int start = body.position();
+      long size = body.getInt() & 0xFFFFFFFFL;
+      String type = readType(body);
+      if (size < 8 || size > body.limit() - start) {
+        break;
+      }
+      ByteBuffer child = body.slice();
+      child.limit((int) size - 8);
+      body.position((int) (start + size));
+
+      if (!"traf".equals(type)) {
+        continue;
+      }
+
+      long trackId = -1;
+      long decodeTime = -1;
+      while (child.remaining() >= 8) {
+        int boxStart = child.position();
+        long boxSize = child.getInt() & 0xFFFFFFFFL;
+        String boxType = readType(child);
+        if (boxSize < 8 || boxSize > child.limit() - boxStart) {
+          break;
+        }
+        int version = child.get() & 0xFF;
+        child.position(child.position() + 3);
+        if ("tfhd".equals(boxType)) {
+          trackId = child.getInt() & 0xFFFFFFFFL;
+        } else if ("tfdt".equals(boxType)) {
+          decodeTime = version == 1 ? child.getLong() : child.getInt() & 0xFFFFFFFFL;
+        }
+        child.position((int) (boxStart + boxSize));
+      }
+
+      if (trackId >= 0 && decodeTime >= 0) {
+        fragments.add(new Fragment(position, trackId, decodeTime));
+      }
+    }
+  }
+
+  private Track selectTrack() {
+    for (Track track : tracks) {
+      if ("vide".equals(track.handler)) {
+        return track;
+      }
+    }
+    return tracks.isEmpty() ? null : tracks.get(0);
+  }
+
+  private long[][] getFragmentPoints(Track track) {
+    List<long[]> points = new ArrayList<>();
+    for (Fragment fragment : fragments) {
+      if (fragment.trackId == track.id && track.timescale > 0) {
+        points.add(new long[] { fragment.decodeTime * 1000 / track.timescale, fragment.position });
+      }
+    }
+    return points.toArray(new long[0][]);
+  }
+
+  /**
+   * Walks the samples of the track in decoding order, computing the time and offset of each sync
+   * sample from the sample tables.
+   */
+  private long[][] getSamplePoints(Track track) {
+
+    if (track.timescale <= 0 || track.timeToSample == null || track.sampleToChunk == null
+        || track.sampleSizes == null || track.chunkOffsets == null
+        || track.sampleToChunk.length < 3) {
+      return new long[0][];
+    }
+
+    long numSamples = track.defaultSampleSize != 0 ? track.sampleSizes[0]
+        : track.sampleSizes.length;
+
+    List<long[]> points = new ArrayList<>();
+    long lastPointTime = Long.MIN_VALUE;
+
+    long sample = 1;
+    long time = 0;
+    int timeEntry = 0;
+    long timeEntryRemaining = track.timeToSample.length > 0 ? track.timeToSample[0] : 0;
+    int syncIndex = 0;
+    int chunkEntry = 0;
+
+    for (int chunk = 1; chunk <= track.chunkOffsets.length && sample <= numSamples; chunk++) {
+
+      while (chunkEntry + 1 < track.sampleToChunk.length / 3
+          && track.sampleToChunk[(chunkEntry + 1) * 3] <= chunk) {
+        chunkEntry++;
+      }
+      long samplesInChunk = track.sampleToChunk[chunkEntry * 3 + 1];
+      long offset = track.chunkOffsets[chunk - 1];
+
+      for (long i = 0; i < samplesInChunk && sample <= numSamples; i++, sample++) {
+
+        boolean sync;
+        if (track.syncSamples == null) {
+          sync = true;
+        } else {
+          while (syncIndex < track.syncSamples.length && track.syncSamples[syncIndex] < sample) {
+            syncIndex++;
+          }
+          sync = syncIndex < track.syncSamples.length && track.syncSamples[syncIndex] == sample;
+        }
+
+        long millis = time * 1000 / track.timescale;
+        if (sync && (track.syncSamples != null
+            || millis - lastPointTime >= MIN_POINT_INTERVAL_MILLIS)) {
+          points.add(new long[] { millis, offset });
+          lastPointTime = millis;
+        }
+
+        offset += track.defaultSampleSize != 0 ? track.defaultSampleSize
+            : track.sampleSizes[(int) (sample - 1)];
+
+        while (timeEntryRemaining == 0 && (timeEntry + 1) * 2 < track.timeToSample.length) {
+          timeEntry++;
+          timeEntryRemaining = track.timeToSample[timeEntry * 2];
+        }
+        if (timeEntryRemaining > 0) {
+          time += track.timeToSample[timeEntry * 2 + 1];
+          timeEntryRemaining--;
+        }
+      }
+    }
+
+    return points.toArray(new long[0][]);
+  }
+
+  private static String readType(ByteBuffer buffer) {
+    byte[] type = new byte[4];
+    buffer.get(type);
+    return new String(type, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Reads a table of a full box: the number of entries followed by the entries, each one with the
+   * given number of fields, flattened in a single array.
+   */
+  private static long[] readTable(ByteBuffer box, int fields, boolean wide) {
+    long entries = box.getInt() & 0xFFFFFFFFL;
+    return readValues(box, entries * fields, wide);
+  }
+
+  private static long[] readValues(ByteBuffer box, long count, boolean wide) {
+    if (count * (wide ? 8 : 4) > box.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    long[] values = new long[(int) count];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = wide ? box.getLong() : box.getInt() & 0xFFFFFFFFL;
+    }
+    return values;
+  }
+}
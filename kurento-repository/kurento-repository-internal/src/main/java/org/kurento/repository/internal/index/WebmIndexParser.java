@@ -0,0 +1,321 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.index;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Reads the seek points of a WebM (Matroska) file in a single pass, skipping the media data. The
+ * points are the entries of the Cues element, which may be before or after the clusters, or the
+ * start of each Cluster if the file has no cues, as in live recordings. Clusters of unknown size
+ * are supported.
+ */
+class WebmIndexParser {
+
+  static final String FORMAT = "webm";
+
+  private static final long EBML_ID = 0x1A45DFA3L;
+  private static final long SEGMENT_ID = 0x18538067L;
+  private static final long SEEK_HEAD_ID = 0x114D9B74L;
+  private static final long INFO_ID = 0x1549A966L;
+  private static final long TIMECODE_SCALE_ID = 0x2AD7B1L;
+  private static final long DURATION_ID = 0x4489L;
+  private static final long TRACKS_ID = 0x1654AE6BL;
+  private static final long CHAPTERS_ID = 0x1043A770L;
+  private static final long CLUSTER_ID = 0x1F43B675L;
+  private static final long CLUSTER_TIMECODE_ID = 0xE7L;
+  private static final long CUES_ID = 0x1C53BB6BL;
+  private static final long CUE_POINT_ID = 0xBBL;
+  private static final long CUE_TIME_ID = 0xB3L;
+  private static final long CUE_TRACK_POSITIONS_ID = 0xB7L;
+  private static final long CUE_CLUSTER_POSITION_ID = 0xF1L;
+  private static final long ATTACHMENTS_ID = 0x1941A469L;
+  private static final long TAGS_ID = 0x1254C367L;
+
+  // Children of the segment, that end the clusters of unknown size
+  private static final Set<Long> SEGMENT_CHILDREN = new HashSet<>(Arrays.asList(SEEK_HEAD_ID,
+      INFO_ID, TRACKS_ID, CHAPTERS_ID, CLUSTER_ID, CUES_ID, ATTACHMENTS_ID, TAGS_ID));
+
+  private static final long UNKNOWN_SIZE = -1;
+
+  private static final long DEFAULT_TIMECODE_SCALE = 1000000;
+
+  private static class Element {
+
+    private final long id;
+    private final long size;
+    private final long position;
+    private final long dataPosition;
+
+    Element(long id, long size, long position, long dataPosition) {
+      this.id = id;
+      this.size = size;
+      this.position = position;
+      this.dataPosition = dataPosition;
+    }
+
+    long getEnd() {
+      return size == UNKNOWN_SIZE ? Long.MAX_VALUE : dataPosition + size;
+    }
+  }
+
+  private final CountingInputStream input;
+
+  // Header read ahead to find the end of a cluster of unknown size
+  private Element pending;
+
+  WebmIndexParser(CountingInputStream input) {
+    this.input = input;
+  }
+
+  MediaIndex parse() throws IOException {
+
+    Element ebml = nextElement();
+    if (ebml == null || ebml.id != EBML_ID) {
+      throw new IOException("Not a WebM file");
+    }
+    skip(ebml);
+
+    Element segment = nextElement();
+    if (segment == null || segment.id != SEGMENT_ID) {
+      throw new IOException("WebM file without segment");
+    }
+
+    long timecodeScale = DEFAULT_TIMECODE_SCALE;
+    double duration = -1;
+    List<long[]> cues = new ArrayList<>();
+    List<long[]> clusters = new ArrayList<>();
+
+    Element element;
+    while ((element = nextElement()) != null && element.position < segment.getEnd()) {
+      if (element.id == INFO_ID) {
+        while (input.getByteCount() < element.getEnd()) {
+          Element child = nextChild(element);
+          if (child.id == TIMECODE_SCALE_ID) {
+            timecodeScale = readUnsigned(child);
+          } else if (child.id == DURATION_ID) {
+            duration = readFloat(child);
+          } else {
+            skip(child);
+          }
+        }
+      } else if (element.id == CUES_ID) {
+        readCues(element, segment.dataPosition, cues);
+      } else if (element.id == CLUSTER_ID) {
+        long timecode = readClusterTimecode(element);
+        if (timecode >= 0) {
+          clusters.add(new long[] { timecode, element.position });
+        }
+      } else {
+        skip(element);
+      }
+    }
+
+    long[][] points = (cues.isEmpty() ? clusters : cues).toArray(new long[0][]);
+    for (long[] point : points) {
+      point[0] = toMillis(point[0], timecodeScale);
+    }
+    MediaIndexer.sortPoints(points);
+
+    long durationMillis = duration >= 0 ? toMillis((long) duration, timecodeScale) : -1;
+    return new MediaIndex(FORMAT, durationMillis, points);
+  }
+
+  private void readCues(Element cuesElement, long segmentPosition, List<long[]> cues)
+      throws IOException {
+
+    while (input.getByteCount() < cuesElement.getEnd()) {
+
+      Element cuePoint = nextChild(cuesElement);
+      if (cuePoint.id != CUE_POINT_ID) {
+        skip(cuePoint);
+        continue;
+      }
+
+      long time = -1;
+      long position = -1;
+      while (input.getByteCount() < cuePoint.getEnd()) {
+        Element child = nextChild(cuePoint);
+        if (child.id == CUE_TIME_ID) {
+          time = readUnsigned(child);
+        } else if (child.id == CUE_TRACK_POSITIONS_ID && position < 0) {
+          while (input.getByteCount() < child.getEnd()) {
+            Element trackPosition = nextChild(child);
+            if (trackPosition.id == CUE_CLUSTER_POSITION_ID) {
+              position = readUnsigned(trackPosition);
+            } else {
+              skip(trackPosition);
+            }
+          }
+        } else {
+          skip(child);
+        }
+      }
+
+      if (time >= 0 && position >= 0) {
+        // Cluster positions are relative to the data of the segment
+        cues.add(new long[] { time, segmentPosition + position });
+      }
+    }
+  }
+
+  /**
+   * Reads the timecode of a cluster, skipping the rest of it.
+   *
+   * @return the timecode, or -1 if the cluster has none
+   */
+  private long readClusterTimecode(Element cluster) throws IOException {
+
+    long timecode = -1;
+    while (input.getByteCount() < cluster.getEnd()) {
+
+      Element child = nextElement();
+      if (child == null) {
+        break;
+      }
+      if (cluster.size == UNKNOWN_SIZE && SEGMENT_CHILDREN.contains(child.id)) {
+        pending = child;
+        break;
+      }
+
+      if (child.id == CLUSTER_TIMECODE_ID) {
+        timecode = readUnsigned(child);
+        if (cluster.size != UNKNOWN_SIZE) {
+          skipTo(cluster.getEnd());
+          break;
+        }
+      } else {
+        skip(child);
+      }
+    }
+    return timecode;
+  }
+
+  private static long toMillis(long ticks, long timecodeScale) {
+    return ticks * timecodeScale / 1000000;
+  }
+
+  /**
+   * Reads the header of the next element.
+   *
+   * @return the element, or null at the end of the file
+   */
+  private Element nextElement() throws IOException {
+
+    if (pending != null) {
+      Element element = pending;
+      pending = null;
+      return element;
+    }
+
+    long position = input.getByteCount();
+    int first = input.read();
+    if (first == -1) {
+      return null;
+    }
+
+    int idLength = Integer.numberOfLeadingZeros(first) - 23;
+    if (idLength > 4) {
+      throw new IOException("Invalid element id at " + position);
+    }
+    long id = first;
+    for (int i = 1; i < idLength; i++) {
+      id = (id << 8) | readByte();
+    }
+
+    int sizeFirst = readByte();
+    int sizeLength = Integer.numberOfLeadingZeros(sizeFirst) - 23;
+    if (sizeLength > 8) {
+      throw new IOException("Invalid element size at " + position);
+    }
+    long size = sizeFirst & (0xFF >> sizeLength);
+    boolean unknown = size == (0xFF >> sizeLength);
+    for (int i = 1; i < sizeLength; i++) {
+      int b = readByte();
+      size = (size << 8) | b;
+      unknown &= b == 0xFF;
+    }
+
+    return new Element(id, unknown ? UNKNOWN_SIZE : size, position, input.getByteCount());
+  }
+
+  /**
+   * Reads the header of the next child of an element.
+   *
+   * @throws EOFException
+   *           if the file ends before the element
+   */
+  private Element nextChild(Element parent) throws IOException {
+    Element child = nextElement();
+    if (child == null) {
+      throw new EOFException("Unexpected end of WebM file in element "
+          + Long.toHexString(parent.id) + " at " + parent.position);
+    }
+    return child;
+  }
+
+  private long readUnsigned(Element element) throws IOException {
+    if (element.size > 8) {
+      throw new IOException("Invalid integer element at " + element.position);
+    }
+    long value = 0;
+    for (int i = 0; i < element.size; i++) {
+      value = (value << 8) | readByte();
+    }
+    return value;
+  }
+
+  private double readFloat(Element element) throws IOException {
+    if (element.size == 4) {
+      return Float.intBitsToFloat((int) readUnsigned(element));
+    } else if (element.size == 8) {
+      return Double.longBitsToDouble(readUnsigned(element));
+    } else {
+      skip(element);
+      return -1;
+    }
+  }
+
+  private int readByte() throws IOException {
+    int b = input.read();
+    if (b == -1) {
+      throw new EOFException("Unexpected end of WebM file");
+    }
+    return b;
+  }
+
+  private void skip(Element element) throws IOException {
+    if (element.size == UNKNOWN_SIZE) {
+      throw new IOException("Element " + Long.toHexString(element.id) + " of unknown size at "
+          + element.position + " can't be skipped");
+    }
+    skipTo(element.getEnd());
+  }
+
+  private void skipTo(long position) throws IOException {
+    MediaIndexer.skipFully(input, position - input.getByteCount());
+  }
+}
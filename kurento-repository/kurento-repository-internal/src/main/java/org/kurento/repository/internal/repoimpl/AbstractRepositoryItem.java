@@ -17,8 +17,13 @@
 
 package org.kurento.repository.internal.repoimpl;
 
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
 import java.util.Map;
 
+import org.kurento.commons.exception.KurentoException;
 import org.kurento.repository.RepositoryHttpPlayer;
 import org.kurento.repository.RepositoryHttpRecorder;
 import org.kurento.repository.RepositoryItem;
@@ -26,6 +31,15 @@ import org.kurento.repository.RepositoryItemAttributes;
 
 public abstract class AbstractRepositoryItem implements RepositoryItem {
 
+  /**
+   * Metadata entry with the SHA-256 digest of the content, in hexadecimal. It is calculated while
+   * the content is written, kept by the repository when the metadata is replaced and used as strong
+   * ETag of the item.
+   */
+  public static final String CONTENT_DIGEST_METADATA = "contentSha256";
+
+  private static final String CONTENT_DIGEST_ALGORITHM = "SHA-256";
+
   protected RepositoryWithHttp repository;
   protected String id;
   protected volatile State state;
@@ -89,7 +103,13 @@ public abstract class AbstractRepositoryItem implements RepositoryItem {
 
   @Override
   public void setMetadata(Map<String, String> metadata) {
+    String contentDigest = getContentDigest();
+    if (contentDigest != null && !contentDigest.equals(metadata.get(CONTENT_DIGEST_METADATA))) {
+      metadata = new HashMap<>(metadata);
+      metadata.put(CONTENT_DIGEST_METADATA, contentDigest);
+    }
     this.metadata = metadata;
+    updateETag();
   }
 
   @Override
@@ -97,4 +117,73 @@ public abstract class AbstractRepositoryItem implements RepositoryItem {
     this.metadata.put(key, value);
   }
 
+  /**
+   * Returns a local file with the content of the stored item, that can be served with the zero-copy
+   * path of the servlet container. Returns null if the content is not available locally.
+   */
+  public File getLocalContentFile() {
+    return null;
+  }
+
+  /**
+   * Starts writing the content of the item in parts of the given size, that can be written in
+   * parallel and in any order. The item is in state STORING until the content is completed, and
+   * back in state NEW if the parts are discarded.
+   *
+   * @param partSize
+   *          size of all the parts but the last one, in bytes
+   * @throws IllegalArgumentException
+   *           if the part size is not supported by the repository
+   */
+  public abstract MultipartContentWriter createMultipartContentWriter(long partSize);
+
+  /**
+   * Returns the digest of the content of the item in hexadecimal, or null if it was stored before
+   * digests were calculated or it has not been stored yet.
+   */
+  public String getContentDigest() {
+    return metadata != null ? metadata.get(CONTENT_DIGEST_METADATA) : null;
+  }
+
+  /**
+   * Creates the digest to be updated with the content written to the item.
+   */
+  public static MessageDigest createContentDigest() {
+    try {
+      return MessageDigest.getInstance(CONTENT_DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new KurentoException(CONTENT_DIGEST_ALGORITHM + " digest not available", e);
+    }
+  }
+
+  /**
+   * Stores the digest of the content in the metadata, once all the content has been written.
+   */
+  protected void setContentDigest(MessageDigest contentDigest) {
+    setContentDigest(toHex(contentDigest.digest()));
+  }
+
+  /**
+   * Stores the digest of the content, already in hexadecimal, in the metadata.
+   */
+  protected void setContentDigest(String contentDigest) {
+    metadata.put(CONTENT_DIGEST_METADATA, contentDigest);
+    updateETag();
+  }
+
+  private void updateETag() {
+    String contentDigest = getContentDigest();
+    if (contentDigest != null) {
+      attributes.setETag("\"" + contentDigest + "\"");
+    }
+  }
+
+  public static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
 }
\ No newline at end of file
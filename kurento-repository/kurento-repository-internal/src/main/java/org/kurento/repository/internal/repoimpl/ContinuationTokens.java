@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.repository.internal.repoimpl;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Continuation tokens of the paginated queries of the repositories. Items are returned ordered by
+ * id, so the token is the id of the last item returned, encoded to keep it opaque to clients.
+ */
+public final class ContinuationTokens {
+
+  private ContinuationTokens() {
+  }
+
+  public static String encode(String lastId) {
+    byte[] bytes = lastId.getBytes(StandardCharsets.UTF_8);
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the id of the last item returned before the token, or null if the token is null (first
+   * page).
+   *
+   * @throws IllegalArgumentException
+   *           if the token is not valid
+   */
+  public static String decode(String continuationToken) {
+
+    if (continuationToken == null || continuationToken.isEmpty()) {
+      return null;
+    }
+
+    if (continuationToken.length() % 2 != 0) {
+      throw new IllegalArgumentException("Invalid continuation token: " + continuationToken);
+    }
+
+    byte[] bytes = new byte[continuationToken.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      int high = Character.digit(continuationToken.charAt(2 * i), 16);
+      int low = Character.digit(continuationToken.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new IllegalArgumentException("Invalid continuation token: " + continuationToken);
+      }
+      bytes[i] = (byte) (high << 4 | low);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public static void checkLimit(int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("The limit of items must be positive: " + limit);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Writer of the content of a repository item in parts of a fixed size, so that the offset of each
+ * part is known as soon as it is received. The parts are written in place by each repository,
+ * concurrently and in any order, and the content is stored once all of them have been written.
+ */
+public interface MultipartContentWriter {
+
+  /**
+   * Returns the size of all the parts but the last one, in bytes.
+   */
+  long getPartSize();
+
+  /**
+   * Writes a part of the content at the given offset, replacing the bytes written by a previous
+   * attempt. The whole input is written, so it must be bounded to the size of the part.
+   *
+   * @return the number of bytes written
+   */
+  long writePart(long offset, InputStream input) throws IOException;
+
+  /**
+   * Assembles the parts written into the content of the item and stores it. The parts are kept if
+   * they don't cover the content or its digest doesn't match the expected one, so that the missing
+   * or corrupted parts can be written again before completing it again.
+   *
+   * @param length
+   *          length of the content
+   * @param expectedDigest
+   *          SHA-256 digest of the content in hexadecimal, or null if it is not checked
+   * @return the SHA-256 digest of the content in hexadecimal
+   * @throws IllegalArgumentException
+   *           if the parts don't cover the content or the digest doesn't match
+   */
+  String complete(long length, String expectedDigest) throws IOException;
+
+  /**
+   * Discards the parts written, leaving the item without content.
+   */
+  void abort();
+}
@@ -18,38 +18,64 @@
 package org.kurento.repository.internal.repoimpl.filesystem;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.repository.RepositoryItemAttributes;
 import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
+import org.kurento.repository.internal.repoimpl.MultipartContentWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class FileRepositoryItem extends AbstractRepositoryItem {
 
   private static final Logger log = LoggerFactory.getLogger(FileRepositoryItem.class);
+
+  /**
+   * Metadata entry with the last state transition of the content of the item, STORING or STORED,
+   * used to recover the items being stored when the repository stopped. It is kept by the
+   * repository when the metadata is replaced.
+   */
+  public static final String STATE_METADATA = "contentState";
+
+  static final String STORING = State.STORING.name();
+  static final String STORED = State.STORED.name();
+
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
   private final File file;
   private OutputStream storingOutputStream;
 
   public FileRepositoryItem(FileSystemRepository repository, File file, String id,
       Map<String, String> metadata) {
 
-    super(id, calculateState(file), loadAttributes(file), repository);
+    super(id, calculateState(file, repository.getStoringFile(id)), loadAttributes(file),
+        repository);
     this.file = file;
     setMetadata(metadata);
   }
 
-  private static State calculateState(File file) {
-    return file.exists() && file.length() > 0 ? State.STORED : State.NEW;
+  private static State calculateState(File file, File storingFile) {
+    if (file.exists() && file.length() > 0) {
+      return State.STORED;
+    }
+    // Written by another instance of the item
+    return storingFile.exists() ? State.STORING : State.NEW;
   }
 
   private static RepositoryItemAttributes loadAttributes(File file) {
@@ -95,22 +121,156 @@ public class FileRepositoryItem extends AbstractRepositoryItem {
 
       this.state = State.STORING;
 
-      storingOutputStream = new FilterOutputStream(new FileOutputStream(file)) {
-        @Override
-        public void close() throws java.io.IOException {
-          refreshAttributesOnClose();
-        }
-      };
+      // The content is written aside and moved to the file of the item when it is closed
+      getRepository().startStoring(this);
+      final FileOutputStream fileOutput =
+          new FileOutputStream(getRepository().getStoringFile(id));
+
+      // Writes larger than the buffer go straight to the file. The digest is updated with the
+      // buffered chunks, before they are written
+      final MessageDigest contentDigest = createContentDigest();
+      storingOutputStream = new BufferedOutputStream(
+          new DigestOutputStream(fileOutput, contentDigest), WRITE_BUFFER_SIZE) {
+
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+              if (closed) {
+                return;
+              }
+              closed = true;
+              try {
+                flush();
+                if (getRepository().isSyncEnabled()) {
+                  fileOutput.getFD().sync();
+                }
+              } finally {
+                super.close();
+                refreshAttributesOnClose(contentDigest);
+              }
+            }
+          };
 
       return storingOutputStream;
 
     } catch (FileNotFoundException e) {
+      getRepository().abortStoring(this);
+      state = State.NEW;
       throw new KurentoException("There is a problem opening the output stream to the file "
           + "that will store the contents of the repositoty item", e);
     }
   }
 
-  private void refreshAttributesOnClose() {
+  /**
+   * Writes the parts with positioned writes in the storing file of the item, which is truncated to
+   * the length of the content and moved to the file of the item when it is completed.
+   */
+  @Override
+  public MultipartContentWriter createMultipartContentWriter(final long partSize) {
+
+    checkState(State.NEW);
+
+    if (partSize <= 0) {
+      throw new IllegalArgumentException("Invalid part size " + partSize);
+    }
+
+    final FileChannel channel;
+    try {
+      getRepository().startStoring(this);
+      channel = FileChannel.open(getRepository().getStoringFile(id).toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+    } catch (IOException e) {
+      getRepository().abortStoring(this);
+      throw new KurentoException("There is a problem opening the file "
+          + "that will store the contents of the repositoty item", e);
+    }
+
+    this.state = State.STORING;
+
+    return new MultipartContentWriter() {
+
+      @Override
+      public long getPartSize() {
+        return partSize;
+      }
+
+      @Override
+      public long writePart(long offset, InputStream input) throws IOException {
+
+        byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        long written = 0;
+        int readBytes;
+        while ((readBytes = input.read(buffer)) != -1) {
+          ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, readBytes);
+          while (byteBuffer.hasRemaining()) {
+            written += channel.write(byteBuffer, offset + written);
+          }
+        }
+        return written;
+      }
+
+      @Override
+      public String complete(long length, String expectedDigest) throws IOException {
+
+        if (channel.size() < length) {
+          throw new IllegalArgumentException(
+              "Only " + channel.size() + " bytes of " + length + " have been written");
+        }
+
+        // Parts beyond the content are kept until it is validated
+        MessageDigest contentDigest = createContentDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        long position = 0;
+        while (position < length) {
+          buffer.clear();
+          buffer.limit((int) Math.min(buffer.capacity(), length - position));
+          int readBytes = channel.read(buffer, position);
+          if (readBytes == -1) {
+            throw new IOException("The file of item " + id + " is shorter than " + length);
+          }
+          contentDigest.update(buffer.array(), 0, readBytes);
+          position += readBytes;
+        }
+
+        String digest = toHex(contentDigest.digest());
+        if (expectedDigest != null && !expectedDigest.equalsIgnoreCase(digest)) {
+          throw new IllegalArgumentException(
+              "Content digest " + digest + " doesn't match the expected " + expectedDigest);
+        }
+
+        channel.truncate(length);
+        if (getRepository().isSyncEnabled()) {
+          channel.force(true);
+        }
+        channel.close();
+        refreshAttributesOnClose(digest);
+        return digest;
+      }
+
+      @Override
+      public void abort() {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          log.warn("Exception closing the file of item {}", id, e);
+        }
+        getRepository().abortStoring(FileRepositoryItem.this);
+        state = State.NEW;
+      }
+    };
+  }
+
+  private void refreshAttributesOnClose(MessageDigest contentDigest) throws IOException {
+    refreshAttributesOnClose(toHex(contentDigest.digest()));
+  }
+
+  private void refreshAttributesOnClose(String contentDigest) throws IOException {
+    // The metadata map is shared with the repository, so the digest is saved with it
+    setContentDigest(contentDigest);
+    getRepository().finishStoring(this);
+    getRepository().deduplicate(this);
     state = State.STORED;
     attributes.setContentLength(file.length());
   }
@@ -119,9 +279,23 @@ public class FileRepositoryItem extends AbstractRepositoryItem {
     return file;
   }
 
+  @Override
+  public File getLocalContentFile() {
+    return state == State.STORED ? file : null;
+  }
+
+  private FileSystemRepository getRepository() {
+    return (FileSystemRepository) repository;
+  }
+
   @Override
   public void setMetadata(Map<String, String> metadata) {
+    String contentState = this.metadata != null ? this.metadata.get(STATE_METADATA) : null;
+    if (contentState != null && !contentState.equals(metadata.get(STATE_METADATA))) {
+      metadata = new HashMap<>(metadata);
+      metadata.put(STATE_METADATA, contentState);
+    }
     super.setMetadata(metadata);
-    ((FileSystemRepository) repository).setMetadataForItem(this, metadata);
+    getRepository().setMetadataForItem(this, getMetadata());
   }
 }
@@ -0,0 +1,45 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Location of the files storing the repository items inside the folder of a
+ * {@link FileSystemRepository}.
+ */
+public interface FileSystemLayout {
+
+  /**
+   * Returns the name of the layout, as used in the configuration of the repository.
+   */
+  String getName();
+
+  /**
+   * Returns the file storing the item with the given id. The file and its parent folders may not
+   * exist yet.
+   */
+  File getFile(File baseFolder, String id);
+
+  /**
+   * Returns the ids of all the items stored in the folder. This visits the whole folder, so it is
+   * only meant to be used when migrating or initializing a repository.
+   */
+  List<String> findIds(File baseFolder);
+}
@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.kurento.commons.exception.KurentoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Offline migration of the folder of a {@link FileSystemRepository} to another layout. Files are
+ * moved, not copied, so the folder must not be in use by a repository while migrating. They are
+ * first moved to a staging folder, as the names of the shards can be the ids of flat items. If the
+ * migration is interrupted, it can be run again to move the remaining files.
+ *
+ * <p>
+ * Usage: {@code FileSystemLayoutMigration <repositoryFolder> <flat|sharded>}
+ * </p>
+ */
+public class FileSystemLayoutMigration {
+
+  private static final Logger log = LoggerFactory.getLogger(FileSystemLayoutMigration.class);
+
+  private static final String STAGING_FOLDER_PATH = "metadata/migration";
+
+  /**
+   * Moves the items stored in the folder to the given layout. Folders without descriptor are
+   * migrated from the flat layout.
+   *
+   * @return the number of items moved.
+   */
+  public static int migrate(File baseFolder, String targetLayoutName) {
+
+    File descriptorFile = new File(baseFolder, FileSystemRepository.DESCRIPTOR_FILE_PATH);
+    FileSystemRepositoryDescriptor descriptor = FileSystemRepositoryDescriptor.load(descriptorFile);
+
+    FileSystemLayout source = FileSystemRepository
+        .createLayout(descriptor != null ? descriptor.getLayout() : FlatFileSystemLayout.NAME);
+    FileSystemLayout target = FileSystemRepository.createLayout(targetLayoutName);
+
+    File stagingFolder = new File(baseFolder, STAGING_FOLDER_PATH);
+    FlatFileSystemLayout staging = new FlatFileSystemLayout();
+
+    List<String> ids = source.findIds(baseFolder);
+
+    int moved = 0;
+    if (!source.getName().equals(target.getName())) {
+
+      log.info("Migrating {} items in {} from {} to {} layout", ids.size(), baseFolder,
+          source.getName(), target.getName());
+
+      stagingFolder.mkdirs();
+      for (String id : ids) {
+        File from = source.getFile(baseFolder, id);
+        move(id, from, staging.getFile(stagingFolder, id));
+        deleteEmptyFolders(from.getParentFile(), baseFolder);
+      }
+    }
+
+    // Also contains the items staged by an interrupted migration
+    List<String> stagedIds = staging.findIds(stagingFolder);
+    for (String id : stagedIds) {
+      move(id, staging.getFile(stagingFolder, id), target.getFile(baseFolder, id));
+      moved++;
+      if (moved % 100000 == 0) {
+        log.info("{} items moved", moved);
+      }
+    }
+    stagingFolder.delete();
+
+    long reservedId = Math.max(FileSystemRepository.findLastNumericId(ids),
+        FileSystemRepository.findLastNumericId(stagedIds));
+    if (descriptor != null) {
+      reservedId = Math.max(reservedId, descriptor.getReservedId());
+    }
+
+    // The descriptor is written last, so an interrupted migration is resumed from the old layout
+    new FileSystemRepositoryDescriptor(descriptorFile, target.getName(), reservedId).save();
+
+    log.info("Migration of {} to {} layout finished. {} items moved", baseFolder,
+        target.getName(), moved);
+
+    return moved;
+  }
+
+  private static void move(String id, File from, File to) {
+    try {
+      to.getParentFile().mkdirs();
+      Files.move(from.toPath(), to.toPath());
+    } catch (IOException e) {
+      throw new KurentoException("Exception moving item " + id + " to " + to, e);
+    }
+  }
+
+  private static void deleteEmptyFolders(File folder, File baseFolder) {
+    while (!folder.equals(baseFolder)) {
+      String[] files = folder.list();
+      if (files == null || files.length > 0 || !folder.delete()) {
+        return;
+      }
+      folder = folder.getParentFile();
+    }
+  }
+
+  public static void main(String[] args) {
+
+    if (args.length != 2) {
+      System.err.println("Usage: " + FileSystemLayoutMigration.class.getName()
+          + " <repositoryFolder> <flat|sharded>");
+      System.exit(1);
+    }
+
+    migrate(new File(args[0]), args[1]);
+  }
+}
@@ -18,11 +18,24 @@
 package org.kurento.repository.internal.repoimpl.filesystem;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -31,7 +44,9 @@ import org.kurento.commons.exception.KurentoException;
 import org.kurento.repository.DuplicateItemException;
 import org.kurento.repository.RepositoryApiConfiguration;
 import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItemPage;
 import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.ContinuationTokens;
 import org.kurento.repository.internal.repoimpl.RepositoryWithHttp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,27 +58,184 @@ public class FileSystemRepository implements RepositoryWithHttp {
 
   private static final String ITEMS_METADATA_FILE_PATH = "metadata/metadata.json";
 
+  static final String DESCRIPTOR_FILE_PATH = "metadata/repository.json";
+
+  private static final String CONTENT_FOLDER_PATH = "metadata/content";
+
+  private static final String STORING_FOLDER_PATH = "metadata/storing";
+
+  private static final String QUARANTINE_FOLDER_PATH = "metadata/quarantine";
+
   @Autowired
   private RepositoryApiConfiguration config;
 
   private File baseFolder;
 
-  private int nextFreeFileNumber = 1;
-  private boolean firstIdRequest = true;
+  private FileSystemLayout layout;
+
+  private FileSystemRepositoryDescriptor descriptor;
+
+  private long lastId;
 
   private ItemsMetadata metadata;
 
+  private File contentFolder;
+
+  private File storingFolder;
+
+  private final Object contentLock = new Object();
+
   @Autowired
   private RepositoryHttpManager httpManager;
 
+  public FileSystemRepository() {
+  }
+
+  public FileSystemRepository(RepositoryApiConfiguration config,
+      RepositoryHttpManager httpManager) {
+    this.config = config;
+    this.httpManager = httpManager;
+    init();
+  }
+
   @PostConstruct
   public void init() {
     log.debug("Invoked post construct init method");
 
     baseFolder = new File(config.getFileSystemFolder());
     checkFolder(baseFolder);
-    calculateNextId(true);
-    metadata = new ItemsMetadata(new File(baseFolder, ITEMS_METADATA_FILE_PATH));
+    layout = createLayout(config.getFileSystemLayout());
+    loadDescriptor();
+    metadata = new ItemsMetadata(new File(baseFolder, ITEMS_METADATA_FILE_PATH),
+        config.isFileSystemSync());
+    contentFolder = new File(baseFolder, CONTENT_FOLDER_PATH);
+    storingFolder = new File(baseFolder, STORING_FOLDER_PATH);
+    recoverIncompleteItems();
+  }
+
+  /**
+   * Restores a consistent state of the items that were being stored when the repository stopped
+   * abruptly. The content of an item is written aside in the storing folder and renamed to its
+   * final location once it is complete and synchronized with the disk, so the files found in the
+   * storing folder are incomplete: they are quarantined or deleted, and their items are back in
+   * state NEW. Items recorded as storing whose content was already renamed are complete.
+   */
+  private void recoverIncompleteItems() {
+
+    boolean changed = false;
+
+    Iterator<Entry<String, Map<String, String>>> it = metadata.iterateFrom(null);
+    while (it.hasNext()) {
+      Entry<String, Map<String, String>> itemInfo = it.next();
+      Map<String, String> itemMetadata = itemInfo.getValue();
+      if (!FileRepositoryItem.STORING.equals(itemMetadata.get(FileRepositoryItem.STATE_METADATA))) {
+        continue;
+      }
+      if (getFileForId(itemInfo.getKey()).exists()) {
+        itemMetadata.put(FileRepositoryItem.STATE_METADATA, FileRepositoryItem.STORED);
+      } else {
+        itemMetadata.remove(FileRepositoryItem.STATE_METADATA);
+      }
+      changed = true;
+    }
+
+    final List<Path> incompleteFiles = new ArrayList<>();
+    if (storingFolder.exists()) {
+      try {
+        Files.walkFileTree(storingFolder.toPath(), new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            incompleteFiles.add(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      } catch (IOException e) {
+        throw new KurentoException("Error looking for incomplete items in " + storingFolder, e);
+      }
+    }
+
+    Path quarantinePath = new File(baseFolder, QUARANTINE_FOLDER_PATH).toPath();
+    for (Path incompleteFile : incompleteFiles) {
+      Path relativePath = storingFolder.toPath().relativize(incompleteFile);
+      try {
+        if (config.isFileSystemQuarantine()) {
+          Path target = quarantinePath.resolve(relativePath + "." + System.currentTimeMillis());
+          Files.createDirectories(target.getParent());
+          Files.move(incompleteFile, target);
+          log.warn("Incomplete content of item {} moved to {}", relativePath, target);
+        } else {
+          Files.delete(incompleteFile);
+          log.warn("Incomplete content of item {} deleted", relativePath);
+        }
+      } catch (IOException e) {
+        throw new KurentoException("Error recovering incomplete item " + relativePath, e);
+      }
+    }
+
+    if (changed) {
+      metadata.save();
+    }
+  }
+
+  public static FileSystemLayout createLayout(String name) {
+    if (FlatFileSystemLayout.NAME.equalsIgnoreCase(name)) {
+      return new FlatFileSystemLayout();
+    } else if (ShardedFileSystemLayout.NAME.equalsIgnoreCase(name)) {
+      return new ShardedFileSystemLayout();
+    } else {
+      throw new KurentoException(
+          "Unrecognized file system layout \"" + name + "\". Must be flat or sharded");
+    }
+  }
+
+  private void loadDescriptor() {
+
+    File descriptorFile = new File(baseFolder, DESCRIPTOR_FILE_PATH);
+    descriptor = FileSystemRepositoryDescriptor.load(descriptorFile);
+
+    if (descriptor != null) {
+
+      checkLayout(descriptor.getLayout());
+      // Unused ids of the last reserved block are skipped
+      lastId = descriptor.getReservedId();
+
+    } else {
+
+      // Repositories without descriptor were created with the flat layout. Their files are listed
+      // only once, to find the last id in use
+      List<String> ids = layout.findIds(baseFolder);
+      if (!(layout instanceof FlatFileSystemLayout)
+          && !new FlatFileSystemLayout().findIds(baseFolder).isEmpty()) {
+        checkLayout(FlatFileSystemLayout.NAME);
+      }
+
+      lastId = findLastNumericId(ids);
+      descriptor = new FileSystemRepositoryDescriptor(descriptorFile, layout.getName(), lastId);
+      descriptor.save();
+    }
+
+    log.debug("Repository folder {} with {} layout and last id {}", baseFolder, layout.getName(),
+        lastId);
+  }
+
+  private void checkLayout(String folderLayout) {
+    if (!layout.getName().equalsIgnoreCase(folderLayout)) {
+      throw new KurentoException("The repository folder \"" + baseFolder.getAbsolutePath()
+          + "\" uses the " + folderLayout + " layout, but " + layout.getName()
+          + " is configured. Migrate it with " + FileSystemLayoutMigration.class.getName());
+    }
+  }
+
+  static long findLastNumericId(List<String> ids) {
+    long last = 0;
+    for (String id : ids) {
+      try {
+        last = Math.max(last, Long.parseLong(id));
+      } catch (NumberFormatException e) {
+        // Ids given by the user are not generated by the repository
+      }
+    }
+    return last;
   }
 
   @PreDestroy
@@ -72,27 +244,25 @@ public class FileSystemRepository implements RepositoryWithHttp {
     this.metadata.save();
   }
 
-  private synchronized String calculateNextId(boolean init) {
-    // Very naive unique identifier system
-    if (firstIdRequest) {
-      firstIdRequest = false;
-      while (true) {
-        File file = getFileForId(Integer.toString(nextFreeFileNumber));
-        if (file.exists()) {
-          log.debug("File with id {} already exists, trying next value", nextFreeFileNumber);
-          nextFreeFileNumber++;
-        } else {
-          if (init) {
-            nextFreeFileNumber--;
-          }
-          break;
-        }
+  private synchronized String calculateNextId() {
+    while (true) {
+
+      lastId++;
+
+      if (lastId > descriptor.getReservedId()) {
+        descriptor.setReservedId(lastId + FileSystemRepositoryDescriptor.ID_BLOCK_SIZE - 1);
+        descriptor.save();
+      }
+
+      String id = Long.toString(lastId);
+      // Items created with a given id can take numeric ids too
+      if (getFileForId(id).exists() || getStoringFile(id).exists()) {
+        log.debug("File with id {} already exists, trying next value", id);
+      } else {
+        log.debug("Returning next free ID {}", id);
+        return id;
       }
-    } else {
-      nextFreeFileNumber++;
     }
-    log.debug("Returning next free ID {}", nextFreeFileNumber);
-    return Integer.toString(nextFreeFileNumber);
   }
 
   private void checkFolder(File folder) {
@@ -115,7 +285,7 @@ public class FileSystemRepository implements RepositoryWithHttp {
   public RepositoryItem findRepositoryItemById(String id) {
 
     File file = getFileForId(id);
-    if (!file.exists()) {
+    if (!file.exists() && !getStoringFile(id).exists()) {
       throw new NoSuchElementException("The repository item with id \"" + id + "\" does not exist");
     }
 
@@ -124,7 +294,7 @@ public class FileSystemRepository implements RepositoryWithHttp {
 
   @Override
   public RepositoryItem createRepositoryItem() {
-    String id = calculateNextId(false);
+    String id = calculateNextId();
     return new FileRepositoryItem(this, getFileForId(id), id, metadata.loadMetadata(id));
   }
 
@@ -133,7 +303,7 @@ public class FileSystemRepository implements RepositoryWithHttp {
 
     File file = getFileForId(id);
 
-    if (file.exists()) {
+    if (file.exists() || getStoringFile(id).exists()) {
       throw new DuplicateItemException(id);
     }
 
@@ -150,6 +320,68 @@ public class FileSystemRepository implements RepositoryWithHttp {
     return createItemsForIds(metadata.findByAttRegex(attributeName, regex));
   }
 
+  @Override
+  public RepositoryItemPage findRepositoryItems(Map<String, String> attributes, boolean regex,
+      String continuationToken, int limit) {
+
+    ContinuationTokens.checkLimit(limit);
+
+    Map<String, Pattern> patterns = new HashMap<>();
+    if (regex && attributes != null) {
+      for (Entry<String, String> attribute : attributes.entrySet()) {
+        patterns.put(attribute.getKey(), Pattern.compile(attribute.getValue()));
+      }
+    }
+
+    List<RepositoryItem> items = new ArrayList<>();
+
+    Iterator<Entry<String, Map<String, String>>> it =
+        metadata.iterateFrom(ContinuationTokens.decode(continuationToken));
+
+    while (it.hasNext() && items.size() < limit) {
+
+      Entry<String, Map<String, String>> itemInfo = it.next();
+      if (!matches(itemInfo.getValue(), attributes, regex ? patterns : null)) {
+        continue;
+      }
+
+      // Metadata is also kept for items created but not stored yet
+      String id = itemInfo.getKey();
+      File file = getFileForId(id);
+      if (file.exists()) {
+        items.add(new FileRepositoryItem(this, file, id, itemInfo.getValue()));
+      }
+    }
+
+    String nextToken = null;
+    if (items.size() == limit && it.hasNext()) {
+      nextToken = ContinuationTokens.encode(items.get(items.size() - 1).getId());
+    }
+
+    return new RepositoryItemPage(items, nextToken);
+  }
+
+  private static boolean matches(Map<String, String> itemMetadata, Map<String, String> attributes,
+      Map<String, Pattern> patterns) {
+
+    if (attributes == null || attributes.isEmpty()) {
+      return true;
+    }
+
+    for (Entry<String, String> attribute : attributes.entrySet()) {
+      String value = itemMetadata.get(attribute.getKey());
+      if (value == null) {
+        continue;
+      }
+      if (patterns != null ? patterns.get(attribute.getKey()).matcher(value).matches()
+          : value.equals(attribute.getValue())) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
   private List<RepositoryItem> createItemsForIds(
       List<Entry<String, Map<String, String>>> itemsInfo) {
     List<RepositoryItem> items = new ArrayList<>();
@@ -161,7 +393,71 @@ public class FileSystemRepository implements RepositoryWithHttp {
   }
 
   private File getFileForId(String id) {
-    return new File(baseFolder, id);
+    return layout.getFile(baseFolder, id);
+  }
+
+  /**
+   * Returns the file where the content of an item is written until it is complete.
+   */
+  File getStoringFile(String id) {
+    return new File(storingFolder, id);
+  }
+
+  /**
+   * Records in the metadata journal that the content of an item is being written to its storing
+   * file, creating the folders of the file.
+   */
+  void startStoring(FileRepositoryItem item) {
+    item.getMetadata().put(FileRepositoryItem.STATE_METADATA, FileRepositoryItem.STORING);
+    metadata.recordEntries(item.getId(),
+        Collections.singletonMap(FileRepositoryItem.STATE_METADATA, FileRepositoryItem.STORING));
+    File storingFile = getStoringFile(item.getId());
+    storingFile.getParentFile().mkdirs();
+  }
+
+  /**
+   * Moves the complete content of an item, already synchronized with the disk, from its storing
+   * file to its final location and records the transition in the metadata journal. The rename is
+   * atomic, so the item file is either missing or complete.
+   */
+  void finishStoring(FileRepositoryItem item) throws IOException {
+    File file = item.getFile();
+    file.getParentFile().mkdirs();
+    Files.move(getStoringFile(item.getId()).toPath(), file.toPath(),
+        StandardCopyOption.ATOMIC_MOVE);
+    if (config.isFileSystemSync()) {
+      syncFolder(file.getParentFile());
+    }
+    // All the metadata of the item is recorded, so that it survives the crash too
+    item.getMetadata().put(FileRepositoryItem.STATE_METADATA, FileRepositoryItem.STORED);
+    metadata.recordEntries(item.getId(), new HashMap<>(item.getMetadata()));
+  }
+
+  /**
+   * Discards the content of an item that was being written, leaving it in state NEW.
+   */
+  void abortStoring(FileRepositoryItem item) {
+    File storingFile = getStoringFile(item.getId());
+    if (storingFile.exists() && !storingFile.delete()) {
+      log.warn("Storing file {} of item {} can't be deleted", storingFile, item.getId());
+    }
+    item.getMetadata().remove(FileRepositoryItem.STATE_METADATA);
+  }
+
+  boolean isSyncEnabled() {
+    return config.isFileSystemSync();
+  }
+
+  /**
+   * Synchronizes the entries of a folder with the disk, so that the files created or renamed in it
+   * survive a crash. Ignored where folders can't be synchronized.
+   */
+  static void syncFolder(File folder) {
+    try (FileChannel channel = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      log.debug("Folder {} can't be synchronized", folder, e);
+    }
   }
 
   @Override
@@ -174,10 +470,77 @@ public class FileSystemRepository implements RepositoryWithHttp {
     FileRepositoryItem fileItem = (FileRepositoryItem) item;
     httpManager.disposeHttpRepoItemElemByItemId(item, "Repository Item removed");
     File file = fileItem.getFile();
-    boolean success = file.delete();
-    if (!success) {
-      throw new KurentoException("The file can't be deleted");
+    String contentDigest = fileItem.getContentDigest();
+    synchronized (contentLock) {
+      // Items being stored only have the storing file
+      boolean success = file.delete() || getStoringFile(item.getId()).delete();
+      if (!success) {
+        throw new KurentoException("The file can't be deleted");
+      }
+      if (contentDigest != null) {
+        releaseContent(contentDigest);
+      }
     }
+    metadata.removeMetadata(item.getId());
+  }
+
+  /**
+   * Shares the content of a stored item with the items that have the same digest, when
+   * de-duplication is enabled; otherwise it does nothing. If a previous item has the same digest,
+   * the file of the item is replaced by a hard link to its content. If not, the content of the item
+   * is linked from the content folder, where it will be found by the next items.
+   */
+  void deduplicate(FileRepositoryItem item) {
+
+    if (!config.isFileSystemDeduplication()) {
+      return;
+    }
+
+    Path itemPath = item.getFile().toPath();
+    Path contentPath = getContentFile(item.getContentDigest()).toPath();
+
+    synchronized (contentLock) {
+      try {
+        if (Files.exists(contentPath)) {
+          // The link is created aside and renamed, so that the item file is never missing
+          Path linkPath =
+              contentPath.resolveSibling(contentPath.getFileName() + "." + item.getId());
+          Files.createLink(linkPath, contentPath);
+          Files.move(linkPath, itemPath, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+          log.debug("Content of item {} shared with previous items", item.getId());
+        } else {
+          Files.createDirectories(contentPath.getParent());
+          Files.createLink(contentPath, itemPath);
+        }
+      } catch (IOException | UnsupportedOperationException e) {
+        log.warn("Content of item {} can't be de-duplicated", item.getId(), e);
+      }
+    }
+  }
+
+  /**
+   * Deletes the content with the given digest when no item links to it anymore.
+   */
+  private void releaseContent(String contentDigest) {
+
+    Path contentPath = getContentFile(contentDigest).toPath();
+    if (!Files.exists(contentPath)) {
+      return;
+    }
+
+    try {
+      int links = (Integer) Files.getAttribute(contentPath, "unix:nlink");
+      if (links <= 1) {
+        Files.delete(contentPath);
+      }
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      log.warn("Links to content {} can't be counted", contentDigest, e);
+    }
+  }
+
+  private File getContentFile(String contentDigest) {
+    return new File(new File(contentFolder, contentDigest.substring(0, 2)), contentDigest);
   }
 
   public void setMetadataForItem(FileRepositoryItem fileRepositoryItem,
@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.kurento.commons.exception.KurentoException;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Properties of a {@link FileSystemRepository} stored in its folder, next to the items metadata:
+ * the layout of its files and the highest item id reserved so far. Ids are reserved in blocks, so
+ * the descriptor is written once every {@link #ID_BLOCK_SIZE} new items and the next id is known
+ * on startup without inspecting the stored files.
+ */
+public class FileSystemRepositoryDescriptor {
+
+  public static final int ID_BLOCK_SIZE = 1000;
+
+  private static final String LAYOUT_PROPERTY = "layout";
+  private static final String RESERVED_ID_PROPERTY = "reservedId";
+
+  private final File file;
+  private String layout;
+  private long reservedId;
+
+  public FileSystemRepositoryDescriptor(File file, String layout, long reservedId) {
+    this.file = file;
+    this.layout = layout;
+    this.reservedId = reservedId;
+  }
+
+  /**
+   * Loads the descriptor stored in the given file. Returns null if it doesn't exist, as in
+   * repositories created before descriptors were introduced.
+   */
+  public static FileSystemRepositoryDescriptor load(File file) {
+
+    if (!file.exists()) {
+      return null;
+    }
+
+    try {
+      String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+      JsonObject json = new Gson().fromJson(content, JsonObject.class);
+      return new FileSystemRepositoryDescriptor(file, json.get(LAYOUT_PROPERTY).getAsString(),
+          json.get(RESERVED_ID_PROPERTY).getAsLong());
+    } catch (Exception e) {
+      throw new KurentoException("Exception reading repository descriptor " + file, e);
+    }
+  }
+
+  public String getLayout() {
+    return layout;
+  }
+
+  public void setLayout(String layout) {
+    this.layout = layout;
+  }
+
+  public long getReservedId() {
+    return reservedId;
+  }
+
+  public void setReservedId(long reservedId) {
+    this.reservedId = reservedId;
+  }
+
+  /**
+   * Writes the descriptor. The previous content is replaced atomically, so a crash while writing
+   * doesn't lose the reserved ids.
+   */
+  public void save() {
+
+    JsonObject json = new JsonObject();
+    json.addProperty(LAYOUT_PROPERTY, layout);
+    json.addProperty(RESERVED_ID_PROPERTY, reservedId);
+
+    try {
+      file.getParentFile().mkdirs();
+      File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+      Files.write(tmpFile.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new KurentoException("Exception writing repository descriptor " + file, e);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All items are stored directly in the folder of the repository, in a file named as its id.
+ */
+public class FlatFileSystemLayout implements FileSystemLayout {
+
+  public static final String NAME = "flat";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public File getFile(File baseFolder, String id) {
+    return new File(baseFolder, id);
+  }
+
+  @Override
+  public List<String> findIds(File baseFolder) {
+
+    List<String> ids = new ArrayList<>();
+
+    File[] files = baseFolder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isFile()) {
+          ids.add(file.getName());
+        }
+      }
+    }
+
+    return ids;
+  }
+}
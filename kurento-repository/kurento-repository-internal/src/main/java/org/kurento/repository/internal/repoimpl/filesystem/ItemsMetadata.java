@@ -19,16 +19,22 @@ package org.kurento.repository.internal.repoimpl.filesystem;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -41,22 +47,45 @@ public class ItemsMetadata {
 
   private final Logger log = LoggerFactory.getLogger(ItemsMetadata.class);
 
+
   // TODO Avoid potential memory leaks using Google's MapMaker
-  private ConcurrentMap<String, Map<String, String>> itemsMetadata;
+  // Sorted by id, so that items can be paginated
+  private ConcurrentNavigableMap<String, Map<String, String>> itemsMetadata;
 
   private final File itemsMetadataFile;
 
+  private final boolean sync;
+
+  // Entries recorded since the last save, guarded by this
+  private final File journalFile;
+  private FileOutputStream journalOutput;
+
   public ItemsMetadata(File itemsMetadataFile) {
+    this(itemsMetadataFile, true);
+  }
+
+  /**
+   * Loads the metadata of the items from the given file.
+   *
+   * @param sync
+   *          true to synchronize with the disk the metadata and the journal when they are written
+   */
+  public ItemsMetadata(File itemsMetadataFile, boolean sync) {
     this.itemsMetadataFile = itemsMetadataFile;
+    this.sync = sync;
+    this.journalFile = new File(itemsMetadataFile.getPath() + ".journal");
     try {
       loadItemsMetadata();
     } catch (IOException e) {
       log.warn("Exception while loading items metadata", e);
     }
+    if (replayJournal()) {
+      save();
+    }
   }
 
   private void loadItemsMetadata() throws IOException {
-    itemsMetadata = new ConcurrentHashMap<>();
+    itemsMetadata = new ConcurrentSkipListMap<>();
     DBObject contents = (DBObject) JSON.parse(loadFileAsString());
     if (contents != null) {
       for (String key : contents.keySet()) {
@@ -92,6 +121,75 @@ public class ItemsMetadata {
     return sb.toString();
   }
 
+  /**
+   * Applies the entries recorded in the journal after the last save of the metadata. The last line
+   * is ignored if it was not completely written.
+   *
+   * @return true if some entry was applied
+   */
+  private boolean replayJournal() {
+
+    if (!journalFile.exists()) {
+      return false;
+    }
+
+    boolean applied = false;
+    try (BufferedReader br = new BufferedReader(new FileReader(journalFile))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        try {
+          DBObject record = (DBObject) JSON.parse(line);
+          String id = (String) record.get("id");
+          if (Boolean.TRUE.equals(record.get("removed"))) {
+            itemsMetadata.remove(id);
+          } else {
+            DBObject entries = (DBObject) record.get("entries");
+            Map<String, String> metadata = loadMetadata(id);
+            for (String key : entries.keySet()) {
+              metadata.put(key, entries.get(key).toString());
+            }
+          }
+          applied = true;
+        } catch (RuntimeException e) {
+          log.warn("Incomplete entry of the metadata journal ignored: {}", line);
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Exception while loading metadata journal", e);
+    }
+    return applied;
+  }
+
+  /**
+   * Puts some entries in the metadata of an item and records them durably in the journal, without
+   * saving the metadata of all the items. The journal is applied when the metadata is loaded, and
+   * cleared when it is saved.
+   */
+  public synchronized void recordEntries(String id, Map<String, String> entries) {
+
+    loadMetadata(id).putAll(entries);
+
+    Map<String, Object> record = new HashMap<>();
+    record.put("id", id);
+    record.put("entries", entries);
+    writeJournalRecord(record);
+  }
+
+  private void writeJournalRecord(Map<String, Object> record) {
+    try {
+      if (journalOutput == null) {
+        journalFile.getParentFile().mkdirs();
+        journalOutput = new FileOutputStream(journalFile, true);
+      }
+      journalOutput.write((JSON.serialize(record) + "\n").getBytes(StandardCharsets.UTF_8));
+      if (sync) {
+        journalOutput.getFD().sync();
+      }
+    } catch (IOException e) {
+      log.error("Exception writing metadata journal", e);
+    }
+  }
+
   public synchronized void setMetadataForId(String id, Map<String, String> metadata) {
     itemsMetadata.put(id, metadata);
   }
@@ -105,6 +203,29 @@ public class ItemsMetadata {
     return metadata;
   }
 
+  /**
+   * Removes the metadata of an item and records the removal in the journal, so that the entries
+   * recorded before for the item are not applied again when the metadata is loaded.
+   */
+  public synchronized void removeMetadata(String id) {
+    itemsMetadata.remove(id);
+
+    Map<String, Object> record = new HashMap<>();
+    record.put("id", id);
+    record.put("removed", true);
+    writeJournalRecord(record);
+  }
+
+  /**
+   * Iterates the metadata of the items in order of id, starting after the given one (or from the
+   * first one if it is null). The iteration reflects concurrent changes.
+   */
+  public Iterator<Entry<String, Map<String, String>>> iterateFrom(String afterId) {
+    Map<String, Map<String, String>> items =
+        afterId != null ? itemsMetadata.tailMap(afterId, false) : itemsMetadata;
+    return items.entrySet().iterator();
+  }
+
   public List<Entry<String, Map<String, String>>> findByAttValue(String attributeName,
       String value) {
 
@@ -137,19 +258,47 @@ public class ItemsMetadata {
     return list;
   }
 
-  public void save() {
+  /**
+   * Saves the metadata of all the items atomically: it is written to a temporary file, synchronized
+   * with the disk and renamed over the previous one, so that a crash never leaves it truncated.
+   */
+  public synchronized void save() {
 
+    Map<String, Map<String, String>> snapshot = new TreeMap<>();
+    for (Entry<String, Map<String, String>> item : itemsMetadata.entrySet()) {
+      snapshot.put(item.getKey(), new HashMap<>(item.getValue()));
+    }
+
+    File tempFile = new File(itemsMetadataFile.getPath() + ".tmp");
     try {
-      if (!itemsMetadataFile.exists()) {
-        itemsMetadataFile.getParentFile().mkdirs();
-        itemsMetadataFile.createNewFile();
+      itemsMetadataFile.getParentFile().mkdirs();
+      try (FileOutputStream output = new FileOutputStream(tempFile)) {
+        PrintWriter writer = new PrintWriter(output);
+        writer.print(JSON.serialize(snapshot));
+        writer.flush();
+        if (sync) {
+          output.getFD().sync();
+        }
       }
-      try (PrintWriter writer = new PrintWriter(itemsMetadataFile)) {
-        String content = JSON.serialize(itemsMetadata);
-        writer.print(content);
+      Files.move(tempFile.toPath(), itemsMetadataFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      if (sync) {
+        FileSystemRepository.syncFolder(itemsMetadataFile.getParentFile());
       }
     } catch (IOException e) {
       log.error("Exception writing metadata file", e);
+      return;
+    }
+
+    // The entries of the journal are in the saved metadata
+    try {
+      if (journalOutput != null) {
+        journalOutput.close();
+        journalOutput = null;
+      }
+      Files.deleteIfExists(journalFile.toPath());
+    } catch (IOException e) {
+      log.warn("Exception clearing metadata journal", e);
     }
   }
 }
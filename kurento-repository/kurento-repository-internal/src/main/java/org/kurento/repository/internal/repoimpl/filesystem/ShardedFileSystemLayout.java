@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.filesystem;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Items are spread in two levels of sub-folders named after the hash of their ids, like
+ * {@code 3f/a0/<id>}. With 65536 leaf folders, a repository with millions of items keeps small
+ * directories and lookups don't degrade with its size.
+ */
+public class ShardedFileSystemLayout implements FileSystemLayout {
+
+  public static final String NAME = "sharded";
+
+  private static final Pattern SHARD_NAME = Pattern.compile("[0-9a-f]{2}");
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public File getFile(File baseFolder, String id) {
+    int hash = hash(id);
+    File shard = new File(new File(baseFolder, shardName(hash)), shardName(hash >>> 8));
+    return new File(shard, id);
+  }
+
+  @Override
+  public List<String> findIds(File baseFolder) {
+
+    List<String> ids = new ArrayList<>();
+
+    for (File shard : listShards(baseFolder)) {
+      for (File subShard : listShards(shard)) {
+        File[] files = subShard.listFiles();
+        if (files != null) {
+          for (File file : files) {
+            if (file.isFile()) {
+              ids.add(file.getName());
+            }
+          }
+        }
+      }
+    }
+
+    return ids;
+  }
+
+  private static List<File> listShards(File folder) {
+
+    List<File> shards = new ArrayList<>();
+
+    File[] files = folder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory() && SHARD_NAME.matcher(file.getName()).matches()) {
+          shards.add(file);
+        }
+      }
+    }
+
+    return shards;
+  }
+
+  private static String shardName(int hash) {
+    String name = Integer.toHexString(hash & 0xff);
+    return name.length() == 1 ? "0" + name : name;
+  }
+
+  private static int hash(String id) {
+    // Sequential ids have close hash codes, so their bits are mixed to spread them evenly
+    int hash = id.hashCode();
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+}
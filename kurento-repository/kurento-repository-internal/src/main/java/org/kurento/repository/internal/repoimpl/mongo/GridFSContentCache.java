@@ -0,0 +1,263 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository.internal.repoimpl.mongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.commons.exception.KurentoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-through cache of GridFS content in a local folder, bounded in size and evicting the least
+ * recently used items. Each item is downloaded once, even with concurrent readers, and its cached
+ * copy is discarded when the version of the GridFS file (upload date and md5) changes. The cached
+ * files can be seeked without reading the skipped chunks from Mongo.
+ *
+ * <p>
+ * The folder is dedicated to the cache: it is emptied when the cache is created.
+ * </p>
+ */
+public class GridFSContentCache {
+
+  /**
+   * Content of an item in GridFS, read when it is not in the cache.
+   */
+  public interface ContentSource {
+
+    InputStream openStream() throws IOException;
+  }
+
+  private static class CachedContent {
+
+    private final File file;
+    private final String version;
+    private final long length;
+
+    CachedContent(File file, String version, long length) {
+      this.file = file;
+      this.version = version;
+      this.length = length;
+    }
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(GridFSContentCache.class);
+
+  private final File folder;
+  private final long maxSize;
+
+  // Access ordered, so the first entry is the least recently used
+  private final LinkedHashMap<String, CachedContent> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final ConcurrentMap<String, FutureTask<CachedContent>> loads = new ConcurrentHashMap<>();
+  private final AtomicLong fileCounter = new AtomicLong();
+  private long size;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong evictedBytes = new AtomicLong();
+
+  public GridFSContentCache(File folder, long maxSize) {
+    this.folder = folder;
+    this.maxSize = maxSize;
+
+    if (!folder.exists() && !folder.mkdirs()) {
+      throw new KurentoException("Cache folder " + folder.getAbsolutePath() + " can't be created");
+    }
+    File[] files = folder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isFile() && !file.delete()) {
+          log.warn("Stale cache file {} can't be deleted", file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the local file with the content of the item, downloading it from the source if it is
+   * not cached or its cached version is outdated. Returns null if the content doesn't fit in the
+   * cache or can't be downloaded, so that it is read from GridFS.
+   *
+   * @param id
+   *          id of the item
+   * @param version
+   *          version of the content, that changes when the item is stored again
+   * @param length
+   *          length of the content
+   * @param source
+   *          source of the content, read on cache misses
+   */
+  public File getFile(final String id, final String version, final long length,
+      final ContentSource source) {
+
+    if (length > maxSize) {
+      return null;
+    }
+
+    synchronized (this) {
+      CachedContent content = entries.get(id);
+      if (content != null) {
+        if (content.version.equals(version)) {
+          hits.incrementAndGet();
+          return content.file;
+        }
+        remove(id);
+      }
+    }
+
+    misses.incrementAndGet();
+
+    FutureTask<CachedContent> load = new FutureTask<>(new Callable<CachedContent>() {
+      @Override
+      public CachedContent call() throws IOException {
+        return load(id, version, length, source);
+      }
+    });
+
+    FutureTask<CachedContent> runningLoad = loads.putIfAbsent(id, load);
+    if (runningLoad == null) {
+      runningLoad = load;
+      try {
+        load.run();
+      } finally {
+        loads.remove(id, load);
+      }
+    }
+
+    try {
+      CachedContent content = runningLoad.get();
+      // A concurrent load of another version is not used
+      return content.version.equals(version) ? content.file : null;
+    } catch (ExecutionException e) {
+      log.warn("Content of item {} can't be cached", id, e.getCause());
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  private CachedContent load(String id, String version, long length, ContentSource source)
+      throws IOException {
+
+    // A load that finished after the entry was looked up may have cached this version already
+    synchronized (this) {
+      CachedContent content = entries.get(id);
+      if (content != null && content.version.equals(version)) {
+        return content;
+      }
+    }
+
+    File file = new File(folder, Long.toString(fileCounter.incrementAndGet()));
+    try (InputStream is = source.openStream()) {
+      Files.copy(is, file.toPath());
+    } catch (IOException e) {
+      deleteFile(file);
+      throw e;
+    }
+
+    CachedContent content = new CachedContent(file, version, file.length());
+
+    synchronized (this) {
+      remove(id);
+      entries.put(id, content);
+      size += content.length;
+      evict();
+    }
+
+    log.debug("Content of item {} cached in {} ({} bytes)", id, file, length);
+    return content;
+  }
+
+  private void evict() {
+
+    Iterator<Map.Entry<String, CachedContent>> it = entries.entrySet().iterator();
+    while (size > maxSize && it.hasNext()) {
+      Map.Entry<String, CachedContent> entry = it.next();
+      CachedContent content = entry.getValue();
+      it.remove();
+      size -= content.length;
+      // Open streams of evicted files can still be read in POSIX systems
+      deleteFile(content.file);
+      evictions.incrementAndGet();
+      evictedBytes.addAndGet(content.length);
+      log.debug("Content of item {} evicted from cache ({} bytes)", entry.getKey(), content.length);
+    }
+  }
+
+  /**
+   * Discards the cached content of an item, if any.
+   */
+  public synchronized void remove(String id) {
+    CachedContent content = entries.remove(id);
+    if (content != null) {
+      size -= content.length;
+      deleteFile(content.file);
+    }
+  }
+
+  private void deleteFile(File file) {
+    if (file.exists() && !file.delete()) {
+      log.warn("Cache file {} can't be deleted", file);
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  public long getEvictedBytes() {
+    return evictedBytes.get();
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+  public synchronized int getItemCount() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    return "GridFSContentCache [folder=" + folder + ", maxSize=" + maxSize + ", size=" + getSize()
+        + ", items=" + getItemCount() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+        + ", evictions=" + getEvictionCount() + "]";
+  }
+}
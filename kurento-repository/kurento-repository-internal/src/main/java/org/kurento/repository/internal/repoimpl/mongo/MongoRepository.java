@@ -17,23 +17,36 @@
 
 package org.kurento.repository.internal.repoimpl.mongo;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 
 import javax.annotation.PostConstruct;
 
+import org.bson.types.ObjectId;
 import org.kurento.repository.DuplicateItemException;
+import org.kurento.repository.RepositoryApiConfiguration;
 import org.kurento.repository.RepositoryItem;
+import org.kurento.repository.RepositoryItemPage;
 import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.repoimpl.ContinuationTokens;
 import org.kurento.repository.internal.repoimpl.RepositoryWithHttp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.gridfs.GridFS;
 import com.mongodb.gridfs.GridFSDBFile;
@@ -49,12 +62,50 @@ public class MongoRepository implements RepositoryWithHttp {
 
   private GridFS gridFS;
 
+  private GridFSContentCache contentCache;
+
+  @Autowired
+  private RepositoryApiConfiguration config;
+
   @Autowired
   private RepositoryHttpManager httpManager;
 
   @PostConstruct
   private void postConstruct() {
     gridFS = new GridFS(mongoTemplate.getDb());
+    if (config.getMongoCacheMaxSize() > 0) {
+      contentCache = new GridFSContentCache(new File(config.getMongoCacheFolder()),
+          config.getMongoCacheMaxSize());
+    }
+    removeOrphanChunks();
+  }
+
+  /**
+   * Removes the chunks of the items that were being stored when the repository stopped. GridFS
+   * writes the files document of an item only after all its chunks, so an item whose content is
+   * incomplete is never found and its chunks are left without files document. Chunks written
+   * during the expiration time of the multipart uploads are kept, as they may belong to uploads of
+   * other servers still in progress.
+   */
+  private void removeOrphanChunks() {
+
+    DBCollection chunks = gridFS.getDB().getCollection(gridFS.getBucketName() + ".chunks");
+    ObjectId recentChunks =
+        new ObjectId(new Date(System.currentTimeMillis() - config.getMultipartUploadExpiration()));
+
+    @SuppressWarnings("unchecked")
+    List<Object> fileIds = chunks.distinct("files_id",
+        new BasicDBObject("_id", new BasicDBObject("$lt", recentChunks)));
+
+    for (Object fileId : fileIds) {
+      if (gridFS.findOne(new BasicDBObject("_id", fileId)) != null || chunks.findOne(
+          new BasicDBObject("files_id", fileId).append("_id", new BasicDBObject("$gte",
+              recentChunks))) != null) {
+        continue;
+      }
+      chunks.remove(new BasicDBObject("files_id", fileId));
+      log.warn("Removed the chunks of incomplete item {}", fileId);
+    }
   }
 
   // TODO Define ways to let users access to low level mongo backend. I prefer
@@ -64,6 +115,13 @@ public class MongoRepository implements RepositoryWithHttp {
     return gridFS;
   }
 
+  /**
+   * Returns the local cache of GridFS content, or null if it is disabled.
+   */
+  public GridFSContentCache getContentCache() {
+    return contentCache;
+  }
+
   @Override
   public RepositoryItem findRepositoryItemById(String id) {
 
@@ -132,6 +190,9 @@ public class MongoRepository implements RepositoryWithHttp {
   public void remove(RepositoryItem item) {
     httpManager.disposeHttpRepoItemElemByItemId(item, "Repository Item removed");
     gridFS.remove(item.getId());
+    if (contentCache != null) {
+      contentCache.remove(item.getId());
+    }
   }
 
   @Override
@@ -150,6 +211,67 @@ public class MongoRepository implements RepositoryWithHttp {
     return findRepositoryItemsByQuery(query);
   }
 
+  @Override
+  public RepositoryItemPage findRepositoryItems(Map<String, String> attributes, boolean regex,
+      String continuationToken, int limit) {
+
+    ContinuationTokens.checkLimit(limit);
+
+    BasicDBList conditions = new BasicDBList();
+
+    String lastId = ContinuationTokens.decode(continuationToken);
+    if (lastId != null) {
+      conditions.add(new BasicDBObject("filename", new BasicDBObject("$gt", lastId)));
+    }
+
+    if (attributes != null && !attributes.isEmpty()) {
+      BasicDBList alternatives = new BasicDBList();
+      for (Entry<String, String> attribute : attributes.entrySet()) {
+        Object value = regex ? new BasicDBObject("$regex", attribute.getValue())
+            : attribute.getValue();
+        alternatives.add(new BasicDBObject("metadata." + attribute.getKey(), value));
+      }
+      conditions.add(new BasicDBObject("$or", alternatives));
+    }
+
+    DBObject query = conditions.isEmpty() ? new BasicDBObject()
+        : new BasicDBObject("$and", conditions);
+
+    // Only the names are read in the paginated query, to load the page with a single query
+    List<String> filenames = new ArrayList<>();
+    try (DBCursor cursor = gridFS.getFileList(query, new BasicDBObject("filename", 1))
+        .limit(limit + 1)) {
+      while (cursor.hasNext()) {
+        filenames.add((String) cursor.next().get("filename"));
+      }
+    }
+
+    boolean hasMore = filenames.size() > limit;
+    if (hasMore) {
+      filenames.remove(limit);
+    }
+
+    List<RepositoryItem> items = new ArrayList<>();
+    if (!filenames.isEmpty()) {
+      List<GridFSDBFile> files =
+          gridFS.find(new BasicDBObject("filename", new BasicDBObject("$in", filenames)));
+      Collections.sort(files, new Comparator<GridFSDBFile>() {
+        @Override
+        public int compare(GridFSDBFile f1, GridFSDBFile f2) {
+          return f1.getFilename().compareTo(f2.getFilename());
+        }
+      });
+      for (GridFSDBFile file : files) {
+        items.add(createRepositoryItem(file));
+      }
+    }
+
+    String nextToken =
+        hasMore ? ContinuationTokens.encode(filenames.get(filenames.size() - 1)) : null;
+
+    return new RepositoryItemPage(items, nextToken);
+  }
+
   private List<RepositoryItem> findRepositoryItemsByQuery(String query) {
     List<GridFSDBFile> files = gridFS.find((DBObject) JSON.parse(query));
 
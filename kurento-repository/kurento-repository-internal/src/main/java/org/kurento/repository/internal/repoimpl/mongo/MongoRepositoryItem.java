@@ -17,10 +17,18 @@
 
 package org.kurento.repository.internal.repoimpl.mongo;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -28,9 +36,13 @@ import java.util.Map.Entry;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.repository.RepositoryItemAttributes;
 import org.kurento.repository.internal.repoimpl.AbstractRepositoryItem;
+import org.kurento.repository.internal.repoimpl.MultipartContentWriter;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFS;
 import com.mongodb.gridfs.GridFSDBFile;
 import com.mongodb.gridfs.GridFSFile;
 import com.mongodb.gridfs.GridFSInputFile;
@@ -71,17 +83,60 @@ public class MongoRepositoryItem extends AbstractRepositoryItem {
   @Override
   public InputStream createInputStreamToRead() {
     checkState(State.STORED);
+
+    File cachedFile = getCachedContentFile();
+    if (cachedFile != null) {
+      try {
+        return new FileInputStream(cachedFile);
+      } catch (FileNotFoundException e) {
+        // Evicted from the cache meanwhile
+      }
+    }
+
     return ((GridFSDBFile) dbFile).getInputStream();
   }
 
+  /**
+   * Returns the copy of the content in the cache, if enabled. It is not served with the zero-copy
+   * path of the servlet container, that opens the file after the request is processed, when it may
+   * have been evicted already: the content is read from a stream opened while it is cached.
+   */
+  private File getCachedContentFile() {
+
+    GridFSContentCache contentCache = ((MongoRepository) repository).getContentCache();
+    if (contentCache == null || state != State.STORED) {
+      return null;
+    }
+
+    final GridFSDBFile storedFile = (GridFSDBFile) dbFile;
+    String version = storedFile.getUploadDate().getTime() + "-" + storedFile.getMD5();
+
+    return contentCache.getFile(getId(), version, storedFile.getLength(),
+        new GridFSContentCache.ContentSource() {
+          @Override
+          public InputStream openStream() {
+            return storedFile.getInputStream();
+          }
+        });
+  }
+
   @Override
   public OutputStream createOutputStreamToWrite() {
     checkState(State.NEW);
 
-    storingOutputStream = new FilterOutputStream(((GridFSInputFile) dbFile).getOutputStream()) {
+    final MessageDigest contentDigest = createContentDigest();
+    storingOutputStream = new FilterOutputStream(
+        new DigestOutputStream(((GridFSInputFile) dbFile).getOutputStream(), contentDigest)) {
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        // FilterOutputStream writes byte by byte
+        out.write(b, off, len);
+      }
 
       @Override
       public void close() throws IOException {
+        setContentDigest(contentDigest);
         putMetadataInGridFS(false);
         super.close();
         refreshAttributesOnClose();
@@ -91,6 +146,132 @@ public class MongoRepositoryItem extends AbstractRepositoryItem {
     return storingOutputStream;
   }
 
+  /**
+   * Writes each part as the GridFS chunks it spans, so the part size must be a multiple of the
+   * chunk size. When the upload is completed the chunks are composed into a GridFS file by creating
+   * its files document.
+   */
+  @Override
+  public MultipartContentWriter createMultipartContentWriter(final long partSize) {
+
+    checkState(State.NEW);
+
+    final GridFSInputFile inputFile = (GridFSInputFile) dbFile;
+    final long chunkSize = inputFile.getChunkSize();
+    if (partSize <= 0 || partSize % chunkSize != 0) {
+      throw new IllegalArgumentException(
+          "The part size must be a multiple of the GridFS chunk size " + chunkSize);
+    }
+
+    GridFS gridFS = ((MongoRepository) repository).getGridFS();
+    final DBCollection chunks = gridFS.getDB().getCollection(gridFS.getBucketName() + ".chunks");
+    final DBCollection files = gridFS.getDB().getCollection(gridFS.getBucketName() + ".files");
+    final Object fileId = inputFile.getId();
+
+    this.state = State.STORING;
+
+    return new MultipartContentWriter() {
+
+      @Override
+      public long getPartSize() {
+        return partSize;
+      }
+
+      @Override
+      public long writePart(long offset, InputStream input) throws IOException {
+
+        byte[] buffer = new byte[(int) chunkSize];
+        int n = (int) (offset / chunkSize);
+        long written = 0;
+        int length;
+        while ((length = readChunk(input, buffer)) > 0) {
+          byte[] data = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+          // Upserted, so that a part written again replaces its chunks
+          DBObject chunkId = new BasicDBObject("files_id", fileId).append("n", n);
+          chunks.update(chunkId, new BasicDBObject("files_id", fileId).append("n", n)
+              .append("data", data), true, false);
+          written += length;
+          n++;
+        }
+        return written;
+      }
+
+      @Override
+      public String complete(long length, String expectedDigest) throws IOException {
+
+        int numChunks = (int) ((length + chunkSize - 1) / chunkSize);
+
+        MessageDigest contentDigest = createContentDigest();
+        MessageDigest md5 = createMd5Digest();
+        int expectedN = 0;
+        long chunksLength = 0;
+        // Chunks of parts beyond the content are kept until it is validated
+        try (DBCursor cursor = chunks.find(new BasicDBObject("files_id", fileId)
+            .append("n", new BasicDBObject("$lt", numChunks))).sort(new BasicDBObject("n", 1))) {
+          for (DBObject chunk : cursor) {
+            int n = ((Number) chunk.get("n")).intValue();
+            byte[] data = (byte[]) chunk.get("data");
+            if (n != expectedN || n < numChunks - 1 && data.length != chunkSize) {
+              throw new IllegalArgumentException(
+                  "Chunk " + expectedN + " of the content is missing or incomplete");
+            }
+            contentDigest.update(data);
+            md5.update(data);
+            chunksLength += data.length;
+            expectedN++;
+          }
+        }
+        if (chunksLength != length) {
+          throw new IllegalArgumentException(
+              "Only " + chunksLength + " bytes of " + length + " have been written");
+        }
+
+        String digest = toHex(contentDigest.digest());
+        if (expectedDigest != null && !expectedDigest.equalsIgnoreCase(digest)) {
+          throw new IllegalArgumentException(
+              "Content digest " + digest + " doesn't match the expected " + expectedDigest);
+        }
+
+        chunks.remove(new BasicDBObject("files_id", fileId).append("n",
+            new BasicDBObject("$gte", numChunks)));
+
+        setContentDigest(digest);
+        // Same fields as the files documents written by GridFS
+        files.insert(new BasicDBObject("_id", fileId).append("filename", inputFile.getFilename())
+            .append("contentType", inputFile.getContentType()).append("chunkSize", chunkSize)
+            .append("length", length).append("uploadDate", new Date())
+            .append("md5", toHex(md5.digest())).append("metadata", createMetadataDBObject()));
+
+        refreshAttributesOnClose();
+        return digest;
+      }
+
+      @Override
+      public void abort() {
+        chunks.remove(new BasicDBObject("files_id", fileId));
+        state = State.NEW;
+      }
+    };
+  }
+
+  private static int readChunk(InputStream input, byte[] buffer) throws IOException {
+    int length = 0;
+    int readBytes;
+    while (length < buffer.length
+        && (readBytes = input.read(buffer, length, buffer.length - length)) != -1) {
+      length += readBytes;
+    }
+    return length;
+  }
+
+  private static MessageDigest createMd5Digest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new KurentoException("MD5 digest not available", e);
+    }
+  }
+
   @Override
   public void setMetadata(Map<String, String> metadata) {
     super.setMetadata(metadata);
@@ -110,14 +291,18 @@ public class MongoRepositoryItem extends AbstractRepositoryItem {
 
   // TODO Optimize this to use the GridFS metadata
   private void putMetadataInGridFS(boolean save) {
+    dbFile.setMetaData(createMetadataDBObject());
+    if (save) {
+      dbFile.save();
+    }
+  }
+
+  private DBObject createMetadataDBObject() {
     DBObject metadataDBO = new BasicDBObject();
     for (Entry<String, String> entry : metadata.entrySet()) {
       metadataDBO.put(entry.getKey(), entry.getValue());
     }
-    dbFile.setMetaData(metadataDBO);
-    if (save) {
-      dbFile.save();
-    }
+    return metadataDBO;
   }
 
 }
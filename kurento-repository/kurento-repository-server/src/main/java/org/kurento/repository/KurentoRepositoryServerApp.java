@@ -19,6 +19,9 @@ package org.kurento.repository;
 
 import java.util.Properties;
 
+import org.kurento.jsonrpc.internal.server.config.JsonRpcConfiguration;
+import org.kurento.jsonrpc.server.JsonRpcConfigurer;
+import org.kurento.jsonrpc.server.JsonRpcHandlerRegistry;
 import org.kurento.repository.internal.RepositoryApplicationContextConfiguration;
 import org.kurento.repository.internal.http.RepositoryHttpServlet;
 import org.springframework.boot.SpringApplication;
@@ -31,8 +34,10 @@ import org.springframework.context.annotation.Import;
 
 @ComponentScan
 @EnableAutoConfiguration
-@Import(RepositoryApplicationContextConfiguration.class)
-public class KurentoRepositoryServerApp {
+@Import({ RepositoryApplicationContextConfiguration.class, JsonRpcConfiguration.class })
+public class KurentoRepositoryServerApp implements JsonRpcConfigurer {
+
+  public static final String EVENTS_PATH = "/repo/events";
 
   @Bean
   public RepositoryHttpServlet repositoryHttpServlet() {
@@ -46,10 +51,22 @@ public class KurentoRepositoryServerApp {
     ServletRegistrationBean servletRegistrationBean =
         new ServletRegistrationBean(repositoryHttpServlet, "/repository_servlet/*");
     servletRegistrationBean.setLoadOnStartup(1);
+    // Players and recorders transfer the content with non-blocking I/O
+    servletRegistrationBean.setAsyncSupported(true);
 
     return servletRegistrationBean;
   }
 
+  @Bean
+  public RepositoryEventsHandler repositoryEventsHandler() {
+    return new RepositoryEventsHandler();
+  }
+
+  @Override
+  public void registerJsonRpcHandlers(JsonRpcHandlerRegistry registry) {
+    registry.addHandler(repositoryEventsHandler(), EVENTS_PATH);
+  }
+
   public static ConfigurableApplicationContext start() {
 
     Properties properties = new Properties();
@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.repository.service.pojo.RepositoryBandwidthLimits;
+import org.kurento.repository.service.pojo.RepositoryPlayerBandwidth;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controller for the bandwidth limits of the players of Kurento Repository, which can be changed
+ * while the content is being sent.
+ */
+@RestController
+@RequestMapping(value = "/repo/bandwidth", produces = "application/json")
+public class RepositoryBandwidthController {
+
+  @Autowired
+  private RepositoryService repoService;
+
+  @RequestMapping(method = RequestMethod.GET)
+  public RepositoryBandwidthLimits getBandwidthLimits() {
+    return repoService.getBandwidthLimits();
+  }
+
+  @RequestMapping(method = RequestMethod.PUT)
+  public RepositoryBandwidthLimits setBandwidthLimits(
+      @RequestBody(required = true) RepositoryBandwidthLimits limits) {
+    return repoService.setBandwidthLimits(limits);
+  }
+
+  @RequestMapping(method = RequestMethod.GET, value = "/player")
+  public RepositoryPlayerBandwidth getPlayerBandwidth(@RequestParam("url") String url,
+      HttpServletResponse response) {
+    try {
+      return repoService.getPlayerBandwidth(url);
+    } catch (ItemNotFoundException e) {
+      sendError(response, HttpStatus.NOT_FOUND, e.getMessage());
+      return null;
+    }
+  }
+
+  @RequestMapping(method = RequestMethod.PUT, value = "/player")
+  public RepositoryPlayerBandwidth setPlayerBandwidth(
+      @RequestBody(required = true) RepositoryPlayerBandwidth playerBandwidth,
+      HttpServletResponse response) {
+    try {
+      return repoService.setPlayerBandwidth(playerBandwidth);
+    } catch (ItemNotFoundException e) {
+      sendError(response, HttpStatus.NOT_FOUND, e.getMessage());
+    } catch (IllegalArgumentException e) {
+      sendError(response, HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    return null;
+  }
+
+  private void sendError(HttpServletResponse response, HttpStatus status, String message) {
+    try {
+      response.sendError(status.value(), message);
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+      throw new KurentoException(ioe);
+    }
+  }
+}
@@ -19,11 +19,11 @@ package org.kurento.repository;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.Set;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.kurento.commons.exception.KurentoException;
+import org.kurento.repository.service.pojo.RepositoryItemIdPage;
 import org.kurento.repository.service.pojo.RepositoryItemPlayer;
 import org.kurento.repository.service.pojo.RepositoryItemRecorder;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,8 +32,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.google.gson.stream.JsonWriter;
+
 /**
  * Controller for the REST API of Kurento Repository.
  *
@@ -43,6 +46,10 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping(value = "/repo/item", produces = "application/json")
 public class RepositoryController {
 
+  private static final String DEFAULT_PAGE_SIZE = "100";
+
+  private static final int STREAMING_PAGE_SIZE = 1000;
+
   @Autowired
   private RepositoryService repoService;
 
@@ -83,16 +90,88 @@ public class RepositoryController {
     }
   }
 
+  @RequestMapping(method = RequestMethod.GET)
+  public RepositoryItemIdPage listItems(
+      @RequestParam(value = "continuationToken", required = false) String continuationToken,
+      @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) int limit,
+      HttpServletResponse response) {
+    return findItemsPage(null, false, continuationToken, limit, response);
+  }
+
   @RequestMapping(method = RequestMethod.POST, value = "/find")
-  public Set<String> simpleFindItems(
-      @RequestBody(required = true) Map<String, String> searchValues) {
-    return repoService.findItems(searchValues, false);
+  public void simpleFindItems(@RequestBody(required = true) Map<String, String> searchValues,
+      HttpServletResponse response) throws IOException {
+    writeItemIds(searchValues, false, response);
   }
 
   @RequestMapping(method = RequestMethod.POST, value = "/find/regex")
-  public Set<String> regexFindItems(
-      @RequestBody(required = true) Map<String, String> searchValues) {
-    return repoService.findItems(searchValues, true);
+  public void regexFindItems(@RequestBody(required = true) Map<String, String> searchValues,
+      HttpServletResponse response) throws IOException {
+    writeItemIds(searchValues, true, response);
+  }
+
+  @RequestMapping(method = RequestMethod.POST, value = "/find/page")
+  public RepositoryItemIdPage simpleFindItemsPage(
+      @RequestBody(required = true) Map<String, String> searchValues,
+      @RequestParam(value = "continuationToken", required = false) String continuationToken,
+      @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) int limit,
+      HttpServletResponse response) {
+    return findItemsPage(searchValues, false, continuationToken, limit, response);
+  }
+
+  @RequestMapping(method = RequestMethod.POST, value = "/find/regex/page")
+  public RepositoryItemIdPage regexFindItemsPage(
+      @RequestBody(required = true) Map<String, String> searchValues,
+      @RequestParam(value = "continuationToken", required = false) String continuationToken,
+      @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) int limit,
+      HttpServletResponse response) {
+    return findItemsPage(searchValues, true, continuationToken, limit, response);
+  }
+
+  private RepositoryItemIdPage findItemsPage(Map<String, String> searchValues, boolean regex,
+      String continuationToken, int limit, HttpServletResponse response) {
+    try {
+      return repoService.findItems(searchValues, regex, continuationToken, limit);
+    } catch (IllegalArgumentException e) {
+      try {
+        response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        throw new KurentoException(ioe);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Writes the identifiers of all the items found as a JSON array. The items are retrieved and
+   * written one page at a time, so the whole result is never kept in memory.
+   */
+  private void writeItemIds(Map<String, String> searchValues, boolean regex,
+      HttpServletResponse response) throws IOException {
+
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+
+    JsonWriter writer = new JsonWriter(response.getWriter());
+    writer.beginArray();
+
+    // No search values don't match any item
+    if (!searchValues.isEmpty()) {
+      String continuationToken = null;
+      do {
+        RepositoryItemIdPage page =
+            repoService.findItems(searchValues, regex, continuationToken, STREAMING_PAGE_SIZE);
+        for (String itemId : page.getItemIds()) {
+          writer.value(itemId);
+        }
+        writer.flush();
+        continuationToken = page.getContinuationToken();
+      } while (continuationToken != null);
+    }
+
+    writer.endArray();
+    writer.flush();
   }
 
   @RequestMapping(method = RequestMethod.GET, value = "/{itemId}/metadata")
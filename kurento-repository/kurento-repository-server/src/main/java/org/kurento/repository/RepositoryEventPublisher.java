@@ -0,0 +1,388 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.kurento.jsonrpc.Session;
+import org.kurento.repository.internal.ListenerManager;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.service.pojo.RepositoryEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Streams the events of the repository to the JSON-RPC sessions subscribed to them: the events of
+ * the HTTP sessions of all the players and recorders, and the creation, metadata changes and
+ * removal of the items made through the {@link RepositoryService}. A session can subscribe to the
+ * events of a single item or to the events of all of them.
+ *
+ * <p>
+ * The events are sent as "onEvent" notifications, with the {@link RepositoryEvent} and the id of
+ * the subscription in the "value" param. Each session has its own queue of pending events, sent in
+ * order from a pool thread, so the threads that raise them never wait for the clients and a slow
+ * client only delays its own events. Sessions that fall more than {@link #MAX_PENDING_EVENTS}
+ * events behind are closed.
+ * </p>
+ */
+@Component
+public class RepositoryEventPublisher {
+
+  private static final Logger log = LoggerFactory.getLogger(RepositoryEventPublisher.class);
+
+  public static final String ONEVENT_METHOD = "onEvent";
+  public static final String ONEVENT_VALUE = "value";
+  public static final String ONEVENT_SUBSCRIPTION = "subscription";
+
+  public static final int MAX_PENDING_EVENTS = 1000;
+
+  private static final Gson gson = new Gson();
+
+  private static class Subscription {
+
+    private final String id;
+    private final String itemId;
+    private final EventQueue events;
+
+    Subscription(String id, String itemId, EventQueue events) {
+      this.id = id;
+      this.itemId = itemId;
+      this.events = events;
+    }
+  }
+
+  private static class PendingEvent {
+
+    private final Subscription subscription;
+    private final RepositoryEvent event;
+
+    PendingEvent(Subscription subscription, RepositoryEvent event) {
+      this.subscription = subscription;
+      this.event = event;
+    }
+  }
+
+  /**
+   * Events waiting to be sent to a session. At most one pool thread sends them at a time, so they
+   * are received in order.
+   */
+  private class EventQueue implements Runnable {
+
+    private final Session session;
+    private final Queue<PendingEvent> pending = new ArrayDeque<>();
+    private boolean sending;
+    private boolean closed;
+
+    EventQueue(Session session) {
+      this.session = session;
+    }
+
+    /**
+     * Queues an event, unless the queue is closed.
+     *
+     * @return false if the queue is full, in which case it is closed and its events are discarded
+     */
+    synchronized boolean offer(PendingEvent event) {
+      if (closed) {
+        return true;
+      }
+      if (pending.size() >= MAX_PENDING_EVENTS) {
+        close();
+        return false;
+      }
+      pending.add(event);
+      if (!sending) {
+        sending = true;
+        eventExecutor.execute(this);
+      }
+      return true;
+    }
+
+    private synchronized PendingEvent poll() {
+      PendingEvent event = closed ? null : pending.poll();
+      if (event == null) {
+        sending = false;
+      }
+      return event;
+    }
+
+    synchronized void close() {
+      closed = true;
+      pending.clear();
+    }
+
+    @Override
+    public void run() {
+      PendingEvent event;
+      while ((event = poll()) != null) {
+        sendEvent(session, event.subscription, event.event);
+      }
+    }
+  }
+
+  @Autowired
+  private RepositoryHttpManager httpManager;
+
+  // Subscriptions indexed by id and by item, and event queues by session id, guarded by this
+  private final Map<String, Subscription> subscriptions = new HashMap<>();
+  private final Map<String, Set<Subscription>> subscriptionsByItemId = new HashMap<>();
+  private final Set<Subscription> allItemsSubscriptions = new HashSet<>();
+  private final Map<String, EventQueue> eventQueues = new HashMap<>();
+
+  private final ExecutorService eventExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("repository-events-%d").build());
+
+  @PostConstruct
+  private void postConstruct() {
+
+    ListenerManager listeners = httpManager.getListeners();
+
+    listeners.addStartedEventListener(new RepositoryHttpEventListener<HttpSessionStartedEvent>() {
+      @Override
+      public void onEvent(HttpSessionStartedEvent event) {
+        fireSessionEvent(RepositoryEvent.SESSION_STARTED, event, null);
+      }
+    });
+
+    listeners.addTerminatedEventListener(
+        new RepositoryHttpEventListener<HttpSessionTerminatedEvent>() {
+          @Override
+          public void onEvent(HttpSessionTerminatedEvent event) {
+            fireSessionEvent(RepositoryEvent.SESSION_TERMINATED, event, null);
+          }
+        });
+
+    listeners.addErrorEventListener(new RepositoryHttpEventListener<HttpSessionErrorEvent>() {
+      @Override
+      public void onEvent(HttpSessionErrorEvent event) {
+        fireSessionEvent(RepositoryEvent.SESSION_ERROR, event, event.getDescription());
+      }
+    });
+  }
+
+  @PreDestroy
+  private void preDestroy() {
+    eventExecutor.shutdown();
+  }
+
+  /**
+   * Subscribes a session to the events of an item, or of all the items.
+   *
+   * @param itemId
+   *          the id of the item, or null to receive the events of all the items
+   * @return the id of the subscription
+   */
+  public synchronized String subscribe(Session session, String itemId) {
+
+    EventQueue events = eventQueues.get(session.getSessionId());
+    if (events == null) {
+      events = new EventQueue(session);
+      eventQueues.put(session.getSessionId(), events);
+    }
+
+    Subscription subscription = new Subscription(UUID.randomUUID().toString(), itemId, events);
+    subscriptions.put(subscription.id, subscription);
+
+    if (itemId == null) {
+      allItemsSubscriptions.add(subscription);
+    } else {
+      Set<Subscription> itemSubscriptions = subscriptionsByItemId.get(itemId);
+      if (itemSubscriptions == null) {
+        itemSubscriptions = new HashSet<>();
+        subscriptionsByItemId.put(itemId, itemSubscriptions);
+      }
+      itemSubscriptions.add(subscription);
+    }
+
+    return subscription.id;
+  }
+
+  /**
+   * Cancels a subscription of a session.
+   *
+   * @return false if the session has no subscription with the id
+   */
+  public synchronized boolean unsubscribe(Session session, String subscriptionId) {
+
+    Subscription subscription = subscriptions.get(subscriptionId);
+    if (subscription == null
+        || !subscription.events.session.getSessionId().equals(session.getSessionId())) {
+      return false;
+    }
+
+    removeSubscription(subscription);
+    return true;
+  }
+
+  private void removeSubscription(Subscription subscription) {
+
+    subscriptions.remove(subscription.id);
+    if (subscription.itemId == null) {
+      allItemsSubscriptions.remove(subscription);
+    } else {
+      Set<Subscription> itemSubscriptions = subscriptionsByItemId.get(subscription.itemId);
+      itemSubscriptions.remove(subscription);
+      if (itemSubscriptions.isEmpty()) {
+        subscriptionsByItemId.remove(subscription.itemId);
+      }
+    }
+  }
+
+  /**
+   * Cancels all the subscriptions of a session, once it is closed, discarding its pending events.
+   */
+  public synchronized void removeSubscriptions(Session session) {
+
+    EventQueue events = eventQueues.remove(session.getSessionId());
+    if (events == null) {
+      return;
+    }
+    events.close();
+
+    for (Subscription subscription : new ArrayList<>(subscriptions.values())) {
+      if (subscription.events == events) {
+        removeSubscription(subscription);
+      }
+    }
+  }
+
+  public synchronized int getNumSubscriptions() {
+    return subscriptions.size();
+  }
+
+  public void itemCreated(RepositoryItem item) {
+    fireEvent(newEvent(RepositoryEvent.ITEM_CREATED, item.getId(), item.getMetadata()));
+  }
+
+  public void itemMetadataChanged(RepositoryItem item) {
+    fireEvent(newEvent(RepositoryEvent.ITEM_METADATA_CHANGED, item.getId(), item.getMetadata()));
+  }
+
+  /**
+   * Fires the removal of an item, after which the subscriptions to its events are cancelled.
+   */
+  public void itemRemoved(String itemId) {
+    fireEvent(newEvent(RepositoryEvent.ITEM_REMOVED, itemId, null));
+    synchronized (this) {
+      Set<Subscription> itemSubscriptions = subscriptionsByItemId.remove(itemId);
+      if (itemSubscriptions != null) {
+        for (Subscription subscription : itemSubscriptions) {
+          subscriptions.remove(subscription.id);
+        }
+      }
+    }
+  }
+
+  private void fireSessionEvent(String type, RepositoryHttpSessionEvent sessionEvent,
+      String description) {
+    RepositoryHttpEndpoint endpoint = sessionEvent.getSource();
+    RepositoryEvent event = newEvent(type, endpoint.getRepositoryItem().getId(), null);
+    event.setUrl(endpoint.getURL());
+    event.setEndpointType(endpoint instanceof RepositoryHttpRecorder
+        ? RepositoryEvent.RECORDER_ENDPOINT : RepositoryEvent.PLAYER_ENDPOINT);
+    event.setDescription(description);
+    fireEvent(event);
+  }
+
+  private static RepositoryEvent newEvent(String type, String itemId,
+      Map<String, String> metadata) {
+    RepositoryEvent event = new RepositoryEvent();
+    event.setType(type);
+    event.setItemId(itemId);
+    event.setTimestamp(System.currentTimeMillis());
+    if (metadata != null) {
+      event.setMetadata(new HashMap<>(metadata));
+    }
+    return event;
+  }
+
+  private void fireEvent(final RepositoryEvent event) {
+
+    final List<Subscription> recipients;
+    synchronized (this) {
+      recipients = new ArrayList<>(allItemsSubscriptions);
+      Set<Subscription> itemSubscriptions = subscriptionsByItemId.get(event.getItemId());
+      if (itemSubscriptions != null) {
+        recipients.addAll(itemSubscriptions);
+      }
+    }
+
+    if (recipients.isEmpty()) {
+      return;
+    }
+
+    for (Subscription subscription : recipients) {
+      if (!subscription.events.offer(new PendingEvent(subscription, event))) {
+        closeSlowSession(subscription.events.session);
+      }
+    }
+  }
+
+  private void closeSlowSession(final Session session) {
+
+    log.warn("Closing session {}: more than {} events pending", session.getSessionId(),
+        MAX_PENDING_EVENTS);
+    removeSubscriptions(session);
+    eventExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          session.close();
+        } catch (IOException e) {
+          log.warn("Exception closing session {}", session.getSessionId(), e);
+        }
+      }
+    });
+  }
+
+  private void sendEvent(Session session, Subscription subscription, RepositoryEvent event) {
+
+    JsonObject value = gson.toJsonTree(event).getAsJsonObject();
+    value.addProperty(ONEVENT_SUBSCRIPTION, subscription.id);
+
+    JsonObject params = new JsonObject();
+    params.add(ONEVENT_VALUE, value);
+
+    try {
+      session.sendNotification(ONEVENT_METHOD, params);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Exception sending event {} of item {} to session {}", event.getType(),
+          event.getItemId(), session.getSessionId(), e);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository;
+
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * JSON-RPC handler of the events endpoint of Kurento Repository. The clients subscribe to the
+ * events of an item, or of all of them if no item is given, and receive them as notifications
+ * sent by the {@link RepositoryEventPublisher}, instead of polling the REST API:
+ * <ul>
+ * <li>subscribe: optional param "itemId", returns the id of the subscription in "value". The item
+ * doesn't need to have content yet, so that its recording can be followed from the start.</li>
+ * <li>unsubscribe: param "subscription" with the id of the subscription.</li>
+ * </ul>
+ * The subscriptions of a session are cancelled when it is closed.
+ */
+public class RepositoryEventsHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+  public static final String SUBSCRIBE_METHOD = "subscribe";
+  public static final String SUBSCRIBE_ITEM = "itemId";
+  public static final String UNSUBSCRIBE_METHOD = "unsubscribe";
+  public static final String UNSUBSCRIBE_SUBSCRIPTION = "subscription";
+
+  public static final int INVALID_REQUEST = 40001;
+  public static final int SUBSCRIPTION_NOT_FOUND = 40401;
+
+  @Autowired
+  private RepositoryEventPublisher eventPublisher;
+
+  @Override
+  public void handleRequest(Transaction transaction, Request<JsonObject> request)
+      throws Exception {
+
+    String method = request.getMethod();
+    JsonObject params = request.getParams() != null ? request.getParams() : new JsonObject();
+
+    try {
+      switch (method) {
+        case SUBSCRIBE_METHOD:
+          String itemId = getAsString(params, SUBSCRIBE_ITEM);
+          JsonObject result = new JsonObject();
+          result.addProperty("value", eventPublisher.subscribe(transaction.getSession(), itemId));
+          transaction.sendResponse(result);
+          break;
+        case UNSUBSCRIBE_METHOD:
+          String subscriptionId = getAsString(params, UNSUBSCRIBE_SUBSCRIPTION);
+          if (subscriptionId == null
+              || !eventPublisher.unsubscribe(transaction.getSession(), subscriptionId)) {
+            throw new JsonRpcErrorException(SUBSCRIPTION_NOT_FOUND,
+                "Subscription " + subscriptionId + " not found");
+          }
+          transaction.sendVoidResponse();
+          break;
+        default:
+          throw new JsonRpcErrorException(INVALID_REQUEST, "Unknown method '" + method + "'");
+      }
+    } catch (JsonRpcErrorException e) {
+      transaction.sendError(e.getError());
+    }
+  }
+
+  @Override
+  public void afterConnectionClosed(Session session, String status) throws Exception {
+    eventPublisher.removeSubscriptions(session);
+  }
+
+  private static String getAsString(JsonObject params, String property) {
+    JsonElement element = params.get(property);
+    return element != null && !element.isJsonNull() ? element.getAsString() : null;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.repository;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.repository.service.pojo.RepositoryItemMediaIndex;
+import org.kurento.repository.service.pojo.RepositoryItemSeek;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controller for the index of the seek points of the recorded items of Kurento Repository, used to
+ * play an item from any time with a single byte range.
+ */
+@RestController
+@RequestMapping(value = "/repo/item/{itemId}/index", produces = "application/json")
+public class RepositoryIndexController {
+
+  @Autowired
+  private RepositoryService repoService;
+
+  @RequestMapping(method = RequestMethod.GET)
+  public RepositoryItemMediaIndex getMediaIndex(@PathVariable("itemId") String itemId,
+      HttpServletResponse response) {
+    try {
+      return repoService.getMediaIndex(itemId);
+    } catch (ItemNotFoundException e) {
+      sendError(response, HttpStatus.NOT_FOUND, e.getMessage());
+      return null;
+    }
+  }
+
+  @RequestMapping(method = RequestMethod.POST)
+  public RepositoryItemMediaIndex indexRepositoryItem(@PathVariable("itemId") String itemId,
+      HttpServletResponse response) {
+    try {
+      return repoService.indexRepositoryItem(itemId);
+    } catch (ItemNotFoundException e) {
+      sendError(response, HttpStatus.NOT_FOUND, e.getMessage());
+    } catch (IllegalArgumentException e) {
+      sendError(response, HttpStatus.BAD_REQUEST, e.getMessage());
+    } catch (IllegalStateException e) {
+      sendError(response, HttpStatus.CONFLICT, e.getMessage());
+    }
+    return null;
+  }
+
+  @RequestMapping(method = RequestMethod.GET, value = "/seek")
+  public RepositoryItemSeek seek(@PathVariable("itemId") String itemId,
+      @RequestParam("time") long time, HttpServletResponse response) {
+    try {
+      return repoService.seek(itemId, time);
+    } catch (ItemNotFoundException e) {
+      sendError(response, HttpStatus.NOT_FOUND, e.getMessage());
+      return null;
+    }
+  }
+
+  private void sendError(HttpServletResponse response, HttpStatus status, String message) {
+    try {
+      response.sendError(status.value(), message);
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+      throw new KurentoException(ioe);
+    }
+  }
+}
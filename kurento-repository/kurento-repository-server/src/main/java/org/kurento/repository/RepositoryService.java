@@ -17,6 +17,8 @@
 
 package org.kurento.repository;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -24,8 +26,17 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.kurento.repository.internal.RepositoryHttpEndpointImpl;
+import org.kurento.repository.internal.http.BandwidthManager;
+import org.kurento.repository.internal.http.RepositoryHttpManager;
+import org.kurento.repository.internal.index.MediaIndex;
+import org.kurento.repository.service.pojo.RepositoryBandwidthLimits;
+import org.kurento.repository.service.pojo.RepositoryItemIdPage;
+import org.kurento.repository.service.pojo.RepositoryItemMediaIndex;
 import org.kurento.repository.service.pojo.RepositoryItemPlayer;
 import org.kurento.repository.service.pojo.RepositoryItemRecorder;
+import org.kurento.repository.service.pojo.RepositoryItemSeek;
+import org.kurento.repository.service.pojo.RepositoryPlayerBandwidth;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,9 +52,20 @@ public class RepositoryService {
 
   private static final Logger log = LoggerFactory.getLogger(RepositoryService.class);
 
+  /**
+   * Maximum number of items in a page of results.
+   */
+  public static final int MAX_PAGE_SIZE = 10000;
+
   @Autowired
   private Repository repository;
 
+  @Autowired
+  private RepositoryHttpManager httpManager;
+
+  @Autowired
+  private RepositoryEventPublisher eventPublisher;
+
   /**
    * Creates a new repository item with the provided metadata and its associated recorder endpoint.
    *
@@ -56,6 +78,7 @@ public class RepositoryService {
     if (metadata != null) {
       item.setMetadata(metadata);
     }
+    eventPublisher.itemCreated(item);
     RepositoryItemRecorder itemRec = new RepositoryItemRecorder();
     itemRec.setId(item.getId());
     itemRec.setUrl(getEndpointUrl(item, false, "Upload"));
@@ -72,6 +95,7 @@ public class RepositoryService {
    */
   public void removeRepositoryItem(String itemId) throws ItemNotFoundException {
     repository.remove(findRepositoryItemById(itemId));
+    eventPublisher.itemRemoved(itemId);
   }
 
   /**
@@ -119,6 +143,45 @@ public class RepositoryService {
     return itemIds;
   }
 
+  /**
+   * Searches for repository items by each pair of attributes and their values, one page at a time.
+   * If no attributes are given, all the repository items are returned.
+   *
+   * @param metadata
+   *          pairs of attributes and their values (can be regexes). Can be null or empty
+   * @param regex
+   *          if true, will activate search by attribute regex
+   * @param continuationToken
+   *          the continuation token of the previous page, or null to obtain the first one
+   * @param limit
+   *          maximum number of items in the page, up to {@link #MAX_PAGE_SIZE}
+   * @return a {@link RepositoryItemIdPage} with the identifiers of the repository items that were
+   *         found, ordered, and the continuation token of the next page
+   * @throws IllegalArgumentException
+   *           if the continuation token or the limit are not valid
+   */
+  public RepositoryItemIdPage findItems(Map<String, String> metadata, boolean regex,
+      String continuationToken, int limit) {
+
+    if (limit > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException(
+          "The limit of items can't be greater than " + MAX_PAGE_SIZE + ": " + limit);
+    }
+
+    RepositoryItemPage page =
+        repository.findRepositoryItems(metadata, regex, continuationToken, limit);
+
+    List<String> itemIds = new ArrayList<>(page.getItems().size());
+    for (RepositoryItem item : page.getItems()) {
+      itemIds.add(item.getId());
+    }
+
+    RepositoryItemIdPage idPage = new RepositoryItemIdPage();
+    idPage.setItemIds(itemIds);
+    idPage.setContinuationToken(page.getContinuationToken());
+    return idPage;
+  }
+
   /**
    * Returns the metadata from a repository item.
    *
@@ -147,9 +210,201 @@ public class RepositoryService {
     RepositoryItem item = findRepositoryItemById(itemId);
     Map<String, String> oldMetadata = item.getMetadata();
     item.setMetadata(metadata);
+    eventPublisher.itemMetadataChanged(item);
     log.info("Current metadata: {} - updated metadata: {}", oldMetadata, item.getMetadata());
   }
 
+  /**
+   * Returns the index of the seek points of a repository item.
+   *
+   * @param itemId
+   *          the id of an existing repository item
+   * @return the index stored in the metadata of the item
+   * @throws ItemNotFoundException
+   *           if the object is not found or it is not indexed
+   */
+  public RepositoryItemMediaIndex getMediaIndex(String itemId) throws ItemNotFoundException {
+    return toMediaIndex(itemId, findMediaIndex(findRepositoryItemById(itemId)));
+  }
+
+  /**
+   * Indexes the content of a repository item, replacing its previous index if any.
+   *
+   * @param itemId
+   *          the id of an existing repository item, in {@link State#STORED} state
+   * @return the new index of the item
+   * @throws ItemNotFoundException
+   *           if the object is not found
+   * @throws IllegalArgumentException
+   *           if the content is not WebM or MP4, or it is malformed
+   * @throws IllegalStateException
+   *           if the content of the item is not stored yet
+   */
+  public RepositoryItemMediaIndex indexRepositoryItem(String itemId)
+      throws ItemNotFoundException {
+    RepositoryItem item = findRepositoryItemById(itemId);
+    MediaIndex index;
+    try {
+      index = httpManager.getMediaIndexer().indexItem(item);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          "Content of item " + itemId + " can't be indexed: " + e.getMessage(), e);
+    }
+    if (index == null) {
+      throw new IllegalArgumentException("Format of item " + itemId + " is not supported");
+    }
+    log.info("Indexed {} item {} with {} seek points", index.getFormat(), itemId,
+        index.getNumPoints());
+    eventPublisher.itemMetadataChanged(item);
+    return toMediaIndex(itemId, index);
+  }
+
+  /**
+   * Finds the byte range to request to play an indexed item from the given time. It starts at the
+   * last seek point at or before the time, and ends at the end of the content.
+   *
+   * @param itemId
+   *          the id of an existing repository item
+   * @param time
+   *          the time to play from, in milliseconds
+   * @return the range of the content and the time of the seek point it starts at
+   * @throws ItemNotFoundException
+   *           if the object is not found or it is not indexed
+   */
+  public RepositoryItemSeek seek(String itemId, long time) throws ItemNotFoundException {
+    RepositoryItem item = findRepositoryItemById(itemId);
+    MediaIndex index = findMediaIndex(item);
+    int point = index.findPoint(time);
+    RepositoryItemSeek seek = new RepositoryItemSeek();
+    seek.setItemId(itemId);
+    seek.setTime(time);
+    seek.setPointTime(point >= 0 ? index.getTime(point) : 0);
+    seek.setRangeStart(point >= 0 ? index.getOffset(point) : 0);
+    seek.setRangeEnd(item.getAttributes().getContentLength() - 1);
+    return seek;
+  }
+
+  private MediaIndex findMediaIndex(RepositoryItem item) throws ItemNotFoundException {
+    MediaIndex index = MediaIndex.fromMetadata(item.getMetadata());
+    if (index == null) {
+      throw new ItemNotFoundException("Item " + item.getId() + " is not indexed");
+    }
+    return index;
+  }
+
+  private RepositoryItemMediaIndex toMediaIndex(String itemId, MediaIndex index) {
+    long[] times = new long[index.getNumPoints()];
+    long[] offsets = new long[index.getNumPoints()];
+    for (int i = 0; i < times.length; i++) {
+      times[i] = index.getTime(i);
+      offsets[i] = index.getOffset(i);
+    }
+    RepositoryItemMediaIndex mediaIndex = new RepositoryItemMediaIndex();
+    mediaIndex.setItemId(itemId);
+    mediaIndex.setFormat(index.getFormat());
+    mediaIndex.setDuration(index.getDuration());
+    mediaIndex.setTimes(times);
+    mediaIndex.setOffsets(offsets);
+    return mediaIndex;
+  }
+
+  /**
+   * Returns the bandwidth limits of the players of the repository.
+   *
+   * @return the current limits
+   */
+  public RepositoryBandwidthLimits getBandwidthLimits() {
+    BandwidthManager bandwidthManager = httpManager.getBandwidthManager();
+    RepositoryBandwidthLimits limits = new RepositoryBandwidthLimits();
+    limits.setMaxBandwidth(bandwidthManager.getMaxBandwidth());
+    limits.setMaxSessionBandwidth(bandwidthManager.getMaxSessionBandwidth());
+    limits.setMaxAddressBandwidth(bandwidthManager.getMaxAddressBandwidth());
+    return limits;
+  }
+
+  /**
+   * Changes the bandwidth limits of the players of the repository, including the ones sending
+   * content.
+   *
+   * @param limits
+   *          the limits to change, null values are left unchanged
+   * @return the updated limits
+   */
+  public RepositoryBandwidthLimits setBandwidthLimits(RepositoryBandwidthLimits limits) {
+    BandwidthManager bandwidthManager = httpManager.getBandwidthManager();
+    if (limits.getMaxBandwidth() != null) {
+      bandwidthManager.setMaxBandwidth(limits.getMaxBandwidth());
+    }
+    if (limits.getMaxSessionBandwidth() != null) {
+      bandwidthManager.setMaxSessionBandwidth(limits.getMaxSessionBandwidth());
+    }
+    if (limits.getMaxAddressBandwidth() != null) {
+      bandwidthManager.setMaxAddressBandwidth(limits.getMaxAddressBandwidth());
+    }
+    log.info("Bandwidth limits changed to {}", getBandwidthLimits());
+    return getBandwidthLimits();
+  }
+
+  /**
+   * Returns the bandwidth settings of a player.
+   *
+   * @param url
+   *          the URL of an existing player
+   * @return the settings and the current bandwidth of the player
+   * @throws ItemNotFoundException
+   *           if there is no player with the URL
+   */
+  public RepositoryPlayerBandwidth getPlayerBandwidth(String url) throws ItemNotFoundException {
+    return getPlayerBandwidth(findPlayerByUrl(url));
+  }
+
+  /**
+   * Changes the bandwidth limit or the weight of a player, also if it is sending content.
+   *
+   * @param playerBandwidth
+   *          the URL of an existing player and the settings to change, null values are left
+   *          unchanged
+   * @return the updated settings of the player
+   * @throws ItemNotFoundException
+   *           if there is no player with the URL
+   * @throws IllegalArgumentException
+   *           if the weight is not positive
+   */
+  public RepositoryPlayerBandwidth setPlayerBandwidth(RepositoryPlayerBandwidth playerBandwidth)
+      throws ItemNotFoundException {
+    RepositoryHttpEndpointImpl player = findPlayerByUrl(playerBandwidth.getUrl());
+    if (playerBandwidth.getWeight() != null) {
+      player.setBandwidthWeight(playerBandwidth.getWeight());
+    }
+    if (playerBandwidth.getMaxBandwidth() != null) {
+      player.setMaxBandwidth(playerBandwidth.getMaxBandwidth());
+    }
+    return getPlayerBandwidth(player);
+  }
+
+  private RepositoryPlayerBandwidth getPlayerBandwidth(RepositoryHttpEndpointImpl player) {
+    RepositoryPlayerBandwidth playerBandwidth = new RepositoryPlayerBandwidth();
+    playerBandwidth.setUrl(player.getURL());
+    playerBandwidth.setMaxBandwidth(player.getMaxBandwidth());
+    playerBandwidth.setWeight(player.getBandwidthWeight());
+    playerBandwidth.setBandwidth(httpManager.getBandwidthManager().getSessionBandwidth(player));
+    return playerBandwidth;
+  }
+
+  /**
+   * Finds a player by its URL, whose last segment is the id of its HTTP session.
+   */
+  private RepositoryHttpEndpointImpl findPlayerByUrl(String url) throws ItemNotFoundException {
+    if (url != null) {
+      String sessionId = url.substring(url.lastIndexOf('/') + 1);
+      RepositoryHttpEndpointImpl elem = httpManager.getHttpRepoItemElem(sessionId);
+      if (elem instanceof RepositoryHttpPlayer) {
+        return elem;
+      }
+    }
+    throw new ItemNotFoundException("No player found with URL " + url);
+  }
+
   /**
    * Used to obtain the URL of a [play|rec] Http endpoint. Should be used only if the item'state is
    * {@link State#STORED}, otherwise the search for the item will fail.